@@ -31,6 +31,14 @@ public class EntityLinkingProperties
     private int candidateQueryLimit = 2500;
     private int candidateDisplayLimit = 100;
     private int signatureQueryLimit = Integer.MAX_VALUE;
+    private int signatureCacheSize = 1024;
+    private long signatureCacheMaxWeight = 0;
+    private int fuzzyMatchMaxDistance = 2;
+    private int candidateQueryThreads = 8;
+    private int recommenderQueryThreads = 2;
+    private int candidateQueryQueueSize = 256;
+    private int candidateQueryTimeout = 10000;
+    private int sessionCandidateTimeout = 60000;
 
     public int getCacheSize()
     {
@@ -81,5 +89,84 @@ public class EntityLinkingProperties
     {
         this.signatureQueryLimit = signatureQueryLimit;
     }
-}
 
+    public int getSignatureCacheSize()
+    {
+        return signatureCacheSize;
+    }
+
+    public void setSignatureCacheSize(int signatureCacheSize)
+    {
+        this.signatureCacheSize = signatureCacheSize;
+    }
+
+    public long getSignatureCacheMaxWeight()
+    {
+        return signatureCacheMaxWeight;
+    }
+
+    public void setSignatureCacheMaxWeight(long signatureCacheMaxWeight)
+    {
+        this.signatureCacheMaxWeight = signatureCacheMaxWeight;
+    }
+
+    public int getFuzzyMatchMaxDistance()
+    {
+        return fuzzyMatchMaxDistance;
+    }
+
+    public void setFuzzyMatchMaxDistance(int fuzzyMatchMaxDistance)
+    {
+        this.fuzzyMatchMaxDistance = fuzzyMatchMaxDistance;
+    }
+
+    public int getCandidateQueryThreads()
+    {
+        return candidateQueryThreads;
+    }
+
+    public void setCandidateQueryThreads(int candidateQueryThreads)
+    {
+        this.candidateQueryThreads = candidateQueryThreads;
+    }
+
+    public int getRecommenderQueryThreads()
+    {
+        return recommenderQueryThreads;
+    }
+
+    public void setRecommenderQueryThreads(int recommenderQueryThreads)
+    {
+        this.recommenderQueryThreads = recommenderQueryThreads;
+    }
+
+    public int getCandidateQueryQueueSize()
+    {
+        return candidateQueryQueueSize;
+    }
+
+    public void setCandidateQueryQueueSize(int candidateQueryQueueSize)
+    {
+        this.candidateQueryQueueSize = candidateQueryQueueSize;
+    }
+
+    public int getCandidateQueryTimeout()
+    {
+        return candidateQueryTimeout;
+    }
+
+    public void setCandidateQueryTimeout(int candidateQueryTimeout)
+    {
+        this.candidateQueryTimeout = candidateQueryTimeout;
+    }
+
+    public int getSessionCandidateTimeout()
+    {
+        return sessionCandidateTimeout;
+    }
+
+    public void setSessionCandidateTimeout(int sessionCandidateTimeout)
+    {
+        this.sessionCandidateTimeout = sessionCandidateTimeout;
+    }
+}
@@ -20,20 +20,22 @@ package de.tudarmstadt.ukp.inception.conceptlinking.recommender;
 
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getDocumentUri;
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.selectSentences;
+import static java.util.Collections.unmodifiableSet;
+import static org.apache.commons.lang3.StringUtils.normalizeSpace;
 import static org.apache.uima.fit.util.CasUtil.getAnnotationType;
 import static org.apache.uima.fit.util.CasUtil.getType;
-import static org.apache.uima.fit.util.CasUtil.indexCovered;
+import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.Type;
@@ -42,7 +44,6 @@ import org.apache.uima.cas.text.AnnotationFS;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.feature.FeatureSupport;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.feature.FeatureSupportRegistry;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
-import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.inception.conceptlinking.service.ConceptLinkingService;
 import de.tudarmstadt.ukp.inception.kb.ConceptFeatureTraits;
@@ -69,8 +70,7 @@ public class NamedEntityLinker
     private FeatureSupportRegistry fsRegistry;
     private ConceptFeatureTraits featureTraits;
 
-    public static final Key<Collection<ImmutablePair<String, Collection<AnnotationFS>>>> KEY_MODEL
-        = new Key<>("model");
+    public static final Key<NamedEntityLinkerModel> KEY_MODEL = new Key<>("model");
 
     public NamedEntityLinker(Recommender aRecommender, NamedEntityLinkerTraits aTraits,
             KnowledgeBaseService aKbService, ConceptLinkingService aClService,
@@ -87,75 +87,74 @@ public class NamedEntityLinker
     @Override
     public void train(RecommenderContext aContext, List<CAS> aCasList)
     {
-        Collection<ImmutablePair<String, Collection<AnnotationFS>>> nameSamples =
-            extractNamedEntities(aCasList);
-        aContext.put(KEY_MODEL, nameSamples);
+        NamedEntityLinkerModel previousModel = aContext.get(KEY_MODEL).orElse(null);
+        aContext.put(KEY_MODEL, extractNamedEntities(previousModel, aCasList));
         aContext.markAsReadyForPrediction();
     }
 
-    private Collection<ImmutablePair<String, Collection<AnnotationFS>>> extractNamedEntities(
-        List<CAS> aCasList)
+    private NamedEntityLinkerModel extractNamedEntities(NamedEntityLinkerModel aPreviousModel,
+            List<CAS> aCasList)
     {
         Type tokenType = org.apache.uima.fit.util.CasUtil
             .getType(aCasList.get(0), recommender.getLayer().getName());
         Feature feature = tokenType.getFeatureByBaseName(recommender.getFeature().getName());
 
-        Collection<ImmutablePair<String, Collection<AnnotationFS>>> nameSamples = new HashSet<>();
+        Map<String, Map<Integer, String>> documents = new HashMap<>();
         for (CAS cas : aCasList) {
-            Collection<AnnotationFS> namesPerDocument = new ArrayList<>();
-            Type sentenceType = getType(cas, Sentence.class);
-
-            Map<AnnotationFS, Collection<AnnotationFS>> sentences = indexCovered(cas, sentenceType,
-                tokenType);
-            for (Map.Entry<AnnotationFS, Collection<AnnotationFS>> e : sentences.entrySet()) {
-                Collection<AnnotationFS> tokens = e.getValue().stream()
-                    // If the identifier has not been set
-                    .filter(a -> a.getStringValue(feature) == null)
-                    .collect(Collectors.toSet());
-                namesPerDocument.addAll(tokens);
+            Map<Integer, String> mentions = new HashMap<>();
+            for (AnnotationFS annotation : select(cas, tokenType)) {
+                // If the identifier has not been set
+                if (annotation.getStringValue(feature) == null) {
+                    mentions.put(annotation.getBegin(), annotation.getCoveredText());
+                }
             }
 
             // TODO #176 use the document Id once it is available in the CAS
-            nameSamples.add(
-                new ImmutablePair<>(getDocumentUri(cas), namesPerDocument));
+            String documentUri = getDocumentUri(cas);
+            
+            // Keep the index of documents which did not change since the last training, so
+            // only the changed documents end up as new objects in the new model
+            if (aPreviousModel != null) {
+                Map<Integer, String> previousMentions = aPreviousModel.getMentions(documentUri);
+                if (previousMentions.equals(mentions)) {
+                    mentions = previousMentions;
+                }
+            }
+            
+            documents.put(documentUri, mentions);
         }
-        return nameSamples;
+        return new NamedEntityLinkerModel(documents, this::generateCandidates);
     }
 
-    // TODO #176 use the document Id once it is available in the CAS
-    private boolean isNamedEntity(RecommenderContext aContext, AnnotationFS token,
-            String aDocumentUri)
-        throws RecommendationException
+    @Override
+    public void predict(RecommenderContext aContext, CAS aCas) throws RecommendationException
     {
-        Collection<ImmutablePair<String, Collection<AnnotationFS>>> model = aContext.get(KEY_MODEL)
+        NamedEntityLinkerModel model = aContext.get(KEY_MODEL)
                 .orElseThrow(() -> new RecommendationException(
                         "Key [" + KEY_MODEL + "] not found in context"));
         
-        return model.stream().anyMatch(pair -> pair.getLeft().equals(aDocumentUri)
-        && pair.getRight().stream().anyMatch(t -> t.getBegin() == token.getBegin()));
-    }
-
-    @Override
-    public void predict(RecommenderContext aContext, CAS aCas) throws RecommendationException
-    {
+        // TODO #176 use the document Id once it is available in the CAS
+        Map<Integer, String> mentions = model.getMentions(getDocumentUri(aCas));
+        if (mentions.isEmpty()) {
+            return;
+        }
+        
         Type tokenType = getType(aCas, Token.class);
 
         for (AnnotationFS sentence : selectSentences(aCas)) {
             List<AnnotationFS> tokenAnnotations = selectCovered(tokenType, sentence);
-            predictSentence(aContext, tokenAnnotations, aCas);
+            predictSentence(model, mentions, tokenAnnotations, aCas);
         }
     }
 
-    private void predictSentence(RecommenderContext aContext, List<AnnotationFS> aTokenAnnotations,
-            CAS aCas)
-        throws RecommendationException
+    private void predictSentence(NamedEntityLinkerModel aModel, Map<Integer, String> aMentions,
+            List<AnnotationFS> aTokenAnnotations, CAS aCas)
     {
         int sentenceIndex = 0;
         while (sentenceIndex < aTokenAnnotations.size() - 1) {
-            String documentUri = getDocumentUri(aCas);
             AnnotationFS token = aTokenAnnotations.get(sentenceIndex);
 
-            if (isNamedEntity(aContext, token, documentUri)) {
+            if (aMentions.containsKey(token.getBegin())) {
                 StringBuilder coveredText = new StringBuilder(token.getCoveredText());
                 int begin = token.getBegin();
                 int end = token.getEnd();
@@ -164,59 +163,85 @@ public class NamedEntityLinker
                 // Checking whether the next TokenObject is a NE
                 // and whether the sentenceIndex for the next TokenObject is still
                 // in the range of the sentence
-                while (isNamedEntity(aContext, nextTokenObject, documentUri)
+                while (aMentions.containsKey(nextTokenObject.getBegin())
                     && sentenceIndex + 1 < aTokenAnnotations.size() - 1) {
                     coveredText.append(" ").append(nextTokenObject.getCoveredText());
                     end = nextTokenObject.getEnd();
                     sentenceIndex++;
                     nextTokenObject = aTokenAnnotations.get(sentenceIndex + 1);
                 }
-                predictToken(coveredText.toString(), begin, end, aCas);
+                predictToken(aModel, coveredText.toString(), begin, end, aCas);
 
             }
             sentenceIndex++;
         }
     }
 
-    private void predictToken(String aCoveredText, int aBegin, int aEnd, CAS aCas)
+    /**
+     * Determines the knowledge bases to link against - this is the same for all mentions.
+     */
+    private List<KnowledgeBase> getKnowledgeBases()
     {
-        List<KBHandle> handles = new ArrayList<>();
-
         AnnotationFeature feat = recommender.getFeature();
         FeatureSupport<ConceptFeatureTraits> fs = fsRegistry.getFeatureSupport(feat);
         ConceptFeatureTraits conceptFeatureTraits = fs.readTraits(feat);
 
+        List<KnowledgeBase> knowledgeBases = new ArrayList<>();
         if (conceptFeatureTraits.getRepositoryId() != null) {
             Optional<KnowledgeBase> kb = kbService.getKnowledgeBaseById(recommender.getProject(),
                     conceptFeatureTraits.getRepositoryId());
             if (kb.isPresent() && kb.get().isSupportConceptLinking()) {
-                handles.addAll(readCandidates(kb.get(), aCoveredText, aBegin, aCas));
+                knowledgeBases.add(kb.get());
             }
         } else {
             for (KnowledgeBase kb : kbService.getEnabledKnowledgeBases(recommender.getProject())) {
                 if (kb.isSupportConceptLinking()) {
-                    handles.addAll(readCandidates(kb, aCoveredText, aBegin, aCas));
+                    knowledgeBases.add(kb);
                 }
             }
         }
+        return knowledgeBases;
+    }
+
+    private void predictToken(NamedEntityLinkerModel aModel, String aCoveredText, int aBegin,
+            int aEnd, CAS aCas)
+    {
+        // A name typically occurs many times in a project - it is only looked up in the KBs
+        // on its first occurrence. The candidates are then ranked in the context of each
+        // occurrence.
+        Set<KBHandle> candidates = aModel.getCandidates(normalizeSpace(aCoveredText));
+        if (candidates.isEmpty()) {
+            return;
+        }
+        
+        List<KBHandle> handles = clService
+                .rankCandidates(null, aCoveredText, candidates, aCas, aBegin).stream()
+                .limit(recommender.getMaxRecommendations())
+                .collect(Collectors.toList());
 
         Type predictionType = getAnnotationType(aCas, PredictedSpan.class);
 
         Feature labelFeature = predictionType.getFeatureByBaseName("label");
 
-        for (KBHandle prediction : handles.stream().limit(recommender.getMaxRecommendations())
-            .collect(Collectors.toList())) {
+        for (KBHandle prediction : handles) {
             AnnotationFS annotation = aCas.createAnnotation(predictionType, aBegin, aEnd);
             annotation.setStringValue(labelFeature, prediction.getIdentifier());
             aCas.addFsToIndexes(annotation);
         }
     }
 
-    private List<KBHandle> readCandidates(KnowledgeBase kb, String aCoveredText, int aBegin,
-            CAS aCas)
+    /**
+     * Generates the candidates for a normalized surface form from all knowledge bases. The result
+     * does not depend on the context of any particular mention.
+     */
+    private Set<KBHandle> generateCandidates(String aSurfaceForm)
     {
-        return kbService.read(kb, (conn) -> clService.disambiguate(kb, featureTraits.getScope(),
-                featureTraits.getAllowedValueType(), null, aCoveredText, aBegin, aCas));
+        Set<KBHandle> candidates = new LinkedHashSet<>();
+        for (KnowledgeBase kb : getKnowledgeBases()) {
+            candidates.addAll(clService.generateMentionCandidates(kb, featureTraits.getScope(),
+                    featureTraits.getAllowedValueType(), aSurfaceForm));
+        }
+        return unmodifiableSet(candidates);
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.conceptlinking.recommender;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+
+/**
+ * The mentions which have been found in the training documents, indexed by document and by the
+ * begin offset of the mention. The model does not hold on to any CAS or annotation. The
+ * candidates generated for the most recently used surface forms are cached for the lifetime of
+ * the model. They do not depend on the context of a particular mention, so they need to be ranked
+ * for each mention.
+ */
+public class NamedEntityLinkerModel
+{
+    private static final int MAX_CACHED_SURFACE_FORMS = 10_000;
+    
+    private final Map<String, Map<Integer, String>> documents;
+    private final LoadingCache<String, Set<KBHandle>> candidates;
+
+    /**
+     * @param aDocuments
+     *            the surface forms of the mentions per document indexed by their begin offset.
+     * @param aCandidateGenerator
+     *            looks up the candidates for a normalized surface form which is not cached.
+     */
+    public NamedEntityLinkerModel(Map<String, Map<Integer, String>> aDocuments,
+            Function<String, Set<KBHandle>> aCandidateGenerator)
+    {
+        documents = unmodifiableMap(new HashMap<>(aDocuments));
+        candidates = Caffeine.newBuilder()
+                .maximumSize(MAX_CACHED_SURFACE_FORMS)
+                .build(aCandidateGenerator::apply);
+    }
+
+    /**
+     * @param aDocumentUri
+     *            the document URI.
+     * @return the surface forms of the mentions in the given document indexed by their begin
+     *         offset. If the document was not part of the training data, the result is empty.
+     */
+    public Map<Integer, String> getMentions(String aDocumentUri)
+    {
+        return documents.getOrDefault(aDocumentUri, emptyMap());
+    }
+
+    /**
+     * @param aSurfaceForm
+     *            the normalized surface form of a mention.
+     * @return the unranked candidates for the surface form.
+     */
+    public Set<KBHandle> getCandidates(String aSurfaceForm)
+    {
+        return candidates.get(aSurfaceForm);
+    }
+}
@@ -38,6 +38,9 @@ public interface ConceptLinkingService
      * returned by full-text matching, which are filtered first. To not possible lose any of the
      * candidates from the exact matching results, the latter are added to the ranking afterwards
      * and given top priority.
+     * 
+     * This method is meant for linking mentions in the background, e.g. by a recommender. Its
+     * queries run on a separate set of threads so they do not hold up interactive requests.
      *
      * @param aKB
      *            the KB used to generate candidates.
@@ -55,6 +58,21 @@ public interface ConceptLinkingService
             ConceptFeatureValueType aValueType, String aTypedString, String aMention,
             int aMentionBeginOffset, CAS aCas);
 
+    /**
+     * Generates the candidates for a mention without ranking them. The candidates do not depend
+     * on the context of the mention, so they can be generated once for a surface form and then
+     * be ranked for each of its occurrences using {@link #rankCandidates}. Like
+     * {@link #disambiguate}, this method is meant for linking mentions in the background.
+     *
+     * @param aKB
+     *            the KB used to generate candidates.
+     * @param aMention
+     *            the surface form of the mention.
+     * @return the unranked candidates.
+     */
+    Set<KBHandle> generateMentionCandidates(KnowledgeBase aKB, String aConceptScope,
+            ConceptFeatureValueType aValueType, String aMention);
+
     /**
      * Get all linking instances within the scope of a given knowledge base. If null is passed for
      * aRepositoryId, all enabled knowledge bases in the project are considered. If the given
@@ -76,9 +94,31 @@ public interface ConceptLinkingService
      *            the project where the knowledge bases are configured
      * @return all linking instances within the scope
      */
+    default List<KBHandle> getLinkingInstancesInKBScope(String aRepositoryId,
+            String aConceptScope, ConceptFeatureValueType aValueType, String aTypedString,
+            String aMention, int aMentionBeginOffset, CAS aCas, Project aProject)
+    {
+        return getLinkingInstancesInKBScope(aRepositoryId, aConceptScope, aValueType,
+                aTypedString, aMention, aMentionBeginOffset, aCas, aProject, null);
+    }
+
+    /**
+     * Get all linking instances within the scope of a given knowledge base. The knowledge bases
+     * are queried concurrently. Queries which do not complete in time are abandoned.
+     *
+     * @param aSessionId
+     *            identifies the interactive session the request originates from, e.g. the user
+     *            typing into a particular auto-complete field. The ID should therefore include
+     *            the component and not only the HTTP session. If a new request is made for the
+     *            same session, queries still running for the previous request are cancelled.
+     *            Might be null.
+     * @see #getLinkingInstancesInKBScope(String, String, ConceptFeatureValueType, String,
+     *      String, int, CAS, Project)
+     */
     List<KBHandle> getLinkingInstancesInKBScope(String aRepositoryId, String aConceptScope,
             ConceptFeatureValueType aValueType, String aTypedString,
-            String aMention, int aMentionBeginOffset, CAS aCas, Project aProject);
+            String aMention, int aMentionBeginOffset, CAS aCas, Project aProject,
+            String aSessionId);
 
     /**
      * Finds entities in a knowledge base according to a typed string using full text search.
@@ -26,25 +26,42 @@ import static java.lang.System.currentTimeMillis;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.Validate;
-import org.apache.commons.lang3.builder.CompareToBuilder;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.text.AnnotationFS;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -54,6 +71,9 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.inception.conceptlinking.config.EntityLinkingProperties;
 import de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity;
@@ -61,15 +81,18 @@ import de.tudarmstadt.ukp.inception.conceptlinking.service.feature.EntityRanking
 import de.tudarmstadt.ukp.inception.conceptlinking.util.FileUtils;
 import de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType;
 import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService;
+import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService.ReadAction;
 import de.tudarmstadt.ukp.inception.kb.RepositoryType;
 import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+import de.tudarmstadt.ukp.inception.kb.labelindex.LabelIndex;
 import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
 import de.tudarmstadt.ukp.inception.kb.querybuilder.SPARQLQueryBuilder;
 import de.tudarmstadt.ukp.inception.kb.querybuilder.SPARQLQueryPrimaryConditions;
+import de.tudarmstadt.ukp.inception.kb.remote.TimeLimitedRepositoryConnection;
 
 @Component
 public class ConceptLinkingServiceImpl
-    implements InitializingBean, ConceptLinkingService
+    implements InitializingBean, DisposableBean, ConceptLinkingService
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -83,6 +106,11 @@ public class ConceptLinkingServiceImpl
     private final List<EntityRankingFeatureGenerator> featureGeneratorsProxy;
     private List<EntityRankingFeatureGenerator> featureGenerators;
 
+    private final ExecutorService candidateQueryExecutor;
+    private final ExecutorService recommenderQueryExecutor;
+    private final Map<String, CandidateQueryBatch> runningQueries = new ConcurrentHashMap<>();
+    private final Cache<String, SessionCandidates> sessionCandidates;
+
     @Autowired
     public ConceptLinkingServiceImpl(KnowledgeBaseService aKbService,
             EntityLinkingProperties aProperties,
@@ -95,6 +123,18 @@ public class ConceptLinkingServiceImpl
         kbService = aKbService;
         properties = aProperties;
         featureGeneratorsProxy = aFeatureGenerators;
+        
+        // Recommenders link many mentions in one go - they get their own threads so that they
+        // cannot starve the interactive queries
+        candidateQueryExecutor = newQueryExecutor("candidate-query-%d",
+                properties.getCandidateQueryThreads());
+        recommenderQueryExecutor = newQueryExecutor("recommender-candidate-query-%d",
+                properties.getRecommenderQueryThreads());
+        
+        sessionCandidates = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheSize())
+                .expireAfterWrite(properties.getSessionCandidateTimeout(), MILLISECONDS)
+                .build();
     }
 
     @Override
@@ -108,6 +148,27 @@ public class ConceptLinkingServiceImpl
         }
     }
     
+    private ExecutorService newQueryExecutor(String aNamingPattern, int aThreads)
+    {
+        // The queue is bounded - if the knowledge bases cannot keep up, further queries are
+        // rejected instead of piling up
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(aThreads, aThreads, 60, SECONDS,
+                new ArrayBlockingQueue<>(properties.getCandidateQueryQueueSize()),
+                new BasicThreadFactory.Builder()
+                        .namingPattern(aNamingPattern)
+                        .daemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    @Override
+    public void destroy() throws Exception
+    {
+        candidateQueryExecutor.shutdownNow();
+        recommenderQueryExecutor.shutdownNow();
+    }
+    
     @EventListener
     public void onContextRefreshedEvent(ContextRefreshedEvent aEvent)
     {
@@ -149,6 +210,57 @@ public class ConceptLinkingServiceImpl
     public Set<KBHandle> generateCandidates(KnowledgeBase aKB, String aConceptScope,
             ConceptFeatureValueType aValueType, String aQuery, String aMention)
     {
+        return generateCandidates(aKB, aConceptScope, aValueType, aQuery, aMention,
+                candidateQueryExecutor);
+    }
+    
+    private Set<KBHandle> generateCandidates(KnowledgeBase aKB, String aConceptScope,
+            ConceptFeatureValueType aValueType, String aQuery, String aMention,
+            ExecutorService aExecutor)
+    {
+        long startTime = currentTimeMillis();
+        long deadline = startTime + properties.getCandidateQueryTimeout();
+        
+        Set<KBHandle> result = runCandidateQueries(
+                candidateQueries(aKB, aConceptScope, aValueType, aQuery, aMention, deadline),
+                deadline, aExecutor, null).getCandidates();
+
+        log.debug("Generated [{}] candidates in {}ms", result.size(),
+                currentTimeMillis() - startTime);
+
+        return result;
+    }
+    
+    /**
+     * Prepares the queries generating the candidates from the given KB. The queries are
+     * independent of each other, so they can be run concurrently.
+     * 
+     * @param aDeadline
+     *            the time by which the queries must have completed. The knowledge bases are told
+     *            to give up on queries running past it.
+     */
+    private List<CandidateQuery> candidateQueries(KnowledgeBase aKB, String aConceptScope,
+            ConceptFeatureValueType aValueType, String aQuery, String aMention, long aDeadline)
+    {
+        List<CandidateQuery> queries = new ArrayList<>();
+        
+        // The label index does not know about the class hierarchy, so we can only use it if there
+        // is no concept scope.
+        Optional<LabelIndex> labelIndex = aConceptScope == null ? kbService.getLabelIndex(aKB)
+                : Optional.empty();
+        if (labelIndex.isPresent()) {
+            // The fuzzy matches of a longer query are not necessarily a subset of those of the
+            // shorter query, so the results cannot be narrowed down locally
+            queries.add(new CandidateQuery(() -> {
+                Set<KBHandle> result = new HashSet<>();
+                generateCandidatesFromIndex(labelIndex.get(), aKB, aValueType, aQuery, aMention,
+                        result);
+                log.debug("Found [{}] candidates in label index", result.size());
+                return new CandidateQueryResult(result, false);
+            }, false));
+            return queries;
+        }
+        
         // If the query of the user is smaller or equal to this threshold, then we only use it for
         // exact matching. If it is longer, we look for concepts which start with or which contain
         // the users input. This is meant as a performance optimization for large KBs where we 
@@ -157,19 +269,16 @@ public class ConceptLinkingServiceImpl
         // letter.
         final int threshold = RepositoryType.LOCAL.equals(aKB.getType()) ? 0 : 3;
         
-        long startTime = currentTimeMillis();
-        Set<KBHandle> result = new HashSet<>();
-        
-        try (RepositoryConnection conn = kbService.getConnection(aKB)) {
-            // Collect exact matches - although exact matches are theoretically contained in the
-            // set of containing matches, due to the ranking performed by the KB/FTS, we might
-            // not actually see the exact matches within the first N results. So we query for
-            // the exact matches separately to ensure we have them.
-            String[] exactLabels = asList(
-                    (aQuery != null && aQuery.length() <= threshold) ? aQuery : null, aMention)
-                    .stream()
-                    .filter(Objects::nonNull)
-                    .toArray(String[]::new);
+        // Collect exact matches - although exact matches are theoretically contained in the
+        // set of containing matches, due to the ranking performed by the KB/FTS, we might
+        // not actually see the exact matches within the first N results. So we query for
+        // the exact matches separately to ensure we have them.
+        String[] exactLabels = asList(
+                (aQuery != null && aQuery.length() <= threshold) ? aQuery : null, aMention)
+                .stream()
+                .filter(Objects::nonNull)
+                .toArray(String[]::new);
+        queries.add(new CandidateQuery(() -> kbService.read(aKB, withDeadline(aDeadline, conn -> {
             SPARQLQueryPrimaryConditions exactBuilder = newQueryBuilder(aValueType, aKB)
                     .withLabelMatchingExactlyAnyOf(exactLabels);
             
@@ -184,14 +293,18 @@ public class ConceptLinkingServiceImpl
 
             log.debug("Found [{}] candidates exactly matching {}",
                     exactMatches.size(), asList(exactLabels));
+            
+            return new CandidateQueryResult(new HashSet<>(exactMatches),
+                    !exactBuilder.isResultTruncated());
+        })), aQuery == null || aQuery.length() > threshold));
 
-            result.addAll(exactMatches);
-
-            if (aQuery != null && aQuery.length() > threshold) {
-                // Collect matches starting with the query - this is the main driver for the
-                // auto-complete functionality
-                SPARQLQueryPrimaryConditions startingWithBuilder = newQueryBuilder(aValueType, aKB)
-                        .withLabelStartingWith(aQuery);
+        if (aQuery != null && aQuery.length() > threshold) {
+            // Collect matches starting with the query - this is the main driver for the
+            // auto-complete functionality
+            queries.add(new CandidateQuery(() -> kbService.read(aKB,
+                    withDeadline(aDeadline, conn -> {
+                SPARQLQueryPrimaryConditions startingWithBuilder = newQueryBuilder(aValueType,
+                        aKB).withLabelStartingWith(aQuery);
                 
                 if (aConceptScope != null) {
                     startingWithBuilder.childrenOf(aConceptScope);
@@ -203,18 +316,20 @@ public class ConceptLinkingServiceImpl
                         .asHandles(conn, true);
                 
                 log.debug("Found [{}] candidates starting with [{}]]",
-                        startingWithMatches.size(), aQuery);            
+                        startingWithMatches.size(), aQuery);
                 
-                result.addAll(startingWithMatches);
-            }
-            
-            
-            // Collect containing matches
-            String[] containingLabels = asList(
-                    (aQuery != null && aQuery.length() > threshold) ? aQuery : null, aMention)
-                    .stream()
-                    .filter(Objects::nonNull)
-                    .toArray(String[]::new);
+                return new CandidateQueryResult(new HashSet<>(startingWithMatches),
+                        !startingWithBuilder.isResultTruncated());
+            })), true));
+        }
+        
+        // Collect containing matches
+        String[] containingLabels = asList(
+                (aQuery != null && aQuery.length() > threshold) ? aQuery : null, aMention)
+                .stream()
+                .filter(Objects::nonNull)
+                .toArray(String[]::new);
+        queries.add(new CandidateQuery(() -> kbService.read(aKB, withDeadline(aDeadline, conn -> {
             SPARQLQueryPrimaryConditions containingBuilder = newQueryBuilder(aValueType, aKB)
                     .withLabelContainingAnyOf(containingLabels);
             
@@ -230,13 +345,151 @@ public class ConceptLinkingServiceImpl
             log.debug("Found [{}] candidates using containing {}",
                     containingMatches.size(), asList(containingLabels));
             
-            result.addAll(containingMatches);
-        }
-
-        log.debug("Generated [{}] candidates in {}ms", result.size(),
-                currentTimeMillis() - startTime);
+            return new CandidateQueryResult(new HashSet<>(containingMatches),
+                    !containingBuilder.isResultTruncated());
+        })), aQuery == null || aQuery.length() > threshold));
+        
+        return queries;
+    }
+    
+    /**
+     * Cancelling a candidate query does not stop it from blocking on the knowledge base, so the
+     * queries run by the given action are limited to the time remaining until the deadline. If
+     * the deadline has already passed, nothing is queried at all.
+     */
+    private static ReadAction<CandidateQueryResult> withDeadline(long aDeadline,
+            ReadAction<CandidateQueryResult> aAction)
+    {
+        return conn -> {
+            long remaining = aDeadline - currentTimeMillis();
+            if (remaining <= 0) {
+                return new CandidateQueryResult(emptySet(), false);
+            }
+            
+            // The execution time is specified in whole seconds - round up to not give up early
+            int maxExecutionTime = (int) MILLISECONDS.toSeconds(remaining + 999);
+            return aAction.accept(new TimeLimitedRepositoryConnection(conn, maxExecutionTime));
+        };
+    }
 
-        return result;
+    /**
+     * Runs the given candidate queries concurrently and merges their results. Queries which do
+     * not complete within the configured time are cancelled and their results are ignored.
+     * 
+     * @param aDeadline
+     *            the time by which the queries must have completed.
+     * @param aExecutor
+     *            the executor to run the queries on.
+     * @param aSessionId
+     *            if not {@code null}, queries still running for a previous request with the same
+     *            session ID are cancelled as their results are no longer needed.
+     */
+    private CandidateQueryResult runCandidateQueries(List<CandidateQuery> aQueries,
+            long aDeadline, ExecutorService aExecutor, String aSessionId)
+    {
+        // Register the request before submitting the queries, so a newer request of the same
+        // session can always cancel them
+        CandidateQueryBatch batch = new CandidateQueryBatch(aExecutor);
+        if (aSessionId != null) {
+            CandidateQueryBatch supersededBatch = runningQueries.put(aSessionId, batch);
+            if (supersededBatch != null) {
+                supersededBatch.cancel();
+            }
+        }
+        
+        for (CandidateQuery query : aQueries) {
+            batch.submit(query.getQuery());
+        }
+        
+        List<Future<CandidateQueryResult>> futures = batch.getFutures();
+        // If several queries return the same candidate, the labels through which it matched are
+        // merged
+        Map<KBHandle, KBHandle> result = new HashMap<>();
+        // The result is complete if every query ran to its end without hitting its limit. Note
+        // that a query may hit its limit while returning fewer candidates than the limit since
+        // several rows returned by the knowledge base can be reduced to a single candidate.
+        boolean complete = futures.size() == aQueries.size();
+        Throwable failure = null;
+        int failureCount = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<CandidateQueryResult> future = futures.get(i);
+                complete &= aQueries.get(i).isNarrowable();
+                try {
+                    long remaining = Math.max(0, aDeadline - currentTimeMillis());
+                    CandidateQueryResult queryResult = future.get(remaining, MILLISECONDS);
+                    complete &= queryResult.isComplete();
+                    for (KBHandle handle : queryResult.getCandidates()) {
+                        result.merge(handle, handle, (existing, other) -> {
+                            existing.addMatchTerms(other.getMatchTerms());
+                            return existing;
+                        });
+                    }
+                }
+                catch (TimeoutException e) {
+                    complete = false;
+                    future.cancel(true);
+                    log.warn("Candidate query did not complete within [{}] ms - ignoring it",
+                            properties.getCandidateQueryTimeout());
+                }
+                catch (CancellationException e) {
+                    complete = false;
+                    log.debug("Candidate query was superseded by a newer request");
+                }
+                catch (ExecutionException e) {
+                    complete = false;
+                    failureCount++;
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    log.warn("Candidate query failed - ignoring it", e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            complete = false;
+            batch.cancel();
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            if (aSessionId != null) {
+                runningQueries.remove(aSessionId, batch);
+            }
+        }
+        
+        // Only report an error if there is nothing we could return
+        if (failure != null && failureCount == futures.size()) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new IllegalStateException("Unable to generate candidates", failure);
+        }
+        
+        return new CandidateQueryResult(new HashSet<>(result.values()), complete);
+    }
+    
+    private void generateCandidatesFromIndex(LabelIndex aIndex, KnowledgeBase aKB,
+            ConceptFeatureValueType aValueType, String aQuery, String aMention,
+            Set<KBHandle> aResult)
+    {
+        int limit = aKB.getMaxResults();
+        
+        for (String label : asList(aQuery, aMention)) {
+            if (label == null) {
+                continue;
+            }
+            
+            aResult.addAll(aIndex.matchingExactly(label, aValueType, limit));
+            aResult.addAll(aIndex.startingWith(label, aValueType, limit));
+            
+            // Allow for typos in longer inputs - short inputs would match almost anything
+            int maxDistance = Math.min(properties.getFuzzyMatchMaxDistance(),
+                    label.length() / 4);
+            if (maxDistance > 0) {
+                aResult.addAll(aIndex.startingWithApproximately(label, maxDistance, aValueType,
+                        limit));
+            }
+        }
     }
     
     @Override
@@ -245,10 +498,18 @@ public class ConceptLinkingServiceImpl
             int aMentionBeginOffset, CAS aCas)
     {
         Set<KBHandle> candidates = generateCandidates(aKB, aConceptScope, aValueType, aQuery,
-                aMention);
+                aMention, recommenderQueryExecutor);
         return rankCandidates(aQuery, aMention, candidates, aCas, aMentionBeginOffset);
     }
 
+    @Override
+    public Set<KBHandle> generateMentionCandidates(KnowledgeBase aKB, String aConceptScope,
+            ConceptFeatureValueType aValueType, String aMention)
+    {
+        return generateCandidates(aKB, aConceptScope, aValueType, null, aMention,
+                recommenderQueryExecutor);
+    }
+
     private CandidateEntity initCandidate(CandidateEntity candidate, String aQuery, String aMention,
             CAS aCas, int aBegin)
     {
@@ -284,53 +545,30 @@ public class ConceptLinkingServiceImpl
         return candidate;
     }
     
-    private Comparator<CandidateEntity> baseLineRankingStrategy()
-    {
-        return (e1, e2) -> new CompareToBuilder()
-                // The edit distance between query and label is given high importance
-                // Comparing simultaneously against the edit distance to the query and to the 
-                // mention causes items similar to either to be ranked up
-                .append(Math.min(e1.getLevQuery(), e1.getLevMention()),
-                        Math.min(e2.getLevQuery(), e2.getLevMention()))
-                // A high signature overlap score is preferred.
-                .append(e2.getSignatureOverlapScore(), e1.getSignatureOverlapScore())
-                // A low edit distance is preferred.
-                .append(e1.getLevContext(), e2.getLevContext())
-                // A high entity frequency is preferred.
-                .append(e2.getFrequency(), e1.getFrequency())
-                // A high number of related relations is preferred.
-                .append(e2.getNumRelatedRelations(), e1.getNumRelatedRelations())
-                // A low wikidata ID rank is preferred.
-                .append(e1.getIdRank(), e2.getIdRank())
-                // Finally order alphabetically
-                .append(e1.getLabel().toLowerCase(e1.getLocale()), 
-                        e2.getLabel().toLowerCase(e2.getLocale()))
-                .toComparison();
-    }
-    
     @Override
     public List<KBHandle> rankCandidates(String aQuery, String aMention, Set<KBHandle> aCandidates,
             CAS aCas, int aBegin)
     {
         long startTime = currentTimeMillis();
         
-        // Set the feature values
-        List<CandidateEntity> candidates = aCandidates.parallelStream()
+        // Set the feature values and extract the ranking features in the same pass
+        List<RankedCandidate> candidates = aCandidates.parallelStream()
                 .map(CandidateEntity::new)
                 .map(candidate -> initCandidate(candidate, aQuery, aMention, aCas, aBegin))
                 .map(candidate -> {
                     for (EntityRankingFeatureGenerator generator : featureGenerators) {
                         generator.apply(candidate);
                     }
-                    return candidate;
+                    return new RankedCandidate(candidate);
                 })
                 .collect(Collectors.toCollection(ArrayList::new));
         
         // Do the main ranking
         // Sort candidates by multiple keys.
-        candidates.sort(baseLineRankingStrategy());
+        candidates.sort(RankedCandidate.BASELINE_RANKING);
 
         List<KBHandle> results = candidates.stream()
+                .map(RankedCandidate::getCandidate)
                 .map(candidate -> {
                     KBHandle handle = candidate.getHandle();
                     handle.setDebugInfo(String.valueOf(candidate.getFeatures()));
@@ -348,11 +586,29 @@ public class ConceptLinkingServiceImpl
     @Override
     public List<KBHandle> getLinkingInstancesInKBScope(String aRepositoryId, String aConceptScope,
             ConceptFeatureValueType aValueType, String aQuery, String aMention,
-            int aMentionBeginOffset, CAS aCas, Project aProject)
+            int aMentionBeginOffset, CAS aCas, Project aProject, String aSessionId)
     {
         // Sanitize query by removing typical wildcard characters
         String query = aQuery.replaceAll("[*?]", "").trim();
         
+        // If the user just continued typing, the candidates for the new query are a subset of
+        // the candidates retrieved for the previous query - if these were retrieved completely,
+        // we do not need to go back to the knowledge bases.
+        SessionCandidates previous = aSessionId != null
+                ? sessionCandidates.getIfPresent(aSessionId) : null;
+        if (previous != null && previous.isNarrowableTo(aRepositoryId, aConceptScope, aValueType,
+                query, aMention, aProject)) {
+            SessionCandidates narrowed = previous.narrowTo(query);
+            sessionCandidates.put(aSessionId, narrowed);
+            
+            log.debug("Narrowed [{}] candidates for query [{}] down to [{}] for query [{}]",
+                    previous.getCandidates().size(), previous.getQuery(),
+                    narrowed.getCandidates().size(), query);
+            
+            return rankCandidates(query, aMention, narrowed.getCandidates(), aCas,
+                    aMentionBeginOffset);
+        }
+        
         // Determine which knowledge bases to query
         List<KnowledgeBase> knowledgeBases = new ArrayList<>();
         if (aRepositoryId != null) {
@@ -363,13 +619,37 @@ public class ConceptLinkingServiceImpl
             knowledgeBases.addAll(kbService.getEnabledKnowledgeBases(aProject));
         }
         
-        // Query the knowledge bases for candidates
-        Set<KBHandle> candidates = new HashSet<>();
+        // Query the knowledge bases for candidates - all knowledge bases are queried at the
+        // same time
+        long startTime = currentTimeMillis();
+        long deadline = startTime + properties.getCandidateQueryTimeout();
+        List<CandidateQuery> queries = new ArrayList<>();
         for (KnowledgeBase kb : knowledgeBases) {
-            candidates.addAll(
-                    generateCandidates(kb, aConceptScope, aValueType, query, aMention));
+            queries.addAll(candidateQueries(kb, aConceptScope, aValueType, query, aMention,
+                    deadline));
+        }
+        CandidateQueryResult result = runCandidateQueries(queries, deadline,
+                candidateQueryExecutor, aSessionId);
+        Set<KBHandle> candidates = result.getCandidates();
+        
+        // Remember the candidates for the next keystroke - but only if they can be narrowed
+        // down locally, otherwise we would have to query the knowledge bases anyway. This
+        // requires knowing through which labels the candidates matched.
+        if (aSessionId != null) {
+            if (result.isComplete() && !query.isEmpty() && candidates.stream()
+                    .noneMatch(candidate -> candidate.getMatchTerms().isEmpty())) {
+                sessionCandidates.put(aSessionId, new SessionCandidates(aRepositoryId,
+                        aConceptScope, aValueType, query, aMention, aProject.getId(),
+                        candidates));
+            }
+            else {
+                sessionCandidates.invalidate(aSessionId);
+            }
         }
         
+        log.debug("Generated [{}] candidates from [{}] knowledge bases in {}ms",
+                candidates.size(), knowledgeBases.size(), currentTimeMillis() - startTime);
+        
         // Rank the candidates and return them
         return rankCandidates(query, aMention, candidates, aCas, aMentionBeginOffset);
     }
@@ -380,6 +660,185 @@ public class ConceptLinkingServiceImpl
     @Override
     public List<KBHandle> searchItems(KnowledgeBase aKB, String aQuery)
     {
-        return disambiguate(aKB, null, ConceptFeatureValueType.ANY_OBJECT, aQuery, null, 0, null);
+        Set<KBHandle> candidates = generateCandidates(aKB, null,
+                ConceptFeatureValueType.ANY_OBJECT, aQuery, null, candidateQueryExecutor);
+        return rankCandidates(aQuery, null, candidates, null, 0);
+    }
+    
+    /**
+     * A query generating candidates from a single knowledge base.
+     */
+    private static class CandidateQuery
+    {
+        private final Callable<CandidateQueryResult> query;
+        private final boolean narrowable;
+        
+        /**
+         * @param aQuery
+         *            the query - its result is complete if the query did not hit its limit.
+         * @param aNarrowable
+         *            whether the candidates for a query extending the current query are a subset
+         *            of the candidates returned by this query.
+         */
+        CandidateQuery(Callable<CandidateQueryResult> aQuery, boolean aNarrowable)
+        {
+            query = aQuery;
+            narrowable = aNarrowable;
+        }
+        
+        Callable<CandidateQueryResult> getQuery()
+        {
+            return query;
+        }
+        
+        boolean isNarrowable()
+        {
+            return narrowable;
+        }
+    }
+    
+    /**
+     * The candidates returned by one or more candidate queries.
+     */
+    static class CandidateQueryResult
+    {
+        private final Set<KBHandle> candidates;
+        private final boolean complete;
+        
+        CandidateQueryResult(Set<KBHandle> aCandidates, boolean aComplete)
+        {
+            candidates = aCandidates;
+            complete = aComplete;
+        }
+        
+        Set<KBHandle> getCandidates()
+        {
+            return candidates;
+        }
+        
+        /**
+         * @return whether all candidates for any refinement of the query are contained in the
+         *         result.
+         */
+        boolean isComplete()
+        {
+            return complete;
+        }
+    }
+    
+    /**
+     * The complete set of candidates retrieved for the last query of a session.
+     */
+    private static class SessionCandidates
+    {
+        private final String repositoryId;
+        private final String conceptScope;
+        private final ConceptFeatureValueType valueType;
+        private final String query;
+        private final String mention;
+        private final Long projectId;
+        private final Set<KBHandle> candidates;
+        
+        SessionCandidates(String aRepositoryId, String aConceptScope,
+                ConceptFeatureValueType aValueType, String aQuery, String aMention,
+                Long aProjectId, Set<KBHandle> aCandidates)
+        {
+            repositoryId = aRepositoryId;
+            conceptScope = aConceptScope;
+            valueType = aValueType;
+            query = aQuery;
+            mention = aMention;
+            projectId = aProjectId;
+            candidates = aCandidates;
+        }
+        
+        String getQuery()
+        {
+            return query;
+        }
+        
+        Set<KBHandle> getCandidates()
+        {
+            return candidates;
+        }
+        
+        boolean isNarrowableTo(String aRepositoryId, String aConceptScope,
+                ConceptFeatureValueType aValueType, String aQuery, String aMention,
+                Project aProject)
+        {
+            return Objects.equals(repositoryId, aRepositoryId)
+                    && Objects.equals(conceptScope, aConceptScope)
+                    && valueType == aValueType
+                    && Objects.equals(mention, aMention)
+                    && Objects.equals(projectId, aProject.getId())
+                    && aQuery.toLowerCase(Locale.ROOT).startsWith(query.toLowerCase(Locale.ROOT));
+        }
+        
+        /**
+         * Keeps only the candidates which would also have been retrieved for the given query,
+         * i.e. those matching the query or the mention. Like the knowledge base queries, this
+         * considers all the labels through which a candidate matched - not only the label which
+         * is displayed. Since the given query extends the previous query, any label matching it
+         * is among these.
+         */
+        SessionCandidates narrowTo(String aQuery)
+        {
+            String normalizedQuery = aQuery.toLowerCase(Locale.ROOT);
+            String normalizedMention = mention != null ? mention.toLowerCase(Locale.ROOT) : null;
+            
+            Set<KBHandle> narrowed = candidates.stream()
+                    .filter(handle -> handle.getMatchTerms().stream()
+                            .map(term -> term.toLowerCase(Locale.ROOT))
+                            .anyMatch(term -> term.contains(normalizedQuery)
+                                    || (normalizedMention != null
+                                            && term.contains(normalizedMention))))
+                    .collect(Collectors.toSet());
+            
+            return new SessionCandidates(repositoryId, conceptScope, valueType, aQuery, mention,
+                    projectId, narrowed);
+        }
+    }
+    
+    /**
+     * The candidate queries submitted for a single request.
+     */
+    private class CandidateQueryBatch
+    {
+        private final ExecutorService executor;
+        private final List<Future<CandidateQueryResult>> futures = new ArrayList<>();
+        private boolean cancelled = false;
+        
+        CandidateQueryBatch(ExecutorService aExecutor)
+        {
+            executor = aExecutor;
+        }
+        
+        synchronized void submit(Callable<CandidateQueryResult> aQuery)
+        {
+            if (cancelled) {
+                return;
+            }
+            
+            try {
+                futures.add(executor.submit(aQuery));
+            }
+            catch (RejectedExecutionException e) {
+                // Keep the futures aligned with the queries - the rejected query counts as failed
+                CompletableFuture<CandidateQueryResult> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(e);
+                futures.add(rejected);
+            }
+        }
+        
+        synchronized void cancel()
+        {
+            cancelled = true;
+            futures.forEach(future -> future.cancel(true));
+        }
+        
+        synchronized List<Future<CandidateQueryResult>> getFutures()
+        {
+            return new ArrayList<>(futures);
+        }
     }
 }
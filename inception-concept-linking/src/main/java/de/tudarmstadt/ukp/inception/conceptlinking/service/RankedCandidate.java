@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.conceptlinking.service;
+
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_FREQUENCY;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_ID_RANK;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_LEVENSHTEIN_MENTION;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_LEVENSHTEIN_MENTION_CONTEXT;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_LEVENSHTEIN_QUERY;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_NUM_RELATIONS;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_SIGNATURE_OVERLAP_SCORE;
+
+import java.util.Comparator;
+
+import de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity;
+
+/**
+ * A candidate together with the features used for ranking it. The features are read from the
+ * candidate once and stored in a fixed layout, so sorting does not need to look up or unbox any
+ * feature values.
+ */
+final class RankedCandidate
+{
+    /**
+     * The baseline ranking strategy - candidates with a lower rank vector are ranked first.
+     */
+    static final Comparator<RankedCandidate> BASELINE_RANKING = RankedCandidate::compare;
+    
+    // The positions of the features in the rank vector in the order of their importance. Features
+    // where a higher value is preferred are stored negated.
+    
+    /**
+     * The edit distance between query and label is given high importance. Comparing
+     * simultaneously against the edit distance to the query and to the mention causes items
+     * similar to either to be ranked up.
+     */
+    private static final int LEV_QUERY_OR_MENTION = 0;
+    /** A high signature overlap score is preferred. */
+    private static final int SIGNATURE_OVERLAP_SCORE = 1;
+    /** A low edit distance is preferred. */
+    private static final int LEV_CONTEXT = 2;
+    /** A high entity frequency is preferred. */
+    private static final int FREQUENCY = 3;
+    /** A high number of related relations is preferred. */
+    private static final int NUM_RELATIONS = 4;
+    /** A low wikidata ID rank is preferred. */
+    private static final int ID_RANK = 5;
+    
+    private static final int RANK_VECTOR_SIZE = 6;
+    
+    private final CandidateEntity candidate;
+    private final double[] rankVector;
+    /** Finally order alphabetically. */
+    private final String sortLabel;
+    
+    RankedCandidate(CandidateEntity aCandidate)
+    {
+        candidate = aCandidate;
+        
+        // All values are integers in the int range or already doubles, so they are represented
+        // exactly
+        rankVector = new double[RANK_VECTOR_SIZE];
+        rankVector[LEV_QUERY_OR_MENTION] = Math.min(aCandidate.get(KEY_LEVENSHTEIN_QUERY).get(),
+                aCandidate.get(KEY_LEVENSHTEIN_MENTION).get());
+        rankVector[SIGNATURE_OVERLAP_SCORE] = -aCandidate.get(KEY_SIGNATURE_OVERLAP_SCORE).get();
+        rankVector[LEV_CONTEXT] = aCandidate.get(KEY_LEVENSHTEIN_MENTION_CONTEXT).get();
+        rankVector[FREQUENCY] = -aCandidate.get(KEY_FREQUENCY).get();
+        rankVector[NUM_RELATIONS] = -aCandidate.get(KEY_NUM_RELATIONS).get();
+        rankVector[ID_RANK] = aCandidate.get(KEY_ID_RANK).get();
+        
+        sortLabel = aCandidate.getLabel().toLowerCase(aCandidate.getLocale());
+    }
+    
+    CandidateEntity getCandidate()
+    {
+        return candidate;
+    }
+    
+    private static int compare(RankedCandidate aOne, RankedCandidate aOther)
+    {
+        double[] one = aOne.rankVector;
+        double[] other = aOther.rankVector;
+        for (int i = 0; i < RANK_VECTOR_SIZE; i++) {
+            int result = Double.compare(one[i], other[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return aOne.sortLabel.compareTo(aOther.sortLabel);
+    }
+}
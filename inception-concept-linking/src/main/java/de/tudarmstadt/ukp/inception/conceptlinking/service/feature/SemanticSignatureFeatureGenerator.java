@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
@@ -101,9 +102,20 @@ public class SemanticSignatureFeatureGenerator
         kbService = aKbService;
         properties = aProperties;
 
-        semanticSignatureCache = Caffeine.newBuilder()
-                .maximumSize(properties.getCacheSize())
-                .build(key -> loadSemanticSignature(key));
+        Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
+        if (properties.getSignatureCacheMaxWeight() > 0) {
+            // Signatures of popular entities are much larger than those of rare entities, so
+            // limiting the cache by weight makes better use of the available memory
+            cacheBuilder
+                    .maximumWeight(properties.getSignatureCacheMaxWeight())
+                    .weigher((SemanticSignatureCacheKey key, SemanticSignature sig) -> 
+                            1 + sig.getRelatedEntities().size() 
+                            + sig.getRelatedRelations().size());
+        }
+        else {
+            cacheBuilder.maximumSize(properties.getSignatureCacheSize());
+        }
+        semanticSignatureCache = cacheBuilder.build(key -> loadSemanticSignature(key));
         
         propertyBlacklist = FileUtils.loadPropertyBlacklist(
                 new File(aRepoProperties.getPath(), "/resources/property_blacklist.txt"));
@@ -142,84 +154,115 @@ public class SemanticSignatureFeatureGenerator
     }
     
     /**
-     * Remove all cache entries of a specific project
+     * Remove the cache entries of the knowledge base whose configuration has changed. If the
+     * event does not name a specific knowledge base, the entries of all knowledge bases in the
+     * project are removed.
+     * 
      * @param aEvent
-     *            The event containing the project
+     *            The event containing the project and knowledge base
      */
     @EventListener
     public void onKnowledgeBaseConfigurationChangedEvent(
         KnowledgeBaseConfigurationChangedEvent aEvent)
     {
-        // FIXME instead of maintaining one global cache, we might maintain a cascaded cache
-        // where the top level is the project and then for each project we have sub-caches.
-        // Then we could invalidate only a specific project's cache. However, right now,
-        // we don't have that and there is no way to properly iterate over the caches and
-        // invalidate only entries belonging to a specific project. Thus, we need to
-        // invalidate all.
-        semanticSignatureCache.invalidateAll();
+        if (aEvent.getKnowledgeBase() != null) {
+            String repositoryId = aEvent.getKnowledgeBase().getRepositoryId();
+            semanticSignatureCache.asMap().keySet()
+                    .removeIf(key -> key.getRepositoryId().equals(repositoryId));
+        }
+        else if (aEvent.getProject() != null) {
+            Long projectId = aEvent.getProject().getId();
+            semanticSignatureCache.asMap().keySet()
+                    .removeIf(key -> Objects.equals(key.getProjectId(), projectId));
+        }
+        else {
+            semanticSignatureCache.invalidateAll();
+        }
     }
+    
     /**
      * Retrieves the semantic signature of an entity. See documentation of SemanticSignature class.
+     * 
+     * Since the generation of the knowledge base is part of the cache key, changes to the
+     * knowledge base implicitly invalidate the cached signatures of that knowledge base only.
+     * The stale entries are not used anymore and eventually get evicted.
      */
     private SemanticSignature getSemanticSignature(KnowledgeBase aKB, String aIri)
     {
-        return semanticSignatureCache.get(new SemanticSignatureCacheKey(aKB, aIri));
+        return semanticSignatureCache.get(
+                new SemanticSignatureCacheKey(aKB, kbService.getGeneration(aKB), aIri));
     }
 
     private SemanticSignature loadSemanticSignature(SemanticSignatureCacheKey aKey)
     {
         Set<String> relatedRelations = new HashSet<>();
         Set<String> relatedEntities = new HashSet<>();
-        try (RepositoryConnection conn = kbService.getConnection(aKey.getKnowledgeBase())) {
-            TupleQuery query = generateSemanticSignatureQuery(conn,
-                    aKey.getQuery(), properties.getSignatureQueryLimit(), aKey.getKnowledgeBase());
-            try (TupleQueryResult result = query.evaluate()) {
-                while (result.hasNext()) {
-                    BindingSet sol = result.next();
-                    String propertyString = sol.getValue("p").stringValue();
-                    String labelString = sol.getValue("label").stringValue();
-                    if (propertyWithLabels != null) {
-                        Property property = propertyWithLabels.get(labelString);
-                        int frequencyThreshold = 0;
-                        boolean isBlacklisted =
-                            (propertyBlacklist != null && propertyBlacklist.contains(propertyString)
-                            || (property != null && (typeBlacklist != null
-                                && typeBlacklist.contains(property.getType()))));
-                        boolean isUnfrequent = property != null
-                            && property.getFreq() < frequencyThreshold;
-                        if (isBlacklisted || isUnfrequent) {
-                            continue;
+        try {
+            kbService.read(aKey.getKnowledgeBase(), conn -> {
+                TupleQuery query = generateSemanticSignatureQuery(conn, aKey.getQuery(),
+                        properties.getSignatureQueryLimit(), aKey.getKnowledgeBase());
+                try (TupleQueryResult result = query.evaluate()) {
+                    while (result.hasNext()) {
+                        BindingSet sol = result.next();
+                        String propertyString = sol.getValue("p").stringValue();
+                        String labelString = sol.getValue("label").stringValue();
+                        if (propertyWithLabels != null) {
+                            Property property = propertyWithLabels.get(labelString);
+                            int frequencyThreshold = 0;
+                            boolean isBlacklisted = (propertyBlacklist != null
+                                    && propertyBlacklist.contains(propertyString)
+                                || (property != null && (typeBlacklist != null
+                                    && typeBlacklist.contains(property.getType()))));
+                            boolean isUnfrequent = property != null
+                                && property.getFreq() < frequencyThreshold;
+                            if (isBlacklisted || isUnfrequent) {
+                                continue;
+                            }
                         }
+                        relatedEntities.add(labelString);
+                        relatedRelations.add(propertyString);
                     }
-                    relatedEntities.add(labelString);
-                    relatedRelations.add(propertyString);
                 }
+                return null;
+            });
+        }
+        catch (Exception e) {
+            if (StringUtils.contains(e.getMessage(), "UTF-8 sequence")
+                    && !log.isDebugEnabled()) {
+                // This is a comparatively common message - no need to always log the entire
+                // stack trace during production, but might still be reasonable to log a
+                // warning.
+                log.warn("Could not get semantic signature: {}", e.getMessage());
             }
-            catch (Exception e) {
-                if (StringUtils.contains(e.getMessage(), "UTF-8 sequence")
-                        && !log.isDebugEnabled()) {
-                    // This is a comparatively common message - no need to always log the entire
-                    // stack trace during production, but might still be reasonable to log a
-                    // warning.
-                    log.warn("Could not get semantic signature: {}", e.getMessage());
-                }
-                else {
-                    log.error("Could not get semantic signature", e);
-                }
+            else {
+                log.error("Could not get semantic signature", e);
             }
         }
 
         return new SemanticSignature(relatedEntities, relatedRelations);
     }
 
+    /**
+     * Identifies a cached signature by the repository ID and generation of the knowledge base
+     * and the IRI of the entity. The knowledge base itself is only carried along to load the
+     * signature and is not part of the identity.
+     */
     private static class SemanticSignatureCacheKey
     {
         private final KnowledgeBase knowledgeBase;
+        private final String repositoryId;
+        private final Long projectId;
+        private final long generation;
         private final String query;
 
-        public SemanticSignatureCacheKey(KnowledgeBase aKnowledgeBase, String aQuery)
+        public SemanticSignatureCacheKey(KnowledgeBase aKnowledgeBase, long aGeneration,
+                String aQuery)
         {
             knowledgeBase = aKnowledgeBase;
+            repositoryId = aKnowledgeBase.getRepositoryId();
+            projectId = aKnowledgeBase.getProject() != null
+                    ? aKnowledgeBase.getProject().getId() : null;
+            generation = aGeneration;
             query = aQuery;
         }
 
@@ -228,6 +271,16 @@ public class SemanticSignatureFeatureGenerator
             return knowledgeBase;
         }
 
+        public String getRepositoryId()
+        {
+            return repositoryId;
+        }
+
+        public Long getProjectId()
+        {
+            return projectId;
+        }
+
         public String getQuery()
         {
             return query;
@@ -240,14 +293,16 @@ public class SemanticSignatureFeatureGenerator
                 return false;
             }
             SemanticSignatureCacheKey castOther = (SemanticSignatureCacheKey) other;
-            return new EqualsBuilder().append(knowledgeBase, castOther.knowledgeBase)
+            return new EqualsBuilder().append(repositoryId, castOther.repositoryId)
+                    .append(generation, castOther.generation)
                     .append(query, castOther.query).isEquals();
         }
 
         @Override
         public int hashCode()
         {
-            return new HashCodeBuilder().append(knowledgeBase).append(query).toHashCode();
+            return new HashCodeBuilder().append(repositoryId).append(generation).append(query)
+                    .toHashCode();
         }
     }
     
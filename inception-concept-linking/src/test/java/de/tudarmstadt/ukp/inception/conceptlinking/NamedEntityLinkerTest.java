@@ -17,13 +17,17 @@
  */
 package de.tudarmstadt.ukp.inception.conceptlinking;
 
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getDocumentUri;
 import static java.util.Arrays.asList;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
@@ -31,6 +35,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -53,10 +58,10 @@ import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.io.conll.Conll2002Reader;
 import de.tudarmstadt.ukp.dkpro.core.testing.DkproTestContext;
 import de.tudarmstadt.ukp.inception.conceptlinking.recommender.NamedEntityLinker;
+import de.tudarmstadt.ukp.inception.conceptlinking.recommender.NamedEntityLinkerModel;
 import de.tudarmstadt.ukp.inception.conceptlinking.recommender.NamedEntityLinkerTraits;
 import de.tudarmstadt.ukp.inception.conceptlinking.service.ConceptLinkingServiceImpl;
 import de.tudarmstadt.ukp.inception.kb.ConceptFeatureTraits;
-import de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType;
 import de.tudarmstadt.ukp.inception.kb.IriConstants;
 import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService;
 import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
@@ -94,6 +99,31 @@ public class NamedEntityLinkerTest
             .as("Model has been set")
             .isNotNull();
     }
+
+    @Test
+    public void thatRetrainingKeepsIndexOfUnchangedDocuments() throws Exception
+    {
+        NamedEntityLinker sut = new NamedEntityLinker(recommender, new NamedEntityLinkerTraits(),
+                mock(KnowledgeBaseService.class), mock(ConceptLinkingServiceImpl.class),
+                mock(FeatureSupportRegistry.class), new ConceptFeatureTraits());
+
+        List<CAS> casList = loadDevelopmentData();
+        String documentUri = getDocumentUri(casList.get(0));
+
+        sut.train(context, casList);
+        NamedEntityLinkerModel model = context.get(NamedEntityLinker.KEY_MODEL).get();
+        
+        sut.train(context, casList);
+        NamedEntityLinkerModel retrainedModel = context.get(NamedEntityLinker.KEY_MODEL).get();
+
+        assertThat(model.getMentions(documentUri))
+            .as("Mentions have been indexed")
+            .isNotEmpty();
+        assertThat(retrainedModel.getMentions(documentUri))
+            .as("Index of unchanged document has been kept")
+            .isSameAs(model.getMentions(documentUri));
+    }
+
     @Test
     public void thatPredictionWorks() throws Exception
     {
@@ -112,11 +142,12 @@ public class NamedEntityLinkerTest
         kb.setFullTextSearchIri(IriConstants.FTS_VIRTUOSO);
         when(kbService.getKnowledgeBaseById(any(), anyString())).thenReturn(Optional.of(kb));
         when(kbService.getEnabledKnowledgeBases(any())).thenReturn(Collections.singletonList(kb));
-        when(kbService.read(any(), any())).thenReturn(mockResult);
 
         ConceptLinkingServiceImpl clService = mock(ConceptLinkingServiceImpl.class);
-        when(clService.disambiguate(any(), anyString(), any(ConceptFeatureValueType.class),
-                anyString(), anyString(), anyInt(), any())).thenReturn(mockResult);
+        when(clService.generateMentionCandidates(any(), any(), any(), anyString()))
+                .thenReturn(new HashSet<>(mockResult));
+        when(clService.rankCandidates(any(), anyString(), any(), any(), anyInt()))
+                .thenReturn(mockResult);
 
         FeatureSupportRegistry fsRegistry = mock(FeatureSupportRegistry.class);
         FeatureSupport fs = mock(FeatureSupport.class);
@@ -138,6 +169,50 @@ public class NamedEntityLinkerTest
             .isNotEmpty();
     }
 
+    @Test
+    public void thatSurfaceFormsAreResolvedOnlyOnce() throws Exception
+    {
+        List<KBHandle> mockResult = asList(
+            new KBHandle("https://www.wikidata.org/wiki/Q76", "Barack Obama"));
+        
+        KnowledgeBaseService kbService = mock(KnowledgeBaseService.class);
+        KnowledgeBase kb = new KnowledgeBase();
+        kb.setFullTextSearchIri(IriConstants.FTS_VIRTUOSO);
+        when(kbService.getEnabledKnowledgeBases(any())).thenReturn(Collections.singletonList(kb));
+        
+        ConceptLinkingServiceImpl clService = mock(ConceptLinkingServiceImpl.class);
+        when(clService.generateMentionCandidates(any(), any(), any(), anyString()))
+                .thenReturn(new HashSet<>(mockResult));
+        when(clService.rankCandidates(any(), anyString(), any(), any(), anyInt()))
+                .thenReturn(mockResult);
+
+        FeatureSupportRegistry fsRegistry = mock(FeatureSupportRegistry.class);
+        FeatureSupport fs = mock(FeatureSupport.class);
+        when(fsRegistry.getFeatureSupport(recommender.getFeature())).thenReturn(fs);
+        when(fs.readTraits(recommender.getFeature())).thenReturn(new ConceptFeatureTraits());
+
+        NamedEntityLinker sut = new NamedEntityLinker(recommender, new NamedEntityLinkerTraits(),
+                kbService, clService, fsRegistry, new ConceptFeatureTraits());
+
+        CAS cas = loadDevelopmentData().get(0);
+        
+        sut.train(context, Collections.singletonList(cas));
+        sut.predict(context, cas);
+        int predictionCount = JCasUtil.select(cas.getJCas(), PredictedSpan.class).size();
+        assertThat(predictionCount).isGreaterThan(0);
+        
+        sut.predict(context, cas);
+        
+        assertThat(JCasUtil.select(cas.getJCas(), PredictedSpan.class))
+            .as("All occurrences received predictions again")
+            .hasSize(2 * predictionCount);
+        verify(clService, atMost(predictionCount))
+                .generateMentionCandidates(any(), any(), any(), anyString());
+        verify(clService, times(2 * predictionCount).description(
+                "Candidates have been ranked for each occurrence"))
+                .rankCandidates(any(), anyString(), any(), any(), anyInt());
+    }
+
     private List<CAS> loadDevelopmentData() throws IOException, UIMAException
     {
         Dataset ds = loader.load("germeval2014-de");
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.conceptlinking.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.conceptlinking.config.EntityLinkingProperties;
+import de.tudarmstadt.ukp.inception.conceptlinking.service.ConceptLinkingServiceImpl.CandidateQueryResult;
+import de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType;
+import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService;
+import de.tudarmstadt.ukp.inception.kb.RepositoryType;
+import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+
+public class ConceptLinkingServiceImplConcurrencyTest
+{
+    private KnowledgeBaseService kbService;
+    private EntityLinkingProperties properties;
+    private ConceptLinkingServiceImpl sut;
+
+    private Project project;
+    private KnowledgeBase fastKb;
+    private KnowledgeBase slowKb;
+    private CountDownLatch slowQueryStarted;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        project = new Project();
+        project.setName("Test project");
+        fastKb = buildKnowledgeBase("fast");
+        slowKb = buildKnowledgeBase("slow");
+        slowQueryStarted = new CountDownLatch(1);
+
+        kbService = mock(KnowledgeBaseService.class);
+        when(kbService.getEnabledKnowledgeBases(project)).thenReturn(asList(fastKb, slowKb));
+        when(kbService.getKnowledgeBaseById(project, fastKb.getRepositoryId()))
+                .thenReturn(Optional.of(fastKb));
+        when(kbService.getLabelIndex(any())).thenReturn(Optional.empty());
+        when(kbService.read(eq(fastKb), any()))
+                .thenReturn(result(buildHandle(fastKb, "http://fast#socke")));
+        when(kbService.read(eq(slowKb), any())).thenAnswer(invocation -> {
+            slowQueryStarted.countDown();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            return result(buildHandle(slowKb, "http://slow#socke"));
+        });
+
+        properties = new EntityLinkingProperties();
+        properties.setCandidateQueryTimeout(500);
+
+        sut = new ConceptLinkingServiceImpl(kbService, properties, emptyList());
+        sut.afterPropertiesSet();
+        sut.init();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        sut.destroy();
+    }
+
+    @Test
+    public void thatSlowKnowledgeBaseDoesNotDelayResults()
+    {
+        long start = System.currentTimeMillis();
+        List<KBHandle> handles = sut.getLinkingInstancesInKBScope(null, null,
+                ConceptFeatureValueType.ANY_OBJECT, "Socke", null, -1, null, project);
+
+        assertThat(System.currentTimeMillis() - start)
+                .as("Results are returned once the deadline has passed")
+                .isLessThan(TimeUnit.SECONDS.toMillis(5));
+        assertThat(handles)
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("http://fast#socke");
+    }
+
+    @Test
+    public void thatNewRequestCancelsPreviousRequestOfSameSession() throws Exception
+    {
+        properties.setCandidateQueryTimeout((int) TimeUnit.SECONDS.toMillis(20));
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<List<KBHandle>> previousRequest = CompletableFuture.supplyAsync(() ->
+                sut.getLinkingInstancesInKBScope(null, null, ConceptFeatureValueType.ANY_OBJECT,
+                        "Sock", null, -1, null, project, "session"));
+        slowQueryStarted.await(5, TimeUnit.SECONDS);
+
+        sut.getLinkingInstancesInKBScope(fastKb.getRepositoryId(), null,
+                ConceptFeatureValueType.ANY_OBJECT, "Socke", null, -1, null, project, "session");
+
+        assertThat(previousRequest.get(5, TimeUnit.SECONDS))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("http://fast#socke");
+        assertThat(System.currentTimeMillis() - start)
+                .as("Previous request was cancelled instead of waiting for the slow query")
+                .isLessThan(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Test
+    public void thatRecommenderQueriesDoNotBlockInteractiveQueries() throws Exception
+    {
+        properties.setCandidateQueryThreads(1);
+        properties.setRecommenderQueryThreads(1);
+        properties.setCandidateQueryTimeout((int) TimeUnit.SECONDS.toMillis(20));
+        sut.destroy();
+        sut = new ConceptLinkingServiceImpl(kbService, properties, emptyList());
+        sut.afterPropertiesSet();
+        sut.init();
+
+        CompletableFuture.runAsync(() -> sut.disambiguate(slowKb, null,
+                ConceptFeatureValueType.ANY_OBJECT, null, "Socke", 0, null));
+        slowQueryStarted.await(5, TimeUnit.SECONDS);
+
+        long start = System.currentTimeMillis();
+        List<KBHandle> handles = sut.getLinkingInstancesInKBScope(fastKb.getRepositoryId(), null,
+                ConceptFeatureValueType.ANY_OBJECT, "Socke", null, -1, null, project);
+
+        assertThat(handles)
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("http://fast#socke");
+        assertThat(System.currentTimeMillis() - start)
+                .as("Interactive query did not wait for the recommender query")
+                .isLessThan(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private CandidateQueryResult result(KBHandle aHandle)
+    {
+        return new CandidateQueryResult(new HashSet<>(asList(aHandle)), true);
+    }
+
+    private KBHandle buildHandle(KnowledgeBase aKB, String aIdentifier)
+    {
+        KBHandle handle = new KBHandle(aIdentifier, "Socke");
+        handle.setKB(aKB);
+        return handle;
+    }
+
+    private KnowledgeBase buildKnowledgeBase(String aName)
+    {
+        KnowledgeBase kb = new KnowledgeBase();
+        kb.setRepositoryId("id-" + aName);
+        kb.setName(aName);
+        kb.setProject(project);
+        kb.setType(RepositoryType.REMOTE);
+        kb.setMaxResults(1000);
+        return kb;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.conceptlinking.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.conceptlinking.config.EntityLinkingProperties;
+import de.tudarmstadt.ukp.inception.conceptlinking.service.ConceptLinkingServiceImpl.CandidateQueryResult;
+import de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType;
+import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService;
+import de.tudarmstadt.ukp.inception.kb.RepositoryType;
+import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+
+public class ConceptLinkingServiceImplNarrowingTest
+{
+    private KnowledgeBaseService kbService;
+    private ConceptLinkingServiceImpl sut;
+
+    private Project project;
+    private KnowledgeBase kb;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        project = new Project();
+        project.setId(1l);
+        project.setName("Test project");
+        
+        kb = new KnowledgeBase();
+        kb.setRepositoryId("id-kb");
+        kb.setName("kb");
+        kb.setProject(project);
+        kb.setType(RepositoryType.REMOTE);
+        kb.setMaxResults(1000);
+
+        kbService = mock(KnowledgeBaseService.class);
+        when(kbService.getEnabledKnowledgeBases(project)).thenReturn(asList(kb));
+        when(kbService.getLabelIndex(any())).thenReturn(Optional.empty());
+        when(kbService.read(eq(kb), any())).thenReturn(completeResult(
+                buildHandle("http://kb#sock", "Sock"), 
+                buildHandle("http://kb#socket", "Socket"),
+                buildHandle("http://kb#sockeye", "Sockeye")));
+
+        sut = new ConceptLinkingServiceImpl(kbService, new EntityLinkingProperties(),
+                emptyList());
+        sut.afterPropertiesSet();
+        sut.init();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        sut.destroy();
+    }
+
+    @Test
+    public void thatRefinedQueryIsAnsweredLocally()
+    {
+        query("Sock", "session");
+        List<KBHandle> handles = query("Socke", "session");
+
+        assertThat(handles)
+                .extracting(KBHandle::getIdentifier)
+                .containsExactlyInAnyOrder("http://kb#socket", "http://kb#sockeye");
+        verify(kbService, times(3)).read(eq(kb), any());
+    }
+
+    @Test
+    public void thatCandidatesMatchingThroughOtherLabelsAreRetained()
+    {
+        when(kbService.read(eq(kb), any())).thenReturn(completeResult(
+                buildHandle("http://kb#sock", "Sock"), 
+                buildHandle("http://kb#hosiery", "Hosiery", "Socken"),
+                buildHandle("http://kb#socket", "Socket")));
+        
+        query("Sock", "session");
+        List<KBHandle> handles = query("Socke", "session");
+
+        assertThat(handles)
+                .extracting(KBHandle::getIdentifier)
+                .containsExactlyInAnyOrder("http://kb#hosiery", "http://kb#socket");
+        verify(kbService, times(3)).read(eq(kb), any());
+    }
+
+    @Test
+    public void thatCandidatesWithUnknownMatchAreNotNarrowed()
+    {
+        when(kbService.read(eq(kb), any())).thenReturn(completeResult(
+                buildHandle("http://kb#sock", "Sock"), 
+                new KBHandle("http://kb#hosiery", "Hosiery")));
+        
+        query("Sock", "session");
+        query("Socke", "session");
+
+        verify(kbService, times(6)).read(eq(kb), any());
+    }
+
+    @Test
+    public void thatUnrelatedQueryGoesToKnowledgeBase()
+    {
+        query("Sock", "session");
+        query("Shoe", "session");
+
+        verify(kbService, times(6)).read(eq(kb), any());
+    }
+
+    @Test
+    public void thatOtherSessionGoesToKnowledgeBase()
+    {
+        query("Sock", "session");
+        query("Socke", "other-session");
+
+        verify(kbService, times(6)).read(eq(kb), any());
+    }
+
+    @Test
+    public void thatTruncatedResultIsNotNarrowed()
+    {
+        // Several labels of the same item may fill up the query limit, so a truncated result can
+        // contain fewer candidates than the limit
+        when(kbService.read(eq(kb), any())).thenReturn(new CandidateQueryResult(
+                new HashSet<>(asList(buildHandle("http://kb#sock", "Sock", "Socks"),
+                        buildHandle("http://kb#socket", "Socket"))),
+                false));
+
+        query("Sock", "session");
+        query("Socke", "session");
+
+        verify(kbService, times(6)).read(eq(kb), any());
+    }
+
+    private List<KBHandle> query(String aQuery, String aSessionId)
+    {
+        return sut.getLinkingInstancesInKBScope(null, null, ConceptFeatureValueType.ANY_OBJECT,
+                aQuery, null, -1, null, project, aSessionId);
+    }
+
+    private CandidateQueryResult completeResult(KBHandle... aHandles)
+    {
+        return new CandidateQueryResult(new HashSet<>(asList(aHandles)), true);
+    }
+
+    private KBHandle buildHandle(String aIdentifier, String aLabel, String... aOtherLabels)
+    {
+        KBHandle handle = new KBHandle(aIdentifier, aLabel);
+        handle.setKB(kb);
+        // The candidate queries report the labels through which a handle matched
+        handle.addMatchTerms(asList(aLabel));
+        handle.addMatchTerms(asList(aOtherLabels));
+        return handle;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.conceptlinking.service;
+
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_FREQUENCY;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_ID_RANK;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_LEVENSHTEIN_MENTION;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_LEVENSHTEIN_MENTION_CONTEXT;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_LEVENSHTEIN_QUERY;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_NUM_RELATIONS;
+import static de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity.KEY_SIGNATURE_OVERLAP_SCORE;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.builder.CompareToBuilder;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.inception.conceptlinking.model.CandidateEntity;
+import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+
+public class RankedCandidateTest
+{
+    @Test
+    public void thatRankingMatchesFeatureBasedRanking()
+    {
+        Random rnd = new Random(42);
+        KnowledgeBase kb = new KnowledgeBase();
+        
+        List<CandidateEntity> candidates = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            KBHandle handle = new KBHandle("http://kb#" + i, "Label " + rnd.nextInt(10));
+            handle.setKB(kb);
+            CandidateEntity candidate = new CandidateEntity(handle);
+            // Use small value ranges so that many candidates tie on the leading features
+            if (rnd.nextBoolean()) {
+                candidate.put(KEY_LEVENSHTEIN_QUERY, rnd.nextInt(3));
+            }
+            candidate.put(KEY_LEVENSHTEIN_MENTION, rnd.nextInt(3));
+            candidate.put(KEY_SIGNATURE_OVERLAP_SCORE, rnd.nextInt(2));
+            if (rnd.nextBoolean()) {
+                candidate.put(KEY_LEVENSHTEIN_MENTION_CONTEXT, rnd.nextInt(3));
+            }
+            candidate.put(KEY_FREQUENCY, rnd.nextInt(2));
+            candidate.put(KEY_NUM_RELATIONS, rnd.nextInt(2));
+            candidate.put(KEY_ID_RANK, (double) rnd.nextInt(3));
+            candidates.add(candidate);
+        }
+        
+        List<CandidateEntity> expected = new ArrayList<>(candidates);
+        expected.sort(featureBasedRanking());
+        
+        List<CandidateEntity> actual = candidates.stream()
+                .map(RankedCandidate::new)
+                .sorted(RankedCandidate.BASELINE_RANKING)
+                .map(RankedCandidate::getCandidate)
+                .collect(toList());
+        
+        assertThat(actual).containsExactlyElementsOf(expected);
+    }
+    
+    /**
+     * The ranking as it was done on the feature map before the features were extracted.
+     */
+    @SuppressWarnings("deprecation")
+    private Comparator<CandidateEntity> featureBasedRanking()
+    {
+        return (e1, e2) -> new CompareToBuilder()
+                .append(Math.min(e1.getLevQuery(), e1.getLevMention()),
+                        Math.min(e2.getLevQuery(), e2.getLevMention()))
+                .append(e2.getSignatureOverlapScore(), e1.getSignatureOverlapScore())
+                .append(e1.getLevContext(), e2.getLevContext())
+                .append(e2.getFrequency(), e1.getFrequency())
+                .append(e2.getNumRelatedRelations(), e1.getNumRelatedRelations())
+                .append(e1.getIdRank(), e2.getIdRank())
+                .append(e1.getLabel().toLowerCase(e1.getLocale()), 
+                        e2.getLabel().toLowerCase(e2.getLocale()))
+                .toComparison();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface EmbeddingService
+{
+    /**
+     * Get the word embeddings from the given DKPro Core dataset. The dataset is downloaded to the
+     * dataset cache if necessary.
+     */
+    WordEmbeddings getEmbeddings(String aDatasetId) throws IOException;
+
+    /**
+     * Get the word embeddings stored in the given file. The embeddings are shared by all callers
+     * which request the same file.
+     */
+    WordEmbeddings getEmbeddings(File aFile) throws IOException;
+}
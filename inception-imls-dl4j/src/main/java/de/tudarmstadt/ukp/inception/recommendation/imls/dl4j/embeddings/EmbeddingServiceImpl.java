@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.RepositoryProperties;
+import de.tudarmstadt.ukp.dkpro.core.api.datasets.DatasetFactory;
+
+@Component
+@ConditionalOnProperty(prefix = "recommenders.dl4j.token-sequence", name = "enabled", 
+        matchIfMissing = false)
+public class EmbeddingServiceImpl
+    implements EmbeddingService
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final File datasetCache;
+    
+    // Embeddings by their canonical file, so every embedding file is opened only once
+    private final Map<File, WordEmbeddings> embeddings = new HashMap<>();
+    
+    @Autowired
+    public EmbeddingServiceImpl(RepositoryProperties aRepositoryProperties)
+    {
+        this(new File(aRepositoryProperties.getPath(), "datasets"));
+    }
+    
+    public EmbeddingServiceImpl(File aDatasetCache)
+    {
+        datasetCache = aDatasetCache;
+    }
+
+    @Override
+    public WordEmbeddings getEmbeddings(String aDatasetId) throws IOException
+    {
+        DatasetFactory loader = new DatasetFactory(datasetCache); 
+        return getEmbeddings(loader.load(aDatasetId).getDataFiles()[0]);
+    }
+
+    @Override
+    public synchronized WordEmbeddings getEmbeddings(File aFile) throws IOException
+    {
+        File file = aFile.getCanonicalFile();
+        
+        WordEmbeddings wordEmbeddings = embeddings.get(file);
+        if (wordEmbeddings == null) {
+            long start = System.currentTimeMillis();
+            wordEmbeddings = WordEmbeddings.load(file);
+            embeddings.put(file, wordEmbeddings);
+            log.info("Loaded embeddings [{}] in {}ms", file, System.currentTimeMillis() - start);
+        }
+        
+        return wordEmbeddings;
+    }
+}
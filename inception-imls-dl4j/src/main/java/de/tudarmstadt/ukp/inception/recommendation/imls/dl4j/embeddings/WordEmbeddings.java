@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.dkpro.core.api.embeddings.binary.BinaryVectorizer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+/**
+ * Word embeddings backed by a memory-mapped binary embedding file. Vectors of frequently used
+ * words are additionally kept on the heap, so that they do not have to be looked up in the mapped
+ * file again and again. Instances are thread-safe and are meant to be shared (see
+ * {@link EmbeddingService}).
+ */
+public class WordEmbeddings
+{
+    private static final int HOT_WORD_CACHE_SIZE = 100_000;
+    
+    // Marks words which are not part of the vocabulary since the cache cannot hold null values
+    private static final float[] UNKNOWN = new float[0];
+    
+    private final File file;
+    private final BinaryVectorizer vectorizer;
+    private final int dimensions;
+    private final LoadingCache<String, float[]> hotWords;
+    
+    private WordEmbeddings(File aFile, BinaryVectorizer aVectorizer)
+    {
+        file = aFile;
+        vectorizer = aVectorizer;
+        dimensions = aVectorizer.dimensions();
+        hotWords = Caffeine.newBuilder()
+                .maximumSize(HOT_WORD_CACHE_SIZE)
+                .build(this::vectorize);
+    }
+    
+    public static WordEmbeddings load(File aFile) throws IOException
+    {
+        return new WordEmbeddings(aFile, BinaryVectorizer.load(aFile));
+    }
+    
+    public File getFile()
+    {
+        return file;
+    }
+    
+    public int dimensions()
+    {
+        return dimensions;
+    }
+    
+    /**
+     * Looks up the vector of the given word. The returned array is shared and must not be
+     * modified.
+     * 
+     * @return the vector or {@code null} if the word is not part of the vocabulary.
+     */
+    public float[] lookup(String aWord) throws IOException
+    {
+        float[] vector;
+        try {
+            vector = hotWords.get(aWord);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return vector != UNKNOWN ? vector : null;
+    }
+    
+    /**
+     * Looks up the vectors of all the given words at once.
+     * 
+     * @param aWords
+     *            the words.
+     * @param aUnknown
+     *            the vector used for words which are not part of the vocabulary.
+     * @return a matrix with one row per word.
+     */
+    public INDArray lookup(List<String> aWords, float[] aUnknown) throws IOException
+    {
+        float[] matrix = new float[aWords.size() * dimensions];
+        int offset = 0;
+        for (String word : aWords) {
+            float[] vector = lookup(word);
+            System.arraycopy(vector != null ? vector : aUnknown, 0, matrix, offset, dimensions);
+            offset += dimensions;
+        }
+        return Nd4j.create(matrix, new int[] { aWords.size(), dimensions }, 'c');
+    }
+    
+    private float[] vectorize(String aWord)
+    {
+        try {
+            float[] vector;
+            // Only words missing from the on-heap cache go to the mapped file
+            synchronized (vectorizer) {
+                vector = vectorizer.vectorize(aWord);
+            }
+            return vector != null ? vector : UNKNOWN;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
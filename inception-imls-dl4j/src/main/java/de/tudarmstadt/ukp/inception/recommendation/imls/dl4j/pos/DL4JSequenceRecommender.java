@@ -18,20 +18,18 @@
 package de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.pos;
 
 import static java.util.Arrays.asList;
+import static java.util.Comparator.comparingInt;
 import static org.apache.uima.fit.util.CasUtil.getAnnotationType;
 import static org.apache.uima.fit.util.CasUtil.getType;
 import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
-import static org.nd4j.linalg.indexing.NDArrayIndex.all;
-import static org.nd4j.linalg.indexing.NDArrayIndex.point;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.cas.CAS;
@@ -46,11 +44,10 @@ import org.deeplearning4j.nn.conf.layers.LSTM;
 import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
 import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
-import org.dkpro.core.api.embeddings.binary.BinaryVectorizer;
+import org.deeplearning4j.parallelism.ParallelWrapper;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
-import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.Nesterovs;
 import org.nd4j.linalg.schedule.ScheduleType;
@@ -58,7 +55,6 @@ import org.nd4j.linalg.schedule.StepSchedule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.tudarmstadt.ukp.dkpro.core.api.datasets.DatasetFactory;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
@@ -69,6 +65,8 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings.EmbeddingService;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings.WordEmbeddings;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap.Entry;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
@@ -79,6 +77,8 @@ public class DL4JSequenceRecommender
     private Logger log = LoggerFactory.getLogger(getClass());
     
     public static final String NO_LABEL = "*NO-LABEL*";
+    
+    private static final long RANDOM_SEED = 12345;
 
     public static final Key<String[]> KEY_TAGSET = new Key<>("labelDict");
     public static final Key<MultiLayerNetwork> KEY_MODEL = new Key<>("model");
@@ -86,18 +86,21 @@ public class DL4JSequenceRecommender
     
     private final String layerName;
     private final String featureName;
-    private final File datasetCache;
+    private final EmbeddingService embeddingService;
     private DL4JSequenceRecommenderTraits traits;
-    private BinaryVectorizer wordVectors;
+    private WordEmbeddings wordVectors;
     private INDArray randUnk;
+    private float[] randUnkVector;
+    // The number of epochs the last training actually ran for
+    private int trainedEpochs;
     
     public DL4JSequenceRecommender(Recommender aRecommender, DL4JSequenceRecommenderTraits aTraits,
-            File aDatasetCache)
+            EmbeddingService aEmbeddingService)
     {
         layerName = aRecommender.getLayer().getName();
         featureName = aRecommender.getFeature().getName();
         traits = aTraits;
-        datasetCache = aDatasetCache;
+        embeddingService = aEmbeddingService;
     }
 
     @Override
@@ -126,15 +129,11 @@ public class DL4JSequenceRecommender
         }
     }
     
-    private void ensureEmbeddingsAreAvailable() throws IOException
+    void ensureEmbeddingsAreAvailable() throws IOException
     {
         if (wordVectors == null) {
-            // Load the embeddings. Mind that we are using a memory-mapped embedding store, so this
-            // is a fast operation and also doesn't consume lots of memory. Hence we can do it for
-            // each recommender instance and do not have to share it between recommenders.
-            DatasetFactory loader = new DatasetFactory(datasetCache); 
-            File embeddingsFile = loader.load("glove.6B.50d.dl4jw2v").getDataFiles()[0];
-            wordVectors = BinaryVectorizer.load(embeddingsFile);
+            // The embeddings are shared with all other recommenders using the same embeddings
+            wordVectors = embeddingService.getEmbeddings("glove.6B.50d.dl4jw2v");
         }
         
         if (randUnk == null) {
@@ -142,6 +141,10 @@ public class DL4JSequenceRecommender
             int embeddingSize = wordVectors.dimensions();
             randUnk = Nd4j.rand(1, embeddingSize, Nd4j.getRandom()).subi(0.5).divi(embeddingSize);
         }
+        
+        if (randUnkVector == null) {
+            randUnkVector = randUnk.toFloatVector();
+        }
     }
     
     private String[] compileTagset(Object2IntMap<String> aTagsetCollector)
@@ -192,95 +195,242 @@ public class DL4JSequenceRecommender
         MultiLayerNetwork model = createConfiguredNetwork(traits, wordVectors.dimensions());
 
         final int limit = traits.getTrainingSetSizeLimit();
-        final int batchSize = traits.getBatchSize();
+        List<Sample> trainingData = aTrainingData.subList(0,
+                Math.min(limit, aTrainingData.size()));
 
-        // First vectorizing all sentences and then passing them to the model would consume
-        // huge amounts of memory. Thus, every sentence is vectorized and then immediately
-        // passed on to the model.
-        nextEpoch: for (int epoch = 0; epoch < traits.getnEpochs(); epoch++) {
-            int sentNum = 0;
-            Iterator<Sample> sampleIterator = aTrainingData.iterator();
-            while (sampleIterator.hasNext()) {
-                List<DataSet> batch = new ArrayList<>();
-                while (sampleIterator.hasNext() && batch.size() < batchSize && sentNum < limit) {
-                    Sample sample = sampleIterator.next();
-                    DataSet trainingData = vectorize(asList(sample), aTagset, true);
-                    batch.add(trainingData);
-                    sentNum++;
+        // Hold out a part of the training data to decide when to stop training. This only makes
+        // sense if we train for more than a single epoch.
+        List<Sample> validationData = Collections.emptyList();
+        if (isEarlyStoppingEnabled()) {
+            List<Sample> shuffled = new ArrayList<>(trainingData);
+            Collections.shuffle(shuffled, new Random(RANDOM_SEED));
+            int validationSize = (int) Math.round(shuffled.size() * traits.getValidationSetRatio());
+            if (validationSize > 0 && validationSize < shuffled.size()) {
+                validationData = shuffled.subList(0, validationSize);
+                trainingData = shuffled.subList(validationSize, shuffled.size());
+            }
+        }
+
+        // Vectorize the training data only once. The batches are then re-used in every epoch,
+        // only the order in which they are passed to the model changes.
+        List<DataSet> batches = vectorizeTrainingData(trainingData, aTagset);
+        List<DataSet> validationBatches = vectorizeTrainingData(validationData, aTagset);
+        
+        int threads = traits.getTrainingThreads() < 1 ? Runtime.getRuntime().availableProcessors()
+                : traits.getTrainingThreads();
+        // Each worker needs at least one batch per epoch
+        threads = Math.min(threads, batches.size());
+        
+        MultiLayerNetwork bestModel = model;
+        double bestScore = Double.POSITIVE_INFINITY;
+        int epochsWithoutImprovement = 0;
+        trainedEpochs = 0;
+        
+        // The worker threads and their model replicas are set up once and then re-used in every
+        // epoch
+        ParallelWrapper wrapper = threads > 1 ? createParallelWrapper(model, threads) : null;
+        try {
+            Random random = new Random(RANDOM_SEED);
+            for (int epoch = 0; epoch < traits.getnEpochs(); epoch++) {
+                Collections.shuffle(batches, random);
+                
+                long start = System.currentTimeMillis();
+                if (wrapper != null) {
+                    wrapper.fit(new ListDataSetIterator<>(batches, 1));
+                }
+                else {
+                    for (DataSet batch : batches) {
+                        model.fit(batch);
+                    }
                 }
+                trainedEpochs++;
+                log.trace("Epoch {}: processed {} batches in {}ms", epoch, batches.size(),
+                        System.currentTimeMillis() - start);
                 
-                model.fit(new ListDataSetIterator<DataSet>(batch, batch.size()));
-                log.trace("Epoch {}: processed {} of {} sentences", epoch, sentNum,
-                        aTrainingData.size());
+                if (validationBatches.isEmpty()) {
+                    continue;
+                }
                 
-                if (sentNum >= limit) {
-                    continue nextEpoch;
+                double score = score(model, validationBatches);
+                log.trace("Epoch {}: validation score {}", epoch, score);
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestModel = model.clone();
+                    epochsWithoutImprovement = 0;
+                }
+                else {
+                    epochsWithoutImprovement++;
+                    if (epochsWithoutImprovement >= traits.getEarlyStoppingPatience()) {
+                        log.debug("Stopping training after epoch {} - no improvement on "
+                                + "validation set for {} epochs", epoch,
+                                epochsWithoutImprovement);
+                        break;
+                    }
                 }
             }
         }
+        finally {
+            if (wrapper != null) {
+                wrapper.shutdown();
+            }
+        }
 
-        return model;
+        return bestModel;
+    }
+    
+    int getTrainedEpochs()
+    {
+        return trainedEpochs;
+    }
+    
+    private boolean isEarlyStoppingEnabled()
+    {
+        return traits.getnEpochs() > 1 && traits.getEarlyStoppingPatience() > 0
+                && traits.getValidationSetRatio() > 0;
+    }
+    
+    /**
+     * Sets up training using multiple model replicas running in parallel. The parameters of the
+     * replicas are periodically averaged and written back to the given model.
+     */
+    private ParallelWrapper createParallelWrapper(MultiLayerNetwork aModel, int aThreads)
+    {
+        return new ParallelWrapper.Builder<>(aModel)
+                .workers(aThreads)
+                .prefetchBuffer(2 * aThreads)
+                .averagingFrequency(3)
+                .reportScoreAfterAveraging(true)
+                .build();
+    }
+    
+    /**
+     * Calculates the loss of the model on the given batches averaged over all examples.
+     */
+    private double score(MultiLayerNetwork aModel, List<DataSet> aBatches)
+    {
+        double total = 0.0;
+        long examples = 0;
+        for (DataSet batch : aBatches) {
+            total += aModel.score(batch) * batch.numExamples();
+            examples += batch.numExamples();
+        }
+        return examples > 0 ? total / examples : Double.POSITIVE_INFINITY;
+    }
+    
+    private List<DataSet> vectorizeTrainingData(List<Sample> aTrainingData,
+            Object2IntMap<String> aTagset)
+        throws IOException
+    {
+        long start = System.currentTimeMillis();
+        
+        List<DataSet> batches = new ArrayList<>();
+        for (List<Sample> batch : toBatches(aTrainingData, traits.getBatchSize())) {
+            batches.add(vectorize(batch, aTagset, true));
+        }
+        
+        log.trace("Vectorizing {} sentences took {}ms", aTrainingData.size(),
+                System.currentTimeMillis() - start);
+        
+        return batches;
     }
 
+    /**
+     * Splits the samples into batches. If dynamic padding is enabled, the samples are sorted by
+     * length first, so that each batch contains samples of similar length and needs little
+     * padding.
+     */
+    private <T extends Sample> List<List<T>> toBatches(List<T> aSamples, int aBatchSize)
+    {
+        List<T> samples = aSamples;
+        if (traits.isDynamicPadding()) {
+            samples = new ArrayList<>(aSamples);
+            samples.sort(comparingInt(Sample::getLength));
+        }
+        
+        List<List<T>> batches = new ArrayList<>();
+        for (int i = 0; i < samples.size(); i += aBatchSize) {
+            batches.add(samples.subList(i, Math.min(i + aBatchSize, samples.size())));
+        }
+        return batches;
+    }
+    
     private DataSet vectorize(List<? extends Sample> aData)
         throws IOException
     {
         return vectorize(aData, null, false);
     }
 
-    private DataSet vectorize(List<? extends Sample> aData, Object2IntMap<String> aTagset,
+    DataSet vectorize(List<? extends Sample> aData, Object2IntMap<String> aTagset,
             boolean aIncludeLabels)
         throws IOException
     {
-        // vectorize is pretty fast taking around 1-2ms
-        
-        // long start = System.currentTimeMillis();
+        // With dynamic padding, the batch is only padded to the length of its longest sentence
         int maxSentenceLength = traits.getMaxSentenceLength();
-        
-        // Create data for training
+        if (traits.isDynamicPadding()) {
+            int longest = aData.stream().mapToInt(Sample::getLength).max().orElse(0);
+            maxSentenceLength = Math.max(1, Math.min(longest, maxSentenceLength));
+        }
         int embeddingSize = wordVectors.dimensions(); 
-        INDArray featureVec = Nd4j.create(aData.size(), embeddingSize, maxSentenceLength);
-
+        int maxTagsetSize = traits.getMaxTagsetSize();
+        
+        // The data is first collected in primitive arrays and then transferred to ND4J in one go.
+        // Within these arrays, the time steps come before the features so that each word vector
+        // and each label vector can be copied as a whole.
+        float[] features = new float[aData.size() * maxSentenceLength * embeddingSize];
+        
         // Tags are using a 1-hot encoding
-        INDArray labelVec = Nd4j.create(aData.size(), traits.getMaxTagsetSize(), maxSentenceLength);
+        float[] labels = aIncludeLabels ? new float[aData.size() * maxSentenceLength
+                * maxTagsetSize] : null;
         
         // Sentences have variable length, so we we need to mask positions not used in short
         // sentences.
-        INDArray featureMask = Nd4j.zeros(aData.size(), maxSentenceLength);
-        INDArray labelMask = Nd4j.zeros(aData.size(), maxSentenceLength);
+        float[] mask = new float[aData.size() * maxSentenceLength];
         
-        // Get word vectors for each word in review, and put them in the training data
         int sampleIdx = 0;
         for (Sample sample : aData) {
             List<String> tokens = sample.getSentence();
-            List<String> labels = sample.getTags();
+            List<String> tags = sample.getTags();
             for (int t = 0; t < Math.min(tokens.size(), maxSentenceLength); t++) {
-                String word = tokens.get(t);
-                INDArray vector = Nd4j.create(wordVectors.vectorize(word));
-    
+                int step = sampleIdx * maxSentenceLength + t;
+                
+                float[] vector = wordVectors.lookup(tokens.get(t));
                 if (vector == null) {
-                    vector = randUnk;
+                    vector = randUnkVector;
                 }
-    
-                featureVec.put(new INDArrayIndex[] { point(sampleIdx), all(), point(t) }, vector);
-                featureMask.putScalar(new int[] { sampleIdx, t }, 1.0);
-                labelMask.putScalar(new int[] { sampleIdx, t }, 1.0);
-    
+                System.arraycopy(vector, 0, features, step * embeddingSize, embeddingSize);
+                mask[step] = 1.0f;
+                
                 if (aIncludeLabels) {
-                    String label = labels.get(t);
+                    String label = tags.get(t);
                     if (!aTagset.containsKey(label)) {
+                        if (aTagset.size() >= maxTagsetSize) {
+                            throw new IllegalStateException("Tagset exceeds the maximum size of ["
+                                    + maxTagsetSize + "] tags");
+                        }
                         aTagset.put(label, aTagset.size());
                     }
-                    labelVec.putScalar(sampleIdx, aTagset.get(label), t, 1.0);
+                    labels[step * maxTagsetSize + aTagset.getInt(label)] = 1.0f;
                 }
             }
             
             sampleIdx++;
         }
-
-        // log.trace("Vectorizing took {}ms", System.currentTimeMillis() - start);
         
-        return new DataSet(featureVec, labelVec, featureMask, labelMask);
+        // The network expects [samples, features, time steps]
+        INDArray featureVec = Nd4j
+                .create(features, new int[] { aData.size(), maxSentenceLength, embeddingSize },
+                        'c')
+                .permute(0, 2, 1).dup('f');
+        INDArray labelVec = null;
+        if (aIncludeLabels) {
+            labelVec = Nd4j
+                    .create(labels, new int[] { aData.size(), maxSentenceLength, maxTagsetSize },
+                            'c')
+                    .permute(0, 2, 1).dup('f');
+        }
+        INDArray maskVec = Nd4j.create(mask, new int[] { aData.size(), maxSentenceLength }, 'c');
+        
+        return new DataSet(featureVec, labelVec, maskVec, maskVec);
     }
     
     public List<String> extractTokenLabels(List<AnnotationFS> aTokens,
@@ -370,44 +520,40 @@ public class DL4JSequenceRecommender
             final int batchSize = traits.getBatchSize();
 
             Collection<AnnotationFS> sentences = select(aCas, sentenceType);
-            int sentNum = 0;
             
-            Iterator<AnnotationFS> sentenceIterator = sentences.iterator();
-            while (sentenceIterator.hasNext()) {
-                // Prepare a batch of sentences that we want to predict because calling the
-                // prediction is expensive
-                List<CasSample> batch = new ArrayList<>();
-                while (sentenceIterator.hasNext() && batch.size() < batchSize && sentNum < limit) {
-                    AnnotationFS sentence = sentenceIterator.next();
-                    List<AnnotationFS> tokenFSes = selectCovered(tokenType, sentence);
-                    List<String> tokens = CasUtil.toText(tokenFSes);
-                    batch.add(new CasSample(tokens, tokenFSes));
-                    sentNum++;
-                }
-                
-                // If a limit was set that is smaller than the number of sentence, then we
-                // eventually start producing empty batches. At this point, we are done.
-                if (batch.isEmpty()) {
+            List<CasSample> samples = new ArrayList<>();
+            for (AnnotationFS sentence : sentences) {
+                if (samples.size() >= limit) {
                     break;
                 }
-
+                
+                List<AnnotationFS> tokenFSes = selectCovered(tokenType, sentence);
+                List<String> tokens = CasUtil.toText(tokenFSes);
+                samples.add(new CasSample(tokens, tokenFSes));
+            }
+            
+            // Predict the sentences in batches because calling the prediction is expensive. The
+            // predictions are attached to the tokens of the samples, so the order in which the
+            // batches are processed does not matter.
+            int sentNum = 0;
+            for (List<CasSample> batch : toBatches(samples, batchSize)) {
                 List<Outcome<CasSample>> outcomes = predict(classifier, tagset, batch);
                 
-                int outcomeIdx = 0;
                 for (Outcome<CasSample> outcome : outcomes) {
                     List<AnnotationFS> tokenFSes = outcome.getSample().getTokens();
                     for (int tokenIdx = 0; tokenIdx < tokenFSes.size(); tokenIdx ++) {
                         AnnotationFS token = tokenFSes.get(tokenIdx);
                         AnnotationFS annotation = aCas.createAnnotation(predictionType,
                                 token.getBegin(), token.getEnd());
-                        //annotation.setDoubleValue(confidenceFeature, prediction.getProb());
+                        annotation.setDoubleValue(confidenceFeature,
+                                outcome.getProbabilities()[tokenIdx]);
                         annotation.setStringValue(labelFeature,
-                                outcomes.get(outcomeIdx).getLabels().get(tokenIdx));
+                                outcome.getLabels().get(tokenIdx));
                         aCas.addFsToIndexes(annotation);
                     }
-                    outcomeIdx++;
                 }
                 
+                sentNum += batch.size();
                 log.trace("Predicted {} of {} sentences", sentNum, sentences.size());
             }
         }
@@ -438,20 +584,34 @@ public class DL4JSequenceRecommender
         predicted = predicted.get(NDArrayIndex.all(), NDArrayIndex.interval(0, aTagset.length),
                 NDArrayIndex.all());
         
+        // Decode the whole batch at once and transfer the results to the Java heap in one go
+        // instead of accessing the INDArray for every single token
+        int[] shape = { (int) predicted.size(0), (int) predicted.size(2) };
+        int[] argMax = Nd4j.argMax(predicted, 1).reshape('c', shape).dup('c').data().asInt();
+        double[] maxProb = predicted.max(1).reshape('c', shape).dup('c').data().asDouble();
+        int sequenceLength = shape[1];
+        
         List<Outcome<T>> outcomes = new ArrayList<>();
-        int sampleIdx = 0;
-        for (Sample sample : aData) {
-            INDArray argMax = Nd4j.argMax(predicted, 1);
-    
+        int offset = 0;
+        for (T sample : aData) {
             List<String> tokens = sample.getSentence();
             String[] labels = new String[tokens.size()];
+            double[] probabilities = new double[tokens.size()];
             for (int tokenIdx = 0; tokenIdx < tokens.size(); tokenIdx ++) {
-                labels[tokenIdx] = aTagset[argMax.getInt(sampleIdx, tokenIdx)];
+                // Tokens beyond the maximum sentence length have been truncated and did not
+                // receive a prediction
+                if (tokenIdx < sequenceLength) {
+                    labels[tokenIdx] = aTagset[argMax[offset + tokenIdx]];
+                    probabilities[tokenIdx] = maxProb[offset + tokenIdx];
+                }
+                else {
+                    labels[tokenIdx] = NO_LABEL;
+                }
             }
             
-            outcomes.add(new Outcome(sample, asList(labels)));
+            outcomes.add(new Outcome<>(sample, asList(labels), probabilities));
             
-            sampleIdx ++;
+            offset += sequenceLength;
         }
         
         return outcomes;
@@ -505,22 +665,12 @@ public class DL4JSequenceRecommender
             MultiLayerNetwork classifier = train(trainingSet, tagsetCollector);
             String[] tagset = compileTagset(tagsetCollector);
             
-            final int limit = Integer.MAX_VALUE;
-            final int batchSize = 250;
+            final int batchSize = traits.getBatchSize();
             
-            int sentNum = 0;
             double total = 0;
             double correct = 0;
-            Iterator<Sample> testSetIterator = testSet.iterator();
-            while (testSetIterator.hasNext()) {
-                // Prepare a batch of sentences that we want to predict because calling the
-                // prediction is expensive
-                List<Sample> batch = new ArrayList<>();
-                while (testSetIterator.hasNext() && batch.size() < batchSize && sentNum < limit) {
-                    batch.add(testSetIterator.next());
-                    sentNum++;
-                }
-                
+            // Predict the sentences in batches because calling the prediction is expensive
+            for (List<Sample> batch : toBatches(testSet, batchSize)) {
                 List<Outcome<Sample>> outcomes = predict(classifier, tagset, batch);
                 
                 for (Outcome<Sample> outcome : outcomes) {
@@ -589,11 +739,14 @@ public class DL4JSequenceRecommender
     {
         private final T sample;
         private final List<String> labels;
-        public Outcome(T aSample, List<String> aLabels)
+        private final double[] probabilities;
+        
+        public Outcome(T aSample, List<String> aLabels, double[] aProbabilities)
         {
             super();
             sample = aSample;
             labels = aLabels;
+            probabilities = aProbabilities;
         }
         
         public T getSample()
@@ -605,9 +758,14 @@ public class DL4JSequenceRecommender
         {
             return labels;
         }
+        
+        public double[] getProbabilities()
+        {
+            return probabilities;
+        }
     }
     
-    private static class Sample
+    static class Sample
     {
         private final String[] sentence;
         private final String[] tags;
@@ -628,6 +786,11 @@ public class DL4JSequenceRecommender
             return asList(sentence);
         }
         
+        public int getLength()
+        {
+            return sentence.length;
+        }
+        
         public List<String> getTags()
         {
             if (tags != null) {
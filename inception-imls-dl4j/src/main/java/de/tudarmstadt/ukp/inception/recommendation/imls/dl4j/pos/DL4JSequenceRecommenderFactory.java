@@ -17,18 +17,16 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.pos;
 
-import java.io.File;
-
 import org.apache.uima.cas.CAS;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import de.tudarmstadt.ukp.clarin.webanno.api.dao.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactoryImplBase;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings.EmbeddingService;
 
 @Component
 @ConditionalOnProperty(prefix = "recommenders.dl4j.token-sequence", name = "enabled", 
@@ -40,11 +38,11 @@ public class DL4JSequenceRecommenderFactory
     // and without the database starting to refer to non-existing recommendation tools.
     public static final String ID = "de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.pos.DL4JPosClassificationTool";
 
-    private final RepositoryProperties repositoryProperties;
+    private final EmbeddingService embeddingService;
 
-    public DL4JSequenceRecommenderFactory(RepositoryProperties aRepositoryProperties)
+    public DL4JSequenceRecommenderFactory(EmbeddingService aEmbeddingService)
     {
-        repositoryProperties = aRepositoryProperties;
+        embeddingService = aEmbeddingService;
     }
 
     @Override
@@ -73,7 +71,6 @@ public class DL4JSequenceRecommenderFactory
     public RecommendationEngine build(Recommender aRecommender)
     {
         DL4JSequenceRecommenderTraits traits = new DL4JSequenceRecommenderTraits();
-        return new DL4JSequenceRecommender(aRecommender, traits,
-                new File(repositoryProperties.getPath(), "datasets"));
+        return new DL4JSequenceRecommender(aRecommender, traits, embeddingService);
     }
 }
@@ -32,7 +32,16 @@ public class DL4JSequenceRecommenderTraits
     private int batchSize = 250;
     private int maxTagsetSize = 70;
     private int maxSentenceLength = 150;
-    private int nEpochs = 1;
+    // Pad each batch only to its longest sentence and batch sentences of similar length
+    private boolean dynamicPadding = true;
+    // Maximum number of epochs - training may stop earlier (see earlyStoppingPatience)
+    private int nEpochs = 10;
+    // Stop after this many epochs without improvement on the validation set (0 = disabled)
+    private int earlyStoppingPatience = 3;
+    // Fraction of the training data held out to decide when to stop training
+    private double validationSetRatio = 0.1;
+    // Number of worker threads used for data-parallel training (< 1 = all available cores)
+    private int trainingThreads = 0;
     
     // Network parameters
     private OptimizationAlgorithm optimizationAlgorithm = 
@@ -97,6 +106,16 @@ public class DL4JSequenceRecommenderTraits
         this.maxSentenceLength = truncateLength;
     }
 
+    public boolean isDynamicPadding()
+    {
+        return dynamicPadding;
+    }
+
+    public void setDynamicPadding(boolean aDynamicPadding)
+    {
+        dynamicPadding = aDynamicPadding;
+    }
+
     public int getnEpochs()
     {
         return nEpochs;
@@ -107,6 +126,36 @@ public class DL4JSequenceRecommenderTraits
         this.nEpochs = nEpochs;
     }
 
+    public int getEarlyStoppingPatience()
+    {
+        return earlyStoppingPatience;
+    }
+
+    public void setEarlyStoppingPatience(int aEarlyStoppingPatience)
+    {
+        earlyStoppingPatience = aEarlyStoppingPatience;
+    }
+
+    public double getValidationSetRatio()
+    {
+        return validationSetRatio;
+    }
+
+    public void setValidationSetRatio(double aValidationSetRatio)
+    {
+        validationSetRatio = aValidationSetRatio;
+    }
+
+    public int getTrainingThreads()
+    {
+        return trainingThreads;
+    }
+
+    public void setTrainingThreads(int aTrainingThreads)
+    {
+        trainingThreads = aTrainingThreads;
+    }
+
     public OptimizationAlgorithm getOptimizationAlgorithm()
     {
         return optimizationAlgorithm;
@@ -23,6 +23,8 @@ import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
 import static org.apache.uima.fit.util.JCasUtil.select;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.point;
 
 import java.io.File;
 import java.io.IOException;
@@ -36,7 +38,10 @@ import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
@@ -54,11 +59,18 @@ import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.PercentageBase
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings.EmbeddingService;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings.EmbeddingServiceImpl;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.embeddings.WordEmbeddings;
+import de.tudarmstadt.ukp.inception.recommendation.imls.dl4j.pos.DL4JSequenceRecommender.Sample;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 public class DL4JSequenceRecommenderTest
 {
     private static File cache = DkproTestContext.getCacheFolder();
     private static DatasetFactory loader = new DatasetFactory(cache);
+    private static EmbeddingService embeddings = new EmbeddingServiceImpl(cache);
 
     private RecommenderContext context;
     private DL4JSequenceRecommenderTraits traits;
@@ -80,6 +92,9 @@ public class DL4JSequenceRecommenderTest
         traits.setTrainingSetSizeLimit(250);
         traits.setPredictionLimit(250);
         traits.setBatchSize(50);
+        // Keep the tests fast - tests for early stopping and parallel training enable these
+        traits.setnEpochs(1);
+        traits.setTrainingThreads(1);
     }
 
     @Test
@@ -122,7 +137,7 @@ public class DL4JSequenceRecommenderTest
         ne.addToIndexes();
         
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         List<String> labels = sut.extractTokenLabels(
                 new ArrayList<>(select(jcas, Token.class)), 
                 new ArrayList<>(select(jcas, NamedEntity.class)));
@@ -159,7 +174,7 @@ public class DL4JSequenceRecommenderTest
         ne.addToIndexes();
         
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         List<String> labels = sut.extractTokenLabels(
                 new ArrayList<>(select(jcas, Token.class)), 
                 new ArrayList<>(select(jcas, NamedEntity.class)));
@@ -187,7 +202,7 @@ public class DL4JSequenceRecommenderTest
         ne.addToIndexes();
         
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         
         assertThatThrownBy(() -> sut.extractTokenLabels(
                 new ArrayList<>(select(jcas, Token.class)), 
@@ -215,7 +230,7 @@ public class DL4JSequenceRecommenderTest
         ne.addToIndexes();
         
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         
         assertThatThrownBy(() -> sut.extractTokenLabels(
                 new ArrayList<>(select(jcas, Token.class)), 
@@ -243,7 +258,7 @@ public class DL4JSequenceRecommenderTest
         ne.addToIndexes();
         
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         
         assertThatThrownBy(() -> sut.extractTokenLabels(
                 new ArrayList<>(select(jcas, Token.class)), 
@@ -256,7 +271,7 @@ public class DL4JSequenceRecommenderTest
     public void thatPosTrainingWorks() throws Exception
     {
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadPosDevelopmentData();
 
         sut.train(context, asList(cas.getCas()));
@@ -270,7 +285,7 @@ public class DL4JSequenceRecommenderTest
     public void thatPosPredictionWorks() throws Exception
     {
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadPosDevelopmentData();
         
         sut.train(context, asList(cas.getCas()));
@@ -283,12 +298,55 @@ public class DL4JSequenceRecommenderTest
             .isNotEmpty();
     }
 
+    @Test
+    public void thatParallelPosTrainingWorks() throws Exception
+    {
+        traits.setTrainingThreads(2);
+        traits.setnEpochs(2);
+        DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
+                embeddings);
+        JCas cas = loadPosDevelopmentData();
+        
+        sut.train(context, asList(cas.getCas()));
+        
+        assertThat(sut.getTrainedEpochs()).isEqualTo(2);
+        
+        sut.predict(context, cas.getCas());
+
+        assertThat(JCasUtil.select(cas, PredictedSpan.class))
+            .as("Predictions have been written to CAS")
+            .isNotEmpty();
+    }
+
+    @Test
+    public void thatTrainingStopsWhenValidationScoreDoesNotImprove() throws Exception
+    {
+        // Clipping all gradients to zero freezes the model, so the validation score can only
+        // improve in the first epoch
+        traits.setGradientNormalizationThreshold(0.0);
+        traits.setL2(0.0);
+        traits.setnEpochs(20);
+        traits.setEarlyStoppingPatience(2);
+        DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
+                embeddings);
+        JCas cas = loadPosDevelopmentData();
+        
+        sut.train(context, asList(cas.getCas()));
+        
+        assertThat(sut.getTrainedEpochs())
+            .as("Training stopped after the patience ran out")
+            .isEqualTo(3);
+        assertThat(context.get(DL4JSequenceRecommender.KEY_MODEL))
+            .as("Model has been set")
+            .isPresent();
+    }
+
     @Test
     public void thatPosEvaluationWorks() throws Exception
     {
         DataSplitter splitStrategy = new PercentageBasedSplitter(0.8, 10);
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadPosDevelopmentData();
 
         double score = sut.evaluate(asList(cas.getCas()), splitStrategy).getDefaultScore();
@@ -302,7 +360,7 @@ public class DL4JSequenceRecommenderTest
     public void thatNerTrainingWorks() throws Exception
     {
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildNerRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadNerDevelopmentData();
 
         sut.train(context, asList(cas.getCas()));
@@ -316,7 +374,7 @@ public class DL4JSequenceRecommenderTest
     public void thatNerPredictionWorks() throws Exception
     {
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildNerRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadNerDevelopmentData();
         
         sut.train(context, asList(cas.getCas()));
@@ -334,7 +392,7 @@ public class DL4JSequenceRecommenderTest
     {
         DataSplitter splitStrategy = new PercentageBasedSplitter(0.8, 10);
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildNerRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadNerDevelopmentData();
 
         double score = sut.evaluate(asList(cas.getCas()), splitStrategy).getDefaultScore();
@@ -349,7 +407,7 @@ public class DL4JSequenceRecommenderTest
     {
         IncrementalSplitter splitStrategy = new IncrementalSplitter(0.8, 50, 10);
         DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildNerRecommender(), traits,
-                cache);
+                embeddings);
         JCas cas = loadNerDevelopmentData();
 
         int i = 0;
@@ -366,6 +424,115 @@ public class DL4JSequenceRecommenderTest
         }
     }
 
+    @Test
+    public void thatVectorizedDataHasNetworkLayout() throws Exception
+    {
+        WordEmbeddings glove = embeddings.getEmbeddings("glove.6B.50d.dl4jw2v");
+        DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
+                embeddings);
+        sut.ensureEmbeddingsAreAvailable();
+        
+        Object2IntMap<String> tagset = new Object2IntOpenHashMap<>();
+        DataSet data = sut.vectorize(asList(
+                new Sample(asList("the", "cat", "sat"), asList("DT", "NN", "VBD")),
+                new Sample(asList("a", "dog"), asList("DT", "NN"))), tagset, true);
+        
+        // The network expects [samples, features, time steps] - with dynamic padding, the time
+        // steps are limited to the longest sentence in the batch
+        INDArray features = data.getFeatures();
+        INDArray labels = data.getLabels();
+        INDArray mask = data.getFeaturesMaskArray();
+        assertThat(features.shape()).containsExactly(2, glove.dimensions(), 3);
+        assertThat(labels.shape()).containsExactly(2, traits.getMaxTagsetSize(), 3);
+        assertThat(mask.shape()).containsExactly(2, 3);
+        
+        // Each time step holds the embedding of its token
+        assertThat(features.get(point(0), all(), point(1)).toFloatVector())
+                .containsExactly(glove.lookup("cat"));
+        assertThat(features.get(point(1), all(), point(1)).toFloatVector())
+                .containsExactly(glove.lookup("dog"));
+        
+        // Each time step holds the 1-hot encoded label of its token
+        assertThat(tagset).containsOnlyKeys("DT", "NN", "VBD");
+        INDArray catLabel = labels.get(point(0), all(), point(1));
+        assertThat(catLabel.getFloat(tagset.getInt("NN"))).isEqualTo(1.0f);
+        assertThat(catLabel.sumNumber().floatValue()).isEqualTo(1.0f);
+        
+        // The padding of the shorter sentence is masked and neither has features nor labels
+        assertThat(mask.getFloat(0, 2)).isEqualTo(1.0f);
+        assertThat(mask.getFloat(1, 1)).isEqualTo(1.0f);
+        assertThat(mask.getFloat(1, 2)).isEqualTo(0.0f);
+        assertThat(features.get(point(1), all(), point(2)).sumNumber().floatValue())
+                .isEqualTo(0.0f);
+        assertThat(labels.get(point(1), all(), point(2)).sumNumber().floatValue())
+                .isEqualTo(0.0f);
+    }
+    
+    @Test
+    public void thatExceedingTheMaximumTagsetSizeFails() throws Exception
+    {
+        traits.setMaxTagsetSize(2);
+        DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
+                embeddings);
+        JCas cas = loadPosDevelopmentData();
+        
+        assertThatThrownBy(() -> sut.train(context, asList(cas.getCas())))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Tagset exceeds the maximum size of [2] tags");
+    }
+    
+    @Test
+    public void thatEmbeddingsAreSharedAndLookedUpInBulk() throws Exception
+    {
+        WordEmbeddings glove = embeddings.getEmbeddings("glove.6B.50d.dl4jw2v");
+        
+        assertThat(embeddings.getEmbeddings(glove.getFile())).isSameAs(glove);
+        
+        float[] unknown = new float[glove.dimensions()];
+        INDArray matrix = glove.lookup(asList("the", "cat", "xyzzyxyzzy"), unknown);
+        
+        assertThat(matrix.shape()).containsExactly(3, glove.dimensions());
+        assertThat(matrix.getRow(1).toFloatVector()).containsExactly(glove.lookup("cat"));
+        assertThat(glove.lookup("xyzzyxyzzy")).isNull();
+        assertThat(matrix.getRow(2).toFloatVector()).containsExactly(unknown);
+    }
+    
+    @Ignore("Benchmark - run manually")
+    @Test
+    public void benchmarkDynamicPadding() throws Exception
+    {
+        JCas cas = loadPosDevelopmentData();
+        traits.setTrainingSetSizeLimit(Integer.MAX_VALUE);
+        
+        // Warm up
+        traits.setnEpochs(1);
+        new DL4JSequenceRecommender(buildPosRecommender(), traits, embeddings)
+                .train(new RecommenderContext(), asList(cas.getCas()));
+        
+        for (boolean dynamicPadding : new boolean[] { false, true }) {
+            traits.setDynamicPadding(dynamicPadding);
+            
+            // The difference between a short and a long training run excludes the time needed
+            // to set up the network and to vectorize the data
+            traits.setnEpochs(1);
+            long shortRun = timeTraining(cas);
+            traits.setnEpochs(4);
+            long longRun = timeTraining(cas);
+            
+            System.out.printf("Dynamic padding %-5b: %6d ms per epoch%n", dynamicPadding,
+                    (longRun - shortRun) / 3);
+        }
+    }
+    
+    private long timeTraining(JCas aCas)
+    {
+        DL4JSequenceRecommender sut = new DL4JSequenceRecommender(buildPosRecommender(), traits,
+                embeddings);
+        long start = System.currentTimeMillis();
+        sut.train(new RecommenderContext(), asList(aCas.getCas()));
+        return System.currentTimeMillis() - start;
+    }
+
     private JCas loadPosDevelopmentData() throws IOException, UIMAException
     {
         Dataset ds = loader.load("conll2000-en");
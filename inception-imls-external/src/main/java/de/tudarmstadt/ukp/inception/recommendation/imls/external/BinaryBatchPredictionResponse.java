@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BinaryBatchPredictionResponse
+{
+    /**
+     * The predictions for each document in the same order as in the request.
+     */
+    @JsonProperty("documents")
+    private List<BinaryPredictionResponse> documents = new ArrayList<>();
+
+    public List<BinaryPredictionResponse> getDocuments()
+    {
+        return documents;
+    }
+
+    public void setDocuments(List<BinaryPredictionResponse> aDocuments)
+    {
+        documents = aDocuments;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.cas.impl.Serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads and writes the binary variant of the external recommender protocol. Instead of JSON with
+ * embedded XMI, the request body is a gzip-compressed stream containing the metadata as JSON, the
+ * type system XML and the documents in UIMA compressed binary form (form 4). Form 4 does not
+ * contain the type system and can only be deserialized into a CAS using exactly the same type
+ * system as the sender, so the receiver must create its CASes from the type system XML. The type
+ * system is only sent if the receiver does not know it yet. A receiver which does not know the
+ * type system referenced by a request responds with {@link #SC_UNKNOWN_TYPE_SYSTEM} and the
+ * sender repeats the request including the type system.
+ * <p>
+ * The gzip compression is part of the format and is applied by {@link #write} and undone by
+ * {@link #read}. Requests therefore do not declare a {@code Content-Encoding}.
+ */
+public final class BinaryCasProtocol
+{
+    public static final String MEDIA_TYPE = "application/vnd.inception.cas-binary";
+    
+    /**
+     * Status code indicating that the receiver does not know the type system referenced by the
+     * request.
+     */
+    public static final int SC_UNKNOWN_TYPE_SYSTEM = 412;
+    
+    private static final int MAGIC = 0x49434153; // "ICAS"
+    private static final int VERSION = 1;
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private BinaryCasProtocol()
+    {
+        // No instances
+    }
+    
+    /**
+     * @return an identifier for the given type system XML which is stable across sessions.
+     */
+    public static String getTypeSystemId(byte[] aTypeSystem)
+    {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(aTypeSystem)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Serializes the given CAS in compressed binary form 4. The type system is not included.
+     */
+    public static byte[] serializeCas(CAS aCas) throws IOException
+    {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Serialization.serializeWithCompression(aCas, out);
+            return out.toByteArray();
+        }
+        catch (CASRuntimeException e) {
+            throw new IOException("Unable to serialize CAS", e);
+        }
+    }
+    
+    /**
+     * Loads the given binary data into the given CAS. Since the data is in form 4, the CAS must
+     * have been created using exactly the type system sent along with the data.
+     */
+    public static void deserializeCas(byte[] aData, CAS aCas) throws IOException
+    {
+        try (InputStream in = new ByteArrayInputStream(aData)) {
+            Serialization.deserializeCAS(aCas, in);
+        }
+        catch (CASRuntimeException e) {
+            throw new IOException("Unable to deserialize CAS", e);
+        }
+    }
+
+    public static void write(BinaryRequest aRequest, OutputStream aOut) throws IOException
+    {
+        // Do not close the given stream - only finish the compression
+        GZIPOutputStream gzip = new GZIPOutputStream(aOut);
+        DataOutputStream out = new DataOutputStream(gzip);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeBytes(out, aRequest.getTypeSystemId().getBytes(UTF_8));
+        writeBytes(out, aRequest.getTypeSystem());
+        writeBytes(out, MAPPER.writeValueAsBytes(aRequest.getMetadata()));
+        out.writeInt(aRequest.getDocuments().size());
+        for (BinaryDocument doc : aRequest.getDocuments()) {
+            out.writeLong(doc.getDocumentId());
+            writeBytes(out, doc.getUserId() != null ? doc.getUserId().getBytes(UTF_8) : null);
+            writeBytes(out, doc.getCas());
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    public static BinaryRequest read(InputStream aIn) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(aIn));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary CAS protocol message");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary CAS protocol version [" + version + "]");
+        }
+        
+        BinaryRequest request = new BinaryRequest();
+        request.setTypeSystemId(new String(readBytes(in), UTF_8));
+        request.setTypeSystem(readBytes(in));
+        request.setMetadata(MAPPER.readValue(readBytes(in), Metadata.class));
+        int count = in.readInt();
+        List<BinaryDocument> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long documentId = in.readLong();
+            byte[] userId = readBytes(in);
+            byte[] cas = readBytes(in);
+            documents.add(new BinaryDocument(documentId,
+                    userId != null ? new String(userId, UTF_8) : null, cas));
+        }
+        request.setDocuments(documents);
+        return request;
+    }
+    
+    private static void writeBytes(DataOutputStream aOut, byte[] aData) throws IOException
+    {
+        // A length of -1 encodes null
+        if (aData == null) {
+            aOut.writeInt(-1);
+        }
+        else {
+            aOut.writeInt(aData.length);
+            aOut.write(aData);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream aIn) throws IOException
+    {
+        int length = aIn.readInt();
+        if (length < 0) {
+            return null;
+        }
+        
+        byte[] data = new byte[length];
+        aIn.readFully(data);
+        return data;
+    }
+}
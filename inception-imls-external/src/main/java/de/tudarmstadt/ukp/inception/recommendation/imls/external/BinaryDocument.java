@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+public class BinaryDocument
+{
+    private final long documentId;
+    private final String userId;
+    private final byte[] cas;
+
+    public BinaryDocument(long aDocumentId, String aUserId, byte[] aCas)
+    {
+        documentId = aDocumentId;
+        userId = aUserId;
+        cas = aCas;
+    }
+
+    public long getDocumentId()
+    {
+        return documentId;
+    }
+
+    public String getUserId()
+    {
+        return userId;
+    }
+
+    /**
+     * @return the CAS in UIMA compressed binary form (form 4). It can only be deserialized into
+     *         a CAS using the same type system as the sender.
+     */
+    public byte[] getCas()
+    {
+        return cas;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BinaryPredictionResponse
+{
+    @JsonProperty("annotations")
+    private List<PredictedAnnotation> annotations = new ArrayList<>();
+
+    public List<PredictedAnnotation> getAnnotations()
+    {
+        return annotations;
+    }
+
+    public void setAnnotations(List<PredictedAnnotation> aAnnotations)
+    {
+        annotations = aAnnotations;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryRequest
+{
+    private String typeSystemId;
+    private byte[] typeSystem;
+    private Metadata metadata;
+    private List<BinaryDocument> documents = new ArrayList<>();
+
+    public String getTypeSystemId()
+    {
+        return typeSystemId;
+    }
+
+    public void setTypeSystemId(String aTypeSystemId)
+    {
+        typeSystemId = aTypeSystemId;
+    }
+
+    /**
+     * @return the type system XML or {@code null} if the sender assumes that the receiver already
+     *         knows the type system identified by {@link #getTypeSystemId()}.
+     */
+    public byte[] getTypeSystem()
+    {
+        return typeSystem;
+    }
+
+    public void setTypeSystem(byte[] aTypeSystem)
+    {
+        typeSystem = aTypeSystem;
+    }
+
+    public Metadata getMetadata()
+    {
+        return metadata;
+    }
+
+    public void setMetadata(Metadata aMetadata)
+    {
+        metadata = aMetadata;
+    }
+
+    public List<BinaryDocument> getDocuments()
+    {
+        return documents;
+    }
+
+    public void setDocuments(List<BinaryDocument> aDocuments)
+    {
+        documents = aDocuments;
+    }
+}
@@ -17,8 +17,11 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.imls.external;
 
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.BinaryCasProtocol.SC_UNKNOWN_TYPE_SYSTEM;
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,11 +29,24 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.Type;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.cas.impl.XmiCasSerializer;
@@ -54,28 +70,47 @@ import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import okhttp3.Call;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.BufferedSink;
 
 public class ExternalRecommender
     implements RecommendationEngine
 {
     private static final Logger LOG = LoggerFactory.getLogger(ExternalRecommender.class);
     private static final MediaType JSON = MediaType.parse("application/json");
+    private static final MediaType BINARY = MediaType.parse(BinaryCasProtocol.MEDIA_TYPE);
+    private static final String BATCH_PREDICT = "predict/batch";
 
     private final Recommender recommender;
     private final ExternalRecommenderTraits traits;
     private final OkHttpClient client;
+    private final Set<String> knownTypeSystems;
 
-    public ExternalRecommender(Recommender aRecommender, ExternalRecommenderTraits aTraits)
+    public ExternalRecommender(Recommender aRecommender, ExternalRecommenderTraits aTraits,
+            OkHttpClient aClient)
+    {
+        this(aRecommender, aTraits, aClient, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * @param aKnownTypeSystems
+     *            IDs of the type systems already known to the remote side. This set is updated by
+     *            the recommender and should be shared by all recommenders talking to the same
+     *            remote side.
+     */
+    public ExternalRecommender(Recommender aRecommender, ExternalRecommenderTraits aTraits,
+            OkHttpClient aClient, Set<String> aKnownTypeSystems)
     {
         recommender = aRecommender;
         traits = aTraits;
-        client = new OkHttpClient();
+        client = aClient;
+        knownTypeSystems = aKnownTypeSystems;
     }
 
     @Override
@@ -84,6 +119,16 @@ public class ExternalRecommender
     {
         aContext.markAsReadyForPrediction();
 
+        if (traits.isBinaryProtocol()) {
+            trainBinary(aCasses);
+        }
+        else {
+            trainJson(aCasses);
+        }
+    }
+
+    private void trainJson(List<CAS> aCasses) throws RecommendationException
+    {
         TrainingRequest trainingRequest = new TrainingRequest();
         List<Document> documents = new ArrayList<>();
 
@@ -106,22 +151,20 @@ public class ExternalRecommender
 
         trainingRequest.setDocuments(documents);
 
-
-        HttpUrl url = HttpUrl.parse(traits.getRemoteUrl()).newBuilder()
-            .addPathSegment("train")
-            .build();
         RequestBody body = RequestBody.create(JSON, toJson(trainingRequest));
-        Request request = new Request.Builder().url(url).post(body).build();
+        Request request = new Request.Builder().url(buildUrl("train")).post(body).build();
 
-        Response response = sendRequest(request);
+        // The response must be closed so the connection can be re-used
+        try (Response response = sendRequest(request, new Calls())) {
+            checkResponse(response);
+        }
+    }
 
-        // If the response indicates that the request was not successful,
-        // then it does not make sense to go on and try to decode the XMI
-        if (!response.isSuccessful()) {
-            int code = response.code();
-            String responseBody = getResponseBody(response);
-            String msg = format("Request was not successful: [%d] - [%s]", code, responseBody);
-            throw new RecommendationException(msg);
+    private void trainBinary(List<CAS> aCasses) throws RecommendationException
+    {
+        // As for the JSON protocol, we assume that the type system for all CAS are the same
+        try (Response response = sendBinaryRequest("train", aCasses, new Calls())) {
+            checkResponse(response);
         }
     }
 
@@ -135,6 +178,163 @@ public class ExternalRecommender
         // to differentiate between the two
         removePredictedAnnotations(aCas);
 
+        if (traits.isBinaryProtocol()) {
+            predictBinary(aCas, new Calls());
+        }
+        else {
+            predictJson(aCas, new Calls());
+        }
+    }
+
+    /**
+     * Predicts on the given documents using several requests. If the prediction batch size is
+     * larger than one, each request carries a batch of documents and is sent to the batch
+     * endpoint. Up to the configured number of requests are in flight concurrently. The next batch
+     * is serialized and sent while the responses to the previous ones are still outstanding and
+     * each response is merged into its CASes as soon as it arrives. When this method returns or
+     * fails, all requests have been cancelled or completed and no response is merged into the
+     * CASes anymore.
+     */
+    @Override
+    public void predict(RecommenderContext aContext, List<CAS> aCasses)
+        throws RecommendationException
+    {
+        int batchSize = Math.max(1, traits.getPredictionBatchSize());
+        int maxConcurrentRequests = Math.max(1, traits.getMaxConcurrentRequests());
+        Semaphore slots = new Semaphore(maxConcurrentRequests);
+        AtomicBoolean failed = new AtomicBoolean();
+        Calls calls = new Calls();
+        
+        // The pool and its queue are bounded by the number of concurrent requests. We do not
+        // use the executor of the HTTP client because it is shared with all other recommenders
+        // talking to the same remote side.
+        ExecutorService executor = new ThreadPoolExecutor(maxConcurrentRequests,
+                maxConcurrentRequests, 0L, MILLISECONDS,
+                new ArrayBlockingQueue<>(maxConcurrentRequests),
+                new BasicThreadFactory.Builder()
+                        .namingPattern("external-recommender-%d")
+                        .daemon(true)
+                        .build());
+        
+        // Responses are collected in the order in which they arrive, so a failed request is
+        // noticed even if an earlier one is still waiting for its response
+        CompletionService<Void> requests = new ExecutorCompletionService<>(executor);
+        int requestCount = 0;
+        try {
+            for (int i = 0; i < aCasses.size(); i += batchSize) {
+                List<CAS> batch = aCasses.subList(i, Math.min(i + batchSize, aCasses.size()));
+                
+                slots.acquire();
+                
+                boolean submitted = false;
+                try {
+                    // No need to send any further requests if one has already failed
+                    if (failed.get()) {
+                        break;
+                    }
+                    
+                    requests.submit(() -> {
+                        try {
+                            predictBatch(batch, calls);
+                            return null;
+                        }
+                        catch (RecommendationException | RuntimeException e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        finally {
+                            slots.release();
+                        }
+                    });
+                    requestCount++;
+                    submitted = true;
+                }
+                finally {
+                    // If the batch was not handed over to the executor, it cannot release the
+                    // slot anymore
+                    if (!submitted) {
+                        slots.release();
+                    }
+                }
+            }
+            
+            for (int i = 0; i < requestCount; i++) {
+                requests.take().get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommendationException("Interrupted while waiting for predictions", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RecommendationException) {
+                throw (RecommendationException) e.getCause();
+            }
+            throw new RecommendationException("Error while predicting!", e.getCause());
+        }
+        catch (RejectedExecutionException e) {
+            throw new RecommendationException("Unable to send prediction request", e);
+        }
+        finally {
+            // Cancel the requests that are still outstanding. Cancelling their HTTP calls also
+            // releases the threads blocked on a response, so waiting for the threads to stop
+            // does not take long. Afterwards, no response can be merged into the CASes anymore.
+            calls.cancelAll();
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+    }
+    
+    /**
+     * Waits for the given executor to stop, even if the current thread is interrupted. The
+     * interrupt is restored afterwards.
+     */
+    private static void awaitTermination(ExecutorService aExecutor)
+    {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (!aExecutor.isTerminated()) {
+                try {
+                    aExecutor.awaitTermination(Long.MAX_VALUE, MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void predictBatch(List<CAS> aBatch, Calls aCalls) throws RecommendationException
+    {
+        for (CAS cas : aBatch) {
+            removePredictedAnnotations(cas);
+        }
+        
+        if (traits.getPredictionBatchSize() <= 1) {
+            for (CAS cas : aBatch) {
+                if (traits.isBinaryProtocol()) {
+                    predictBinary(cas, aCalls);
+                }
+                else {
+                    predictJson(cas, aCalls);
+                }
+            }
+        }
+        else if (traits.isBinaryProtocol()) {
+            predictBatchBinary(aBatch, aCalls);
+        }
+        else {
+            predictBatchJson(aBatch, aCalls);
+        }
+    }
+
+    private void predictJson(CAS aCas, Calls aCalls) throws RecommendationException
+    {
         String typeSystem = serializeTypeSystem(aCas);
 
         PredictionRequest predictionRequest = new PredictionRequest();
@@ -144,26 +344,50 @@ public class ExternalRecommender
         // Fill in metadata
         predictionRequest.setMetadata(buildMetadata(aCas));
 
-        HttpUrl url = HttpUrl.parse(traits.getRemoteUrl()).newBuilder()
-            .addPathSegment("predict")
-            .build();
         RequestBody body = RequestBody.create(JSON, toJson(predictionRequest));
-        Request request = new Request.Builder().url(url).post(body).build();
+        Request request = new Request.Builder().url(buildUrl("predict")).post(body).build();
 
-        Response response = sendRequest(request);
+        PredictionResponse predictionResponse;
+        // The response must be closed so the connection can be re-used
+        try (Response response = sendRequest(request, aCalls)) {
+            checkResponse(response);
+            predictionResponse = deserializeResponse(response, PredictionResponse.class);
+        }
 
-        // If the response indicates that the request was not successful,
-        // then it does not make sense to go on and try to decode the XMI
-        if (!response.isSuccessful()) {
-            int code = response.code();
-            String responseBody = getResponseBody(response);
-            String msg = format("Request was not successful: [%d] - [%s]", code, responseBody);
-            throw new RecommendationException(msg);
+        mergeXmi(aCas, predictionResponse.getDocument());
+    }
+
+    private void predictBatchJson(List<CAS> aBatch, Calls aCalls)
+        throws RecommendationException
+    {
+        // As for training, we assume that the type system for all CAS are the same
+        BatchPredictionRequest predictionRequest = new BatchPredictionRequest();
+        predictionRequest.setTypeSystem(serializeTypeSystem(aBatch.get(0)));
+        predictionRequest.setMetadata(buildMetadata(aBatch.get(0)));
+        List<Document> documents = new ArrayList<>();
+        for (CAS cas : aBatch) {
+            documents.add(buildDocument(cas));
         }
+        predictionRequest.setDocuments(documents);
 
-        PredictionResponse predictionResponse = deserializePredictionResponse(response);
+        RequestBody body = RequestBody.create(JSON, toJson(predictionRequest));
+        Request request = new Request.Builder().url(buildUrl(BATCH_PREDICT)).post(body).build();
+
+        BatchPredictionResponse predictionResponse;
+        try (Response response = sendRequest(request, aCalls)) {
+            checkResponse(response);
+            predictionResponse = deserializeResponse(response, BatchPredictionResponse.class);
+        }
+
+        checkBatchSize(aBatch, predictionResponse.getDocuments());
+        for (int i = 0; i < aBatch.size(); i++) {
+            mergeXmi(aBatch.get(i), predictionResponse.getDocuments().get(i));
+        }
+    }
 
-        try (InputStream is = IOUtils.toInputStream(predictionResponse.getDocument(), UTF_8)) {
+    private void mergeXmi(CAS aCas, String aXmi) throws RecommendationException
+    {
+        try (InputStream is = IOUtils.toInputStream(aXmi, UTF_8)) {
             XmiCasDeserializer.deserialize(is, aCas, true);
         }
         catch (SAXException | IOException e) {
@@ -171,6 +395,152 @@ public class ExternalRecommender
         }
     }
 
+    private void predictBinary(CAS aCas, Calls aCalls) throws RecommendationException
+    {
+        BinaryPredictionResponse predictionResponse;
+        try (Response response = sendBinaryRequest("predict", asList(aCas), aCalls)) {
+            checkResponse(response);
+            predictionResponse = deserializeResponse(response, BinaryPredictionResponse.class);
+        }
+
+        addPredictions(aCas, predictionResponse);
+    }
+
+    private void predictBatchBinary(List<CAS> aBatch, Calls aCalls)
+        throws RecommendationException
+    {
+        BinaryBatchPredictionResponse predictionResponse;
+        try (Response response = sendBinaryRequest(BATCH_PREDICT, aBatch, aCalls)) {
+            checkResponse(response);
+            predictionResponse = deserializeResponse(response,
+                    BinaryBatchPredictionResponse.class);
+        }
+
+        checkBatchSize(aBatch, predictionResponse.getDocuments());
+        for (int i = 0; i < aBatch.size(); i++) {
+            addPredictions(aBatch.get(i), predictionResponse.getDocuments().get(i));
+        }
+    }
+
+    /**
+     * The binary protocol only returns the predicted annotations, so we add them to the CAS.
+     */
+    private void addPredictions(CAS aCas, BinaryPredictionResponse aPredictions)
+        throws RecommendationException
+    {
+        Type type = CasUtil.getType(aCas, getPredictedType());
+        Feature feature = type.getFeatureByBaseName(getPredictedFeature());
+        if (feature == null) {
+            throw new RecommendationException(format("Type [%s] has no feature [%s]",
+                    getPredictedType(), getPredictedFeature()));
+        }
+        
+        int length = aCas.getDocumentText().length();
+        for (PredictedAnnotation prediction : aPredictions.getAnnotations()) {
+            if (prediction.getBegin() < 0 || prediction.getBegin() > prediction.getEnd()
+                    || prediction.getEnd() > length) {
+                throw new RecommendationException(format(
+                        "Predicted annotation [%d-%d] is outside of the document",
+                        prediction.getBegin(), prediction.getEnd()));
+            }
+            
+            AnnotationFS annotation = aCas.createAnnotation(type, prediction.getBegin(),
+                    prediction.getEnd());
+            annotation.setFeatureValueFromString(feature, prediction.getLabel());
+            aCas.addFsToIndexes(annotation);
+        }
+    }
+
+    private void checkBatchSize(List<CAS> aBatch, List<?> aResults)
+        throws RecommendationException
+    {
+        if (aResults.size() != aBatch.size()) {
+            throw new RecommendationException(format(
+                    "Expected predictions for [%d] documents but received [%d]", aBatch.size(),
+                    aResults.size()));
+        }
+    }
+
+    /**
+     * Sends the given CASes using the binary protocol. The type system is only included if the
+     * remote side is not yet known to have it. If the remote side has forgotten it in the meantime
+     * (e.g. because it was restarted), the request is repeated including the type system.
+     */
+    private Response sendBinaryRequest(String aEndpoint, List<CAS> aCasses, Calls aCalls)
+        throws RecommendationException
+    {
+        byte[] typeSystem = serializeTypeSystem(aCasses.get(0)).getBytes(UTF_8);
+        String typeSystemId = BinaryCasProtocol.getTypeSystemId(typeSystem);
+
+        BinaryRequest binaryRequest = new BinaryRequest();
+        binaryRequest.setTypeSystemId(typeSystemId);
+        binaryRequest.setMetadata(buildMetadata(aCasses.get(0)));
+        for (CAS cas : aCasses) {
+            binaryRequest.getDocuments().add(buildBinaryDocument(cas));
+        }
+        
+        if (!knownTypeSystems.contains(typeSystemId)) {
+            binaryRequest.setTypeSystem(typeSystem);
+        }
+        
+        Response response = sendRequest(buildBinaryRequest(aEndpoint, binaryRequest), aCalls);
+        if (response.code() == SC_UNKNOWN_TYPE_SYSTEM && binaryRequest.getTypeSystem() == null) {
+            LOG.debug("Remote does not know type system [{}] - sending it again", typeSystemId);
+            response.close();
+            knownTypeSystems.remove(typeSystemId);
+            binaryRequest.setTypeSystem(typeSystem);
+            response = sendRequest(buildBinaryRequest(aEndpoint, binaryRequest), aCalls);
+        }
+        
+        if (response.isSuccessful()) {
+            knownTypeSystems.add(typeSystemId);
+        }
+        
+        return response;
+    }
+    
+    private Request buildBinaryRequest(String aEndpoint, BinaryRequest aBinaryRequest)
+    {
+        RequestBody body = new RequestBody()
+        {
+            @Override
+            public MediaType contentType()
+            {
+                return BINARY;
+            }
+
+            @Override
+            public void writeTo(BufferedSink aSink) throws IOException
+            {
+                BinaryCasProtocol.write(aBinaryRequest, aSink.outputStream());
+            }
+        };
+        
+        return new Request.Builder()
+                .url(buildUrl(aEndpoint))
+                .post(body)
+                .build();
+    }
+    
+    private BinaryDocument buildBinaryDocument(CAS aCas) throws RecommendationException
+    {
+        CASMetadata casMetadata = getCasMetadata(aCas);
+        try {
+            return new BinaryDocument(casMetadata.getSourceDocumentId(),
+                    casMetadata.getUsername(), BinaryCasProtocol.serializeCas(aCas));
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while serializing CAS!", e);
+        }
+    }
+    
+    private HttpUrl buildUrl(String aEndpoint)
+    {
+        return HttpUrl.parse(traits.getRemoteUrl()).newBuilder()
+            .addPathSegments(aEndpoint)
+            .build();
+    }
+
     private void removePredictedAnnotations(CAS aCas)
     {
         Type type = CasUtil.getType(aCas, getPredictedType());
@@ -237,11 +607,12 @@ public class ExternalRecommender
         );
     }
 
-    private PredictionResponse deserializePredictionResponse(Response response)
-        throws RecommendationException {
+    private <T> T deserializeResponse(Response aResponse, Class<T> aClass)
+        throws RecommendationException
+    {
         ObjectMapper objectMapper = new ObjectMapper();
         try {
-            return objectMapper.readValue(response.body().byteStream(), PredictionResponse.class);
+            return objectMapper.readValue(aResponse.body().byteStream(), aClass);
         } catch (IOException e) {
             throw new RecommendationException("Error while deserializing prediction response!", e);
         }
@@ -257,16 +628,28 @@ public class ExternalRecommender
         }
     }
 
-    private Response sendRequest(Request aRequest) throws RecommendationException
+    private Response sendRequest(Request aRequest, Calls aCalls) throws RecommendationException
     {
         try {
-            return client.newCall(aRequest).execute();
+            return aCalls.add(client.newCall(aRequest)).execute();
         }
         catch (IOException e) {
             throw new RecommendationException("Error while sending request!", e);
         }
     }
 
+    private void checkResponse(Response aResponse) throws RecommendationException
+    {
+        // If the response indicates that the request was not successful,
+        // then it does not make sense to go on and try to decode the response
+        if (!aResponse.isSuccessful()) {
+            int code = aResponse.code();
+            String responseBody = getResponseBody(aResponse);
+            String msg = format("Request was not successful: [%d] - [%s]", code, responseBody);
+            throw new RecommendationException(msg);
+        }
+    }
+
     private String getResponseBody(Response response) throws RecommendationException
     {
         try {
@@ -311,4 +694,32 @@ public class ExternalRecommender
     {
         return traits.isTrainable();
     }
+
+    /**
+     * The HTTP calls sent on behalf of a single operation. Cancelling them aborts requests which
+     * are waiting for a response or reading it. Calls added after cancelling are cancelled right
+     * away, so they fail instead of being sent.
+     */
+    private static class Calls
+    {
+        private final List<Call> calls = new ArrayList<>();
+        private boolean cancelled = false;
+        
+        synchronized Call add(Call aCall)
+        {
+            if (cancelled) {
+                aCall.cancel();
+            }
+            else {
+                calls.add(aCall);
+            }
+            return aCall;
+        }
+        
+        synchronized void cancelAll()
+        {
+            cancelled = true;
+            calls.forEach(Call::cancel);
+        }
+    }
 }
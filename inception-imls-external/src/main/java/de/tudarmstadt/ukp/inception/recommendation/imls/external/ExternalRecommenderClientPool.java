@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Provides the HTTP clients used to talk to external recommenders. All recommenders talking to the
+ * same endpoint (scheme, host and port) share a single client, i.e. its connection pool and its
+ * thread pools. Connections are kept alive and re-used across requests. HTTP/2 is used if the
+ * server supports it. The pool also remembers which type systems an endpoint already knows when
+ * the binary protocol is used.
+ */
+@Component
+public class ExternalRecommenderClientPool
+{
+    private final ExternalRecommenderProperties properties;
+    
+    private final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> knownTypeSystems = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public ExternalRecommenderClientPool(ExternalRecommenderProperties aProperties)
+    {
+        properties = aProperties;
+    }
+
+    /**
+     * Get a client for the endpoint configured in the given traits using the timeouts configured
+     * in the traits.
+     */
+    public OkHttpClient getClient(ExternalRecommenderTraits aTraits)
+    {
+        OkHttpClient shared = clients.computeIfAbsent(getEndpoint(aTraits.getRemoteUrl()),
+            endpoint -> createClient());
+        
+        // Clients derived from the shared client use the connection pool and dispatcher of the
+        // shared client, so this is cheap
+        return shared.newBuilder()
+                .connectTimeout(aTraits.getConnectTimeout(), SECONDS)
+                .readTimeout(aTraits.getReadTimeout(), SECONDS)
+                .build();
+    }
+    
+    /**
+     * Get the IDs of the type systems which have already been sent to the remote URL configured in
+     * the given traits.
+     * 
+     * @see BinaryCasProtocol#getTypeSystemId(byte[])
+     */
+    public Set<String> getKnownTypeSystems(ExternalRecommenderTraits aTraits)
+    {
+        return knownTypeSystems.computeIfAbsent(String.valueOf(aTraits.getRemoteUrl()),
+            url -> ConcurrentHashMap.newKeySet());
+    }
+    
+    @PreDestroy
+    public void destroy()
+    {
+        for (OkHttpClient client : clients.values()) {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+        clients.clear();
+        knownTypeSystems.clear();
+    }
+    
+    private OkHttpClient createClient()
+    {
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(properties.getMaxIdleConnections(),
+                        properties.getKeepAlive(), SECONDS))
+                .protocols(asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+    
+    private static String getEndpoint(String aUrl)
+    {
+        HttpUrl url = aUrl != null ? HttpUrl.parse(aUrl) : null;
+        if (url == null) {
+            return String.valueOf(aUrl);
+        }
+        
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+}
@@ -20,6 +20,7 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external;
 import static java.util.Arrays.asList;
 
 import org.apache.wicket.model.IModel;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst;
@@ -38,6 +39,14 @@ public class ExternalRecommenderFactory
     // and without the database starting to refer to non-existing recommendation tools.
     public static final String ID = "de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalClassificationTool";
 
+    private final ExternalRecommenderClientPool clientPool;
+
+    @Autowired
+    public ExternalRecommenderFactory(ExternalRecommenderClientPool aClientPool)
+    {
+        clientPool = aClientPool;
+    }
+
     @Override
     public String getId()
     {
@@ -48,7 +57,8 @@ public class ExternalRecommenderFactory
     public RecommendationEngine build(Recommender aRecommender)
     {
         ExternalRecommenderTraits traits = readTraits(aRecommender);
-        return new ExternalRecommender(aRecommender, traits);
+        return new ExternalRecommender(aRecommender, traits, clientPool.getClient(traits),
+                clientPool.getKnownTypeSystems(traits));
     }
 
     @Override
@@ -85,4 +95,10 @@ public class ExternalRecommenderFactory
     {
         return false;
     }
+    
+    @Override
+    public boolean supportsBatchPrediction()
+    {
+        return true;
+    }
 }
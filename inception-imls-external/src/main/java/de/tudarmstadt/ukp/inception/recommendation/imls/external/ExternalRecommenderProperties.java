@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties("recommenders.external")
+public class ExternalRecommenderProperties
+{
+    // Maximum number of idle connections kept open per remote endpoint
+    private int maxIdleConnections = 5;
+    // Time in seconds an idle connection is kept open for re-use
+    private int keepAlive = 300;
+
+    public int getMaxIdleConnections()
+    {
+        return maxIdleConnections;
+    }
+
+    public void setMaxIdleConnections(int aMaxIdleConnections)
+    {
+        maxIdleConnections = aMaxIdleConnections;
+    }
+
+    public int getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(int aKeepAlive)
+    {
+        keepAlive = aKeepAlive;
+    }
+}
@@ -26,6 +26,13 @@ public class ExternalRecommenderTraits
 
     private String remoteUrl;
     private boolean trainable;
+    private boolean binaryProtocol;
+    // Timeouts in seconds
+    private int connectTimeout = 10;
+    private int readTimeout = 10;
+    // Documents per prediction request - with 1, the single document endpoint is used
+    private int predictionBatchSize = 1;
+    private int maxConcurrentRequests = 4;
 
     public String getRemoteUrl()
     {
@@ -46,4 +53,54 @@ public class ExternalRecommenderTraits
     {
         trainable = aTrainable;
     }
+
+    public int getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int aConnectTimeout)
+    {
+        connectTimeout = aConnectTimeout;
+    }
+
+    public int getReadTimeout()
+    {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int aReadTimeout)
+    {
+        readTimeout = aReadTimeout;
+    }
+
+    public boolean isBinaryProtocol()
+    {
+        return binaryProtocol;
+    }
+
+    public void setBinaryProtocol(boolean aBinaryProtocol)
+    {
+        binaryProtocol = aBinaryProtocol;
+    }
+
+    public int getPredictionBatchSize()
+    {
+        return predictionBatchSize;
+    }
+
+    public void setPredictionBatchSize(int aPredictionBatchSize)
+    {
+        predictionBatchSize = aPredictionBatchSize;
+    }
+
+    public int getMaxConcurrentRequests()
+    {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int aMaxConcurrentRequests)
+    {
+        maxConcurrentRequests = aMaxConcurrentRequests;
+    }
 }
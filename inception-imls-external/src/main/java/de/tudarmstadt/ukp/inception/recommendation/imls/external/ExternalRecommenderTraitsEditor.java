@@ -19,6 +19,7 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external;
 
 import org.apache.wicket.markup.html.form.CheckBox;
 import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.NumberTextField;
 import org.apache.wicket.markup.html.form.TextField;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.model.CompoundPropertyModel;
@@ -64,9 +65,36 @@ public class ExternalRecommenderTraitsEditor
         remoteUrl.add(new UrlValidator());
         form.add(remoteUrl);
 
+        NumberTextField<Integer> connectTimeout = new NumberTextField<>("connectTimeout",
+                Integer.class);
+        connectTimeout.setMinimum(1);
+        connectTimeout.setRequired(true);
+        form.add(connectTimeout);
+
+        NumberTextField<Integer> readTimeout = new NumberTextField<>("readTimeout",
+                Integer.class);
+        readTimeout.setMinimum(1);
+        readTimeout.setRequired(true);
+        form.add(readTimeout);
+
+        NumberTextField<Integer> predictionBatchSize = new NumberTextField<>(
+                "predictionBatchSize", Integer.class);
+        predictionBatchSize.setMinimum(1);
+        predictionBatchSize.setRequired(true);
+        form.add(predictionBatchSize);
+
+        NumberTextField<Integer> maxConcurrentRequests = new NumberTextField<>(
+                "maxConcurrentRequests", Integer.class);
+        maxConcurrentRequests.setMinimum(1);
+        maxConcurrentRequests.setRequired(true);
+        form.add(maxConcurrentRequests);
+
         CheckBox trainable = new CheckBox("trainable");
         form.add(trainable);
 
+        CheckBox binaryProtocol = new CheckBox("binaryProtocol");
+        form.add(binaryProtocol);
+
         add(form);
     }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PredictedAnnotation
+{
+    private final int begin;
+    private final int end;
+    private final String label;
+
+    public PredictedAnnotation(@JsonProperty(value = "begin", required = true) int aBegin,
+            @JsonProperty(value = "end", required = true) int aEnd,
+            @JsonProperty(value = "label") String aLabel)
+    {
+        begin = aBegin;
+        end = aEnd;
+        label = aLabel;
+    }
+
+    public int getBegin()
+    {
+        return begin;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+}
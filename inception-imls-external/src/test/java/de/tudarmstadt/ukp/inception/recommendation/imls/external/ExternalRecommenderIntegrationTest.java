@@ -18,13 +18,17 @@
 package de.tudarmstadt.ukp.inception.recommendation.imls.external;
 
 import static de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil.fromJsonString;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.BinaryCasProtocol.MEDIA_TYPE;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.BinaryCasProtocol.SC_UNKNOWN_TYPE_SYSTEM;
 import static de.tudarmstadt.ukp.inception.recommendation.imls.external.util.InceptionAssertions.assertThat;
+import static java.util.Collections.synchronizedList;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
 import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
 import static org.apache.uima.fit.util.CasUtil.getType;
 import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.tuple;
 
 import java.io.File;
 import java.io.IOException;
@@ -59,6 +63,10 @@ import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
 
 public class ExternalRecommenderIntegrationTest
 {
@@ -74,10 +82,13 @@ public class ExternalRecommenderIntegrationTest
     private Recommender recommender;
     private RecommenderContext context;
     private ExternalRecommender sut;
+    private ExternalRecommenderClientPool clientPool;
     private ExternalRecommenderTraits traits;
     private RemoteStringMatchingNerRecommender remoteRecommender;
     private MockWebServer server;
     private List<String> requestBodies;
+    private List<BinaryRequest> binaryRequests;
+    private List<Long> requestSizes;
 
     @Before
     public void setUp() throws Exception
@@ -86,7 +97,6 @@ public class ExternalRecommenderIntegrationTest
         context = new RecommenderContext();
 
         traits = new ExternalRecommenderTraits();
-        sut = new ExternalRecommender(recommender, traits);
 
         remoteRecommender = new RemoteStringMatchingNerRecommender(recommender);
 
@@ -94,18 +104,44 @@ public class ExternalRecommenderIntegrationTest
         server.setDispatcher(buildDispatcher());
         server.start();
 
-        requestBodies = new ArrayList<>();
+        // The dispatcher may be called concurrently when predicting on multiple documents
+        requestBodies = synchronizedList(new ArrayList<>());
+        binaryRequests = synchronizedList(new ArrayList<>());
+        requestSizes = synchronizedList(new ArrayList<>());
 
         String url = server.url("/").toString();
         traits.setRemoteUrl(url);
+
+        clientPool = new ExternalRecommenderClientPool(new ExternalRecommenderProperties());
+        sut = new ExternalRecommender(recommender, traits, clientPool.getClient(traits),
+                clientPool.getKnownTypeSystems(traits));
     }
 
     @After
     public void tearDown() throws Exception
     {
+        clientPool.destroy();
         server.shutdown();
     }
 
+    @Test
+    public void thatConnectionsAreReused() throws Exception
+    {
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+        
+        // A second recommender for the same endpoint shares the connection of the first one
+        ExternalRecommender other = new ExternalRecommender(recommender, traits,
+                clientPool.getClient(traits));
+        other.predict(context, casses.get(0));
+        sut.predict(context, casses.get(0));
+
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(2);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
     @Test
     public void thatTrainingWorks()
     {
@@ -195,6 +231,140 @@ public class ExternalRecommenderIntegrationTest
             });
     }
 
+    @Test
+    public void thatBinaryPredictingWorks() throws Exception
+    {
+        traits.setBinaryProtocol(true);
+
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+
+        CAS cas = casses.get(0);
+        createNamedEntity(cas, "FAKE");
+        sut.predict(context, cas);
+
+        assertThat(cas).as("Predictions are correct")
+            .containsNamedEntity("Ecce homo", "OTH")
+            .containsNamedEntity("The Lindsey School Lindsey School & Community Arts College", "ORG")
+            .containsNamedEntity("Lido delle Nazioni", "LOC");
+        assertThat(binaryRequests).hasSize(2);
+        assertThat(binaryRequests.get(1).getDocuments())
+            .extracting(BinaryDocument::getDocumentId, BinaryDocument::getUserId)
+            .containsExactly(tuple(0L, USER_NAME));
+        assertThat(binaryRequests.get(1).getMetadata())
+            .hasFieldOrPropertyWithValue("projectId", PROJECT_ID)
+            .hasFieldOrPropertyWithValue("layer", recommender.getLayer().getName())
+            .hasFieldOrPropertyWithValue("feature", recommender.getFeature().getName());
+    }
+
+    @Test
+    public void thatBinaryTypeSystemIsSentOncePerSession() throws Exception
+    {
+        traits.setBinaryProtocol(true);
+
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+        
+        // Another recommender talking to the same remote side does not need to send it again
+        ExternalRecommender other = new ExternalRecommender(recommender, traits,
+                clientPool.getClient(traits), clientPool.getKnownTypeSystems(traits));
+        other.predict(context, casses.get(0));
+        sut.predict(context, casses.get(1));
+
+        assertThat(binaryRequests).hasSize(3);
+        assertThat(binaryRequests.get(0).getTypeSystem()).isNotNull();
+        assertThat(binaryRequests.get(1).getTypeSystem()).isNull();
+        assertThat(binaryRequests.get(2).getTypeSystem()).isNull();
+        assertThat(binaryRequests)
+            .extracting(BinaryRequest::getTypeSystemId)
+            .containsOnly(binaryRequests.get(0).getTypeSystemId());
+    }
+
+    @Test
+    public void thatBinaryTypeSystemIsResentIfRemoteForgotIt() throws Exception
+    {
+        traits.setBinaryProtocol(true);
+
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+        remoteRecommender.forgetTypeSystems();
+
+        CAS cas = casses.get(0);
+        sut.predict(context, cas);
+
+        assertThat(binaryRequests).hasSize(3);
+        assertThat(binaryRequests.get(1).getTypeSystem()).isNull();
+        assertThat(binaryRequests.get(2).getTypeSystem()).isNotNull();
+        assertThat(cas).containsNamedEntity("Lido delle Nazioni", "LOC");
+    }
+
+    @Test
+    public void thatBinaryRequestsAreSmallerThanJsonRequests() throws Exception
+    {
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+
+        traits.setBinaryProtocol(true);
+        sut.train(context, casses);
+
+        assertThat(requestSizes).hasSize(2);
+        assertThat(requestSizes.get(1)).isLessThan(requestSizes.get(0));
+    }
+
+    @Test
+    public void thatBatchPredictingWorks() throws Exception
+    {
+        traits.setPredictionBatchSize(2);
+        traits.setMaxConcurrentRequests(2);
+
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+
+        List<CAS> batch = casses.subList(0, 3);
+        createNamedEntity(batch.get(0), "FAKE");
+        sut.predict(context, batch);
+
+        assertThat(batch.get(0)).as("Predictions are correct")
+            .containsNamedEntity("Ecce homo", "OTH")
+            .containsNamedEntity("Lido delle Nazioni", "LOC")
+            .extractNamedEntities()
+            .noneMatch(fs -> "FAKE".equals(fs.getFeatureValueAsString(
+                    fs.getType().getFeatureByBaseName("value"))));
+        
+        // One training request, then two batches for three documents which may arrive in any
+        // order
+        assertThat(requestBodies).hasSize(3);
+        List<BatchPredictionRequest> requests = new ArrayList<>();
+        for (String body : requestBodies.subList(1, 3)) {
+            requests.add(fromJsonString(BatchPredictionRequest.class, body));
+        }
+        assertThat(requests)
+            .extracting(request -> request.getDocuments().size())
+            .containsExactlyInAnyOrder(2, 1);
+        assertThat(requests)
+            .flatExtracting(BatchPredictionRequest::getDocuments)
+            .extracting(Document::getDocumentId)
+            .containsExactlyInAnyOrder(0L, 1L, 2L);
+    }
+
+    @Test
+    public void thatBinaryBatchPredictingWorks() throws Exception
+    {
+        traits.setBinaryProtocol(true);
+        traits.setPredictionBatchSize(2);
+
+        List<CAS> casses = loadDevelopmentData();
+        sut.train(context, casses);
+        sut.predict(context, casses.subList(0, 3));
+
+        assertThat(casses.get(0)).as("Predictions are correct")
+            .containsNamedEntity("Ecce homo", "OTH")
+            .containsNamedEntity("Lido delle Nazioni", "LOC");
+        assertThat(binaryRequests)
+            .extracting(request -> request.getDocuments().size())
+            .containsExactlyInAnyOrder(casses.size(), 2, 1);
+    }
+
     private List<CAS> loadDevelopmentData() throws Exception
     {
         Dataset ds = loader.load("germeval2014-de");
@@ -254,6 +424,13 @@ public class ExternalRecommenderIntegrationTest
             @Override
             public MockResponse dispatch(RecordedRequest request) {
                 try {
+                    requestSizes.add(request.getBodySize());
+                    
+                    String contentType = request.getHeader("Content-Type");
+                    if (contentType != null && contentType.startsWith(MEDIA_TYPE)) {
+                        return dispatchBinary(request);
+                    }
+                    
                     String body = request.getBody().readUtf8();
                     requestBodies.add(body);
 
@@ -263,6 +440,9 @@ public class ExternalRecommenderIntegrationTest
                     } else if (request.getPath().equals("/predict")) {
                         String response = remoteRecommender.predict(body);
                         return new MockResponse().setResponseCode(200).setBody(response);
+                    } else if (request.getPath().equals("/predict/batch")) {
+                        String response = remoteRecommender.predictBatch(body);
+                        return new MockResponse().setResponseCode(200).setBody(response);
                     }
                 } catch (Exception e) {
                     throw new RuntimeException(e);
@@ -274,6 +454,44 @@ public class ExternalRecommenderIntegrationTest
         };
     }
 
+    private MockResponse dispatchBinary(RecordedRequest aRequest) throws Exception
+    {
+        // The body is compressed by the protocol itself, not by the HTTP layer
+        assertThat(aRequest.getHeader("Content-Encoding")).isNull();
+        
+        BinaryRequest request = BinaryCasProtocol.read(aRequest.getBody().inputStream());
+        binaryRequests.add(request);
+        
+        if (!remoteRecommender.knowsTypeSystem(request)) {
+            return new MockResponse().setResponseCode(SC_UNKNOWN_TYPE_SYSTEM);
+        }
+
+        if (aRequest.getPath().equals("/train")) {
+            remoteRecommender.train(request);
+            return new MockResponse().setResponseCode(204);
+        }
+        else if (aRequest.getPath().equals("/predict")) {
+            return gzipped(remoteRecommender.predict(request));
+        }
+        else if (aRequest.getPath().equals("/predict/batch")) {
+            return gzipped(remoteRecommender.predictBatch(request));
+        }
+        
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private MockResponse gzipped(String aBody) throws IOException
+    {
+        // The client transparently decompresses the response
+        Buffer body = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(body))) {
+            sink.writeUtf8(aBody);
+        }
+        return new MockResponse().setResponseCode(200)
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(body);
+    }
+
     private void createNamedEntity(CAS aCas, String aValue)
     {
         Type neType = getType(aCas, "de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity");
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.BinaryCasProtocol.SC_UNKNOWN_TYPE_SYSTEM;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.util.InceptionAssertions.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.CasMetadataUtils;
+import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Checks that prediction requests are pipelined against a local mock server. The server holds back
+ * every response until the expected number of requests is in flight at the same time, so the tests
+ * do not depend on how long a request takes.
+ */
+public class ExternalRecommenderThroughputTest
+{
+    private static final String TYPE = "de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity";
+    private static final int DOCUMENTS = 100;
+    private static final long OVERLAP_TIMEOUT = 10; // seconds
+
+    private RecommenderContext context;
+    private ExternalRecommenderTraits traits;
+    private ExternalRecommenderClientPool clientPool;
+    private ExternalRecommender sut;
+    private MockWebServer server;
+    private RemoteService remoteService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        context = new RecommenderContext();
+
+        remoteService = new RemoteService();
+        server = new MockWebServer();
+        server.setDispatcher(remoteService);
+        server.start();
+
+        traits = new ExternalRecommenderTraits();
+        traits.setRemoteUrl(server.url("/").toString());
+        traits.setBinaryProtocol(true);
+
+        clientPool = new ExternalRecommenderClientPool(new ExternalRecommenderProperties());
+        sut = new ExternalRecommender(buildRecommender(), traits, clientPool.getClient(traits),
+                clientPool.getKnownTypeSystems(traits));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        clientPool.destroy();
+        server.shutdown();
+    }
+
+    @Test
+    public void thatRequestsAreSentOneAfterAnother() throws Exception
+    {
+        traits.setPredictionBatchSize(1);
+        traits.setMaxConcurrentRequests(1);
+        remoteService.expectOverlappingRequests(1);
+        
+        predict(buildDocuments());
+
+        assertThat(remoteService.requests.get()).isEqualTo(DOCUMENTS);
+        assertThat(remoteService.maxInFlight.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void thatBatchesArePipelined() throws Exception
+    {
+        traits.setPredictionBatchSize(10);
+        traits.setMaxConcurrentRequests(4);
+        remoteService.expectOverlappingRequests(4);
+        
+        predict(buildDocuments());
+
+        assertThat(remoteService.requests.get()).isEqualTo(DOCUMENTS / 10);
+        assertThat(remoteService.maxInFlight.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void thatConcurrencyIsBounded() throws Exception
+    {
+        traits.setPredictionBatchSize(1);
+        traits.setMaxConcurrentRequests(3);
+        remoteService.expectOverlappingRequests(3);
+        
+        predict(buildDocuments());
+
+        assertThat(remoteService.requests.get()).isEqualTo(DOCUMENTS);
+        assertThat(remoteService.maxInFlight.get()).isEqualTo(3);
+    }
+
+    @Test(timeout = 60_000)
+    public void thatOutstandingRequestsAreCancelledWhenARequestFails() throws Exception
+    {
+        traits.setPredictionBatchSize(1);
+        traits.setMaxConcurrentRequests(2);
+        // Waiting for the response would block far longer than the test may run
+        traits.setReadTimeout(3600);
+        sut = new ExternalRecommender(buildRecommender(), traits, clientPool.getClient(traits),
+                clientPool.getKnownTypeSystems(traits));
+        
+        // The first request never gets a response while the second one fails
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger requestCount = new AtomicInteger();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest aRequest) throws InterruptedException
+            {
+                if (requestCount.incrementAndGet() == 1) {
+                    release.await();
+                }
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        
+        List<CAS> casses = buildDocuments();
+        try {
+            assertThatThrownBy(() -> sut.predict(context, casses))
+                    .isInstanceOf(RecommendationException.class);
+        }
+        finally {
+            release.countDown();
+        }
+        
+        assertThat(requestCount.get()).isEqualTo(2);
+    }
+
+    private void predict(List<CAS> aCasses) throws Exception
+    {
+        sut.predict(context, aCasses);
+
+        assertThat(remoteService.documents.get()).isEqualTo(DOCUMENTS);
+        for (CAS cas : aCasses) {
+            assertThat(cas).containsNamedEntity("Peter", "PER");
+        }
+    }
+
+    private List<CAS> buildDocuments() throws Exception
+    {
+        TypeSystemDescription tsd = mergeTypeSystems(
+                asList(createTypeSystemDescription(), CasMetadataUtils.getInternalTypeSystem()));
+
+        List<CAS> casses = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            JCas jcas = JCasFactory.createJCas(tsd);
+            jcas.setDocumentText("Peter went to Berlin. This is document " + i + ".");
+            CASMetadata cmd = new CASMetadata(jcas);
+            cmd.setUsername("test_user");
+            cmd.setProjectId(42L);
+            cmd.setSourceDocumentId(i);
+            jcas.addFsToIndexes(cmd);
+            casses.add(jcas.getCas());
+        }
+        return casses;
+    }
+
+    private static Recommender buildRecommender()
+    {
+        AnnotationLayer layer = new AnnotationLayer();
+        layer.setName(TYPE);
+        layer.setAnchoringMode(AnchoringMode.TOKENS);
+
+        AnnotationFeature feature = new AnnotationFeature();
+        feature.setName("value");
+
+        Recommender recommender = new Recommender();
+        recommender.setLayer(layer);
+        recommender.setFeature(feature);
+        return recommender;
+    }
+
+    /**
+     * Remote side of the binary protocol which labels the first word of every document as a person.
+     * Each prediction request is only answered once the expected number of requests has arrived,
+     * so the first requests fail unless they are in flight at the same time.
+     */
+    private static class RemoteService
+        extends Dispatcher
+    {
+        private final Set<String> typeSystems = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger documents = new AtomicInteger();
+        private volatile CountDownLatch overlap;
+
+        void expectOverlappingRequests(int aCount)
+        {
+            overlap = new CountDownLatch(aCount);
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest aRequest) throws InterruptedException
+        {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                BinaryRequest request = BinaryCasProtocol.read(aRequest.getBody().inputStream());
+                if (request.getTypeSystem() != null) {
+                    typeSystems.add(request.getTypeSystemId());
+                }
+                if (!typeSystems.contains(request.getTypeSystemId())) {
+                    return new MockResponse().setResponseCode(SC_UNKNOWN_TYPE_SYSTEM);
+                }
+
+                // Fail the prediction if the other requests do not arrive while this one is
+                // still waiting for its response
+                overlap.countDown();
+                if (!overlap.await(OVERLAP_TIMEOUT, SECONDS)) {
+                    return new MockResponse().setResponseCode(500)
+                            .setBody("Requests did not overlap");
+                }
+                
+                requests.incrementAndGet();
+                documents.addAndGet(request.getDocuments().size());
+
+                BinaryBatchPredictionResponse response = new BinaryBatchPredictionResponse();
+                for (int i = 0; i < request.getDocuments().size(); i++) {
+                    BinaryPredictionResponse prediction = new BinaryPredictionResponse();
+                    prediction.getAnnotations().add(new PredictedAnnotation(0, 5, "PER"));
+                    response.getDocuments().add(prediction);
+                }
+
+                Object body = aRequest.getPath().equals("/predict/batch") ? response
+                        : response.getDocuments().get(0);
+                return new MockResponse().setResponseCode(200)
+                        .setBody(new ObjectMapper().writeValueAsString(body));
+            }
+            catch (InterruptedException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
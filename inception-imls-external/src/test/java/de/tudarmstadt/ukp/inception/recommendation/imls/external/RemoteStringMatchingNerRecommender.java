@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.UIMAException;
@@ -58,6 +60,7 @@ public class RemoteStringMatchingNerRecommender
     private final Recommender recommender;
     private final RecommenderContext context;
     private final StringMatchingRecommender recommendationEngine;
+    private final Map<String, TypeSystemDescription> typeSystems = new ConcurrentHashMap<>();
 
     public RemoteStringMatchingNerRecommender(Recommender aRecommender)
     {
@@ -97,22 +100,42 @@ public class RemoteStringMatchingNerRecommender
         PredictionRequest request = deserializePredictionRequest(aPredictionRequestJson);
         CAS cas = deserializeCas(request.getDocument().getXmi(), request.getTypeSystem());
 
-        recommendationEngine.predict(context, cas);
+        predictNamedEntities(cas);
+
+        return buildPredictionResponse(cas);
+    }
+
+    public String predictBatch(String aPredictionRequestJson) throws Exception
+    {
+        BatchPredictionRequest request = new ObjectMapper().readValue(aPredictionRequestJson,
+                BatchPredictionRequest.class);
+        
+        BatchPredictionResponse response = new BatchPredictionResponse();
+        for (Document doc : request.getDocuments()) {
+            CAS cas = deserializeCas(doc.getXmi(), request.getTypeSystem());
+            predictNamedEntities(cas);
+            response.getDocuments().add(serializeCas(cas));
+        }
+        
+        return new ObjectMapper().writeValueAsString(response);
+    }
+
+    private void predictNamedEntities(CAS aCas) throws Exception
+    {
+        recommendationEngine.predict(context, aCas);
 
         // Convert PredictionSpan to NamedEntity annotations
-        Type predictionType = getType(cas, PredictedSpan.class);
+        Type predictionType = getType(aCas, PredictedSpan.class);
         Feature labelFeature = predictionType.getFeatureByBaseName("label");
-        Type neType = getType(cas, "de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity");
+        Type neType = getType(aCas, "de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity");
         Feature valueFeature = neType.getFeatureByBaseName("value");
 
-        for (AnnotationFS fs : CasUtil.select(cas, predictionType)) {
-            AnnotationFS ne = cas.createAnnotation(neType, fs.getBegin(), fs.getEnd());
+        for (AnnotationFS fs : CasUtil.select(aCas, predictionType)) {
+            AnnotationFS ne = aCas.createAnnotation(neType, fs.getBegin(), fs.getEnd());
             ne.setStringValue(valueFeature, fs.getStringValue(labelFeature));
-            cas.addFsToIndexes(ne);
-            cas.removeFsFromIndexes(fs);
+            aCas.addFsToIndexes(ne);
+            aCas.removeFsFromIndexes(fs);
         }
-
-        return buildPredictionResponse(cas);
     }
 
     private PredictionRequest deserializePredictionRequest(String aPredictionRequestJson)
@@ -122,8 +145,85 @@ public class RemoteStringMatchingNerRecommender
         return objectMapper.readValue(aPredictionRequestJson, PredictionRequest.class);
     }
 
+    /**
+     * Registers the type system sent along with the given binary request, if any.
+     * 
+     * @return if the type system referenced by the given request is known.
+     */
+    public boolean knowsTypeSystem(BinaryRequest aRequest) throws Exception
+    {
+        if (aRequest.getTypeSystem() != null) {
+            TypeSystemDescription tsd = UIMAFramework.getXMLParser().parseTypeSystemDescription(
+                    new XMLInputSource(new ByteArrayInputStream(aRequest.getTypeSystem()), null));
+            typeSystems.put(aRequest.getTypeSystemId(), tsd);
+        }
+        
+        return typeSystems.containsKey(aRequest.getTypeSystemId());
+    }
+    
+    /**
+     * Simulates a restart of the remote side which forgets all type systems it has seen.
+     */
+    public void forgetTypeSystems()
+    {
+        typeSystems.clear();
+    }
+    
+    public void train(BinaryRequest aRequest) throws Exception
+    {
+        List<CAS> casses = new ArrayList<>();
+        for (BinaryDocument doc : aRequest.getDocuments()) {
+            casses.add(deserializeCas(doc.getCas(), aRequest.getTypeSystemId()));
+        }
+
+        recommendationEngine.train(context, casses);
+    }
+    
+    public String predict(BinaryRequest aRequest) throws Exception
+    {
+        return new ObjectMapper().writeValueAsString(
+                predictAnnotations(aRequest.getDocuments().get(0), aRequest.getTypeSystemId()));
+    }
+    
+    public String predictBatch(BinaryRequest aRequest) throws Exception
+    {
+        BinaryBatchPredictionResponse response = new BinaryBatchPredictionResponse();
+        for (BinaryDocument doc : aRequest.getDocuments()) {
+            response.getDocuments().add(predictAnnotations(doc, aRequest.getTypeSystemId()));
+        }
+        
+        return new ObjectMapper().writeValueAsString(response);
+    }
+    
+    private BinaryPredictionResponse predictAnnotations(BinaryDocument aDocument,
+            String aTypeSystemId)
+        throws Exception
+    {
+        CAS cas = deserializeCas(aDocument.getCas(), aTypeSystemId);
+
+        recommendationEngine.predict(context, cas);
+
+        // Only send back the predicted annotations
+        Type predictionType = getType(cas, PredictedSpan.class);
+        Feature labelFeature = predictionType.getFeatureByBaseName("label");
+        BinaryPredictionResponse response = new BinaryPredictionResponse();
+        for (AnnotationFS fs : CasUtil.select(cas, predictionType)) {
+            response.getAnnotations().add(new PredictedAnnotation(fs.getBegin(), fs.getEnd(),
+                    fs.getStringValue(labelFeature)));
+        }
+        return response;
+    }
+
     // CAS handling
 
+    private CAS deserializeCas(byte[] aData, String aTypeSystemId)
+        throws IOException, UIMAException
+    {
+        CAS cas = JCasFactory.createJCas(typeSystems.get(aTypeSystemId)).getCas();
+        BinaryCasProtocol.deserializeCas(aData, cas);
+        return cas;
+    }
+
     private CAS deserializeCas(String xmi, String typeSystem)
         throws SAXException, IOException, UIMAException
     {
@@ -145,13 +245,18 @@ public class RemoteStringMatchingNerRecommender
     }
 
     private String buildPredictionResponse(CAS aCas) throws SAXException, IOException
+    {
+        PredictionResponse response = new PredictionResponse();
+        response.setDocument(serializeCas(aCas));
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.writeValueAsString(response);
+    }
+
+    private String serializeCas(CAS aCas) throws SAXException, IOException
     {
         try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
             XmiCasSerializer.serialize(aCas, null, out, true, null);
-            PredictionResponse response = new PredictionResponse();
-            response.setDocument(new String(out.toByteArray(), UTF_8));
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.writeValueAsString(response);
+            return new String(out.toByteArray(), UTF_8);
         }
     }
 }
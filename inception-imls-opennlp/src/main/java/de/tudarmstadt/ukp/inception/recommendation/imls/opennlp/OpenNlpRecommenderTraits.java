@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp;
+
+import java.io.Serializable;
+
+/**
+ * Settings shared by all OpenNLP-based recommenders which control how the models are trained and
+ * evaluated.
+ */
+public abstract class OpenNlpRecommenderTraits
+    implements Serializable
+{
+    private static final long serialVersionUID = -2196352346562806404L;
+
+    // Training sets of at least this size are trained using all available cores unless the
+    // number of threads has been configured explicitly
+    private static final int MULTI_THREADING_THRESHOLD = 5000;
+
+    // Number of training threads (< 1 = choose automatically based on the training set size)
+    private int numThreads = 0;
+    // Number of folds used for cross-validation during evaluation (< 2 = single split)
+    private int crossValidationFolds = 1;
+
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    public void setNumThreads(int aNumThreads)
+    {
+        numThreads = aNumThreads;
+    }
+
+    /**
+     * Get the number of threads used to train on the given number of samples.
+     */
+    public int getNumThreads(int aTrainingSetSize)
+    {
+        if (numThreads > 0) {
+            return numThreads;
+        }
+        
+        return aTrainingSetSize >= MULTI_THREADING_THRESHOLD
+                ? Runtime.getRuntime().availableProcessors() : 1;
+    }
+
+    public int getCrossValidationFolds()
+    {
+        return crossValidationFolds;
+    }
+
+    public void setCrossValidationFolds(int aCrossValidationFolds)
+    {
+        crossValidationFolds = aCrossValidationFolds;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp;
+
+import static org.apache.uima.fit.util.CasUtil.getType;
+import static org.apache.uima.fit.util.CasUtil.select;
+import static org.apache.uima.fit.util.CasUtil.selectCovered;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import opennlp.tools.util.ObjectStream;
+
+/**
+ * Lazily extracts samples from the sentences of the given CASes. The sentences are only visited
+ * while the stream is read, so the samples never need to be held in memory all at once. The
+ * token texts of a sentence are extracted only once and shared by all samples created from the
+ * sentence.
+ */
+public class SentenceSampleStream<T>
+    implements ObjectStream<T>, AutoCloseable
+{
+    /**
+     * Creates the samples for a single sentence.
+     */
+    @FunctionalInterface
+    public interface SampleExtractor<T>
+    {
+        void extract(CAS aCas, AnnotationFS aSentence, List<AnnotationFS> aTokens,
+                String[] aTokenTexts, Consumer<T> aSink);
+    }
+    
+    private final List<CAS> casses;
+    private final int limit;
+    private final SampleExtractor<T> extractor;
+    
+    // Samples created from the current sentence which have not been read yet
+    private final Deque<T> pending = new ArrayDeque<>();
+    
+    private Iterator<CAS> casIterator;
+    private CAS cas;
+    private Type tokenType;
+    private Iterator<AnnotationFS> sentenceIterator;
+    private int count;
+
+    public SentenceSampleStream(List<CAS> aCasses, int aLimit, SampleExtractor<T> aExtractor)
+    {
+        casses = aCasses;
+        limit = aLimit;
+        extractor = aExtractor;
+        reset();
+    }
+
+    @Override
+    public T read()
+    {
+        if (casIterator == null || count >= limit) {
+            return null;
+        }
+        
+        while (pending.isEmpty()) {
+            if (sentenceIterator == null || !sentenceIterator.hasNext()) {
+                if (!casIterator.hasNext()) {
+                    return null;
+                }
+                
+                cas = casIterator.next();
+                tokenType = getType(cas, Token.class);
+                sentenceIterator = select(cas, getType(cas, Sentence.class)).iterator();
+                continue;
+            }
+            
+            AnnotationFS sentence = sentenceIterator.next();
+            List<AnnotationFS> tokens = selectCovered(tokenType, sentence);
+            String[] tokenTexts = new String[tokens.size()];
+            for (int i = 0; i < tokenTexts.length; i++) {
+                tokenTexts[i] = tokens.get(i).getCoveredText();
+            }
+            
+            extractor.extract(cas, sentence, tokens, tokenTexts, pending::add);
+        }
+        
+        count++;
+        return pending.poll();
+    }
+    
+    /**
+     * Reads all remaining samples into a list.
+     */
+    public List<T> readAll()
+    {
+        List<T> samples = new ArrayList<>();
+        T sample;
+        while ((sample = read()) != null) {
+            samples.add(sample);
+        }
+        return samples;
+    }
+    
+    /**
+     * @return the number of sentences in the CASes up to the limit. This is an estimate of the
+     *         number of samples which can be obtained without actually extracting them.
+     */
+    public int estimateSize()
+    {
+        long sentences = 0;
+        for (CAS c : casses) {
+            sentences += c.getAnnotationIndex(getType(c, Sentence.class)).size();
+        }
+        return (int) Math.min(sentences, limit);
+    }
+
+    @Override
+    public void reset()
+    {
+        casIterator = casses.iterator();
+        cas = null;
+        tokenType = null;
+        sentenceIterator = null;
+        pending.clear();
+        count = 0;
+    }
+
+    @Override
+    public void close()
+    {
+        casIterator = null;
+        cas = null;
+        sentenceIterator = null;
+        pending.clear();
+    }
+}
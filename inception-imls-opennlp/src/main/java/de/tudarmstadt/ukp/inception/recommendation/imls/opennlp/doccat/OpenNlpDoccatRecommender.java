@@ -19,16 +19,12 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.doccat;
 
 import static org.apache.uima.fit.util.CasUtil.getAnnotationType;
 import static org.apache.uima.fit.util.CasUtil.getType;
-import static org.apache.uima.fit.util.CasUtil.indexCovered;
 import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.uima.cas.CAS;
@@ -40,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.CrossValidation;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
@@ -48,6 +45,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.SentenceSampleStream;
 import opennlp.tools.doccat.DoccatFactory;
 import opennlp.tools.doccat.DoccatModel;
 import opennlp.tools.doccat.DocumentCategorizerEvaluator;
@@ -55,6 +53,7 @@ import opennlp.tools.doccat.DocumentCategorizerME;
 import opennlp.tools.doccat.DocumentSample;
 import opennlp.tools.ml.BeamSearch;
 import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 
 public class OpenNlpDoccatRecommender
@@ -85,14 +84,15 @@ public class OpenNlpDoccatRecommender
     public void train(RecommenderContext aContext, List<CAS> aCasses)
         throws RecommendationException
     {
-        List<DocumentSample> nameSamples = extractSamples(aCasses);
+        // The samples are extracted from the CASes only while the model is being trained
+        SentenceSampleStream<DocumentSample> nameSamples = createSampleStream(aCasses);
         
         // The beam size controls how many results are returned at most. But even if the user
         // requests only few results, we always use at least the default bean size recommended by
         // OpenNLP
         int beamSize = Math.max(maxRecommendations, NameFinderME.DEFAULT_BEAM_SIZE);
 
-        TrainingParameters params = traits.getParameters();
+        TrainingParameters params = traits.getParameters(nameSamples.estimateSize());
         params.put(BeamSearch.BEAM_SIZE_PARAMETER, Integer.toString(beamSize));
         
         DoccatModel model = train(nameSamples, params);
@@ -163,6 +163,12 @@ public class OpenNlpDoccatRecommender
             }            
         }
 
+        int folds = traits.getCrossValidationFolds();
+        if (folds > 1) {
+            return CrossValidation.crossValidate(trainingSet, testSet, folds,
+                    traits.getNumThreads(trainingSet.size() + testSet.size()), this::evaluate);
+        }
+        
         int testSetSize = testSet.size();
         int trainingSetSize = trainingSet.size();
         result.setTestSetSize(testSetSize);
@@ -177,16 +183,27 @@ public class OpenNlpDoccatRecommender
         LOG.info("Evaluating on {} items (training set size {}, test set size {})", data.size(),
                 trainingSet.size(), testSet.size());
 
+        result.setDefaultScore(evaluate(trainingSet, testSet,
+                traits.getNumThreads(trainingSet.size())));
+        return result;
+    }
+
+    private double evaluate(List<DocumentSample> aTrainingSet, List<DocumentSample> aTestSet,
+            int aThreads)
+        throws RecommendationException
+    {
+        TrainingParameters params = traits.getParameters(aTrainingSet.size());
+        params.put(TrainingParameters.THREADS_PARAM, aThreads);
+        
         // Train model
-        DoccatModel model = train(trainingSet, traits.getParameters());
+        DoccatModel model = train(new DocumentSampleStream(aTrainingSet), params);
         DocumentCategorizerME doccat = new DocumentCategorizerME(model);
 
         // Evaluate
-        try (DocumentSampleStream stream = new DocumentSampleStream(testSet)) {
+        try (DocumentSampleStream stream = new DocumentSampleStream(aTestSet)) {
             DocumentCategorizerEvaluator evaluator = new DocumentCategorizerEvaluator(doccat);
             evaluator.evaluate(stream);
-            result.setDefaultScore(evaluator.getAccuracy());
-            return result;
+            return evaluator.getAccuracy();
         }
         catch (IOException e) {
             LOG.error("Exception during evaluating the OpenNLP Named Entity Recognizer model.", e);
@@ -196,45 +213,35 @@ public class OpenNlpDoccatRecommender
 
     private List<DocumentSample> extractSamples(List<CAS> aCasses)
     {
-        List<DocumentSample> samples = new ArrayList<>();
-        casses: for (CAS cas : aCasses) {
-            Type sentenceType = getType(cas, Sentence.class);
-            Type tokenType = getType(cas, Token.class);
-
-            Map<AnnotationFS, Collection<AnnotationFS>> sentences = indexCovered(
-                    cas, sentenceType, tokenType);
-            for (Entry<AnnotationFS, Collection<AnnotationFS>> e : sentences.entrySet()) {
-                AnnotationFS sentence = e.getKey();
-                Collection<AnnotationFS> tokens = e.getValue();
-                String[] tokenTexts = tokens.stream()
-                    .map(AnnotationFS::getCoveredText)
-                    .toArray(String[]::new);
-                
+        try (SentenceSampleStream<DocumentSample> stream = createSampleStream(aCasses)) {
+            return stream.readAll();
+        }
+    }
+
+    private SentenceSampleStream<DocumentSample> createSampleStream(List<CAS> aCasses)
+    {
+        return new SentenceSampleStream<>(aCasses, traits.getTrainingSetSizeLimit(),
+            (cas, sentence, tokens, tokenTexts, sink) -> {
                 Type annotationType = getType(cas, layerName);
                 Feature feature = annotationType.getFeatureByBaseName(featureName);
                 
+                // All samples of a sentence share the same token texts
                 for (AnnotationFS annotation : selectCovered(annotationType, sentence)) {
-                    if (samples.size() >= traits.getTrainingSetSizeLimit()) {
-                        break casses;
-                    }
-                    
                     String label = annotation.getFeatureValueAsString(feature);
                     DocumentSample nameSample = new DocumentSample(
                             label != null ? label : NO_CATEGORY, tokenTexts);
                     if (nameSample.getCategory() != null) {
-                        samples.add(nameSample);
+                        sink.accept(nameSample);
                     }
                 }
-            }
-        }
-        
-        return samples;
+            });
     }
 
-    private DoccatModel train(List<DocumentSample> aSamples, TrainingParameters aParameters)
+    private DoccatModel train(ObjectStream<DocumentSample> aSamples,
+            TrainingParameters aParameters)
         throws RecommendationException
     {
-        try (DocumentSampleStream stream = new DocumentSampleStream(aSamples)) {
+        try (ObjectStream<DocumentSample> stream = aSamples) {
             DoccatFactory factory = new DoccatFactory();
             return DocumentCategorizerME.train("unknown", stream, aParameters, factory);
         }
@@ -17,13 +17,12 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.doccat;
 
-import java.io.Serializable;
-
+import de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.OpenNlpRecommenderTraits;
 import opennlp.tools.ml.AbstractTrainer;
 import opennlp.tools.util.TrainingParameters;
 
 public class OpenNlpDoccatRecommenderTraits
-    implements Serializable
+    extends OpenNlpRecommenderTraits
 {
     private static final long serialVersionUID = 220089332064652542L;
 
@@ -32,7 +31,6 @@ public class OpenNlpDoccatRecommenderTraits
 
     private int iterations = 100;
     private int cutoff = 5;
-    private int numThreads = 1;
 
     public int getIterations()
     {
@@ -54,16 +52,6 @@ public class OpenNlpDoccatRecommenderTraits
         cutoff = aCutoff;
     }
     
-    public int getNumThreads()
-    {
-        return numThreads;
-    }
-
-    public void setNumThreads(int aNumThreads)
-    {
-        numThreads = aNumThreads;
-    }
-
     public int getTrainingSetSizeLimit()
     {
         return trainingSetSizeLimit;
@@ -84,13 +72,13 @@ public class OpenNlpDoccatRecommenderTraits
         predictionLimit = aPredictionLimit;
     }
 
-    public TrainingParameters getParameters()
+    public TrainingParameters getParameters(int aTrainingSetSize)
     {
         TrainingParameters parameters = TrainingParameters.defaultParams();
         parameters.put(AbstractTrainer.VERBOSE_PARAM, false);
         parameters.put(TrainingParameters.ITERATIONS_PARAM, iterations);
         parameters.put(TrainingParameters.CUTOFF_PARAM, cutoff);
-        parameters.put(TrainingParameters.THREADS_PARAM, numThreads);
+        parameters.put(TrainingParameters.THREADS_PARAM, getNumThreads(aTrainingSetSize));
         return parameters;
     }
 }
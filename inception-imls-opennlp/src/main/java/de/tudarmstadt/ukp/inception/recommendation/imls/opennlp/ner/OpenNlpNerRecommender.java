@@ -20,7 +20,6 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.ner;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.uima.fit.util.CasUtil.getAnnotationType;
 import static org.apache.uima.fit.util.CasUtil.getType;
-import static org.apache.uima.fit.util.CasUtil.indexCovered;
 import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
@@ -28,8 +27,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
@@ -40,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.CrossValidation;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
@@ -48,6 +46,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.SentenceSampleStream;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
@@ -58,6 +57,7 @@ import opennlp.tools.namefind.NameSample;
 import opennlp.tools.namefind.TokenNameFinderEvaluator;
 import opennlp.tools.namefind.TokenNameFinderFactory;
 import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.Span;
 import opennlp.tools.util.TrainingParameters;
 
@@ -85,14 +85,15 @@ public class OpenNlpNerRecommender
     public void train(RecommenderContext aContext, List<CAS> aCasses)
         throws RecommendationException
     {
-        List<NameSample> nameSamples = extractNameSamples(aCasses);
+        // The samples are extracted from the CASes only while the model is being trained
+        SentenceSampleStream<NameSample> nameSamples = createNameSampleStream(aCasses);
         
         // The beam size controls how many results are returned at most. But even if the user
         // requests only few results, we always use at least the default bean size recommended by
         // OpenNLP
         int beamSize = Math.max(maxRecommendations, NameFinderME.DEFAULT_BEAM_SIZE);
 
-        TrainingParameters params = traits.getParameters();
+        TrainingParameters params = traits.getParameters(nameSamples.estimateSize());
         params.put(BeamSearch.BEAM_SIZE_PARAMETER, Integer.toString(beamSize));
         
         TokenNameFinderModel model = train(nameSamples, params);
@@ -167,6 +168,12 @@ public class OpenNlpNerRecommender
             }            
         }
         
+        int folds = traits.getCrossValidationFolds();
+        if (folds > 1) {
+            return CrossValidation.crossValidate(trainingSet, testSet, folds,
+                    traits.getNumThreads(trainingSet.size() + testSet.size()), this::evaluate);
+        }
+        
         int testSetSize = testSet.size();
         int trainingSetSize = trainingSet.size();
         result.setTestSetSize(testSetSize);
@@ -181,18 +188,28 @@ public class OpenNlpNerRecommender
         LOG.info("Training on [{}] items, predicting on [{}] of total [{}]", trainingSet.size(),
                 testSet.size(), data.size());
 
+        result.setDefaultScore(evaluate(trainingSet, testSet,
+                traits.getNumThreads(trainingSet.size())));
+        return result;
+    }
+
+    private double evaluate(List<NameSample> aTrainingSet, List<NameSample> aTestSet, int aThreads)
+        throws RecommendationException
+    {
+        TrainingParameters params = traits.getParameters(aTrainingSet.size());
+        params.put(TrainingParameters.THREADS_PARAM, aThreads);
+        
         // Train model
-        TokenNameFinderModel model = train(trainingSet, traits.getParameters());
+        TokenNameFinderModel model = train(new NameSampleStream(aTrainingSet), params);
         NameFinderME nameFinder = new NameFinderME(model);
 
         // Evaluate
-        try (NameSampleStream stream = new NameSampleStream(testSet)) {
+        try (NameSampleStream stream = new NameSampleStream(aTestSet)) {
             TokenNameFinderEvaluator evaluator = new TokenNameFinderEvaluator(nameFinder);
             evaluator.evaluate(stream);
             // getFMeasure returns -1 if the evaluation cannot be performed, but we want any 
             // recommender to get activated when the threshold is set to 0, so we cap at 0.
-            result.setDefaultScore(Math.max(0, evaluator.getFMeasure().getFMeasure()));
-            return result;
+            return Math.max(0, evaluator.getFMeasure().getFMeasure());
         } catch (IOException e) {
             LOG.error("Exception during evaluating the OpenNLP Named Entity Recognizer model.", e);
             throw new RecommendationException("Error while evaluating OpenNlp NER", e);
@@ -201,39 +218,27 @@ public class OpenNlpNerRecommender
 
     private List<NameSample> extractNameSamples(List<CAS> aCasses)
     {
-        List<NameSample> nameSamples = new ArrayList<>();
-        
-        casses: for (CAS cas : aCasses) {
-            Type sentenceType = getType(cas, Sentence.class);
-            Type tokenType = getType(cas, Token.class);
+        try (SentenceSampleStream<NameSample> stream = createNameSampleStream(aCasses)) {
+            return stream.readAll();
+        }
+    }
 
-            Map<AnnotationFS, Collection<AnnotationFS>> sentences = indexCovered(
-                    cas, sentenceType, tokenType);
-            for (Entry<AnnotationFS, Collection<AnnotationFS>> e : sentences.entrySet()) {
-                if (nameSamples.size() >= traits.getTrainingSetSizeLimit()) {
-                    break casses;
-                }
-                
-                AnnotationFS sentence = e.getKey();
-                Collection<AnnotationFS> tokens = e.getValue();
-                NameSample nameSample = createNameSample(cas, sentence, tokens);
+    private SentenceSampleStream<NameSample> createNameSampleStream(List<CAS> aCasses)
+    {
+        return new SentenceSampleStream<>(aCasses, traits.getTrainingSetSizeLimit(),
+            (cas, sentence, tokens, tokenTexts, sink) -> {
+                NameSample nameSample = createNameSample(cas, sentence, tokens, tokenTexts);
                 if (nameSample.getNames().length > 0) {
-                    nameSamples.add(nameSample);
+                    sink.accept(nameSample);
                 }
-            }
-        }
-        
-        return nameSamples;
+            });
     }
 
     private NameSample createNameSample(CAS aCas, AnnotationFS aSentence,
-            Collection<AnnotationFS> aTokens)
+            Collection<AnnotationFS> aTokens, String[] aTokenTexts)
     {
-        String[] tokenTexts = aTokens.stream()
-            .map(AnnotationFS::getCoveredText)
-            .toArray(String[]::new);
         Span[] annotatedSpans = extractAnnotatedSpans(aCas, aSentence, aTokens);
-        return new NameSample(tokenTexts, annotatedSpans, true);
+        return new NameSample(aTokenTexts, annotatedSpans, true);
     }
 
     private Span[] extractAnnotatedSpans(CAS aCas, AnnotationFS aSentence,
@@ -288,11 +293,11 @@ public class OpenNlpNerRecommender
         return result.toArray(new Span[result.size()]);
     }
 
-    private TokenNameFinderModel train(List<NameSample> aNameSamples,
+    private TokenNameFinderModel train(ObjectStream<NameSample> aNameSamples,
             TrainingParameters aParameters)
         throws RecommendationException
     {
-        try (NameSampleStream stream = new NameSampleStream(aNameSamples)) {
+        try (ObjectStream<NameSample> stream = aNameSamples) {
             TokenNameFinderFactory finderFactory = new TokenNameFinderFactory();
             return NameFinderME.train("unknown", null, stream, aParameters, finderFactory);
         } catch (IOException e) {
@@ -17,30 +17,17 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.ner;
 
-import java.io.Serializable;
-
+import de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.OpenNlpRecommenderTraits;
 import opennlp.tools.ml.AbstractTrainer;
 import opennlp.tools.util.TrainingParameters;
 
 public class OpenNlpNerRecommenderTraits
-    implements Serializable
+    extends OpenNlpRecommenderTraits
 {
     private static final long serialVersionUID = 7717316701623340670L;
 
     private int trainingSetSizeLimit = Integer.MAX_VALUE;
     private int predictionLimit = Integer.MAX_VALUE;
-    
-    private int numThreads = 1;
-
-    public int getNumThreads()
-    {
-        return numThreads;
-    }
-
-    public void setNumThreads(int aNumThreads)
-    {
-        numThreads = aNumThreads;
-    }
 
     public int getTrainingSetSizeLimit()
     {
@@ -62,11 +49,11 @@ public class OpenNlpNerRecommenderTraits
         predictionLimit = aPredictionLimit;
     }
 
-    public TrainingParameters getParameters()
+    public TrainingParameters getParameters(int aTrainingSetSize)
     {
         TrainingParameters parameters = TrainingParameters.defaultParams();
         parameters.put(AbstractTrainer.VERBOSE_PARAM, "false");
-        parameters.put(TrainingParameters.THREADS_PARAM, numThreads);
+        parameters.put(TrainingParameters.THREADS_PARAM, getNumThreads(aTrainingSetSize));
         return parameters;
     }
 }
@@ -20,7 +20,6 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.pos;
 import static org.apache.commons.lang3.StringUtils.isNoneBlank;
 import static org.apache.uima.fit.util.CasUtil.getAnnotationType;
 import static org.apache.uima.fit.util.CasUtil.getType;
-import static org.apache.uima.fit.util.CasUtil.indexCovered;
 import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
@@ -28,7 +27,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 import javax.annotation.Nullable;
@@ -43,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.CrossValidation;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
@@ -51,12 +50,14 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.SentenceSampleStream;
 import opennlp.tools.ml.BeamSearch;
 import opennlp.tools.postag.POSEvaluator;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSSample;
 import opennlp.tools.postag.POSTaggerFactory;
 import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.Sequence;
 import opennlp.tools.util.TrainingParameters;
 
@@ -87,14 +88,15 @@ public class OpenNlpPosRecommender
     public void train(RecommenderContext aContext, List<CAS> aCasses)
         throws RecommendationException
     {
-        List<POSSample> posSamples = extractPosSamples(aCasses);
+        // The samples are extracted from the CASes only while the model is being trained
+        SentenceSampleStream<POSSample> posSamples = createPosSampleStream(aCasses);
 
         // The beam size controls how many results are returned at most. But even if the user
         // requests only few results, we always use at least the default bean size recommended by
         // OpenNLP
         int beamSize = Math.max(maxRecommendations, POSTaggerME.DEFAULT_BEAM_SIZE);
 
-        TrainingParameters params = traits.getParameters();
+        TrainingParameters params = traits.getParameters(posSamples.estimateSize());
         params.put(BeamSearch.BEAM_SIZE_PARAMETER, Integer.toString(beamSize));
         POSModel model = train(posSamples, params);
 
@@ -192,6 +194,12 @@ public class OpenNlpPosRecommender
             }
         }
 
+        int folds = traits.getCrossValidationFolds();
+        if (folds > 1) {
+            return CrossValidation.crossValidate(trainingSet, testSet, folds,
+                    traits.getNumThreads(trainingSet.size() + testSet.size()), this::evaluate);
+        }
+        
         int testSetSize = testSet.size();
         int trainingSetSize = trainingSet.size();
         result.setTestSetSize(testSetSize);
@@ -206,8 +214,19 @@ public class OpenNlpPosRecommender
         LOG.info("Training on [{}] items, predicting on [{}] of total [{}]", trainingSet.size(),
             testSet.size(), data.size());
 
+        result.setDefaultScore(evaluate(trainingSet, testSet,
+                traits.getNumThreads(trainingSet.size())));
+        return result;
+    }
+
+    private double evaluate(List<POSSample> aTrainingSet, List<POSSample> aTestSet, int aThreads)
+        throws RecommendationException
+    {
+        TrainingParameters params = traits.getParameters(aTrainingSet.size());
+        params.put(TrainingParameters.THREADS_PARAM, aThreads);
+        
         // Train model
-        POSModel model = train(trainingSet, traits.getParameters());
+        POSModel model = train(new POSSampleStream(aTrainingSet), params);
         if (model == null) {
             throw new RecommendationException("Model is null, cannot evaluate!");
         }
@@ -215,11 +234,10 @@ public class OpenNlpPosRecommender
         POSTaggerME tagger = new POSTaggerME(model);
 
         // Evaluate
-        try (POSSampleStream stream = new POSSampleStream(testSet)) {
+        try (POSSampleStream stream = new POSSampleStream(aTestSet)) {
             POSEvaluator evaluator = new POSEvaluator(tagger);
             evaluator.evaluate(stream);
-            result.setDefaultScore(evaluator.getWordAccuracy());
-            return result;
+            return evaluator.getWordAccuracy();
         }
         catch (IOException e) {
             throw new RecommendationException("Error while evaluating", e);
@@ -228,47 +246,35 @@ public class OpenNlpPosRecommender
 
     private List<POSSample> extractPosSamples(List<CAS> aCasses)
     {
-        List<POSSample> posSamples = new ArrayList<>();
-        
-        casses: for (CAS cas : aCasses) {
-            Type sentenceType = getType(cas, Sentence.class);
-            Type tokenType = getType(cas, Token.class);
-
-            Map<AnnotationFS, Collection<AnnotationFS>> sentences = indexCovered(
-                    cas, sentenceType, tokenType);
-            for (Map.Entry<AnnotationFS, Collection<AnnotationFS>> e : sentences.entrySet()) {
-                if (posSamples.size() >= traits.getTrainingSetSizeLimit()) {
-                    break casses;
-                }
-                
-                AnnotationFS sentence = e.getKey();
-
-                Collection<AnnotationFS> tokens = e.getValue();
-                
-                createPosSample(cas, sentence, tokens).map(posSamples::add);
-            }
+        try (SentenceSampleStream<POSSample> stream = createPosSampleStream(aCasses)) {
+            List<POSSample> posSamples = stream.readAll();
+            
+            LOG.debug("Extracted {} POS samples", posSamples.size());
+            
+            return posSamples;
         }
-        
-        LOG.debug("Extracted {} POS samples", posSamples.size());
-        
-        return posSamples;
+    }
+
+    private SentenceSampleStream<POSSample> createPosSampleStream(List<CAS> aCasses)
+    {
+        return new SentenceSampleStream<>(aCasses, traits.getTrainingSetSizeLimit(),
+            (cas, sentence, tokens, tokenTexts, sink) ->
+                createPosSample(cas, sentence, tokens, tokenTexts).ifPresent(sink));
     }
 
     private Optional<POSSample> createPosSample(CAS aCas, AnnotationFS aSentence,
-            Collection<AnnotationFS> aTokens)
+            Collection<AnnotationFS> aTokens, String[] aTokenTexts)
     {
         Type annotationType = getType(aCas, layerName);
         Feature feature = annotationType.getFeatureByBaseName(featureName);
 
         int numberOfTokens = aTokens.size();
-        String[] tokens = new String[numberOfTokens];
         String[] tags = new String[numberOfTokens];
 
         boolean hasAnnotations = false;
 
         int i = 0;
         for (AnnotationFS token : aTokens) {
-            tokens[i] = token.getCoveredText();
             String tag = getFeatureValueCovering(aCas, token, annotationType, feature);
             tags[i] = tag;
 
@@ -281,7 +287,7 @@ public class OpenNlpPosRecommender
             i++;
         }
 
-        return hasAnnotations ? Optional.of(new POSSample(tokens, tags)) : Optional.empty();
+        return hasAnnotations ? Optional.of(new POSSample(aTokenTexts, tags)) : Optional.empty();
     }
 
     private String getFeatureValueCovering(CAS aCas, AnnotationFS aToken, Type aType,
@@ -298,14 +304,15 @@ public class OpenNlpPosRecommender
     }
 
     @Nullable
-    private POSModel train(List<POSSample> aPosSamples, TrainingParameters aParameters)
+    private POSModel train(ObjectStream<POSSample> aPosSamples, TrainingParameters aParameters)
         throws RecommendationException
     {
-        if (aPosSamples.isEmpty()) {
-            return null;
-        }
-
-        try (POSSampleStream stream = new POSSampleStream(aPosSamples)) {
+        try (ObjectStream<POSSample> stream = aPosSamples) {
+            if (stream.read() == null) {
+                return null;
+            }
+            stream.reset();
+            
             POSTaggerFactory taggerFactory = new POSTaggerFactory();
             return POSTaggerME.train("unknown", stream, aParameters, taggerFactory);
         }
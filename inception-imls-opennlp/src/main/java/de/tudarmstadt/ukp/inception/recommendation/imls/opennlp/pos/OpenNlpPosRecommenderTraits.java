@@ -17,31 +17,18 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.pos;
 
-import java.io.Serializable;
-
+import de.tudarmstadt.ukp.inception.recommendation.imls.opennlp.OpenNlpRecommenderTraits;
 import opennlp.tools.ml.AbstractTrainer;
 import opennlp.tools.util.TrainingParameters;
 
 public class OpenNlpPosRecommenderTraits
-    implements Serializable
+    extends OpenNlpRecommenderTraits
 {
     private static final long serialVersionUID = -4514466471370195077L;
 
     private int trainingSetSizeLimit = Integer.MAX_VALUE;
     private int predictionLimit = Integer.MAX_VALUE;
-    
-    private int numThreads = 1;
-
-    public int getNumThreads()
-    {
-        return numThreads;
-    }
 
-    public void setNumThreads(int aNumThreads)
-    {
-        numThreads = aNumThreads;
-    }
-    
     public int getTrainingSetSizeLimit()
     {
         return trainingSetSizeLimit;
@@ -62,11 +49,11 @@ public class OpenNlpPosRecommenderTraits
         predictionLimit = aPredictionLimit;
     }
 
-    public TrainingParameters getParameters()
+    public TrainingParameters getParameters(int aTrainingSetSize)
     {
         TrainingParameters parameters = TrainingParameters.defaultParams();
         parameters.put(AbstractTrainer.VERBOSE_PARAM, "false");
-        parameters.put(TrainingParameters.THREADS_PARAM, numThreads);
+        parameters.put(TrainingParameters.THREADS_PARAM, getNumThreads(aTrainingSetSize));
         return parameters;
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.opennlp;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+public class SentenceSampleStreamTest
+{
+    private List<CAS> casses;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        casses = asList(createCas("a b. c d e."), createCas("f."));
+    }
+
+    @Test
+    public void thatSamplesAreReadLazilyAndCanBeReset()
+    {
+        SentenceSampleStream<String> sut = new SentenceSampleStream<>(casses, Integer.MAX_VALUE,
+            (cas, sentence, tokens, tokenTexts, sink) -> sink.accept(String.join(" ", tokenTexts)));
+
+        assertThat(sut.read()).isEqualTo("a b.");
+        assertThat(sut.readAll()).containsExactly("c d e.", "f.");
+        assertThat(sut.read()).isNull();
+
+        sut.reset();
+
+        assertThat(sut.readAll()).containsExactly("a b.", "c d e.", "f.");
+    }
+
+    @Test
+    public void thatLimitIsRespected()
+    {
+        // Every token becomes a sample, so the limit cuts through the second sentence
+        SentenceSampleStream<String> sut = new SentenceSampleStream<>(casses, 3,
+            (cas, sentence, tokens, tokenTexts, sink) -> asList(tokenTexts).forEach(sink));
+
+        assertThat(sut.readAll()).containsExactly("a", "b.", "c");
+        assertThat(sut.estimateSize()).isEqualTo(3);
+    }
+
+    private CAS createCas(String aText) throws Exception
+    {
+        JCas jcas = JCasFactory.createJCas();
+        jcas.setDocumentText(aText);
+
+        int sentenceBegin = 0;
+        int tokenBegin = 0;
+        for (int i = 0; i <= aText.length(); i++) {
+            if (i == aText.length() || aText.charAt(i) == ' ') {
+                new Token(jcas, tokenBegin, i).addToIndexes();
+                if (aText.charAt(i - 1) == '.') {
+                    new Sentence(jcas, sentenceBegin, i).addToIndexes();
+                    sentenceBegin = i + 1;
+                }
+                tokenBegin = i + 1;
+            }
+        }
+
+        return jcas.getCas();
+    }
+}
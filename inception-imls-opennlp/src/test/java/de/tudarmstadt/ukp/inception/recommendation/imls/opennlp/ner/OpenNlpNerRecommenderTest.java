@@ -44,6 +44,7 @@ import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.io.conll.Conll2002Reader;
 import de.tudarmstadt.ukp.dkpro.core.testing.DkproTestContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.IncrementalSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.PercentageBasedSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
@@ -115,6 +116,22 @@ public class OpenNlpNerRecommenderTest
         assertThat(score).isStrictlyBetween(0.0, 1.0);
     }
 
+    @Test
+    public void thatCrossValidationWorks() throws Exception
+    {
+        DataSplitter splitStrategy = new PercentageBasedSplitter(0.8, 10);
+        traits.setCrossValidationFolds(3);
+        OpenNlpNerRecommender sut = new OpenNlpNerRecommender(recommender, traits);
+        List<CAS> casList = loadDevelopmentData();
+
+        EvaluationResult result = sut.evaluate(casList, splitStrategy);
+
+        System.out.printf("Score: %f%n", result.getDefaultScore());
+        
+        assertThat(result.isEvaluationSkipped()).isFalse();
+        assertThat(result.getDefaultScore()).isStrictlyBetween(0.0, 1.0);
+    }
+
     @Test
     public void thatIncrementalNerEvaluationWorks() throws Exception
     {
@@ -18,8 +18,9 @@
 package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch;
 
 import static java.util.Arrays.asList;
-import static java.util.Collections.emptyList;
-import static java.util.Comparator.comparingInt;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 import static org.apache.uima.fit.util.CasUtil.getAnnotationType;
@@ -28,17 +29,16 @@ import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Map;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.Type;
 import org.apache.uima.cas.text.AnnotationFS;
-import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
-import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,14 +52,18 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.UnitizingAgreementStatistics.Unit;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.DictEntry;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.LabelStats;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.AhoCorasickAutomaton;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.Trie;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.WhitespaceNormalizingSanitizer;
 
 public class StringMatchingRecommender
     implements RecommendationEngine
 {
-    public static final Key<Trie<DictEntry>> KEY_MODEL = new Key<>("model");
+    public static final Key<AhoCorasickAutomaton<DictEntry>> KEY_MODEL = new Key<>("model");
     private static final String UNKNOWN_LABEL = "unknown";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -69,7 +73,9 @@ public class StringMatchingRecommender
     private final int maxRecommendations;
     private final StringMatchingRecommenderTraits traits;
     
-    private List<GazeteerEntry> pretrainData = emptyList();
+    // Compiled gazeteers which are consulted in addition to the learned model - these may be
+    // shared with other recommenders, so their entries must not be modified
+    private final List<AhoCorasickAutomaton<DictEntry>> gazeteers = new ArrayList<>();
 
     public StringMatchingRecommender(Recommender aRecommender,
             StringMatchingRecommenderTraits aTraits)
@@ -82,11 +88,26 @@ public class StringMatchingRecommender
 
     public void pretrain(List<GazeteerEntry> aData)
     {
-        if (aData != null) {
-            pretrainData = aData;
+        if (aData == null || aData.isEmpty()) {
+            return;
         }
-        else {
-            pretrainData = emptyList();
+        
+        Trie<DictEntry> dict = createTrie();
+        for (GazeteerEntry entry : aData) {
+            learn(dict, entry.text, entry.label);
+        }
+        
+        addGazeteer(AhoCorasickAutomaton.compile(dict));
+    }
+    
+    /**
+     * Adds a compiled gazeteer. During prediction, the entries of the gazeteer are merged with
+     * the entries learned from the annotated data.
+     */
+    public void addGazeteer(AhoCorasickAutomaton<DictEntry> aGazeteer)
+    {
+        if (aGazeteer != null) {
+            gazeteers.add(aGazeteer);
         }
     }
 
@@ -98,14 +119,9 @@ public class StringMatchingRecommender
     @Override
     public void train(RecommenderContext aContext, List<CAS> aCasses)
     {
+        // Learn from the annotated data - the gazeteers are already compiled and are merged
+        // with the learned entries during prediction
         Trie<DictEntry> dict = createTrie();
-        
-        // Load the pre-train data into the trie before learning from the annotated data
-        for (GazeteerEntry entry : pretrainData) {
-            learn(dict, entry.text, entry.label);
-        }
-        
-        // Learn from the annotated data
         for (CAS cas : aCasses) {
             Type annotationType = getType(cas, layerName);
             Feature labelFeature = annotationType.getFeatureByBaseName(featureName);
@@ -115,7 +131,7 @@ public class StringMatchingRecommender
             }
         }
         
-        aContext.put(KEY_MODEL, dict);
+        aContext.put(KEY_MODEL, AhoCorasickAutomaton.compile(dict));
         aContext.markAsReadyForPrediction();
         
         log.debug("Learned dictionary model with {} entries", dict.size());
@@ -124,14 +140,17 @@ public class StringMatchingRecommender
     @Override
     public void predict(RecommenderContext aContext, CAS aCas) throws RecommendationException
     {
-        Trie<DictEntry> dict = aContext.get(KEY_MODEL).orElseThrow(() -> 
+        AhoCorasickAutomaton<DictEntry> dict = aContext.get(KEY_MODEL).orElseThrow(() -> 
                 new RecommendationException("Key [" + KEY_MODEL + "] not found in context"));
         
         Type predictionType = getAnnotationType(aCas, PredictedSpan.class);
         Feature confidenceFeature = predictionType.getFeatureByBaseName("score");
         Feature labelFeature = predictionType.getFeatureByBaseName("label");
 
-        List<Sample> data = predict(0, aCas, dict);
+        List<AhoCorasickAutomaton<DictEntry>> dicts = new ArrayList<>(gazeteers);
+        dicts.add(dict);
+
+        List<Sample> data = predict(0, aCas, dicts);
         
         for (Sample sample : data) {
             for (Span span : sample.getSpans()) {
@@ -144,7 +163,8 @@ public class StringMatchingRecommender
         }
     }
 
-    private List<Sample> predict(int aDocNo, CAS aCas, Trie<DictEntry> aDict)
+    private List<Sample> predict(int aDocNo, CAS aCas,
+            List<AhoCorasickAutomaton<DictEntry>> aDicts)
     {
         Type sentenceType = getType(aCas, Sentence.class);
         Type tokenType = getType(aCas, Token.class);
@@ -154,16 +174,26 @@ public class StringMatchingRecommender
         for (AnnotationFS sentence : select(aCas, sentenceType)) {
             List<Span> spans = new ArrayList<>();
             
+            LongestMatches matches = new LongestMatches(aDicts, text, sentence.getBegin(),
+                    sentence.getEnd());
+            
             Collection<AnnotationFS> tokens = selectCovered(tokenType, sentence);
+            
+            // Token end offsets relative to the sentence begin for constant-time boundary checks
+            BitSet tokenEnds = new BitSet(sentence.getEnd() - sentence.getBegin() + 1);
             for (AnnotationFS token : tokens) {
-                Trie<DictEntry>.Node node = aDict.getNode(text, token.getBegin());
-                if (node != null) {
+                tokenEnds.set(token.getEnd() - sentence.getBegin());
+            }
+            
+            for (AnnotationFS token : tokens) {
+                DictEntry entry = matches.getEntry(token.getBegin());
+                if (entry != null) {
                     int begin = token.getBegin();
-                    int end = begin + node.level;
+                    int end = matches.getEnd(begin);
                     
                     // Need to check that the match actually ends at a token boundary!
-                    if (tokens.stream().filter(t -> t.getEnd() == end).findAny().isPresent()) {
-                        for (LabelStats lc : node.value.getBest(maxRecommendations)) {
+                    if (tokenEnds.get(end - sentence.getBegin())) {
+                        for (LabelStats lc : entry.getBest(maxRecommendations)) {
                             String label = lc.getLabel();
                             // check instance equality to avoid collision with user labels
                             if (label == UNKNOWN_LABEL) {
@@ -192,12 +222,6 @@ public class StringMatchingRecommender
         List<Sample> trainingSet = new ArrayList<>();
         List<Sample> testSet = new ArrayList<>();
 
-        // For the DKPro Statistics evaluation study, we need to define a continuum over the data.
-        // We do this in terms of character positions which are aggregated over all samples in the
-        // test set. Thus, the continuum size is equal to the sum of the length of all samples in
-        // the test set.
-        int testSetContinuumSize = 0;
-        
         for (Sample sample : data) {
             switch (aDataSplitter.getTargetSet(sample)) {
             case TRAIN:
@@ -205,7 +229,6 @@ public class StringMatchingRecommender
                 break;
             case TEST:
                 testSet.add(sample);
-                testSetContinuumSize += sample.getText().length();
                 break;
             default:
                 // Do nothing
@@ -239,52 +262,36 @@ public class StringMatchingRecommender
                 testSetLabeledSamplesCount, data.size());
             
         // Train
-        Trie<DictEntry> dict = createTrie();
+        Trie<DictEntry> trie = createTrie();
         for (Sample sample : trainingSet) {
             for (Span span : sample.getSpans()) {
-                learn(dict, span.getText(), span.getLabel());
+                learn(trie, span.getText(), span.getLabel());
             }
         }
+        AhoCorasickAutomaton<DictEntry> dict = AhoCorasickAutomaton.compile(trie);
 
-        // Predict
-        List<Sample> actualData = new ArrayList<>();
-        for (Sample sample : testSet) {
-            List<Span> spans = new ArrayList<>();
-            
-            for (TokenSpan token : sample.getTokens()) {
-                Trie<DictEntry>.Node node = dict.getNode(sample.getText(),
-                        token.getBegin() - sample.getBegin());
-                if (node != null) {
-                    int begin = token.getBegin();
-                    int end = token.getBegin() + node.level;
-                    
-                    // Need to check that the match actually ends at a token boundary!
-                    if (sample.hasTokenEndingAt(end)) {
-                        for (LabelStats lc : node.value.getBest(maxRecommendations)) {
-                            spans.add(new Span(begin, end,
-                                    sample.getText().substring(begin - sample.getBegin(),
-                                            end - sample.getBegin()),
-                                    lc.getLabel(), lc.getRelFreq()));
-                        }
-                    }
-                }
-            }
-            
-            actualData.add(new Sample(sample, spans));
-        }
+        // Predict and collect the agreement statistics for each document in parallel. The
+        // statistics of the documents are then merged in the order of the test set, so the
+        // evaluation continuum is the same as if the test set were processed serially.
+        Map<Integer, List<Sample>> testSetByDocument = testSet.stream()
+                .collect(groupingBy(Sample::getDocNo, LinkedHashMap::new, toList()));
+        List<UnitizingAgreementStatistics> documentStatistics = testSetByDocument.values()
+                .parallelStream()
+                .map(samples -> evaluateDocument(dict, samples))
+                .collect(toList());
         
-        // Evaluate
-        UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(2, 0, testSetContinuumSize);
-        
-        // Add reference data to the study
-        addDataToStudy(testSet, study, 0);
+        // Evaluate - for the agreement, we need to define a continuum over the data. We do this
+        // in terms of character positions which are aggregated over all samples in the test set.
+        // Thus, the continuum size is equal to the sum of the length of all samples in the test
+        // set.
+        UnitizingAgreementStatistics statistics = new UnitizingAgreementStatistics(2);
+        for (UnitizingAgreementStatistics stats : documentStatistics) {
+            statistics.append(stats);
+        }
         
-        // Add actual data to the study
-        addDataToStudy(actualData, study, 1);
-
-        double score = new KrippendorffAlphaUnitizingAgreement(study).calculateAgreement();
+        double score = statistics.calculateAgreement();
         
-        // KrippendorffAlphaUnitizingAgreement can return a negative score on systematic
+        // Krippendorff's unitizing alpha can return a negative score on systematic
         // disagreement, but the score threshold is expected to take 0 as the lowest value...
         // ... so to avoid confusing the user completely by returning a negative number and
         // not having the recommender activate even if the threshold is set to 0, we just cap
@@ -293,27 +300,51 @@ public class StringMatchingRecommender
         return result;
     }
     
-    private void addDataToStudy(Collection<Sample> aData, UnitizingAnnotationStudy aStudy,
-            int aAnnotatorId)
+    private UnitizingAgreementStatistics evaluateDocument(
+            AhoCorasickAutomaton<DictEntry> aDict, List<Sample> aSamples)
     {
-        // Offset of the current sample within the evaluation continuum
-        int offset = 0;
+        UnitizingAgreementStatistics statistics = new UnitizingAgreementStatistics(2);
         
-        for (Sample sample : aData) {
-            // Add all labeled spans to the study
+        for (Sample sample : aSamples) {
+            List<Unit> units = new ArrayList<>();
+            
+            // Add reference data to the statistics
             for (Span span : sample.getSpans()) {
-                // Length of the labeled span
-                int length = span.getEnd() - span.getBegin();
-                
-                // Begin offset of the span within the current sample
-                int beginInSample = span.getBegin() - sample.getBegin();
-                
-                aStudy.addUnit(offset + beginInSample, length, aAnnotatorId, span.getLabel());
+                units.add(toUnit(sample, span, 0));
+            }
+            
+            // Add actual data to the statistics
+            LongestMatches matches = new LongestMatches(singletonList(aDict), sample.getText(),
+                    0, sample.getText().length());
+            
+            for (TokenSpan token : sample.getTokens()) {
+                DictEntry entry = matches.getEntry(token.getBegin() - sample.getBegin());
+                if (entry != null) {
+                    int begin = token.getBegin();
+                    int end = sample.getBegin()
+                            + matches.getEnd(token.getBegin() - sample.getBegin());
+                    
+                    // Need to check that the match actually ends at a token boundary!
+                    if (sample.hasTokenEndingAt(end)) {
+                        for (LabelStats lc : entry.getBest(maxRecommendations)) {
+                            units.add(new Unit(begin - sample.getBegin(), end - begin, 1,
+                                    lc.getLabel()));
+                        }
+                    }
+                }
             }
             
-            // Shift within continuum
-            offset += sample.getLength();
+            statistics.appendSection(sample.getLength(), units);
         }
+        
+        return statistics;
+    }
+    
+    private Unit toUnit(Sample aSample, Span aSpan, int aRater)
+    {
+        // Begin offset of the span within the sample and length of the labeled span
+        return new Unit(aSpan.getBegin() - aSample.getBegin(), aSpan.getEnd() - aSpan.getBegin(),
+                aRater, aSpan.getLabel());
     }
     
     private void learn(Trie<DictEntry> aDict, String aText, String aLabel)
@@ -369,6 +400,58 @@ public class StringMatchingRecommender
         return data;
     }
     
+    /**
+     * The longest dictionary entry starting at each position of a range of the text. The whole
+     * range is scanned in a single pass per dictionary. If several dictionaries contain the
+     * longest match, their entries are merged.
+     */
+    private static class LongestMatches
+    {
+        private final int begin;
+        private final int[] ends;
+        private final DictEntry[] entries;
+        
+        public LongestMatches(List<AhoCorasickAutomaton<DictEntry>> aDicts, CharSequence aText,
+                int aBegin, int aEnd)
+        {
+            begin = aBegin;
+            ends = new int[aEnd - aBegin];
+            entries = new DictEntry[aEnd - aBegin];
+            
+            for (AhoCorasickAutomaton<DictEntry> dict : aDicts) {
+                dict.match(aText, aBegin, aEnd, (matchBegin, matchEnd, entry) -> {
+                    int i = matchBegin - begin;
+                    if (matchEnd > ends[i]) {
+                        ends[i] = matchEnd;
+                        entries[i] = entry;
+                    }
+                    else if (matchEnd == ends[i]) {
+                        // Same mention in another dictionary - merge without modifying the
+                        // entries of the dictionaries
+                        entries[i] = DictEntry.merge(entries[i], entry);
+                    }
+                });
+            }
+        }
+        
+        /**
+         * @return the entry of the longest match starting at the given offset or {@code null}.
+         */
+        public DictEntry getEntry(int aOffset)
+        {
+            int i = aOffset - begin;
+            return i >= 0 && i < entries.length ? entries[i] : null;
+        }
+        
+        /**
+         * @return the end offset of the longest match starting at the given offset.
+         */
+        public int getEnd(int aOffset)
+        {
+            return ends[aOffset - begin];
+        }
+    }
+    
     private static class Sample
     {
         private final int docNo;
@@ -376,18 +459,10 @@ public class StringMatchingRecommender
         private final int end;
         private final String text;
         private final List<TokenSpan> tokens;
+        // Token end offsets relative to the sample begin
+        private final BitSet tokenEnds;
         private final List<Span> spans;
 
-        public Sample(Sample aSample, Collection<Span> aSpans)
-        {
-            docNo = aSample.getDocNo();
-            begin = aSample.getBegin();
-            end = aSample.getEnd();
-            text = aSample.getText();
-            tokens = aSample.getTokens();
-            spans = asList(aSpans.toArray(new Span[aSpans.size()]));
-        }
-
         public Sample(int aDocNo, int aBegin, int aEnd, String aText,
                 Collection<AnnotationFS> aTokens, Collection<Span> aSpans)
         {
@@ -397,7 +472,11 @@ public class StringMatchingRecommender
             end = aEnd;
             text = aText;
             tokens = aTokens.stream().map(fs -> new TokenSpan(fs.getBegin(), fs.getEnd()))
-                    .collect(Collectors.toList());
+                    .collect(toList());
+            tokenEnds = new BitSet(aEnd - aBegin + 1);
+            for (TokenSpan token : tokens) {
+                tokenEnds.set(token.getEnd() - aBegin);
+            }
             spans = asList(aSpans.toArray(new Span[aSpans.size()]));
         }
         
@@ -438,7 +517,7 @@ public class StringMatchingRecommender
         
         public boolean hasTokenEndingAt(int aOffset)
         {
-            return tokens.stream().filter(t -> t.end == aOffset).findAny().isPresent();
+            return aOffset >= begin && tokenEnds.get(aOffset - begin);
         }
     }
 
@@ -465,46 +544,6 @@ public class StringMatchingRecommender
         }
     }
     
-    private static class LabelStats
-    {
-        private final String label;
-        private final int count;
-        private final double relFreq;
-
-        public LabelStats(String aLabel, int aCount, double aRelFreq)
-        {
-            super();
-            label = aLabel;
-            count = aCount;
-            relFreq = aRelFreq;
-        }
-
-        /**
-         * The label (e.g. NN, PER, OTH, etc.)
-         */
-        public String getLabel()
-        {
-            return label;
-        }
-        
-        /**
-         * How often the label was observed.
-         */
-        public int getCount()
-        {
-            return count;
-        }
-
-        /**
-         * How often the label was observed in relation to the total number of observations of the
-         * mention.
-         */
-        public double getRelFreq()
-        {
-            return relFreq;
-        }
-    }
-
     private static class Span
     {
         private final int begin;
@@ -548,72 +587,4 @@ public class StringMatchingRecommender
             return score;
         }
     }
-    
-    private static class DictEntry
-    {
-        private String key;
-        private String[] labels;
-        private int[] counts;
-        
-        public DictEntry(String aKey)
-        {
-            key = aKey;
-        }
-        
-        public void put(String aLabel)
-        {
-            // No data yet - create it
-            if (labels == null) {
-                labels = new String[] { aLabel };
-                counts = new int[] { 1 };
-                return;
-            }
-            
-            // Data is available
-            int i = asList(labels).indexOf(aLabel);
-            
-            // Label already exists
-            if (i != -1) {
-                counts[i]++;
-                return;
-            }
-            
-            // Label does not exist yet
-            String[] newLabels = new String[labels.length + 1];
-            System.arraycopy(labels, 0, newLabels, 0, labels.length);
-            labels = newLabels;
-            
-            int[] newCounts = new int[counts.length + 1];
-            System.arraycopy(counts, 0, newCounts, 0, counts.length);
-            counts = newCounts;
-            
-            labels[labels.length - 1] = aLabel;
-            counts[counts.length - 1] = 1;
-        }
-        
-        public List<LabelStats> getBest(int aN)
-        {
-            int total = IntStream.of(counts).sum();
-            
-            List<LabelStats> best = new ArrayList<>();
-            for (int i = 0; i < labels.length; i++) {
-                best.add(new LabelStats(labels[i], counts[i], (double) counts[i] / (double) total));
-            }
-            
-            return best.stream()
-                    .sorted(comparingInt(LabelStats::getCount).reversed())
-                    .limit(aN)
-                    .collect(Collectors.toList());
-        }
-        
-        @Override
-        public String toString()
-        {
-            StringBuilder builder = new StringBuilder();
-            builder.append("DictEntry [key=");
-            builder.append(key);
-            builder.append("]");
-            return builder.toString();
-        }
-    }
 }
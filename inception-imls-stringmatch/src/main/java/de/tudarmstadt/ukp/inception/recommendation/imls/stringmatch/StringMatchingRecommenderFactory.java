@@ -69,10 +69,10 @@ public class StringMatchingRecommenderFactory
         StringMatchingRecommenderTraits traits = new StringMatchingRecommenderTraits();
         StringMatchingRecommender recommender = new StringMatchingRecommender(aRecommender, traits);
         
-        // Pre-load the gazeteers into the recommender
+        // Pre-load the compiled gazeteers into the recommender
         for (Gazeteer gaz : gazeteerService.listGazeteers(aRecommender)) {
             try {
-                recommender.pretrain(gazeteerService.readGazeteerFile(gaz));
+                recommender.addGazeteer(gazeteerService.loadCompiledGazeteer(gaz));
             }
             catch (IOException e) {
                 log.info("Unable to load gazeteer [{}] for recommender [{}]({}) in project [{}]({})",
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch;
+
+import static java.util.Comparator.comparingInt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Partial statistics for Krippendorff's unitizing alpha (cu-alpha per category, aggregated over
+ * all categories) over a continuum. The statistics of consecutive sections of the continuum can
+ * be collected independently and then be merged using {@link #append}, so the agreement over a
+ * large continuum can be computed in parallel and without holding all units in memory.
+ * <p>
+ * Units only interact with units and gaps which overlap them, so the observed disagreement is
+ * summed up per section. The expected disagreement only depends on the lengths of the units and
+ * gaps. Gaps which touch the boundaries of a section are kept open until the next section is
+ * appended, because they may continue in that section.
+ */
+public class UnitizingAgreementStatistics
+{
+    private final int raterCount;
+    private long length;
+    private final Map<Object, CategoryStatistics> categories = new LinkedHashMap<>();
+    
+    /**
+     * Creates statistics over an empty continuum.
+     */
+    public UnitizingAgreementStatistics(int aRaterCount)
+    {
+        raterCount = aRaterCount;
+    }
+    
+    public int getRaterCount()
+    {
+        return raterCount;
+    }
+    
+    /**
+     * @return the length of the continuum covered by the statistics.
+     */
+    public long getLength()
+    {
+        return length;
+    }
+    
+    /**
+     * Appends a section of the given length to the continuum.
+     * 
+     * @param aLength
+     *            the length of the section.
+     * @param aUnits
+     *            the units of all raters in the section - offsets are relative to the section.
+     */
+    public void appendSection(int aLength, List<Unit> aUnits)
+    {
+        UnitizingAgreementStatistics section = new UnitizingAgreementStatistics(raterCount);
+        section.length = aLength;
+        
+        Map<Object, List<List<Unit>>> unitsByCategory = new LinkedHashMap<>();
+        for (Unit unit : aUnits) {
+            List<List<Unit>> unitsByRater = unitsByCategory.computeIfAbsent(unit.category,
+                k -> {
+                    List<List<Unit>> list = new ArrayList<>();
+                    for (int r = 0; r < raterCount; r++) {
+                        list.add(new ArrayList<>());
+                    }
+                    return list;
+                });
+            unitsByRater.get(unit.rater).add(unit);
+        }
+        
+        for (Entry<Object, List<List<Unit>>> e : unitsByCategory.entrySet()) {
+            section.categories.put(e.getKey(), new CategoryStatistics(aLength, e.getValue()));
+        }
+        
+        append(section);
+    }
+    
+    /**
+     * Appends the continuum of the given statistics to the continuum of these statistics. The
+     * given statistics must not be used anymore afterwards.
+     */
+    public void append(UnitizingAgreementStatistics aOther)
+    {
+        if (aOther.raterCount != raterCount) {
+            throw new IllegalArgumentException("Cannot merge statistics for [" + raterCount
+                    + "] and [" + aOther.raterCount + "] raters");
+        }
+        
+        for (Entry<Object, CategoryStatistics> e : categories.entrySet()) {
+            CategoryStatistics other = aOther.categories.get(e.getKey());
+            e.getValue().append(other != null ? other
+                    : new CategoryStatistics(raterCount, aOther.length));
+        }
+        
+        for (Entry<Object, CategoryStatistics> e : aOther.categories.entrySet()) {
+            if (!categories.containsKey(e.getKey())) {
+                CategoryStatistics stats = new CategoryStatistics(raterCount, length);
+                stats.append(e.getValue());
+                categories.put(e.getKey(), stats);
+            }
+        }
+        
+        length += aOther.length;
+    }
+    
+    /**
+     * Calculates the agreement over all categories. As in the DKPro Statistics implementation,
+     * the observed and expected disagreements of the categories are summed up.
+     */
+    public double calculateAgreement()
+    {
+        double observed = 0.0;
+        double expected = 0.0;
+        for (CategoryStatistics stats : categories.values()) {
+            observed += stats.getObservedDisagreement(raterCount, length);
+            expected += stats.getExpectedDisagreement(raterCount, length);
+        }
+        
+        return 1.0 - (observed / expected);
+    }
+    
+    public static class Unit
+    {
+        private final int offset;
+        private final int length;
+        private final int rater;
+        private final Object category;
+        
+        public Unit(int aOffset, int aLength, int aRater, Object aCategory)
+        {
+            offset = aOffset;
+            length = aLength;
+            rater = aRater;
+            category = aCategory;
+        }
+        
+        public int getOffset()
+        {
+            return offset;
+        }
+        
+        public int getLength()
+        {
+            return length;
+        }
+        
+        public int getRater()
+        {
+            return rater;
+        }
+        
+        public Object getCategory()
+        {
+            return category;
+        }
+        
+        private int getEnd()
+        {
+            return offset + length;
+        }
+    }
+    
+    private static class CategoryStatistics
+    {
+        // Sum of the squared distances between the segments of all ordered pairs of raters
+        private double observed;
+        
+        private long unitCount;
+        // Sum of 2l^3 - 3l^2 + l over the lengths l of all units
+        private double unitMoments;
+        // Sum of l(l - 1) over the lengths l of all units
+        private double unitPairs;
+        private final TreeMap<Long, Long> unitLengths = new TreeMap<>();
+        
+        // Gaps which do not touch the boundaries of the continuum (all raters)
+        private final TreeMap<Long, Long> closedGapLengths = new TreeMap<>();
+        // If a rater has no unit in the continuum, the whole continuum is a single open gap
+        private final boolean[] open;
+        private final long[] leadingGap;
+        private final long[] trailingGap;
+        
+        /**
+         * Statistics for a continuum of the given length without any units.
+         */
+        public CategoryStatistics(int aRaterCount, long aLength)
+        {
+            open = new boolean[aRaterCount];
+            leadingGap = new long[aRaterCount];
+            trailingGap = new long[aRaterCount];
+            Arrays.fill(open, true);
+            Arrays.fill(leadingGap, aLength);
+            Arrays.fill(trailingGap, aLength);
+        }
+        
+        /**
+         * Statistics for a section of the given length with the given units per rater.
+         */
+        public CategoryStatistics(int aLength, List<List<Unit>> aUnitsByRater)
+        {
+            this(aUnitsByRater.size(), aLength);
+            
+            for (int r = 0; r < aUnitsByRater.size(); r++) {
+                List<Unit> units = new ArrayList<>(aUnitsByRater.get(r));
+                units.sort(comparingInt((Unit u) -> u.offset));
+                
+                int end = 0;
+                for (Unit unit : units) {
+                    if (open[r]) {
+                        open[r] = false;
+                        leadingGap[r] = unit.offset;
+                    }
+                    else if (unit.offset > end) {
+                        increment(closedGapLengths, unit.offset - end);
+                    }
+                    end = Math.max(end, unit.getEnd());
+                    
+                    long l = unit.length;
+                    unitCount++;
+                    unitMoments += 2.0 * l * l * l - 3.0 * l * l + l;
+                    unitPairs += (double) l * (l - 1);
+                    increment(unitLengths, l);
+                }
+                
+                if (!open[r]) {
+                    trailingGap[r] = aLength - end;
+                }
+            }
+            
+            for (int i = 0; i < aUnitsByRater.size(); i++) {
+                for (int j = 0; j < aUnitsByRater.size(); j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    
+                    for (Unit g : aUnitsByRater.get(i)) {
+                        boolean inGap = true;
+                        for (Unit h : aUnitsByRater.get(j)) {
+                            if (g.offset < h.getEnd() && h.offset < g.getEnd()) {
+                                inGap = false;
+                                double begins = g.offset - h.offset;
+                                double ends = g.getEnd() - h.getEnd();
+                                observed += begins * begins + ends * ends;
+                            }
+                        }
+                        
+                        // A unit within a gap of the other rater - counted twice since the gap
+                        // of the other rater also lies around the unit in the pair (j, i)
+                        if (inGap) {
+                            observed += 2.0 * g.length * g.length;
+                        }
+                    }
+                }
+            }
+        }
+        
+        public void append(CategoryStatistics aOther)
+        {
+            observed += aOther.observed;
+            unitCount += aOther.unitCount;
+            unitMoments += aOther.unitMoments;
+            unitPairs += aOther.unitPairs;
+            aOther.unitLengths.forEach((l, n) -> increment(unitLengths, l, n));
+            aOther.closedGapLengths.forEach((l, n) -> increment(closedGapLengths, l, n));
+            
+            for (int r = 0; r < open.length; r++) {
+                if (open[r] && aOther.open[r]) {
+                    leadingGap[r] += aOther.leadingGap[r];
+                    trailingGap[r] = leadingGap[r];
+                }
+                else if (open[r]) {
+                    open[r] = false;
+                    leadingGap[r] += aOther.leadingGap[r];
+                    trailingGap[r] = aOther.trailingGap[r];
+                }
+                else if (aOther.open[r]) {
+                    trailingGap[r] += aOther.trailingGap[r];
+                }
+                else {
+                    // The trailing gap and the leading gap of the other statistics meet
+                    if (trailingGap[r] + aOther.leadingGap[r] > 0) {
+                        increment(closedGapLengths, trailingGap[r] + aOther.leadingGap[r]);
+                    }
+                    trailingGap[r] = aOther.trailingGap[r];
+                }
+            }
+        }
+        
+        public double getObservedDisagreement(int aRaterCount, long aLength)
+        {
+            double l = aLength;
+            return observed / (aRaterCount * (aRaterCount - 1) * l * l);
+        }
+        
+        public double getExpectedDisagreement(int aRaterCount, long aLength)
+        {
+            // At the end of the continuum, the open gaps are closed
+            TreeMap<Long, Long> gapLengths = new TreeMap<>(closedGapLengths);
+            for (int r = 0; r < open.length; r++) {
+                if (leadingGap[r] > 0) {
+                    increment(gapLengths, leadingGap[r]);
+                }
+                if (!open[r] && trailingGap[r] > 0) {
+                    increment(gapLengths, trailingGap[r]);
+                }
+            }
+            
+            // For each unit, the sum of (g - l + 1) over all gaps of length g >= l - computed
+            // from the longest to the shortest units using running sums over the gaps
+            double gapTerm = 0.0;
+            double gapCount = 0.0;
+            double gapLengthSum = 0.0;
+            Entry<Long, Long> gap = gapLengths.lastEntry();
+            for (Entry<Long, Long> unit : unitLengths.descendingMap().entrySet()) {
+                long l = unit.getKey();
+                while (gap != null && gap.getKey() >= l) {
+                    gapCount += gap.getValue();
+                    gapLengthSum += (double) gap.getKey() * gap.getValue();
+                    gap = gapLengths.lowerEntry(gap.getKey());
+                }
+                gapTerm += (double) unit.getValue() * l * l
+                        * (gapLengthSum - (l - 1) * gapCount);
+            }
+            
+            double sum = (unitCount - 1) / 3.0 * unitMoments + gapTerm;
+            double ml = (double) aRaterCount * aLength;
+            return 2.0 / aLength * sum / (ml * (ml - 1) - unitPairs);
+        }
+        
+        private static void increment(Map<Long, Long> aHistogram, long aLength)
+        {
+            increment(aHistogram, aLength, 1);
+        }
+        
+        private static void increment(Map<Long, Long> aHistogram, long aLength, long aCount)
+        {
+            aHistogram.merge(aLength, aCount, Long::sum);
+        }
+    }
+}
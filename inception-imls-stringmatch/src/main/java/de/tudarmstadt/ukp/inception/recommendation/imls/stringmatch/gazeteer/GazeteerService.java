@@ -23,8 +23,10 @@ import java.io.InputStream;
 import java.util.List;
 
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.DictEntry;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.AhoCorasickAutomaton;
 
 public interface GazeteerService
 {
@@ -39,7 +41,8 @@ public interface GazeteerService
     void deleteGazeteers(Gazeteer aGazeteer) throws IOException;
     
     /**
-     * Import the gazeteer file for the given gazeteer.
+     * Import the gazeteer file for the given gazeteer. The gazeteer is compiled into a binary
+     * dictionary as part of the import.
      */
     void importGazeteerFile(Gazeteer aGazeteer, InputStream aStream) throws IOException;
     
@@ -59,5 +62,17 @@ public interface GazeteerService
      */
     List<GazeteerEntry> readGazeteerFile(Gazeteer aGaz) throws IOException;
 
+    /**
+     * Get the compiled dictionary file for the given gazeteer.
+     */
+    File getCompiledGazeteerFile(Gazeteer aGaz) throws IOException;
+
+    /**
+     * Loads the compiled dictionary of the given gazeteer. If the gazeteer has not been compiled
+     * yet, it is compiled now. Compiled dictionaries are cached by the checksum of the gazeteer
+     * file, so the returned dictionary may be shared and must not be modified.
+     */
+    AhoCorasickAutomaton<DictEntry> loadCompiledGazeteer(Gazeteer aGaz) throws IOException;
+
     boolean existsGazeteer(Recommender aRecommender, String aName);
 }
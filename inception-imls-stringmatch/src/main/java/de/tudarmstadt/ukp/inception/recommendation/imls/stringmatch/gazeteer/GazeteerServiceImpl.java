@@ -18,16 +18,31 @@
 package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.gazeteer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.synchronizedMap;
 import static org.apache.commons.lang3.StringUtils.trimToNull;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -45,15 +60,40 @@ import org.springframework.transaction.annotation.Transactional;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.DictEntry;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.AhoCorasickAutomaton;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.Trie;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.WhitespaceNormalizingSanitizer;
 
 @Component
 public class GazeteerServiceImpl
     implements GazeteerService
 {
+    private static final int COMPILED_MAGIC = 0x47415A43; // "GAZC"
+    private static final int COMPILED_VERSION = 1;
+    private static final int COMPILED_CACHE_SIZE = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
     private final Logger log = LoggerFactory.getLogger(getClass());
     
+    // Compiled gazeteers by the checksum of the gazeteer file, so gazeteers with the same
+    // content share a single compiled dictionary
+    private final Map<String, AhoCorasickAutomaton<DictEntry>> compiledGazeteers =
+            synchronizedMap(new LinkedHashMap<String, AhoCorasickAutomaton<DictEntry>>(16, 0.75f,
+                    true)
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, AhoCorasickAutomaton<DictEntry>> aEldest)
+                {
+                    return size() > COMPILED_CACHE_SIZE;
+                }
+            });
+    
     @PersistenceContext
     private EntityManager entityManager;
     
@@ -130,17 +170,28 @@ public class GazeteerServiceImpl
         try (OutputStream os = new FileOutputStream(gazFile)) {
             IOUtils.copyLarge(aStream, os);
         }
+        
+        compileGazeteer(aGazeteer);
     }
 
     @Override
     public File getGazeteerFile(Gazeteer aGazeteer) throws IOException
+    {
+        return getGazeteerFolder(aGazeteer).resolve(aGazeteer.getId() + ".txt").toFile();
+    }
+
+    @Override
+    public File getCompiledGazeteerFile(Gazeteer aGazeteer) throws IOException
+    {
+        return getGazeteerFolder(aGazeteer).resolve(aGazeteer.getId() + ".bin").toFile();
+    }
+    
+    private Path getGazeteerFolder(Gazeteer aGazeteer)
     {
         return repositoryProperties.getPath().toPath()
                 .resolve("project")
                 .resolve(String.valueOf(aGazeteer.getRecommender().getProject().getId()))
-                .resolve("gazeteer")
-                .resolve(aGazeteer.getId() + ".txt")
-                .toFile();
+                .resolve("gazeteer");
     }
 
     @Override
@@ -155,6 +206,11 @@ public class GazeteerServiceImpl
             gaz.delete();
         }
         
+        File compiledGaz = getCompiledGazeteerFile(aGazeteer);
+        if (compiledGaz.exists()) {
+            compiledGaz.delete();
+        }
+        
         try (MDC.MDCCloseable closable = MDC.putCloseable(Logging.KEY_PROJECT_ID,
                 String.valueOf(aGazeteer.getRecommender().getProject().getId()))) {
             log.info("Removed gazeteer [{}] from recommender [{}]({}) in project [{}]({})",
@@ -180,6 +236,89 @@ public class GazeteerServiceImpl
         return data;
     }
     
+    @Override
+    public AhoCorasickAutomaton<DictEntry> loadCompiledGazeteer(Gazeteer aGaz)
+        throws IOException
+    {
+        File compiledFile = getCompiledGazeteerFile(aGaz);
+        
+        if (compiledFile.exists()) {
+            try (DataInputStream is = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(compiledFile), BUFFER_SIZE))) {
+                if (is.readInt() == COMPILED_MAGIC && is.readInt() == COMPILED_VERSION) {
+                    String checksum = is.readUTF();
+                    
+                    AhoCorasickAutomaton<DictEntry> dict = compiledGazeteers.get(checksum);
+                    if (dict == null) {
+                        dict = AhoCorasickAutomaton.read(is,
+                                WhitespaceNormalizingSanitizer.factory(), DictEntry::read);
+                        compiledGazeteers.put(checksum, dict);
+                    }
+                    
+                    return dict;
+                }
+            }
+        }
+        
+        // The gazeteer has been imported before compiled gazeteers were introduced or it was
+        // compiled using a different format
+        return compileGazeteer(aGaz);
+    }
+    
+    private AhoCorasickAutomaton<DictEntry> compileGazeteer(Gazeteer aGaz) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        
+        List<GazeteerEntry> data = new ArrayList<>();
+        try (InputStream is = new DigestInputStream(new FileInputStream(getGazeteerFile(aGaz)),
+                digest)) {
+            parseGazeteer(aGaz, is, data);
+        }
+        
+        String checksum = String.format("%040x", new BigInteger(1, digest.digest()));
+        
+        AhoCorasickAutomaton<DictEntry> dict = compiledGazeteers.get(checksum);
+        if (dict == null) {
+            Trie<DictEntry> trie = new Trie<>(WhitespaceNormalizingSanitizer.factory());
+            for (GazeteerEntry entry : data) {
+                DictEntry dictEntry = trie.get(entry.text);
+                if (dictEntry == null) {
+                    dictEntry = new DictEntry(entry.text);
+                    trie.put(entry.text, dictEntry);
+                }
+                dictEntry.put(entry.label);
+            }
+            
+            dict = AhoCorasickAutomaton.compile(trie);
+            compiledGazeteers.put(checksum, dict);
+        }
+        
+        // Write to a temporary file first so that a partially written file is never picked up
+        File compiledFile = getCompiledGazeteerFile(aGaz);
+        File tempFile = new File(compiledFile.getPath() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+            os.writeInt(COMPILED_MAGIC);
+            os.writeInt(COMPILED_VERSION);
+            os.writeUTF(checksum);
+            dict.write(os, (out, entry) -> entry.write(out));
+        }
+        Files.move(tempFile.toPath(), compiledFile.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        
+        log.info("Compiled gazeteer [{}] with [{}] entries in {}ms", aGaz.getName(),
+                dict.size(), System.currentTimeMillis() - start);
+        
+        return dict;
+    }
+    
     public void parseGazeteer(Gazeteer aGaz, InputStream aStream, List<GazeteerEntry> aTarget)
         throws IOException
     {
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model;
+
+import static java.util.Arrays.asList;
+import static java.util.Comparator.comparingInt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The labels observed for a mention in a string matching dictionary along with how often each
+ * label was observed.
+ */
+public class DictEntry
+{
+    private final String key;
+    private String[] labels;
+    private int[] counts;
+    
+    public DictEntry(String aKey)
+    {
+        key = aKey;
+    }
+    
+    public String getKey()
+    {
+        return key;
+    }
+    
+    public void put(String aLabel)
+    {
+        put(aLabel, 1);
+    }
+    
+    public void put(String aLabel, int aCount)
+    {
+        // No data yet - create it
+        if (labels == null) {
+            labels = new String[] { aLabel };
+            counts = new int[] { aCount };
+            return;
+        }
+        
+        // Data is available
+        int i = asList(labels).indexOf(aLabel);
+        
+        // Label already exists
+        if (i != -1) {
+            counts[i] += aCount;
+            return;
+        }
+        
+        // Label does not exist yet
+        String[] newLabels = new String[labels.length + 1];
+        System.arraycopy(labels, 0, newLabels, 0, labels.length);
+        labels = newLabels;
+        
+        int[] newCounts = new int[counts.length + 1];
+        System.arraycopy(counts, 0, newCounts, 0, counts.length);
+        counts = newCounts;
+        
+        labels[labels.length - 1] = aLabel;
+        counts[counts.length - 1] = aCount;
+    }
+    
+    public void putAll(DictEntry aOther)
+    {
+        if (aOther.labels == null) {
+            return;
+        }
+        
+        for (int i = 0; i < aOther.labels.length; i++) {
+            put(aOther.labels[i], aOther.counts[i]);
+        }
+    }
+    
+    public List<LabelStats> getBest(int aN)
+    {
+        int total = IntStream.of(counts).sum();
+        
+        List<LabelStats> best = new ArrayList<>();
+        for (int i = 0; i < labels.length; i++) {
+            best.add(new LabelStats(labels[i], counts[i], (double) counts[i] / (double) total));
+        }
+        
+        return best.stream()
+                .sorted(comparingInt(LabelStats::getCount).reversed())
+                .limit(aN)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Creates a new entry which holds the labels and counts of both given entries. The given
+     * entries are not modified.
+     */
+    public static DictEntry merge(DictEntry aFirst, DictEntry aSecond)
+    {
+        DictEntry merged = new DictEntry(aFirst.getKey());
+        merged.putAll(aFirst);
+        merged.putAll(aSecond);
+        return merged;
+    }
+    
+    public void write(DataOutput aOut) throws IOException
+    {
+        aOut.writeUTF(key);
+        int n = labels != null ? labels.length : 0;
+        aOut.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            aOut.writeUTF(labels[i]);
+            aOut.writeInt(counts[i]);
+        }
+    }
+    
+    public static DictEntry read(DataInput aIn) throws IOException
+    {
+        DictEntry entry = new DictEntry(aIn.readUTF());
+        int n = aIn.readInt();
+        for (int i = 0; i < n; i++) {
+            entry.put(aIn.readUTF(), aIn.readInt());
+        }
+        return entry;
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DictEntry [key=");
+        builder.append(key);
+        builder.append("]");
+        return builder.toString();
+    }
+}
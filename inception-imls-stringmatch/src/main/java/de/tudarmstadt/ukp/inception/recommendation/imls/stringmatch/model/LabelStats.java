@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model;
+
+public class LabelStats
+{
+    private final String label;
+    private final int count;
+    private final double relFreq;
+
+    public LabelStats(String aLabel, int aCount, double aRelFreq)
+    {
+        super();
+        label = aLabel;
+        count = aCount;
+        relFreq = aRelFreq;
+    }
+
+    /**
+     * The label (e.g. NN, PER, OTH, etc.)
+     */
+    public String getLabel()
+    {
+        return label;
+    }
+    
+    /**
+     * How often the label was observed.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * How often the label was observed in relation to the total number of observations of the
+     * mention.
+     */
+    public double getRelFreq()
+    {
+        return relFreq;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * An immutable Aho-Corasick automaton compiled from a {@link Trie}. It finds all occurrences of
+ * all keys in a text in a single pass over the text.
+ * <p>
+ * The states are numbered in breadth-first order and all state data is kept in primitive arrays.
+ * The transitions of a state are stored as a sorted range of characters in a shared array and
+ * are looked up using binary search. This avoids the boxed characters and tree map nodes of the
+ * {@link Trie}. Since the automaton consists only of arrays, it can be written to a binary file
+ * and read back without compiling it again.
+ *
+ * @param <V>
+ *            the value type.
+ */
+public class AhoCorasickAutomaton<V>
+{
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    
+    private final KeySanitizerFactory sanitizerFactory;
+    private final int size;
+    
+    // Transitions of state s are at positions edgeStart[s] (inclusive) to edgeStart[s + 1]
+    // (exclusive), sorted by character
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    
+    private final int[] depth;
+    private final int[] failure;
+    // The next state along the failure links which represents a key (or NONE)
+    private final int[] output;
+    private final boolean[] terminal;
+    private final Object[] values;
+    
+    private AhoCorasickAutomaton(Trie<V> aTrie)
+    {
+        sanitizerFactory = aTrie.getSanitizerFactory();
+        size = aTrie.size();
+        
+        int stateCount = countStates(aTrie.getRoot());
+        edgeStart = new int[stateCount + 1];
+        edgeChars = new char[stateCount - 1];
+        edgeTargets = new int[stateCount - 1];
+        depth = new int[stateCount];
+        failure = new int[stateCount];
+        output = new int[stateCount];
+        terminal = new boolean[stateCount];
+        values = new Object[stateCount];
+        
+        // Number the states in breadth-first order and collect the transitions
+        Deque<Trie<V>.Node> queue = new ArrayDeque<>();
+        queue.add(aTrie.getRoot());
+        int state = 0;
+        int nextState = 1;
+        int edge = 0;
+        while (!queue.isEmpty()) {
+            Trie<V>.Node node = queue.poll();
+            depth[state] = node.level;
+            terminal[state] = node.set;
+            values[state] = node.value;
+            edgeStart[state] = edge;
+            // The children are held in a tree map, so they are sorted by character already
+            for (Map.Entry<Character, Trie<V>.Node> child : node.children.entrySet()) {
+                edgeChars[edge] = child.getKey();
+                edgeTargets[edge] = nextState;
+                edge++;
+                nextState++;
+                queue.add(child.getValue());
+            }
+            state++;
+        }
+        edgeStart[stateCount] = edge;
+        
+        // Compute the failure and output links - in breadth-first order, the links of all states
+        // with a lower depth are known when a state is processed
+        failure[ROOT] = ROOT;
+        output[ROOT] = NONE;
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int target = edgeTargets[e];
+                int fail = s == ROOT ? ROOT : next(failure[s], edgeChars[e]);
+                failure[target] = fail;
+                output[target] = terminal[fail] ? fail : output[fail];
+            }
+        }
+    }
+    
+    private AhoCorasickAutomaton(KeySanitizerFactory aSanitizerFactory, int aSize,
+            int[] aEdgeStart, char[] aEdgeChars, int[] aEdgeTargets, int[] aDepth, int[] aFailure,
+            int[] aOutput, boolean[] aTerminal, Object[] aValues)
+    {
+        sanitizerFactory = aSanitizerFactory;
+        size = aSize;
+        edgeStart = aEdgeStart;
+        edgeChars = aEdgeChars;
+        edgeTargets = aEdgeTargets;
+        depth = aDepth;
+        failure = aFailure;
+        output = aOutput;
+        terminal = aTerminal;
+        values = aValues;
+    }
+    
+    private static <V> int countStates(Trie<V>.Node aRoot)
+    {
+        int count = 0;
+        Deque<Trie<V>.Node> stack = new ArrayDeque<>();
+        stack.push(aRoot);
+        while (!stack.isEmpty()) {
+            Trie<V>.Node node = stack.pop();
+            count++;
+            for (Trie<V>.Node child : node.children.values()) {
+                stack.push(child);
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Compiles the given trie into an automaton. The trie is not referenced by the automaton and
+     * can be discarded afterwards.
+     * 
+     * @param aTrie
+     *            the trie.
+     * @return the automaton.
+     */
+    public static <V> AhoCorasickAutomaton<V> compile(Trie<V> aTrie)
+    {
+        return new AhoCorasickAutomaton<>(aTrie);
+    }
+    
+    /**
+     * @return the number of keys.
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Finds all occurrences of all keys in the given range of the text. The text is normalized
+     * using the key sanitizer of the trie from which the automaton was compiled. The offsets
+     * passed to the handler refer to the original text.
+     * 
+     * @param aText
+     *            the text.
+     * @param aBegin
+     *            the begin offset of the range to scan (inclusive).
+     * @param aEnd
+     *            the end offset of the range to scan (exclusive).
+     * @param aHandler
+     *            is called for every occurrence of a key.
+     */
+    @SuppressWarnings("unchecked")
+    public void match(CharSequence aText, int aBegin, int aEnd, MatchHandler<V> aHandler)
+    {
+        KeySanitizer sanitizer = sanitizerFactory != null ? sanitizerFactory.create() : null;
+        
+        // Offsets of the characters that have been fed into the automaton, so that matches
+        // on the sanitized text can be mapped back to the original text
+        int[] offsets = new int[aEnd - aBegin];
+        int consumed = 0;
+        
+        int state = ROOT;
+        for (int i = aBegin; i < aEnd; i++) {
+            char c = aText.charAt(i);
+            
+            if (sanitizer != null) {
+                c = sanitizer.map(c);
+                if (c == KeySanitizer.SKIP_CHAR) {
+                    continue;
+                }
+            }
+            
+            offsets[consumed] = i;
+            consumed++;
+            
+            state = next(state, c);
+            
+            int match = terminal[state] ? state : output[state];
+            while (match != NONE) {
+                aHandler.match(offsets[consumed - depth[match]], i + 1, (V) values[match]);
+                match = output[match];
+            }
+        }
+    }
+    
+    /**
+     * Writes the automaton in a binary format which can be read using
+     * {@link #read(DataInput, KeySanitizerFactory, ValueReader)}. The key sanitizer is not
+     * written.
+     * 
+     * @param aOut
+     *            the output.
+     * @param aValueWriter
+     *            writes the value of a key.
+     * @throws IOException
+     *             if the automaton could not be written.
+     */
+    @SuppressWarnings("unchecked")
+    public void write(DataOutput aOut, ValueWriter<V> aValueWriter) throws IOException
+    {
+        int stateCount = depth.length;
+        
+        aOut.writeInt(size);
+        aOut.writeInt(stateCount);
+        for (int s = 0; s <= stateCount; s++) {
+            aOut.writeInt(edgeStart[s]);
+        }
+        for (int e = 0; e < stateCount - 1; e++) {
+            aOut.writeChar(edgeChars[e]);
+            aOut.writeInt(edgeTargets[e]);
+        }
+        for (int s = 0; s < stateCount; s++) {
+            aOut.writeInt(depth[s]);
+            aOut.writeInt(failure[s]);
+            aOut.writeInt(output[s]);
+            aOut.writeBoolean(terminal[s]);
+            // Only the states which represent a key carry a value
+            if (terminal[s]) {
+                aValueWriter.write(aOut, (V) values[s]);
+            }
+        }
+    }
+    
+    /**
+     * Reads an automaton previously written using {@link #write(DataOutput, ValueWriter)}.
+     * 
+     * @param aIn
+     *            the input.
+     * @param aSanitizerFactory
+     *            the key sanitizer of the trie from which the automaton was compiled.
+     * @param aValueReader
+     *            reads the value of a key.
+     * @return the automaton.
+     * @throws IOException
+     *             if the automaton could not be read.
+     */
+    public static <V> AhoCorasickAutomaton<V> read(DataInput aIn,
+            KeySanitizerFactory aSanitizerFactory, ValueReader<V> aValueReader)
+        throws IOException
+    {
+        int size = aIn.readInt();
+        int stateCount = aIn.readInt();
+        if (size < 0 || stateCount < 1) {
+            throw new IOException("Invalid automaton with [" + size + "] keys and ["
+                    + stateCount + "] states");
+        }
+        
+        int[] edgeStart = new int[stateCount + 1];
+        for (int s = 0; s <= stateCount; s++) {
+            edgeStart[s] = aIn.readInt();
+        }
+        
+        char[] edgeChars = new char[stateCount - 1];
+        int[] edgeTargets = new int[stateCount - 1];
+        for (int e = 0; e < stateCount - 1; e++) {
+            edgeChars[e] = aIn.readChar();
+            edgeTargets[e] = aIn.readInt();
+        }
+        
+        int[] depth = new int[stateCount];
+        int[] failure = new int[stateCount];
+        int[] output = new int[stateCount];
+        boolean[] terminal = new boolean[stateCount];
+        Object[] values = new Object[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            depth[s] = aIn.readInt();
+            failure[s] = aIn.readInt();
+            output[s] = aIn.readInt();
+            terminal[s] = aIn.readBoolean();
+            if (terminal[s]) {
+                values[s] = aValueReader.read(aIn);
+            }
+        }
+        
+        return new AhoCorasickAutomaton<>(aSanitizerFactory, size, edgeStart, edgeChars,
+                edgeTargets, depth, failure, output, terminal, values);
+    }
+    
+    private int next(int aState, char aChar)
+    {
+        int state = aState;
+        while (true) {
+            int target = transition(state, aChar);
+            if (target != NONE) {
+                return target;
+            }
+            
+            if (state == ROOT) {
+                return ROOT;
+            }
+            
+            state = failure[state];
+        }
+    }
+    
+    private int transition(int aState, char aChar)
+    {
+        int from = edgeStart[aState];
+        int to = edgeStart[aState + 1];
+        if (from == to) {
+            return NONE;
+        }
+        
+        int edge = Arrays.binarySearch(edgeChars, from, to, aChar);
+        return edge >= 0 ? edgeTargets[edge] : NONE;
+    }
+    
+    @FunctionalInterface
+    public interface MatchHandler<V>
+    {
+        /**
+         * @param aBegin
+         *            the begin offset of the occurrence (inclusive).
+         * @param aEnd
+         *            the end offset of the occurrence (exclusive).
+         * @param aValue
+         *            the value of the matching key.
+         */
+        void match(int aBegin, int aEnd, V aValue);
+    }
+    
+    @FunctionalInterface
+    public interface ValueWriter<V>
+    {
+        void write(DataOutput aOut, V aValue) throws IOException;
+    }
+    
+    @FunctionalInterface
+    public interface ValueReader<V>
+    {
+        V read(DataInput aIn) throws IOException;
+    }
+}
@@ -73,6 +73,16 @@ public class Trie<V>
         sanitizerFactory = aSanitizer;
     }
 
+    public KeySanitizerFactory getSanitizerFactory()
+    {
+        return sanitizerFactory;
+    }
+
+    Node getRoot()
+    {
+        return _root;
+    }
+
     /**
      * @see Map#clear()
      */
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
@@ -45,6 +46,8 @@ import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.dkpro.core.api.datasets.Dataset;
 import de.tudarmstadt.ukp.dkpro.core.api.datasets.DatasetFactory;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.io.conll.Conll2002Reader;
 import de.tudarmstadt.ukp.dkpro.core.testing.DkproTestContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
@@ -53,7 +56,9 @@ import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.PercentageBase
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.type.PredictedSpan;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.DictEntry;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.AhoCorasickAutomaton;
 
 public class StringMatchingRecommenderTest
 {
@@ -124,6 +129,94 @@ public class StringMatchingRecommenderTest
                 .containsOnlyNulls();
     }
     
+    @Test
+    public void thatEveryTokenOfALongSentenceIsMatched() throws Exception
+    {
+        StringMatchingRecommender sut = new StringMatchingRecommender(recommender, traits);
+        CAS longSentence = buildSingleSentenceCas(100_000);
+        
+        sut.train(context, asList(longSentence));
+        sut.predict(context, longSentence);
+        
+        assertThat(JCasUtil.select(longSentence.getJCas(), PredictedSpan.class))
+            .as("Every token has been matched")
+            .hasSize(100_000);
+    }
+    
+    @Test
+    public void thatMatchingScalesLinearlyWithSentenceLength() throws Exception
+    {
+        StringMatchingRecommender sut = new StringMatchingRecommender(recommender, traits);
+        CAS shortSentence = buildSingleSentenceCas(10_000);
+        CAS longSentence = buildSingleSentenceCas(100_000);
+        
+        sut.train(context, asList(shortSentence));
+        AhoCorasickAutomaton<DictEntry> dict = context.get(StringMatchingRecommender.KEY_MODEL)
+                .get();
+        
+        long shortSteps = countMatchingSteps(dict, shortSentence.getDocumentText());
+        long longSteps = countMatchingSteps(dict, longSentence.getDocumentText());
+        
+        // Ten times the tokens would take a hundred times the steps if matching was quadratic
+        assertThat(longSteps)
+            .as("Matching steps grow linearly with the sentence length")
+            .isEqualTo(10 * shortSteps);
+    }
+    
+    /**
+     * Counts the characters read by the automaton and the matches it reports while scanning the
+     * whole text. Unlike measuring the time, this does not depend on the load of the machine.
+     */
+    private long countMatchingSteps(AhoCorasickAutomaton<DictEntry> aDict, String aText)
+    {
+        AtomicLong steps = new AtomicLong();
+        CharSequence text = new CharSequence()
+        {
+            @Override
+            public char charAt(int aIndex)
+            {
+                steps.incrementAndGet();
+                return aText.charAt(aIndex);
+            }
+            
+            @Override
+            public int length()
+            {
+                return aText.length();
+            }
+            
+            @Override
+            public CharSequence subSequence(int aBegin, int aEnd)
+            {
+                return aText.subSequence(aBegin, aEnd);
+            }
+        };
+        
+        aDict.match(text, 0, text.length(), (begin, end, entry) -> steps.incrementAndGet());
+        
+        return steps.get();
+    }
+    
+    private CAS buildSingleSentenceCas(int aTokenCount) throws Exception
+    {
+        JCas jcas = JCasFactory.createJCas();
+        
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < aTokenCount; i++) {
+            int begin = text.length();
+            text.append("token ");
+            new Token(jcas, begin, begin + 5).addToIndexes();
+        }
+        jcas.setDocumentText(text.toString());
+        new Sentence(jcas, 0, text.length()).addToIndexes();
+        
+        NamedEntity ne = new NamedEntity(jcas, 0, 5);
+        ne.setValue("OTH");
+        ne.addToIndexes();
+        
+        return jcas.getCas();
+    }
+    
     private CAS getTestCasNoLabelLabels() throws Exception
     {
         Dataset ds = loader.load("germeval2014-de");
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
+import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.UnitizingAgreementStatistics.Unit;
+
+public class UnitizingAgreementStatisticsTest
+{
+    private static final String[] CATEGORIES = { "PER", "LOC", "ORG" };
+    
+    @Test
+    public void thatMergedStatisticsMatchDKProStatistics()
+    {
+        Random rnd = new Random(42);
+        
+        for (int run = 0; run < 20; run++) {
+            List<List<Unit>> sections = new ArrayList<>();
+            List<Integer> lengths = new ArrayList<>();
+            for (int s = 0; s < 50; s++) {
+                int length = 5 + rnd.nextInt(60);
+                lengths.add(length);
+                sections.add(randomUnits(rnd, length));
+            }
+            
+            // Reference computed over the whole continuum at once
+            int continuumLength = lengths.stream().mapToInt(Integer::intValue).sum();
+            UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(2, 0, continuumLength);
+            int offset = 0;
+            for (int s = 0; s < sections.size(); s++) {
+                for (Unit unit : sections.get(s)) {
+                    study.addUnit(offset + unit.getOffset(), unit.getLength(), unit.getRater(),
+                            unit.getCategory());
+                }
+                offset += lengths.get(s);
+            }
+            double expected = new KrippendorffAlphaUnitizingAgreement(study)
+                    .calculateAgreement();
+            
+            // Statistics collected in shards of consecutive sections and merged afterwards
+            UnitizingAgreementStatistics sut = new UnitizingAgreementStatistics(2);
+            UnitizingAgreementStatistics shard = new UnitizingAgreementStatistics(2);
+            for (int s = 0; s < sections.size(); s++) {
+                shard.appendSection(lengths.get(s), sections.get(s));
+                if (rnd.nextInt(5) == 0) {
+                    sut.append(shard);
+                    shard = new UnitizingAgreementStatistics(2);
+                }
+            }
+            sut.append(shard);
+            
+            assertThat(sut.getLength()).isEqualTo(continuumLength);
+            assertThat(sut.calculateAgreement()).isCloseTo(expected, offset(1e-9));
+        }
+    }
+    
+    @Test
+    public void thatIdenticalUnitizationsAgreePerfectly()
+    {
+        List<Unit> units = new ArrayList<>();
+        units.add(new Unit(2, 3, 0, "PER"));
+        units.add(new Unit(2, 3, 1, "PER"));
+        units.add(new Unit(10, 5, 0, "LOC"));
+        units.add(new Unit(10, 5, 1, "LOC"));
+        
+        UnitizingAgreementStatistics sut = new UnitizingAgreementStatistics(2);
+        sut.appendSection(20, units);
+        sut.appendSection(20, new ArrayList<>());
+        
+        assertThat(sut.calculateAgreement()).isEqualTo(1.0);
+    }
+    
+    private List<Unit> randomUnits(Random aRnd, int aLength)
+    {
+        List<Unit> units = new ArrayList<>();
+        for (int rater = 0; rater < 2; rater++) {
+            int begin = 0;
+            while (true) {
+                begin += aRnd.nextInt(12);
+                int length = 1 + aRnd.nextInt(6);
+                if (begin + length > aLength) {
+                    break;
+                }
+                units.add(new Unit(begin, length, rater,
+                        CATEGORIES[aRnd.nextInt(CATEGORIES.length)]));
+                begin += length;
+            }
+        }
+        return units;
+    }
+}
@@ -57,8 +57,11 @@ import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.DictEntry;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.model.LabelStats;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie.AhoCorasickAutomaton;
 
 @RunWith(SpringRunner.class) 
 @DataJpaTest
@@ -211,6 +214,66 @@ public class GazeteerServiceImplTest
                 .isFalse();
     }
     
+    @Test
+    public void thatImportedGazeteerIsCompiledAndShared() throws Exception
+    {
+        Gazeteer gaz1 = new Gazeteer("gaz1", rec1);
+        sut.createOrUpdateGazeteer(gaz1);
+        Gazeteer gaz2 = new Gazeteer("gaz2", rec1);
+        sut.createOrUpdateGazeteer(gaz2);
+        
+        File input = new File("src/test/resources/gazeteers/gaz1.txt");
+        try (InputStream is = new FileInputStream(input)) {
+            sut.importGazeteerFile(gaz1, is);
+        }
+        try (InputStream is = new FileInputStream(input)) {
+            sut.importGazeteerFile(gaz2, is);
+        }
+        
+        File compiledFile = sut.getCompiledGazeteerFile(gaz1);
+        assertThat(compiledFile.exists())
+                .describedAs("Gazeteer has been compiled during import")
+                .isTrue();
+        
+        AhoCorasickAutomaton<DictEntry> dict = sut.loadCompiledGazeteer(gaz1);
+        assertThat(dict.size()).isEqualTo(3);
+        assertThat(sut.loadCompiledGazeteer(gaz2))
+                .describedAs("Gazeteers with the same checksum share the compiled dictionary")
+                .isSameAs(dict);
+        
+        List<String> labels = new ArrayList<>();
+        dict.match("London", 0, 6, (begin, end, entry) -> entry.getBest(10).stream()
+                .map(LabelStats::getLabel)
+                .forEach(labels::add));
+        assertThat(labels).containsExactlyInAnyOrder("LOC", "GPE");
+        
+        // Check that the compiled gazeteer is deleted along with the entity
+        sut.deleteGazeteers(gaz1);
+        
+        assertThat(compiledFile.exists())
+                .describedAs("Compiled gazeteer has been deleted")
+                .isFalse();
+    }
+    
+    @Test
+    public void thatMissingCompiledGazeteerIsCompiledOnLoad() throws Exception
+    {
+        Gazeteer gaz = new Gazeteer("gaz", rec1);
+        sut.createOrUpdateGazeteer(gaz);
+        
+        try (InputStream is = new FileInputStream("src/test/resources/gazeteers/gaz1.txt")) {
+            sut.importGazeteerFile(gaz, is);
+        }
+        
+        // Simulate a gazeteer which was imported before compiled gazeteers were introduced
+        sut.getCompiledGazeteerFile(gaz).delete();
+        
+        assertThat(sut.loadCompiledGazeteer(gaz).size()).isEqualTo(3);
+        assertThat(sut.getCompiledGazeteerFile(gaz).exists())
+                .describedAs("Gazeteer has been compiled on load")
+                .isTrue();
+    }
+    
     @Test
     public void thatGazeteerCommentLineIsIgnored() throws Exception
     {
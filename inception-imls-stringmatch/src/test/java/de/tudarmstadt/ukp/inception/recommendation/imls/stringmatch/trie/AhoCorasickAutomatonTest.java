@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.trie;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AhoCorasickAutomatonTest
+{
+    @Test
+    public void thatAllOccurrencesAreFound()
+    {
+        Trie<String> trie = new Trie<>();
+        trie.put("he", "he");
+        trie.put("she", "she");
+        trie.put("his", "his");
+        trie.put("hers", "hers");
+        
+        AhoCorasickAutomaton<String> sut = AhoCorasickAutomaton.compile(trie);
+        
+        assertThat(sut.size()).isEqualTo(4);
+        assertThat(match(sut, "ushers"))
+                .containsExactlyInAnyOrder("1-4 she", "2-4 he", "2-6 hers");
+        assertThat(match(sut, "xyz")).isEmpty();
+    }
+
+    @Test
+    public void thatMatchesAreLimitedToRange()
+    {
+        Trie<String> trie = new Trie<>();
+        trie.put("he", "he");
+        
+        AhoCorasickAutomaton<String> sut = AhoCorasickAutomaton.compile(trie);
+        
+        List<String> matches = new ArrayList<>();
+        sut.match("he he he", 2, 6, (begin, end, value) -> matches.add(begin + "-" + end));
+        
+        assertThat(matches).containsExactly("3-5");
+    }
+
+    @Test
+    public void thatOffsetsReferToUnsanitizedText()
+    {
+        Trie<String> trie = new Trie<>(WhitespaceNormalizingSanitizer.factory());
+        trie.put("New York", "LOC");
+        trie.put("York", "PER");
+        
+        AhoCorasickAutomaton<String> sut = AhoCorasickAutomaton.compile(trie);
+        
+        assertThat(match(sut, "in New \t York"))
+                .containsExactlyInAnyOrder("3-13 LOC", "9-13 PER");
+    }
+
+    @Test
+    public void thatEmptyTrieMatchesNothing()
+    {
+        AhoCorasickAutomaton<String> sut = AhoCorasickAutomaton.compile(new Trie<>());
+        
+        assertThat(sut.size()).isEqualTo(0);
+        assertThat(match(sut, "anything")).isEmpty();
+    }
+
+    @Test
+    public void thatWrittenAutomatonCanBeRead() throws Exception
+    {
+        Trie<String> trie = new Trie<>(WhitespaceNormalizingSanitizer.factory());
+        trie.put("New York", "LOC");
+        trie.put("York", "PER");
+        trie.put("he", "he");
+        
+        AhoCorasickAutomaton<String> original = AhoCorasickAutomaton.compile(trie);
+        
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream os = new DataOutputStream(buffer)) {
+            original.write(os, (out, value) -> out.writeUTF(value));
+        }
+        
+        AhoCorasickAutomaton<String> sut;
+        try (DataInputStream is = new DataInputStream(
+                new ByteArrayInputStream(buffer.toByteArray()))) {
+            sut = AhoCorasickAutomaton.read(is, WhitespaceNormalizingSanitizer.factory(),
+                in -> in.readUTF());
+        }
+        
+        assertThat(sut.size()).isEqualTo(3);
+        assertThat(match(sut, "the New \t York"))
+                .containsExactlyInAnyOrderElementsOf(match(original, "the New \t York"))
+                .containsExactlyInAnyOrder("1-3 he", "4-14 LOC", "10-14 PER");
+    }
+
+    private List<String> match(AhoCorasickAutomaton<String> aAutomaton, String aText)
+    {
+        List<String> matches = new ArrayList<>();
+        aAutomaton.match(aText, 0, aText.length(),
+            (begin, end, value) -> matches.add(begin + "-" + end + " " + value));
+        return matches;
+    }
+}
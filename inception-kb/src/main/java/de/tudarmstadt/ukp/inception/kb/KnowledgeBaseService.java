@@ -17,6 +17,7 @@
  */
 package de.tudarmstadt.ukp.inception.kb;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -40,6 +41,8 @@ import de.tudarmstadt.ukp.inception.kb.graph.KBObject;
 import de.tudarmstadt.ukp.inception.kb.graph.KBProperty;
 import de.tudarmstadt.ukp.inception.kb.graph.KBQualifier;
 import de.tudarmstadt.ukp.inception.kb.graph.KBStatement;
+import de.tudarmstadt.ukp.inception.kb.io.ImportCancelledException;
+import de.tudarmstadt.ukp.inception.kb.labelindex.LabelIndex;
 import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
 import de.tudarmstadt.ukp.inception.kb.yaml.KnowledgeBaseProfile;
 
@@ -59,6 +62,33 @@ public interface KnowledgeBaseService
 
     void importData(KnowledgeBase kb, String aFilename, InputStream aIS) throws IOException;
 
+    /**
+     * Imports the RDF data from the given stream into a knowledge base of type
+     * {@link RepositoryType#LOCAL}. The data is parsed in a streaming fashion and committed in
+     * batches of the given size, so the import never holds a single huge transaction. If the
+     * knowledge base maintains a full text index, the index is not updated while the statements
+     * are added but rebuilt once after the import has finished or was cancelled.
+     * <p>
+     * Statements from batches that have already been committed remain in the knowledge base if
+     * the import fails or is cancelled.
+     *
+     * @param kb
+     *            the knowledge base to import into.
+     * @param aFilename
+     *            the name of the file which is used to detect the RDF format.
+     * @param aIS
+     *            the stream containing the data (possibly compressed). The stream is not closed.
+     * @param aBatchSize
+     *            the number of statements to commit at once.
+     * @param aMonitor
+     *            receives progress information and may cancel the import.
+     * @throws ImportCancelledException
+     *             if the import was cancelled by the monitor.
+     */
+    void importData(KnowledgeBase kb, String aFilename, InputStream aIS, int aBatchSize,
+            ImportMonitor aMonitor)
+        throws IOException;
+
     /**
      * Writes the contents of a knowledge base of type {@link RepositoryType#LOCAL} to a given
      * {@link OutputStream} in a specificable format.<br>
@@ -71,6 +101,21 @@ public interface KnowledgeBaseService
      */
     void exportData(KnowledgeBase kb, RDFFormat format, OutputStream os);
 
+    /**
+     * Writes the contents of a knowledge base of type {@link RepositoryType#LOCAL} to a given
+     * file in a specificable format. The data is streamed directly into the file.<br>
+     * No action will be taken if the given knowledge base is not of type
+     * {@link RepositoryType#LOCAL}.
+     *
+     * @param kb The knowledge base to export
+     * @param format Format of the data
+     * @param aCompress Whether to compress the data using GZIP
+     * @param aFile The file to write to
+     * @throws IOException if the data cannot be written
+     */
+    void exportData(KnowledgeBase kb, RDFFormat format, boolean aCompress, File aFile)
+        throws IOException;
+
     void clear(KnowledgeBase kb);
 
     /**
@@ -332,6 +377,11 @@ public interface KnowledgeBaseService
             int aLimit)
         throws QueryEvaluationException;
     
+    /**
+     * Obtains a raw connection to the knowledge base. Access through such a connection is not
+     * guarded by the circuit breaker of remote knowledge bases - use {@link #read} or
+     * {@link #update} instead whenever possible.
+     */
     RepositoryConnection getConnection(KnowledgeBase kb);
 
     interface ReadAction<T>
@@ -348,6 +398,22 @@ public interface KnowledgeBaseService
         KBHandle accept(RepositoryConnection aConnection);
     }
 
+    interface ImportMonitor
+    {
+        /**
+         * Called after each committed batch.
+         * 
+         * @param aStatementCount
+         *            the total number of statements imported so far.
+         */
+        void progress(long aStatementCount);
+
+        default boolean isCancelled()
+        {
+            return false;
+        }
+    }
+
     /**
      * List the properties for a specific accepted domain identifier and also 
      * include properties which do not have any domain specified. 
@@ -400,6 +466,29 @@ public interface KnowledgeBaseService
 
     boolean statementsMatchSPO(KnowledgeBase akb, KBStatement mockStatement);
 
+    /**
+     * Obtains the in-memory label index of a knowledge base. The index is built on first access
+     * and kept up-to-date when items are changed through this service.
+     * 
+     * @param aKB
+     *            the knowledge base.
+     * @return the label index or nothing if label indexing is disabled, if the knowledge base is
+     *         not of type {@link RepositoryType#LOCAL} or if the index could not be built.
+     */
+    Optional<LabelIndex> getLabelIndex(KnowledgeBase aKB);
+
+    /**
+     * Obtains the generation of a knowledge base. The generation changes whenever the data or
+     * the configuration of the knowledge base is changed through this service. It can be used
+     * to detect stale entries in caches which are derived from the knowledge base. Note that
+     * changes made to remote knowledge bases by third parties are not reflected.
+     * 
+     * @param aKB
+     *            the knowledge base.
+     * @return the generation of the knowledge base.
+     */
+    long getGeneration(KnowledgeBase aKB);
+
     /**
      * Define base default properties of comment, label and subClassOf with schema set defined for
      * KB while initializing the KB
@@ -24,7 +24,9 @@ import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.eclipse.rdf4j.sparqlbuilder.rdf.Rdf.iri;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -38,7 +40,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -58,6 +66,7 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.RepositoryResult;
@@ -68,11 +77,15 @@ import org.eclipse.rdf4j.repository.manager.RepositoryManager;
 import org.eclipse.rdf4j.repository.manager.RepositoryProvider;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.repository.sail.config.SailRepositoryConfig;
+import org.eclipse.rdf4j.repository.sparql.SPARQLRepository;
 import org.eclipse.rdf4j.repository.sparql.config.SPARQLRepositoryConfig;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
 import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.sail.Sail;
+import org.eclipse.rdf4j.sail.SailConnection;
 import org.eclipse.rdf4j.sail.lucene.LuceneSail;
 import org.eclipse.rdf4j.sail.lucene.config.LuceneSailConfig;
 import org.eclipse.rdf4j.sail.nativerdf.config.NativeStoreConfig;
@@ -101,6 +114,7 @@ import de.tudarmstadt.ukp.clarin.webanno.api.dao.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.support.SettingsUtil;
 import de.tudarmstadt.ukp.clarin.webanno.support.StopWatch;
+import de.tudarmstadt.ukp.inception.kb.config.KnowledgeBaseProperties;
 import de.tudarmstadt.ukp.inception.kb.graph.KBConcept;
 import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
 import de.tudarmstadt.ukp.inception.kb.graph.KBInstance;
@@ -108,9 +122,13 @@ import de.tudarmstadt.ukp.inception.kb.graph.KBObject;
 import de.tudarmstadt.ukp.inception.kb.graph.KBProperty;
 import de.tudarmstadt.ukp.inception.kb.graph.KBQualifier;
 import de.tudarmstadt.ukp.inception.kb.graph.KBStatement;
+import de.tudarmstadt.ukp.inception.kb.io.BatchingStatementInserter;
+import de.tudarmstadt.ukp.inception.kb.labelindex.LabelIndex;
 import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
 import de.tudarmstadt.ukp.inception.kb.querybuilder.Path;
 import de.tudarmstadt.ukp.inception.kb.querybuilder.SPARQLQueryBuilder;
+import de.tudarmstadt.ukp.inception.kb.remote.RemoteEndpointClient;
+import de.tudarmstadt.ukp.inception.kb.remote.TimeLimitedRepositoryConnection;
 import de.tudarmstadt.ukp.inception.kb.reification.NoReification;
 import de.tudarmstadt.ukp.inception.kb.reification.ReificationStrategy;
 import de.tudarmstadt.ukp.inception.kb.reification.WikiDataReification;
@@ -128,12 +146,22 @@ public class KnowledgeBaseServiceImpl
     private @PersistenceContext EntityManager entityManager;
     private final RepositoryManager repoManager;
     private final File kbRepositoriesRoot;
+    private final KnowledgeBaseProperties kbProperties;
+    private final Map<String, RemoteEndpointClient> remoteEndpoints = new ConcurrentHashMap<>();
+    // The index of a KB is built by the first thread requesting it while the other threads wait
+    // for the task to complete
+    private final Map<String, FutureTask<LabelIndex>> labelIndexes = new ConcurrentHashMap<>();
+    
+    // Modification counters which allow us to detect if a KB has changed
+    private final Map<String, AtomicLong> modificationCounters = new ConcurrentHashMap<>();
 
     private @SpringBean FeatureSupportRegistry featureSupportRegistry;
 
     @Autowired
-    public KnowledgeBaseServiceImpl(RepositoryProperties aRepoProperties)
+    public KnowledgeBaseServiceImpl(RepositoryProperties aRepoProperties,
+            KnowledgeBaseProperties aKbProperties)
     {
+        kbProperties = aKbProperties;
         kbRepositoriesRoot = new File(aRepoProperties.getPath(), "kb");
         
         // Originally, the KBs were stored next to the repository folder - but they should be
@@ -165,10 +193,21 @@ public class KnowledgeBaseServiceImpl
         log.info("Knowledge base repository path: {}", kbRepositoriesRoot);
     }
     
+    public KnowledgeBaseServiceImpl(RepositoryProperties aRepoProperties)
+    {
+        this(aRepoProperties, new KnowledgeBaseProperties());
+    }
+    
     public KnowledgeBaseServiceImpl(RepositoryProperties aRepoProperties,
             EntityManager entityManager)
     {
-        this(aRepoProperties);
+        this(aRepoProperties, new KnowledgeBaseProperties(), entityManager);
+    }
+
+    public KnowledgeBaseServiceImpl(RepositoryProperties aRepoProperties,
+            KnowledgeBaseProperties aKbProperties, EntityManager entityManager)
+    {
+        this(aRepoProperties, aKbProperties);
         this.entityManager = entityManager;
     }
 
@@ -211,6 +250,9 @@ public class KnowledgeBaseServiceImpl
     public void destroy() throws Exception
     {
         repoManager.shutDown();
+        
+        remoteEndpoints.values().forEach(RemoteEndpointClient::close);
+        remoteEndpoints.clear();
     }
 
     /**
@@ -285,6 +327,10 @@ public class KnowledgeBaseServiceImpl
     {
         assertRegistration(kb);
         entityManager.merge(kb);
+        
+        // The schema mapping may have changed
+        labelIndexes.remove(kb.getRepositoryId());
+        markModified(kb);
     }
 
     @Transactional
@@ -295,6 +341,11 @@ public class KnowledgeBaseServiceImpl
         assertRegistration(kb);
         repoManager.addRepositoryConfig(new RepositoryConfig(kb.getRepositoryId(), cfg));
         entityManager.merge(kb);
+        
+        // The endpoint may have changed - start over with a fresh client and circuit breaker
+        closeRemoteEndpoint(kb);
+        labelIndexes.remove(kb.getRepositoryId());
+        markModified(kb);
     }
 
     @SuppressWarnings("unchecked")
@@ -336,6 +387,9 @@ public class KnowledgeBaseServiceImpl
         assertRegistration(aKB);
         
         repoManager.removeRepository(aKB.getRepositoryId());
+        closeRemoteEndpoint(aKB);
+        labelIndexes.remove(aKB.getRepositoryId());
+        modificationCounters.remove(aKB.getRepositoryId());
 
         entityManager.remove(entityManager.contains(aKB) ? aKB : entityManager.merge(aKB));
     }
@@ -370,15 +424,71 @@ public class KnowledgeBaseServiceImpl
     @Override
     public RepositoryConnection getConnection(KnowledgeBase kb)
     {
-        assertRegistration(kb);
-        return repoManager.getRepository(kb.getRepositoryId()).getConnection();
+        Optional<RemoteEndpointClient> endpoint = getRemoteEndpoint(kb);
+        RepositoryConnection conn = repoManager.getRepository(kb.getRepositoryId())
+                .getConnection();
+        if (endpoint.isPresent()) {
+            return new TimeLimitedRepositoryConnection(conn, kbProperties.getRemoteQueryTimeout());
+        }
+        return conn;
+    }
+
+    /**
+     * Obtains the shared HTTP client for a remote knowledge base and makes sure the repository
+     * uses it.
+     * 
+     * @return the remote endpoint client or nothing if the knowledge base is not accessed via
+     *         SPARQL.
+     */
+    private Optional<RemoteEndpointClient> getRemoteEndpoint(KnowledgeBase aKB)
+    {
+        assertRegistration(aKB);
+        
+        Repository repo = repoManager.getRepository(aKB.getRepositoryId());
+        if (!(repo instanceof SPARQLRepository)) {
+            return Optional.empty();
+        }
+
+        SPARQLRepository sparqlRepo = (SPARQLRepository) repo;
+        RemoteEndpointClient endpoint = remoteEndpoints.computeIfAbsent(aKB.getRepositoryId(),
+            id -> new RemoteEndpointClient(aKB.getName(), kbProperties));
+        
+        // The repository manager re-creates the repository when its configuration changes, so
+        // we need to check each time whether it still uses our client.
+        synchronized (sparqlRepo) {
+            if (sparqlRepo.getHttpClient() != endpoint.getHttpClient()) {
+                sparqlRepo.setHttpClient(endpoint.getHttpClient());
+            }
+        }
+        
+        return Optional.of(endpoint);
+    }
+    
+    private void closeRemoteEndpoint(KnowledgeBase aKB)
+    {
+        RemoteEndpointClient endpoint = remoteEndpoints.remove(aKB.getRepositoryId());
+        if (endpoint != null) {
+            endpoint.close();
+        }
     }
 
-    @SuppressWarnings("resource")
     @Override
     public void importData(KnowledgeBase kb, String aFilename, InputStream aIS)
         throws RDFParseException, RepositoryException, IOException
     {
+        importData(kb, aFilename, aIS, kbProperties.getImportBatchSize(),
+            count -> log.info("Imported [{}] statements into knowledge base [{}]", count,
+                    kb.getName()));
+    }
+
+    @SuppressWarnings("resource")
+    @Override
+    public void importData(KnowledgeBase kb, String aFilename, InputStream aIS, int aBatchSize,
+            ImportMonitor aMonitor)
+        throws RDFParseException, RepositoryException, IOException
+    {
+        assertRegistration(kb);
+        
         if (kb.isReadOnly()) {
             log.warn("Knowledge base [{}] is read only, will not import!", kb.getName());
             return;
@@ -397,13 +507,54 @@ public class KnowledgeBaseServiceImpl
         // Detect the file format
         RDFFormat format = Rio.getParserFormatForFileName(aFilename).orElse(RDFFormat.RDFXML);
 
-        // Load files into the repository
-        try (RepositoryConnection conn = getConnection(kb)) {
-            // If the RDF file contains relative URLs, then they probably start with a hash.
-            // To avoid having two hashes here, we drop the hash from the base prefix configured
-            // by the user.
-            String prefix = StringUtils.removeEnd(kb.getBasePrefix(), "#");
-            conn.add(is, prefix, format);
+        // If the RDF file contains relative URLs, then they probably start with a hash.
+        // To avoid having two hashes here, we drop the hash from the base prefix configured
+        // by the user.
+        String prefix = StringUtils.removeEnd(kb.getBasePrefix(), "#");
+
+        Repository repo = repoManager.getRepository(kb.getRepositoryId());
+        if (!(repo instanceof SailRepository)) {
+            // We cannot stream into the store directly, so load everything in one go
+            try (RepositoryConnection conn = getConnection(kb)) {
+                conn.add(is, prefix, format);
+            }
+            finally {
+                markModified(kb);
+            }
+            labelIndexes.remove(kb.getRepositoryId());
+            return;
+        }
+        
+        // If there is a full text index, we write directly to the underlying store and rebuild
+        // the index once at the end instead of updating it for every single statement.
+        Sail sail = ((SailRepository) repo).getSail();
+        LuceneSail luceneSail = null;
+        if (sail instanceof LuceneSail) {
+            luceneSail = (LuceneSail) sail;
+            sail = luceneSail.getBaseSail();
+        }
+
+        try (StopWatch watch = new StopWatch(log, "importData(%s)", aFilename)) {
+            try (SailConnection conn = sail.getConnection()) {
+                RDFParser parser = Rio.createParser(format, sail.getValueFactory());
+                parser.setRDFHandler(new BatchingStatementInserter(conn, aBatchSize, aMonitor));
+                try {
+                    parser.parse(is, prefix);
+                }
+                finally {
+                    // Only the batch that was being filled when the parser stopped is discarded
+                    if (conn.isActive()) {
+                        conn.rollback();
+                    }
+                }
+            }
+            finally {
+                if (luceneSail != null) {
+                    luceneSail.reindex();
+                }
+                markModified(kb);
+                labelIndexes.remove(kb.getRepositoryId());
+            }
         }
     }
     
@@ -419,21 +570,63 @@ public class KnowledgeBaseServiceImpl
             conn.export(rdfWriter);
         }
     }
+    
+    @Override
+    public void exportData(KnowledgeBase kb, RDFFormat format, boolean aCompress, File aFile)
+        throws IOException
+    {
+        if (kb.getType() != RepositoryType.LOCAL) {
+            log.info("Not exporting non-local knowledge base: [{}]", kb.getName());
+            return;
+        }
+        
+        try (StopWatch watch = new StopWatch(log, "exportData(%s)", kb.getName())) {
+            try (OutputStream os = aCompress
+                    ? new GZIPOutputStream(new FileOutputStream(aFile), 65536)
+                    : new BufferedOutputStream(new FileOutputStream(aFile), 65536)) {
+                exportData(kb, format, os);
+            }
+        }
+    }
+    
+    @Override
+    public long getGeneration(KnowledgeBase aKB)
+    {
+        return getModificationCounter(aKB).get();
+    }
+    
+    private AtomicLong getModificationCounter(KnowledgeBase aKB)
+    {
+        return modificationCounters.computeIfAbsent(aKB.getRepositoryId(),
+            id -> new AtomicLong());
+    }
+    
+    private void markModified(KnowledgeBase aKB)
+    {
+        getModificationCounter(aKB).incrementAndGet();
+    }
 
     @Override
     public void clear(KnowledgeBase kb)
     {
-        try (RepositoryConnection conn = getConnection(kb)) {
-            conn.clear();
+        try {
+            guarded(kb, () -> {
+                try (RepositoryConnection conn = getConnection(kb)) {
+                    conn.clear();
+                }
+                return null;
+            });
         }
+        finally {
+            markModified(kb);
+        }
+        labelIndexes.remove(kb.getRepositoryId());
     }
 
     @Override
     public boolean isEmpty(KnowledgeBase kb)
     {
-        try (RepositoryConnection conn = getConnection(kb)) {
-            return conn.isEmpty();
-        }
+        return read(kb, RepositoryConnection::isEmpty);
     }
 
     @Override
@@ -443,12 +636,14 @@ public class KnowledgeBaseServiceImpl
             throw new IllegalArgumentException("Identifier must be empty on create");
         }
 
-        return update(kb, (conn) -> {
+        KBHandle handle = update(kb, (conn) -> {
             String identifier = generateIdentifier(conn, kb);
             aConcept.setIdentifier(identifier);
             aConcept.write(conn, kb);
             return new KBHandle(identifier, aConcept.getName());
         });
+        refreshLabelIndex(kb, aConcept.getIdentifier());
+        return handle;
     }
     
     @Override 
@@ -492,12 +687,14 @@ public class KnowledgeBaseServiceImpl
             aConcept.write(conn, kb);
             return null;
         });
+        refreshLabelIndex(kb, aConcept.getIdentifier());
     }
 
     @Override
     public void deleteConcept(KnowledgeBase kb, KBConcept aConcept)
     {
         getReificationStrategy(kb).deleteConcept(kb, aConcept);
+        refreshLabelIndex(kb, aConcept.getIdentifier());
     }
 
     @Override
@@ -591,13 +788,15 @@ public class KnowledgeBaseServiceImpl
             throw new IllegalArgumentException("Identifier must be empty on create");
         }
 
-        return update(kb, (conn) -> {
+        KBHandle handle = update(kb, (conn) -> {
             String identifier = generateIdentifier(conn, kb);
             aInstance.setIdentifier(identifier);
             aInstance.write(conn, kb);
 
             return new KBHandle(identifier, aInstance.getName());
         });
+        refreshLabelIndex(kb, aInstance.getIdentifier());
+        return handle;
     }
     
     @Override
@@ -641,12 +840,14 @@ public class KnowledgeBaseServiceImpl
             aInstance.write(conn ,kb);
             return null;
         });
+        refreshLabelIndex(kb, aInstance.getIdentifier());
     }
 
     @Override
     public void deleteInstance(KnowledgeBase kb, KBInstance aInstance)
     {
         getReificationStrategy(kb).deleteInstance(kb, aInstance);
+        refreshLabelIndex(kb, aInstance.getIdentifier());
     }
 
     @Override
@@ -675,12 +876,14 @@ public class KnowledgeBaseServiceImpl
     public void upsertStatement(KnowledgeBase kb, KBStatement aStatement) throws RepositoryException
     {
         getReificationStrategy(kb).upsertStatement(kb, aStatement);
+        refreshLabelIndex(kb, aStatement.getInstance().getIdentifier());
     }
 
     @Override
     public void deleteStatement(KnowledgeBase kb, KBStatement aStatement) throws RepositoryException
     {
         getReificationStrategy(kb).deleteStatement(kb, aStatement);
+        refreshLabelIndex(kb, aStatement.getInstance().getIdentifier());
     }
 
     @Override
@@ -705,7 +908,7 @@ public class KnowledgeBaseServiceImpl
     {
         try (StopWatch watch = new StopWatch(log,
                 "listStatementsWithPredicateOrObjectReference(%s)", aIdentifier)) {
-            try (RepositoryConnection conn = getConnection(kb)) {
+            return read(kb, conn -> {
                 ValueFactory vf = conn.getValueFactory();
                 IRI iri = vf.createIRI(aIdentifier);
                 try (RepositoryResult<Statement> predStmts = conn.getStatements(null, iri, null);
@@ -716,7 +919,7 @@ public class KnowledgeBaseServiceImpl
                     Iterations.addAll(objStmts, allStmts);
                     return allStmts;
                 }
-            }
+            });
         }
     }
 
@@ -736,6 +939,11 @@ public class KnowledgeBaseServiceImpl
             return null;
         }
 
+        return guarded(kb, () -> doUpdate(kb, aAction));
+    }
+
+    private KBHandle doUpdate(KnowledgeBase kb, UpdateAction aAction)
+    {
         KBHandle result = null;
         try (RepositoryConnection conn = getConnection(kb)) {
             boolean error = true;
@@ -749,6 +957,9 @@ public class KnowledgeBaseServiceImpl
                 if (error) {
                     conn.rollback();
                 }
+                else {
+                    markModified(kb);
+                }
             }
         }
         return result;
@@ -756,6 +967,26 @@ public class KnowledgeBaseServiceImpl
 
     @Override
     public <T> T read(KnowledgeBase kb, ReadAction<T> aAction)
+    {
+        return guarded(kb, () -> doRead(kb, aAction));
+    }
+
+    /**
+     * Runs the given action through the circuit breaker of the knowledge base if it is a remote
+     * knowledge base. All access to a knowledge base that may hit a remote endpoint should go
+     * through here (i.e. through {@link #read} or {@link #update}) instead of obtaining a
+     * connection via {@link #getConnection} directly.
+     */
+    private <T> T guarded(KnowledgeBase kb, Supplier<T> aAction)
+    {
+        Optional<RemoteEndpointClient> endpoint = getRemoteEndpoint(kb);
+        if (endpoint.isPresent()) {
+            return endpoint.get().call(aAction);
+        }
+        return aAction.get();
+    }
+
+    private <T> T doRead(KnowledgeBase kb, ReadAction<T> aAction)
     {
         try (RepositoryConnection conn = getConnection(kb)) {
             return aAction.accept(conn);
@@ -912,6 +1143,100 @@ public class KnowledgeBaseServiceImpl
         }
     }
 
+    @Override
+    public Optional<LabelIndex> getLabelIndex(KnowledgeBase aKB)
+    {
+        if (!kbProperties.isLabelIndexEnabled() || !RepositoryType.LOCAL.equals(aKB.getType())) {
+            return Optional.empty();
+        }
+        
+        // Build the index outside of the map so that no lock of the map is held while querying
+        // the KB. Only the thread which manages to install its task runs it.
+        String repositoryId = aKB.getRepositoryId();
+        FutureTask<LabelIndex> task = labelIndexes.get(repositoryId);
+        if (task == null) {
+            FutureTask<LabelIndex> newTask = new FutureTask<>(() -> buildLabelIndex(aKB));
+            task = labelIndexes.putIfAbsent(repositoryId, newTask);
+            if (task == null) {
+                task = newTask;
+                newTask.run();
+            }
+        }
+        
+        try {
+            return Optional.of(task.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        catch (ExecutionException e) {
+            // Drop the failed task so that the next request tries to build the index again
+            labelIndexes.remove(repositoryId, task);
+            log.error("Unable to build label index for knowledge base [{}]({})", aKB.getName(),
+                    repositoryId, e.getCause());
+            return Optional.empty();
+        }
+    }
+    
+    private LabelIndex buildLabelIndex(KnowledgeBase aKB)
+    {
+        try (StopWatch watch = new StopWatch(log, "buildLabelIndex(%s)", aKB.getName())) {
+            int limit = kbProperties.getLabelIndexMaxSize();
+            return read(aKB, conn -> new LabelIndex(aKB,
+                    SPARQLQueryBuilder.forClasses(aKB)
+                            .retrieveLabel()
+                            .retrieveDescription()
+                            .limit(limit)
+                            .asHandles(conn, true),
+                    SPARQLQueryBuilder.forInstances(aKB)
+                            .retrieveLabel()
+                            .retrieveDescription()
+                            .limit(limit)
+                            .asHandles(conn, true)));
+        }
+    }
+    
+    /**
+     * Updates the entry of the given item in the label index of the KB after the item has been
+     * changed. If the index has not been built yet, there is nothing to do since it will be
+     * built from the current state of the KB.
+     */
+    private void refreshLabelIndex(KnowledgeBase aKB, String aIdentifier)
+    {
+        FutureTask<LabelIndex> task = labelIndexes.get(aKB.getRepositoryId());
+        if (task == null || aIdentifier == null) {
+            return;
+        }
+        
+        LabelIndex index;
+        try {
+            index = task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch (ExecutionException e) {
+            // The failed task is dropped by getLabelIndex and the index is built again later
+            return;
+        }
+        
+        Optional<KBConcept> concept = readConcept(aKB, aIdentifier, true);
+        Optional<KBInstance> instance = readInstance(aKB, aIdentifier);
+        if (concept.isPresent()) {
+            index.put(aIdentifier, concept.get().getName(), concept.get().getDescription(), true,
+                    instance.isPresent());
+        }
+        else if (instance.isPresent()) {
+            index.put(aIdentifier, instance.get().getName(), instance.get().getDescription(),
+                    false, true);
+        }
+        else {
+            index.remove(aIdentifier);
+        }
+    }
+
     @Override
     public boolean statementsMatchSPO(KnowledgeBase akb, KBStatement mockStatement)
     {
@@ -28,6 +28,19 @@ public class KnowledgeBaseProperties
     
     private int defaultMaxResults = 1000;
     private int hardMaxResults = 10000;
+    private int importBatchSize = 100000;
+
+    private int remoteMaxConnections = 10;
+    private int remoteConnectTimeout = 10000;
+    private int remoteReadTimeout = 60000;
+    private int remoteQueryTimeout = 60;
+    private int remoteFailureThreshold = 5;
+    private int remoteFailureCooldown = 30000;
+
+    private boolean labelIndexEnabled = false;
+    private int labelIndexMaxSize = 5000000;
+
+    private boolean exportCompression = true;
 
     public int getDefaultMaxResults()
     {
@@ -48,4 +61,104 @@ public class KnowledgeBaseProperties
     {
         hardMaxResults = aHardMaxResults;
     }
+
+    public int getImportBatchSize()
+    {
+        return importBatchSize;
+    }
+
+    public void setImportBatchSize(int aImportBatchSize)
+    {
+        importBatchSize = aImportBatchSize;
+    }
+
+    public int getRemoteMaxConnections()
+    {
+        return remoteMaxConnections;
+    }
+
+    public void setRemoteMaxConnections(int aRemoteMaxConnections)
+    {
+        remoteMaxConnections = aRemoteMaxConnections;
+    }
+
+    public int getRemoteConnectTimeout()
+    {
+        return remoteConnectTimeout;
+    }
+
+    public void setRemoteConnectTimeout(int aRemoteConnectTimeout)
+    {
+        remoteConnectTimeout = aRemoteConnectTimeout;
+    }
+
+    public int getRemoteReadTimeout()
+    {
+        return remoteReadTimeout;
+    }
+
+    public void setRemoteReadTimeout(int aRemoteReadTimeout)
+    {
+        remoteReadTimeout = aRemoteReadTimeout;
+    }
+
+    public int getRemoteQueryTimeout()
+    {
+        return remoteQueryTimeout;
+    }
+
+    public void setRemoteQueryTimeout(int aRemoteQueryTimeout)
+    {
+        remoteQueryTimeout = aRemoteQueryTimeout;
+    }
+
+    public int getRemoteFailureThreshold()
+    {
+        return remoteFailureThreshold;
+    }
+
+    public void setRemoteFailureThreshold(int aRemoteFailureThreshold)
+    {
+        remoteFailureThreshold = aRemoteFailureThreshold;
+    }
+
+    public int getRemoteFailureCooldown()
+    {
+        return remoteFailureCooldown;
+    }
+
+    public void setRemoteFailureCooldown(int aRemoteFailureCooldown)
+    {
+        remoteFailureCooldown = aRemoteFailureCooldown;
+    }
+
+    public boolean isLabelIndexEnabled()
+    {
+        return labelIndexEnabled;
+    }
+
+    public void setLabelIndexEnabled(boolean aLabelIndexEnabled)
+    {
+        labelIndexEnabled = aLabelIndexEnabled;
+    }
+
+    public int getLabelIndexMaxSize()
+    {
+        return labelIndexMaxSize;
+    }
+
+    public void setLabelIndexMaxSize(int aLabelIndexMaxSize)
+    {
+        labelIndexMaxSize = aLabelIndexMaxSize;
+    }
+
+    public boolean isExportCompression()
+    {
+        return exportCompression;
+    }
+
+    public void setExportCompression(boolean aExportCompression)
+    {
+        exportCompression = aExportCompression;
+    }
 }
@@ -21,6 +21,7 @@ package de.tudarmstadt.ukp.inception.kb.event;
 import org.springframework.context.ApplicationEvent;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
 
 public class KnowledgeBaseConfigurationChangedEvent
     extends ApplicationEvent
@@ -28,11 +29,19 @@ public class KnowledgeBaseConfigurationChangedEvent
     private static final long serialVersionUID = -2741267700429534514L;
 
     private Project project;
+    private KnowledgeBase knowledgeBase;
 
     public KnowledgeBaseConfigurationChangedEvent(Object aSource, Project aProject)
+    {
+        this(aSource, aProject, null);
+    }
+
+    public KnowledgeBaseConfigurationChangedEvent(Object aSource, Project aProject,
+            KnowledgeBase aKnowledgeBase)
     {
         super(aSource);
         project = aProject;
+        knowledgeBase = aKnowledgeBase;
     }
 
     public Project getProject()
@@ -44,4 +53,18 @@ public class KnowledgeBaseConfigurationChangedEvent
     {
         project = aProject;
     }
+
+    /**
+     * @return the knowledge base whose configuration has changed or {@code null} if the
+     *         configuration of several knowledge bases in the project may have changed.
+     */
+    public KnowledgeBase getKnowledgeBase()
+    {
+        return knowledgeBase;
+    }
+
+    public void setKnowledgeBase(KnowledgeBase aKnowledgeBase)
+    {
+        knowledgeBase = aKnowledgeBase;
+    }
 }
@@ -20,10 +20,8 @@ package de.tudarmstadt.ukp.inception.kb.exporter;
 import static java.util.Arrays.asList;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -31,6 +29,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.config.RepositoryImplConfig;
@@ -72,7 +71,10 @@ public class KnowledgeBaseExporter implements ProjectExporter
     // Use default profile IRIs for missing IRI values in order to import older projects
     private static final SchemaProfile DEFAULTPROFILE = SchemaProfile.OWLSCHEMA;
 
-    private static final RDFFormat knowledgeBaseFileExportFormat = RDFFormat.TURTLE;
+    private static final RDFFormat knowledgeBaseFileExportFormat = RDFFormat.BINARY;
+    // Format used by older versions - still supported on import
+    private static final RDFFormat legacyKnowledgeBaseFileExportFormat = RDFFormat.TURTLE;
+    private static final String COMPRESSED_SUFFIX = ".gz";
 
     private final KnowledgeBaseService kbService;
     private final KnowledgeBaseProperties kbProperties;
@@ -159,13 +161,12 @@ public class KnowledgeBaseExporter implements ProjectExporter
         File sourceKnowledgeBaseDir = new File(aFile + KB_FOLDER);
         FileUtils.forceMkdir(sourceKnowledgeBaseDir);
 
-        // create file with name "<knowledgebaseName>.<fileExtension>" in folder
+        // create file with name "<knowledgebaseName>.<fileExtension>[.gz]" in folder
         // KB_FOLDER
-        File kbData = new File(aFile + getSourceFileName(kb));
-        kbData.createNewFile();
-        try (OutputStream os = new FileOutputStream(kbData)) {
-            kbService.exportData(kb, knowledgeBaseFileExportFormat, os);
-        }
+        boolean compress = kbProperties.isExportCompression();
+        File kbData = new File(aFile
+                + getSourceFileName(kb, knowledgeBaseFileExportFormat, compress));
+        kbService.exportData(kb, knowledgeBaseFileExportFormat, compress, kbData);
     }
 
     @Override
@@ -298,18 +299,33 @@ public class KnowledgeBaseExporter implements ProjectExporter
      */
     private void importKnowledgeBaseFiles(ZipFile aZip, KnowledgeBase kb) throws IOException
     {
-        String sourceFileName = getSourceFileName(kb);
-        // remove leading "/"
-        ZipEntry entry = aZip.getEntry(sourceFileName.substring(1));
+        // Try the current format first and fall back to the format used by older versions
+        List<String> candidates = asList(
+                getSourceFileName(kb, knowledgeBaseFileExportFormat, true),
+                getSourceFileName(kb, knowledgeBaseFileExportFormat, false),
+                getSourceFileName(kb, legacyKnowledgeBaseFileExportFormat, false));
+
+        String sourceFileName = null;
+        ZipEntry entry = null;
+        for (String candidate : candidates) {
+            sourceFileName = candidate;
+            // remove leading "/"
+            entry = aZip.getEntry(sourceFileName.substring(1));
+            if (entry != null) {
+                break;
+            }
+        }
 
         try (InputStream is = aZip.getInputStream(entry)) {
-            kbService.importData(kb, sourceFileName, is);
+            // The compression is detected from the data, the format from the file name
+            kbService.importData(kb, StringUtils.removeEnd(sourceFileName, COMPRESSED_SUFFIX),
+                    is);
         }
     }
 
-    private String getSourceFileName(KnowledgeBase kb)
+    private String getSourceFileName(KnowledgeBase kb, RDFFormat aFormat, boolean aCompressed)
     {
-        return KNOWLEDGEBASEFILES + kb.getName() + "."
-            + knowledgeBaseFileExportFormat.getDefaultFileExtension();
+        return KNOWLEDGEBASEFILES + kb.getName() + "." + aFormat.getDefaultFileExtension()
+            + (aCompressed ? COMPRESSED_SUFFIX : "");
     }
 }
@@ -17,13 +17,18 @@
  */
 package de.tudarmstadt.ukp.inception.kb.graph;
 
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableSet;
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
@@ -42,6 +47,8 @@ public class KBHandle
     private String domain;
     private String range;
     private String debugInfo;
+    // The labels through which the handle matched a label query
+    private Set<String> matchTerms;
 
     public KBHandle()
     {
@@ -172,6 +179,27 @@ public class KBHandle
         return debugInfo;
     }
 
+    /**
+     * @return the labels through which the handle matched the query which retrieved it. Empty
+     *         if the handle was not retrieved by matching labels.
+     */
+    public Set<String> getMatchTerms()
+    {
+        return matchTerms != null ? unmodifiableSet(matchTerms) : emptySet();
+    }
+
+    public void addMatchTerms(Collection<String> aTerms)
+    {
+        if (aTerms.isEmpty()) {
+            return;
+        }
+        
+        if (matchTerms == null) {
+            matchTerms = new LinkedHashSet<>();
+        }
+        matchTerms.addAll(aTerms);
+    }
+
     public static KBHandle of(KBObject aObject)
     {
         return new KBHandle(aObject.getIdentifier(), aObject.getUiLabel());
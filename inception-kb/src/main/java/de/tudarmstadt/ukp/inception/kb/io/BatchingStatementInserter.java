@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.io;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.sail.SailConnection;
+
+import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService.ImportMonitor;
+
+/**
+ * {@link org.eclipse.rdf4j.rio.RDFHandler} which adds the parsed statements to a
+ * {@link SailConnection} and commits every {@code batchSize} statements. After every commit, the
+ * progress is reported to the {@link ImportMonitor} and the import is aborted with an
+ * {@link ImportCancelledException} if the monitor requests so.
+ * <p>
+ * The caller is responsible for rolling back an open transaction if the parser fails.
+ */
+public class BatchingStatementInserter
+    extends AbstractRDFHandler
+{
+    private final SailConnection conn;
+    private final int batchSize;
+    private final ImportMonitor monitor;
+
+    private long statementCount;
+    private int pendingCount;
+
+    public BatchingStatementInserter(SailConnection aConnection, int aBatchSize,
+            ImportMonitor aMonitor)
+    {
+        if (aBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+
+        conn = aConnection;
+        batchSize = aBatchSize;
+        monitor = aMonitor;
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException
+    {
+        conn.begin();
+    }
+
+    @Override
+    public void handleNamespace(String aPrefix, String aUri) throws RDFHandlerException
+    {
+        // Same as RDFInserter: do not override namespaces that are already defined
+        if (conn.getNamespace(aPrefix) == null) {
+            conn.setNamespace(aPrefix, aUri);
+        }
+    }
+
+    @Override
+    public void handleStatement(Statement aStatement) throws RDFHandlerException
+    {
+        if (aStatement.getContext() != null) {
+            conn.addStatement(aStatement.getSubject(), aStatement.getPredicate(),
+                    aStatement.getObject(), aStatement.getContext());
+        }
+        else {
+            conn.addStatement(aStatement.getSubject(), aStatement.getPredicate(),
+                    aStatement.getObject());
+        }
+
+        statementCount++;
+        pendingCount++;
+
+        if (pendingCount >= batchSize) {
+            commitBatch();
+            conn.begin();
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException
+    {
+        commitBatch();
+    }
+
+    private void commitBatch()
+    {
+        conn.commit();
+        pendingCount = 0;
+
+        monitor.progress(statementCount);
+
+        if (monitor.isCancelled()) {
+            throw new ImportCancelledException(statementCount);
+        }
+    }
+
+    public long getStatementCount()
+    {
+        return statementCount;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.io;
+
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+
+/**
+ * Signals that a streaming import was cancelled via its
+ * {@link de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService.ImportMonitor}.
+ */
+public class ImportCancelledException
+    extends RDFHandlerException
+{
+    private static final long serialVersionUID = -2420446237226395151L;
+
+    private final long statementCount;
+
+    public ImportCancelledException(long aStatementCount)
+    {
+        super("Import cancelled after [" + aStatementCount + "] statements");
+        statementCount = aStatementCount;
+    }
+
+    public long getStatementCount()
+    {
+        return statementCount;
+    }
+}
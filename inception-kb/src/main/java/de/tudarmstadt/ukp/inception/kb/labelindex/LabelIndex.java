@@ -0,0 +1,657 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.labelindex;
+
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.StringUtils;
+
+import de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType;
+import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+
+/**
+ * Compact in-memory index over the labels of the concepts and instances of a knowledge base.
+ * <p>
+ * The normalized labels are kept in plain arrays. Every position in a label where a word starts
+ * is a key of the index and the keys are kept in a sorted array of (item, offset) pairs. This
+ * array acts as an implicit trie: all keys sharing a prefix form a contiguous range which can be
+ * found by binary search. Matching on word starts mirrors the behavior of a full text index,
+ * e.g. {@code york} finds {@code New York}.
+ * <p>
+ * Changes are recorded in a small overlay which is merged into the arrays once it grows too
+ * large, so single edits do not require rebuilding the index.
+ */
+public class LabelIndex
+{
+    private static final byte CONCEPT = 1;
+    private static final byte INSTANCE = 2;
+
+    private static final int MIN_COMPACTION_THRESHOLD = 1000;
+
+    private final KnowledgeBase kb;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Items of the compacted index sorted by identifier
+    private String[] identifiers;
+    private String[] labels;
+    private String[] descriptions;
+    private String[] normalizedLabels;
+    private byte[] kinds;
+
+    // Sorted keys of the compacted index - item index in the upper and offset of the word start
+    // within the normalized label in the lower 32 bits
+    private long[] keys;
+
+    // Changes since the last compaction
+    private final Map<String, Item> overlay = new HashMap<>();
+    private final Set<String> hidden = new HashSet<>();
+    private int hiddenInBase;
+
+    public LabelIndex(KnowledgeBase aKB, Collection<KBHandle> aConcepts,
+            Collection<KBHandle> aInstances)
+    {
+        kb = aKB;
+
+        Map<String, Item> items = new LinkedHashMap<>();
+        for (KBHandle handle : aConcepts) {
+            addItem(items, handle, CONCEPT);
+        }
+        for (KBHandle handle : aInstances) {
+            addItem(items, handle, INSTANCE);
+        }
+
+        compact(new ArrayList<>(items.values()));
+    }
+
+    private static void addItem(Map<String, Item> aItems, KBHandle aHandle, byte aKind)
+    {
+        if (aHandle.getName() == null) {
+            return;
+        }
+
+        Item item = aItems.get(aHandle.getIdentifier());
+        if (item != null) {
+            item.kind |= aKind;
+        }
+        else {
+            aItems.put(aHandle.getIdentifier(), new Item(aHandle.getIdentifier(),
+                    aHandle.getName(), aHandle.getDescription(), aKind));
+        }
+    }
+
+    /**
+     * Adds or replaces an item.
+     */
+    public void put(String aIdentifier, String aLabel, String aDescription, boolean aConcept,
+            boolean aInstance)
+    {
+        if (aLabel == null || !(aConcept || aInstance)) {
+            remove(aIdentifier);
+            return;
+        }
+
+        byte kind = (byte) ((aConcept ? CONCEPT : 0) | (aInstance ? INSTANCE : 0));
+
+        lock.writeLock().lock();
+        try {
+            hide(aIdentifier);
+            overlay.put(aIdentifier, new Item(aIdentifier, aLabel, aDescription, kind));
+            compactIfNecessary();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String aIdentifier)
+    {
+        lock.writeLock().lock();
+        try {
+            hide(aIdentifier);
+            overlay.remove(aIdentifier);
+            compactIfNecessary();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size()
+    {
+        lock.readLock().lock();
+        try {
+            return identifiers.length - hiddenInBase + overlay.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds items whose normalized label is equal to the normalized query.
+     */
+    public List<KBHandle> matchingExactly(String aQuery, ConceptFeatureValueType aType,
+            int aLimit)
+    {
+        String query = normalize(aQuery);
+        lock.readLock().lock();
+        try {
+            Map<String, KBHandle> results = new LinkedHashMap<>();
+            for (int k = lowerBound(query, false); k < keys.length && results.size() < aLimit
+                    && compareKey(keys[k], query, false) == 0; k++) {
+                if (offset(keys[k]) == 0) {
+                    collect(results, item(keys[k]), aType);
+                }
+            }
+            for (Item item : overlay.values()) {
+                if (results.size() < aLimit && item.normalizedLabel.equals(query)) {
+                    collect(results, item, aType);
+                }
+            }
+            return new ArrayList<>(results.values());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds items with a word in their normalized label that starts with the normalized query.
+     */
+    public List<KBHandle> startingWith(String aQuery, ConceptFeatureValueType aType, int aLimit)
+    {
+        String query = normalize(aQuery);
+        lock.readLock().lock();
+        try {
+            Map<String, KBHandle> results = new LinkedHashMap<>();
+            int end = lowerBound(query, true);
+            for (int k = lowerBound(query, false); k < end && results.size() < aLimit; k++) {
+                collect(results, item(keys[k]), aType);
+            }
+            for (Item item : overlay.values()) {
+                if (results.size() < aLimit && item.hasWordStartingWith(query)) {
+                    collect(results, item, aType);
+                }
+            }
+            return new ArrayList<>(results.values());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds items with a word in their normalized label that starts with a string that is at most
+     * {@code aMaxDistance} edits away from the normalized query.
+     * <p>
+     * The sorted keys are traversed like a trie: the edit distance matrix rows for a common prefix
+     * are computed only once and whole ranges of keys are skipped as soon as their common prefix
+     * exceeds the maximum distance.
+     */
+    public List<KBHandle> startingWithApproximately(String aQuery, int aMaxDistance,
+            ConceptFeatureValueType aType, int aLimit)
+    {
+        String query = normalize(aQuery);
+        lock.readLock().lock();
+        try {
+            Map<String, KBHandle> results = new LinkedHashMap<>();
+            EditDistanceMatrix matrix = new EditDistanceMatrix(query, aMaxDistance);
+
+            int previous = -1;
+            int validDepth = 0;
+            int k = 0;
+            while (k < keys.length && results.size() < aLimit) {
+                int depth = previous >= 0 ? min(validDepth, commonPrefixLength(previous, k)) : 0;
+                int length = keyLength(keys[k]);
+                boolean matched = matrix.isMatch(depth);
+                int pruneDepth = -1;
+                while (!matched && depth < length) {
+                    depth++;
+                    matrix.computeRow(depth, keyCharAt(keys[k], depth - 1));
+                    if (matrix.isMatch(depth)) {
+                        matched = true;
+                    }
+                    else if (matrix.isDeadEnd(depth)) {
+                        pruneDepth = depth;
+                        break;
+                    }
+                }
+
+                previous = k;
+                validDepth = depth;
+
+                if (matched) {
+                    // All keys sharing the current prefix match as well
+                    int end = prefixRangeEnd(k, depth);
+                    for (; k < end && results.size() < aLimit; k++) {
+                        collect(results, item(keys[k]), aType);
+                    }
+                }
+                else if (pruneDepth > 0) {
+                    k = prefixRangeEnd(k, pruneDepth);
+                }
+                else {
+                    k++;
+                }
+            }
+
+            for (Item item : overlay.values()) {
+                if (results.size() < aLimit && item.hasWordStartingApproximately(query,
+                        aMaxDistance)) {
+                    collect(results, item, aType);
+                }
+            }
+
+            return new ArrayList<>(results.values());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collect(Map<String, KBHandle> aResults, int aItem, ConceptFeatureValueType aType)
+    {
+        if (!matchesType(kinds[aItem], aType) || hidden.contains(identifiers[aItem])) {
+            return;
+        }
+
+        aResults.computeIfAbsent(identifiers[aItem],
+            id -> newHandle(id, labels[aItem], descriptions[aItem]));
+    }
+
+    private void collect(Map<String, KBHandle> aResults, Item aItem, ConceptFeatureValueType aType)
+    {
+        if (!matchesType(aItem.kind, aType)) {
+            return;
+        }
+
+        aResults.computeIfAbsent(aItem.identifier,
+            id -> newHandle(id, aItem.label, aItem.description));
+    }
+
+    private KBHandle newHandle(String aIdentifier, String aLabel, String aDescription)
+    {
+        KBHandle handle = new KBHandle(aIdentifier, aLabel, aDescription);
+        handle.setKB(kb);
+        return handle;
+    }
+
+    private static boolean matchesType(byte aKind, ConceptFeatureValueType aType)
+    {
+        switch (aType) {
+        case CONCEPT:
+            return (aKind & CONCEPT) != 0;
+        case INSTANCE:
+            return (aKind & INSTANCE) != 0;
+        case ANY_OBJECT: // Fallthrough
+        default:
+            return true;
+        }
+    }
+
+    private void hide(String aIdentifier)
+    {
+        if (hidden.add(aIdentifier) && Arrays.binarySearch(identifiers, aIdentifier) >= 0) {
+            hiddenInBase++;
+        }
+    }
+
+    private void compactIfNecessary()
+    {
+        if (hidden.size() > Math.max(MIN_COMPACTION_THRESHOLD, identifiers.length / 16)) {
+            List<Item> items = new ArrayList<>(identifiers.length + overlay.size());
+            for (int i = 0; i < identifiers.length; i++) {
+                if (!hidden.contains(identifiers[i])) {
+                    items.add(new Item(identifiers[i], labels[i], descriptions[i], kinds[i]));
+                }
+            }
+            items.addAll(overlay.values());
+            compact(items);
+        }
+    }
+
+    private void compact(List<Item> aItems)
+    {
+        aItems.sort(Comparator.comparing(item -> item.identifier));
+
+        int n = aItems.size();
+        identifiers = new String[n];
+        labels = new String[n];
+        descriptions = new String[n];
+        normalizedLabels = new String[n];
+        kinds = new byte[n];
+
+        int keyCount = 0;
+        for (int i = 0; i < n; i++) {
+            Item item = aItems.get(i);
+            identifiers[i] = item.identifier;
+            labels[i] = item.label;
+            descriptions[i] = item.description;
+            normalizedLabels[i] = item.normalizedLabel;
+            kinds[i] = item.kind;
+            keyCount += item.wordStarts.length;
+        }
+
+        keys = new long[keyCount];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int offset : aItems.get(i).wordStarts) {
+                keys[k++] = ((long) i << 32) | offset;
+            }
+        }
+        sortKeys(keys, new long[keys.length], 0, keys.length);
+
+        overlay.clear();
+        hidden.clear();
+        hiddenInBase = 0;
+    }
+
+    private void sortKeys(long[] aKeys, long[] aBuffer, int aFrom, int aTo)
+    {
+        if (aTo - aFrom < 2) {
+            return;
+        }
+
+        int mid = (aFrom + aTo) >>> 1;
+        sortKeys(aKeys, aBuffer, aFrom, mid);
+        sortKeys(aKeys, aBuffer, mid, aTo);
+
+        if (compareKeys(aKeys[mid - 1], aKeys[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(aKeys, aFrom, aBuffer, aFrom, aTo - aFrom);
+        int left = aFrom;
+        int right = mid;
+        for (int i = aFrom; i < aTo; i++) {
+            if (right >= aTo || (left < mid && compareKeys(aBuffer[left], aBuffer[right]) <= 0)) {
+                aKeys[i] = aBuffer[left++];
+            }
+            else {
+                aKeys[i] = aBuffer[right++];
+            }
+        }
+    }
+
+    private static int item(long aKey)
+    {
+        return (int) (aKey >>> 32);
+    }
+
+    private static int offset(long aKey)
+    {
+        return (int) aKey;
+    }
+
+    private int keyLength(long aKey)
+    {
+        return normalizedLabels[item(aKey)].length() - offset(aKey);
+    }
+
+    private char keyCharAt(long aKey, int aIndex)
+    {
+        return normalizedLabels[item(aKey)].charAt(offset(aKey) + aIndex);
+    }
+
+    private int compareKeys(long aKey1, long aKey2)
+    {
+        int len1 = keyLength(aKey1);
+        int len2 = keyLength(aKey2);
+        int len = min(len1, len2);
+        for (int i = 0; i < len; i++) {
+            char c1 = keyCharAt(aKey1, i);
+            char c2 = keyCharAt(aKey2, i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Compares a key to the given string. If {@code aPrefixOnly} is set, keys starting with the
+     * string are considered equal to it.
+     */
+    private int compareKey(long aKey, String aString, boolean aPrefixOnly)
+    {
+        int keyLength = keyLength(aKey);
+        int len = min(keyLength, aString.length());
+        for (int i = 0; i < len; i++) {
+            char c1 = keyCharAt(aKey, i);
+            char c2 = aString.charAt(i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        if (aPrefixOnly && keyLength >= aString.length()) {
+            return 0;
+        }
+        return keyLength - aString.length();
+    }
+
+    /**
+     * @param aAfterPrefixRange
+     *            if {@code false}, returns the first key which is not smaller than the given
+     *            string. If {@code true}, returns the first key which is greater than the given
+     *            string and does not start with it.
+     */
+    private int lowerBound(String aString, boolean aAfterPrefixRange)
+    {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(keys[mid], aString, true);
+            if (cmp < 0 || (aAfterPrefixRange && cmp == 0)) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int commonPrefixLength(int aKeyIndex1, int aKeyIndex2)
+    {
+        long key1 = keys[aKeyIndex1];
+        long key2 = keys[aKeyIndex2];
+        int len = min(keyLength(key1), keyLength(key2));
+        int i = 0;
+        while (i < len && keyCharAt(key1, i) == keyCharAt(key2, i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index of the first key after {@code aFrom} that does not share the first
+     *         {@code aDepth} characters with the key at {@code aFrom}.
+     */
+    private int prefixRangeEnd(int aFrom, int aDepth)
+    {
+        int low = aFrom + 1;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (commonPrefixLength(aFrom, mid) >= aDepth) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static String normalize(String aLabel)
+    {
+        if (aLabel == null) {
+            return "";
+        }
+
+        return StringUtils.normalizeSpace(StringUtils.stripAccents(aLabel))
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static int[] wordStarts(String aNormalizedLabel)
+    {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < aNormalizedLabel.length(); i++) {
+            if (Character.isLetterOrDigit(aNormalizedLabel.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(aNormalizedLabel.charAt(i - 1)))) {
+                starts.add(i);
+            }
+        }
+        if (starts.isEmpty() || starts.get(0) != 0) {
+            // Always index the full label so that exact matches can be found
+            starts.add(0, 0);
+        }
+        return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Rows of the edit distance matrix between the query and the current key prefix. Row
+     * {@code i} holds the distances between the first {@code i} characters of the key and all
+     * prefixes of the query.
+     */
+    private static class EditDistanceMatrix
+    {
+        private final String query;
+        private final int maxDistance;
+        private int[][] rows;
+
+        EditDistanceMatrix(String aQuery, int aMaxDistance)
+        {
+            query = aQuery;
+            maxDistance = aMaxDistance;
+            rows = new int[16][];
+            rows[0] = new int[query.length() + 1];
+            for (int j = 0; j <= query.length(); j++) {
+                rows[0][j] = j;
+            }
+        }
+
+        void computeRow(int aDepth, char aKeyChar)
+        {
+            if (aDepth >= rows.length) {
+                int[][] newRows = new int[rows.length * 2][];
+                System.arraycopy(rows, 0, newRows, 0, rows.length);
+                rows = newRows;
+            }
+            if (rows[aDepth] == null) {
+                rows[aDepth] = new int[query.length() + 1];
+            }
+
+            int[] prev = rows[aDepth - 1];
+            int[] row = rows[aDepth];
+            row[0] = aDepth;
+            for (int j = 1; j <= query.length(); j++) {
+                int cost = query.charAt(j - 1) == aKeyChar ? 0 : 1;
+                row[j] = min(min(prev[j] + 1, row[j - 1] + 1), prev[j - 1] + cost);
+            }
+        }
+
+        /**
+         * The whole query is within the maximum distance of the key prefix.
+         */
+        boolean isMatch(int aDepth)
+        {
+            return rows[aDepth][query.length()] <= maxDistance;
+        }
+
+        /**
+         * No extension of the key prefix can get within the maximum distance of the query.
+         */
+        boolean isDeadEnd(int aDepth)
+        {
+            for (int d : rows[aDepth]) {
+                if (d <= maxDistance) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Item
+    {
+        final String identifier;
+        final String label;
+        final String description;
+        final String normalizedLabel;
+        final int[] wordStarts;
+        byte kind;
+
+        Item(String aIdentifier, String aLabel, String aDescription, byte aKind)
+        {
+            identifier = aIdentifier;
+            label = aLabel;
+            description = aDescription;
+            normalizedLabel = normalize(aLabel);
+            wordStarts = wordStarts(normalizedLabel);
+            kind = aKind;
+        }
+
+        boolean hasWordStartingWith(String aQuery)
+        {
+            for (int offset : wordStarts) {
+                if (normalizedLabel.startsWith(aQuery, offset)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasWordStartingApproximately(String aQuery, int aMaxDistance)
+        {
+            for (int offset : wordStarts) {
+                EditDistanceMatrix matrix = new EditDistanceMatrix(aQuery, aMaxDistance);
+                if (matrix.isMatch(0)) {
+                    return true;
+                }
+                for (int i = offset; i < normalizedLabel.length(); i++) {
+                    int depth = i - offset + 1;
+                    matrix.computeRow(depth, normalizedLabel.charAt(i));
+                    if (matrix.isMatch(depth)) {
+                        return true;
+                    }
+                    if (matrix.isDeadEnd(depth)) {
+                        break;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -46,6 +46,15 @@ public interface SPARQLQuery
      */
     List<KBHandle> asHandles(RepositoryConnection aConnection, boolean aAll);
 
+    /**
+     * Whether the results returned by the last execution of the query may be incomplete because
+     * the knowledge base returned as many rows as the query limit allowed. Since several rows may
+     * be reduced to a single handle, the number of handles alone does not tell this.
+     * 
+     * @return whether there may be further results which were not retrieved.
+     */
+    boolean isResultTruncated();
+
     /**
      * Execute the query and see if it returns any results.
      * 
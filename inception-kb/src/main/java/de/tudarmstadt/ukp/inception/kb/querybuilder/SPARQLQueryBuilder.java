@@ -223,6 +223,11 @@ public class SPARQLQueryBuilder
     // prefers the label with the language as opposed to "any label".
     private boolean serverSideReduce = false;
     
+    /**
+     * Whether the last execution of the query hit the query limit.
+     */
+    private boolean resultTruncated = false;
+    
     private static enum Mode {
         ITEM, CLASS, INSTANCE, PROPERTY;
         
@@ -1421,6 +1426,16 @@ public class SPARQLQueryBuilder
         return limitOverride > 0 ? limitOverride : kb.getMaxResults();
     }
     
+    /**
+     * If we do not do a server-side reduce, then we may get two results for every item from the
+     * server (one with and one without the language), so we need to double the query limit and
+     * cut down results locally later.
+     */
+    private int getQueryLimit()
+    {
+        return serverSideReduce ? getLimit() : getLimit() * 2;
+    }
+    
     @Override
     public SelectQuery selectQuery()
     {
@@ -1452,16 +1467,7 @@ public class SPARQLQueryBuilder
                     SparqlBuilder.from(iri(kb.getDefaultDatasetIri()))));
         }
         
-        int actualLimit = getLimit();
-        
-        if (!serverSideReduce) {
-            // If we do not do a server-side reduce, then we may get two results for every item
-            // from the server (one with and one without the language), so we need to double the
-            // query limit and cut down results locally later.
-            actualLimit = actualLimit * 2;
-        }
-        
-        query.limit(actualLimit);
+        query.limit(getQueryLimit());
         
         return query;
     }
@@ -1480,6 +1486,7 @@ public class SPARQLQueryBuilder
         List<KBHandle> results;
         if (returnEmptyResult) {
             results = emptyList();
+            resultTruncated = false;
             
             LOG.debug("[{}] Query was skipped because it would not return any results anyway",
                     queryId);
@@ -1679,8 +1686,10 @@ public class SPARQLQueryBuilder
     {
         try (TupleQueryResult result = tupleQuery.evaluate()) {
             List<KBHandle> handles = new ArrayList<>();
+            int rowCount = 0;
             while (result.hasNext()) {
                 BindingSet bindings = result.next();
+                rowCount++;
                 if (bindings.size() == 0) {
                     continue;
                 }
@@ -1699,10 +1708,21 @@ public class SPARQLQueryBuilder
                 extractDescription(handle, bindings);
                 extractRange(handle, bindings);
                 extractDomain(handle, bindings);
+                
+                // When matching labels, the label is one of the labels that matched. If the
+                // results are reduced on the server, only one of these labels is returned, so
+                // the matched labels are not known completely.
+                if (labelImplicitlyRetrieved && !serverSideReduce && handle.getName() != null) {
+                    handle.addMatchTerms(singleton(handle.getName()));
+                }
     
                 handles.add(handle);
             }
             
+            // If the server returned as many rows as we asked for, there may be more - even if
+            // these rows are reduced to fewer handles than the limit below
+            resultTruncated = rowCount >= getQueryLimit();
+            
             if (serverSideReduce) {
                 return handles;
             }
@@ -1712,6 +1732,12 @@ public class SPARQLQueryBuilder
         }
     }
     
+    @Override
+    public boolean isResultTruncated()
+    {
+        return resultTruncated;
+    }
+    
     /**
      * Make sure that each result is only represented once, preferably in the default language.
      */
@@ -1721,6 +1747,12 @@ public class SPARQLQueryBuilder
         for (KBHandle handle : aHandles) {
             KBHandle current = cMap.get(handle.getIdentifier());
             
+            // Retain all the labels through which the result matched, whichever is kept
+            if (current != null) {
+                handle.addMatchTerms(current.getMatchTerms());
+                current.addMatchTerms(handle.getMatchTerms());
+            }
+            
             // Not recorded yet -> add it
             if (current == null) {
                 cMap.put(handle.getIdentifier(), handle);
@@ -1738,6 +1770,9 @@ public class SPARQLQueryBuilder
         
         LOG.trace("Input: {}", aHandles);
         LOG.trace("Output: {}", cMap.values());
+        
+        // Items beyond the limit are dropped here
+        resultTruncated |= cMap.size() > getLimit();
 
         return cMap.values().stream().limit(getLimit()).collect(Collectors.toList());
     }
@@ -30,7 +30,6 @@ import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -173,7 +172,7 @@ public class NoReification
     @Override
     public boolean statementsMatchSPO(KnowledgeBase akb, KBStatement mockStatement)
     {
-        try (RepositoryConnection conn = kbService.getConnection(akb)) {
+        return kbService.read(akb, conn -> {
             ValueFactory vf = conn.getValueFactory();
             String QUERY = "SELECT * WHERE { ?s ?p ?o . }";
             TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
@@ -186,7 +185,7 @@ public class NoReification
             try (TupleQueryResult result = tupleQuery.evaluate()) {
                 return result.hasNext();
             }
-        }
+        });
     }
 
 }
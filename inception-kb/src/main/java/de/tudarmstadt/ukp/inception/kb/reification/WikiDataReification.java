@@ -17,10 +17,14 @@
  */
 package de.tudarmstadt.ukp.inception.kb.reification;
 
+import static java.util.Arrays.asList;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.rdf4j.model.IRI;
@@ -35,8 +39,8 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -135,65 +139,90 @@ public class WikiDataReification
     public List<KBStatement> listStatements(KnowledgeBase kb, KBHandle aInstance,
         boolean aAll)
     {
-        String QUERY = String.join("\n",
-            "SELECT DISTINCT ?p ?o ?id ?ps WHERE {",
-            "  ?s  ?p  ?id .",
-            "  ?id ?ps ?o .",
-            "  FILTER(STRSTARTS(STR(?ps), STR(?ps_ns)))",
-            "}",
-            "LIMIT " + kb.getMaxResults());
-
         IRI instance = vf.createIRI(aInstance.getIdentifier());
-        try (RepositoryConnection conn = kbService.getConnection(kb)) {
-            TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
-            tupleQuery.setBinding("s", instance);
-            tupleQuery.setBinding("ps_ns", vf.createIRI(PREDICATE_NAMESPACE));
-            tupleQuery.setIncludeInferred(false);
-            TupleQueryResult result;
-
-            try {
-                result = tupleQuery.evaluate();
-            }
-            catch (QueryEvaluationException e) {
-                log.warn("Listing statements failed.", e);
-                return Collections.emptyList();
-            }
-
-            List<KBStatement> statements = new ArrayList<>();
-
-            while (result.hasNext()) {
-                BindingSet bindings = result.next();
-                Binding p = bindings.getBinding("p");
-                Binding o = bindings.getBinding("o");
-                Binding id = bindings.getBinding("id");
-                Binding ps = bindings.getBinding("ps");
-                Value value = o.getValue();
-
-                // Fill kbStatement
-                KBHandle property = new KBHandle();
-                property.setIdentifier(p.getValue().stringValue());
-                KBStatement kbStatement = new KBStatement(aInstance, property, value);
-
-                // Recreate original statements
-                Resource idResource = vf.createBNode(id.getValue().stringValue());
-                kbStatement.setStatementId(idResource.stringValue());
-                IRI predicate = vf.createIRI(property.getIdentifier());
-                Statement root = vf.createStatement(instance, predicate, idResource);
-
-                IRI valuePredicate = vf.createIRI(ps.getValue().stringValue());
-                Statement valueStatement = vf.createStatement(idResource, valuePredicate, value);
-                Set<Statement> originalStatements = new HashSet<>();
-
-                originalStatements.add(root);
-                originalStatements.add(valueStatement);
-                kbStatement.setOriginalStatements(originalStatements);
-
-                List<KBQualifier> qualifiers = listQualifiers(kb, kbStatement);
-                kbStatement.setQualifiers(qualifiers);
-
-                statements.add(kbStatement);
-            }
-            return statements;
+        
+        // Fetch the statements together with their qualifiers in a single query. The limit
+        // applies to the statements, not to the statement/qualifier combinations. The instance
+        // is inlined into the query because not all stores pass bindings on into sub-queries.
+        String QUERY = String.join("\n",
+            "SELECT DISTINCT ?p ?o ?id ?ps ?qp ?qo WHERE {",
+            "  {",
+            "    SELECT DISTINCT ?p ?o ?id ?ps WHERE {",
+            "      " + NTriplesUtil.toNTriplesString(instance) + " ?p ?id .",
+            "      ?id ?ps ?o .",
+            "      FILTER(STRSTARTS(STR(?ps), " + NTriplesUtil
+                    .toNTriplesString(vf.createLiteral(PREDICATE_NAMESPACE)) + "))",
+            "    }",
+            "    LIMIT " + kb.getMaxResults(),
+            "  }",
+            "  OPTIONAL {",
+            "    ?id ?qp ?qo .",
+            "    FILTER(!CONTAINS(STR(?qp), " + NTriplesUtil
+                    .toNTriplesString(vf.createLiteral(PREDICATE_NAMESPACE)) + "))",
+            "  }",
+            "}");
+
+        try {
+            return kbService.read(kb, conn -> {
+                TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
+                tupleQuery.setIncludeInferred(false);
+
+                // Group the qualifiers by statement node and value while retaining the order of
+                // the statements. A statement node may carry several values - each of them is
+                // returned as a statement of its own.
+                Map<List<Value>, KBStatement> statements = new LinkedHashMap<>();
+                try (TupleQueryResult result = tupleQuery.evaluate()) {
+                    while (result.hasNext()) {
+                        BindingSet bindings = result.next();
+                        Binding p = bindings.getBinding("p");
+                        Binding o = bindings.getBinding("o");
+                        Binding id = bindings.getBinding("id");
+                        Binding ps = bindings.getBinding("ps");
+                        Binding qp = bindings.getBinding("qp");
+                        Binding qo = bindings.getBinding("qo");
+
+                        List<Value> key = asList(id.getValue(), ps.getValue(), o.getValue());
+                        KBStatement kbStatement = statements.get(key);
+                        if (kbStatement == null) {
+                            Value value = o.getValue();
+
+                            // Fill kbStatement
+                            KBHandle property = new KBHandle();
+                            property.setIdentifier(p.getValue().stringValue());
+                            kbStatement = new KBStatement(aInstance, property, value);
+
+                            // Recreate original statements
+                            Resource idResource = vf.createBNode(id.getValue().stringValue());
+                            kbStatement.setStatementId(idResource.stringValue());
+                            IRI predicate = vf.createIRI(property.getIdentifier());
+                            Statement root = vf.createStatement(instance, predicate, idResource);
+
+                            IRI valuePredicate = vf.createIRI(ps.getValue().stringValue());
+                            Statement valueStatement = vf.createStatement(idResource,
+                                    valuePredicate, value);
+                            Set<Statement> originalStatements = new HashSet<>();
+
+                            originalStatements.add(root);
+                            originalStatements.add(valueStatement);
+                            kbStatement.setOriginalStatements(originalStatements);
+                            kbStatement.setQualifiers(new ArrayList<>());
+
+                            statements.put(key, kbStatement);
+                        }
+
+                        if (qp != null && qo != null) {
+                            kbStatement.getQualifiers()
+                                    .add(toQualifier(kbStatement, qp.getValue(), qo.getValue()));
+                        }
+                    }
+                }
+                
+                return new ArrayList<>(statements.values());
+            });
+        }
+        catch (QueryEvaluationException e) {
+            log.warn("Listing statements failed.", e);
+            return Collections.emptyList();
         }
     }
 
@@ -208,41 +237,41 @@ public class WikiDataReification
                 "}",
                 "LIMIT 10");
         Resource id = vf.createBNode(aStatementId);
-        try (RepositoryConnection conn = kbService.getConnection(kb)) {
-            TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
-            tupleQuery.setBinding("id", id);
-            tupleQuery.setBinding("ps_ns", vf.createIRI(PREDICATE_NAMESPACE));
-
-            tupleQuery.setIncludeInferred(false);
-            TupleQueryResult result;
-
-            try {
-                result = tupleQuery.evaluate();
-            }
-            catch (QueryEvaluationException e) {
-                log.warn("No such statementId in knowledge base", e);
-                return null;
-            }
+        try {
+            return kbService.read(kb, conn -> {
+                TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
+                tupleQuery.setBinding("id", id);
+                tupleQuery.setBinding("ps_ns", vf.createIRI(PREDICATE_NAMESPACE));
+
+                tupleQuery.setIncludeInferred(false);
+
+                List<Statement> statements = new ArrayList<>();
+                try (TupleQueryResult result = tupleQuery.evaluate()) {
+                    while (result.hasNext()) {
+                        BindingSet bindings = result.next();
+                        Binding s = bindings.getBinding("s");
+                        Binding p = bindings.getBinding("p");
+                        Binding o = bindings.getBinding("o");
+                        Binding ps = bindings.getBinding("ps");
+
+                        IRI instance = vf.createIRI(s.getValue().stringValue());
+                        IRI predicate = vf.createIRI(p.getValue().stringValue());
+                        Statement root = vf.createStatement(instance, predicate, id);
 
-            List<Statement> statements = new ArrayList<>();
-            while (result.hasNext()) {
-                BindingSet bindings = result.next();
-                Binding s = bindings.getBinding("s");
-                Binding p = bindings.getBinding("p");
-                Binding o = bindings.getBinding("o");
-                Binding ps = bindings.getBinding("ps");
-
-                IRI instance = vf.createIRI(s.getValue().stringValue());
-                IRI predicate = vf.createIRI(p.getValue().stringValue());
-                Statement root = vf.createStatement(instance, predicate, id);
-
-                IRI valuePredicate = vf.createIRI(ps.getValue().stringValue());
-                Value object = o.getValue();
-                Statement valueStatement = vf.createStatement(id, valuePredicate, object);
-                statements.add(root);
-                statements.add(valueStatement);
-            }
-            return statements;
+                        IRI valuePredicate = vf.createIRI(ps.getValue().stringValue());
+                        Value object = o.getValue();
+                        Statement valueStatement = vf.createStatement(id, valuePredicate,
+                                object);
+                        statements.add(root);
+                        statements.add(valueStatement);
+                    }
+                }
+                return statements;
+            });
+        }
+        catch (QueryEvaluationException e) {
+            log.warn("No such statementId in knowledge base", e);
+            return null;
         }
     }
 
@@ -254,37 +283,36 @@ public class WikiDataReification
             "}",
             "LIMIT " + kb.getMaxResults());
         Resource id = vf.createBNode(aStatementId);
-        try (RepositoryConnection conn = kbService.getConnection(kb)) {
-            TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
-            tupleQuery.setBinding("id", id);
-
-            tupleQuery.setIncludeInferred(false);
-            TupleQueryResult result;
-
-            try {
-                result = tupleQuery.evaluate();
-            }
-            catch (QueryEvaluationException e) {
-                log.warn("No such statementId in knowledge base", e);
-                return null;
-            }
-
-            List<Statement> statements = new ArrayList<>();
-            while (result.hasNext()) {
-                BindingSet bindings = result.next();
-                Binding p = bindings.getBinding("p");
-                Binding o = bindings.getBinding("o");
-
-                if (!p.getValue().stringValue().contains(PREDICATE_NAMESPACE)) {
-                    IRI predicate = vf.createIRI(p.getValue().stringValue());
-                    Value object = o.getValue();
-                    Statement qualifierStatement = vf.createStatement(id, predicate, object);
-                    statements.add(qualifierStatement);
+        try {
+            return kbService.read(kb, conn -> {
+                TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
+                tupleQuery.setBinding("id", id);
+
+                tupleQuery.setIncludeInferred(false);
+
+                List<Statement> statements = new ArrayList<>();
+                try (TupleQueryResult result = tupleQuery.evaluate()) {
+                    while (result.hasNext()) {
+                        BindingSet bindings = result.next();
+                        Binding p = bindings.getBinding("p");
+                        Binding o = bindings.getBinding("o");
+
+                        if (!p.getValue().stringValue().contains(PREDICATE_NAMESPACE)) {
+                            IRI predicate = vf.createIRI(p.getValue().stringValue());
+                            Value object = o.getValue();
+                            Statement qualifierStatement = vf.createStatement(id, predicate,
+                                    object);
+                            statements.add(qualifierStatement);
+                        }
+                    }
                 }
-            }
-            return statements;
+                return statements;
+            });
+        }
+        catch (QueryEvaluationException e) {
+            log.warn("No such statementId in knowledge base", e);
+            return null;
         }
-
     }
     
     @Override
@@ -467,48 +495,53 @@ public class WikiDataReification
             "}",
             "LIMIT " + kb.getMaxResults());
         Resource id = vf.createBNode(aStatement.getStatementId());
-        try (RepositoryConnection conn = kbService.getConnection(kb)) {
-            TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
-            tupleQuery.setBinding("id", id);
-            tupleQuery.setIncludeInferred(false);
-
-            try (TupleQueryResult result = tupleQuery.evaluate()) {
-                while (result.hasNext()) {
-                    BindingSet bindings = result.next();
-                    Binding p = bindings.getBinding("p");
-                    Binding o = bindings.getBinding("o");
-    
-                    if (!p.getValue().stringValue().contains(PREDICATE_NAMESPACE)) {
-                        KBHandle property = new KBHandle();
-                        property.setIdentifier(p.getValue().stringValue());
-                        Value value = o.getValue();
-                        KBQualifier qualifier = new KBQualifier(aStatement, property, value);
+        try {
+            return kbService.read(kb, conn -> {
+                TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, QUERY);
+                tupleQuery.setBinding("id", id);
+                tupleQuery.setIncludeInferred(false);
+
+                try (TupleQueryResult result = tupleQuery.evaluate()) {
+                    while (result.hasNext()) {
+                        BindingSet bindings = result.next();
+                        Binding p = bindings.getBinding("p");
+                        Binding o = bindings.getBinding("o");
     
-                        IRI predicate = vf.createIRI(p.getValue().stringValue());
-                        Value object = o.getValue();
-                        Statement qualifierStatement = vf.createStatement(id, predicate, object);
-    
-                        Set<Statement> statements = new HashSet<>();
-                        statements.add(qualifierStatement);
-                        qualifier.setOriginalStatements(statements);
-    
-                        qualifiers.add(qualifier);
+                        if (!p.getValue().stringValue().contains(PREDICATE_NAMESPACE)) {
+                            qualifiers.add(toQualifier(aStatement, p.getValue(), o.getValue()));
+                        }
                     }
+                    return qualifiers;
                 }
-                return qualifiers;
-            }
-            catch (QueryEvaluationException e) {
-                log.warn("No such statementId in knowledge base", e);
-                return Collections.emptyList();
-            }
-                
+            });
+        }
+        catch (QueryEvaluationException e) {
+            log.warn("No such statementId in knowledge base", e);
+            return Collections.emptyList();
         }
     }
 
+    private KBQualifier toQualifier(KBStatement aStatement, Value aPredicate, Value aValue)
+    {
+        KBHandle property = new KBHandle();
+        property.setIdentifier(aPredicate.stringValue());
+        KBQualifier qualifier = new KBQualifier(aStatement, property, aValue);
+
+        Resource id = vf.createBNode(aStatement.getStatementId());
+        IRI predicate = vf.createIRI(aPredicate.stringValue());
+        Statement qualifierStatement = vf.createStatement(id, predicate, aValue);
+
+        Set<Statement> statements = new HashSet<>();
+        statements.add(qualifierStatement);
+        qualifier.setOriginalStatements(statements);
+        
+        return qualifier;
+    }
+
     @Override
     public boolean statementsMatchSPO(KnowledgeBase akb, KBStatement mockStatement)
     {
-        try (RepositoryConnection conn = kbService.getConnection(akb)) {
+        return kbService.read(akb, conn -> {
             ValueFactory vf = conn.getValueFactory();
             String QUERY = String
                 .join("\n",
@@ -529,6 +562,6 @@ public class WikiDataReification
             try (TupleQueryResult result = tupleQuery.evaluate()) {
                 return result.hasNext();
             }
-        }
+        });
     }
 }
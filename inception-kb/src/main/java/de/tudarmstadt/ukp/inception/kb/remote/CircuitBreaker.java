@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.remote;
+
+/**
+ * Tracks consecutive failures of a remote endpoint. After {@code failureThreshold} consecutive
+ * failures, the breaker opens and rejects all requests for {@code cooldown} milliseconds. Once
+ * the cooldown has passed, a single trial request is let through - if it succeeds, the breaker
+ * closes again, otherwise it stays open for another cooldown period.
+ */
+public class CircuitBreaker
+{
+    private final int failureThreshold;
+    private final long cooldown;
+
+    private int consecutiveFailures;
+    private long openUntil;
+
+    /**
+     * @param aFailureThreshold
+     *            number of consecutive failures after which the breaker opens. A value of
+     *            {@code 0} or less disables the breaker.
+     * @param aCooldown
+     *            time in milliseconds for which the breaker stays open.
+     */
+    public CircuitBreaker(int aFailureThreshold, long aCooldown)
+    {
+        failureThreshold = aFailureThreshold;
+        cooldown = aCooldown;
+    }
+
+    public synchronized boolean allowRequest()
+    {
+        if (!isTripped()) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= openUntil) {
+            // Let one trial request pass and keep rejecting the others until it has finished
+            openUntil = now + cooldown;
+            return true;
+        }
+
+        return false;
+    }
+
+    public synchronized void recordSuccess()
+    {
+        consecutiveFailures = 0;
+        openUntil = 0;
+    }
+
+    public synchronized void recordFailure()
+    {
+        consecutiveFailures++;
+        if (isTripped()) {
+            openUntil = System.currentTimeMillis() + cooldown;
+        }
+    }
+
+    public synchronized boolean isOpen()
+    {
+        return isTripped() && System.currentTimeMillis() < openUntil;
+    }
+
+    private boolean isTripped()
+    {
+        return failureThreshold > 0 && consecutiveFailures >= failureThreshold;
+    }
+}
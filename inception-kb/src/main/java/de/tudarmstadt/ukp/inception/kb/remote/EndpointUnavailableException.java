@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.remote;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Thrown instead of contacting a remote knowledge base whose {@link CircuitBreaker} is open.
+ */
+public class EndpointUnavailableException
+    extends QueryEvaluationException
+{
+    private static final long serialVersionUID = 4514012955458926462L;
+
+    public EndpointUnavailableException(String aMessage)
+    {
+        super(aMessage);
+    }
+}
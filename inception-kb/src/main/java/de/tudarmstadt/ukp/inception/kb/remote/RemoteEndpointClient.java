@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.remote;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.rdf4j.RDF4JException;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.inception.kb.config.KnowledgeBaseProperties;
+
+/**
+ * HTTP client shared by all connections to a single remote knowledge base. It keeps a bounded
+ * pool of keep-alive connections to the endpoint, applies the configured connect and read
+ * timeouts and guards the endpoint with a {@link CircuitBreaker}.
+ */
+public class RemoteEndpointClient
+    implements AutoCloseable
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final CloseableHttpClient httpClient;
+    private final CircuitBreaker circuitBreaker;
+
+    public RemoteEndpointClient(String aName, KnowledgeBaseProperties aProperties)
+    {
+        name = aName;
+        
+        PoolingHttpClientConnectionManager connectionManager = 
+                new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(aProperties.getRemoteMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(aProperties.getRemoteMaxConnections());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(aProperties.getRemoteConnectTimeout())
+                // Waiting for a free connection from the pool counts against the connect timeout
+                .setConnectionRequestTimeout(aProperties.getRemoteConnectTimeout())
+                .setSocketTimeout(aProperties.getRemoteReadTimeout())
+                .build();
+
+        httpClient = HttpClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(aProperties.getRemoteReadTimeout(), MILLISECONDS)
+                .build();
+
+        circuitBreaker = new CircuitBreaker(aProperties.getRemoteFailureThreshold(),
+                aProperties.getRemoteFailureCooldown());
+    }
+
+    public HttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    public CircuitBreaker getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    /**
+     * Runs the given action against the endpoint unless the circuit breaker is open. Failures to
+     * communicate with the endpoint are recorded with the breaker. Malformed queries do not count
+     * as failures since the endpoint did respond to them.
+     */
+    public <T> T call(Supplier<T> aAction)
+    {
+        if (!circuitBreaker.allowRequest()) {
+            throw new EndpointUnavailableException("Remote knowledge base [" + name
+                    + "] is temporarily unavailable after repeated failures.");
+        }
+
+        try {
+            T result = aAction.get();
+            circuitBreaker.recordSuccess();
+            return result;
+        }
+        catch (MalformedQueryException e) {
+            circuitBreaker.recordSuccess();
+            throw e;
+        }
+        catch (RDF4JException e) {
+            circuitBreaker.recordFailure();
+            if (circuitBreaker.isOpen()) {
+                log.warn("Remote knowledge base [{}] failed repeatedly - suspending requests",
+                        name);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            httpClient.close();
+        }
+        catch (IOException e) {
+            log.error("Unable to close HTTP client of remote knowledge base [{}]", name, e);
+        }
+    }
+}
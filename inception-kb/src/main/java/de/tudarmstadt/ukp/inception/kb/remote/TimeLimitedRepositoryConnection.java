@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.remote;
+
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.Operation;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+
+/**
+ * Connection wrapper which applies a maximum execution time to every query prepared through it.
+ * A stricter limit set by a wrapped connection is retained.
+ */
+public class TimeLimitedRepositoryConnection
+    extends RepositoryConnectionWrapper
+{
+    private final int maxExecutionTime;
+
+    /**
+     * @param aDelegate
+     *            the wrapped connection.
+     * @param aMaxExecutionTime
+     *            the time budget per query in seconds. A value of {@code 0} or less means no
+     *            limit.
+     */
+    public TimeLimitedRepositoryConnection(RepositoryConnection aDelegate, int aMaxExecutionTime)
+    {
+        super(aDelegate.getRepository(), aDelegate);
+        maxExecutionTime = aMaxExecutionTime;
+    }
+
+    @Override
+    public Query prepareQuery(QueryLanguage aQl, String aQuery, String aBaseURI)
+        throws MalformedQueryException, RepositoryException
+    {
+        return limit(super.prepareQuery(aQl, aQuery, aBaseURI));
+    }
+
+    @Override
+    public TupleQuery prepareTupleQuery(QueryLanguage aQl, String aQuery, String aBaseURI)
+        throws MalformedQueryException, RepositoryException
+    {
+        return limit(super.prepareTupleQuery(aQl, aQuery, aBaseURI));
+    }
+
+    @Override
+    public GraphQuery prepareGraphQuery(QueryLanguage aQl, String aQuery, String aBaseURI)
+        throws MalformedQueryException, RepositoryException
+    {
+        return limit(super.prepareGraphQuery(aQl, aQuery, aBaseURI));
+    }
+
+    @Override
+    public BooleanQuery prepareBooleanQuery(QueryLanguage aQl, String aQuery, String aBaseURI)
+        throws MalformedQueryException, RepositoryException
+    {
+        return limit(super.prepareBooleanQuery(aQl, aQuery, aBaseURI));
+    }
+
+    private <T extends Operation> T limit(T aOperation)
+    {
+        int currentLimit = aOperation.getMaxExecutionTime();
+        if (maxExecutionTime > 0 && (currentLimit <= 0 || currentLimit > maxExecutionTime)) {
+            aOperation.setMaxExecutionTime(maxExecutionTime);
+        }
+        return aOperation;
+    }
+}
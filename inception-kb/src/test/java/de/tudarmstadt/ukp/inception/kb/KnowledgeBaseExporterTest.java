@@ -22,6 +22,7 @@ import static de.tudarmstadt.ukp.clarin.webanno.model.OverlapMode.NO_OVERLAP;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
@@ -30,6 +31,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -41,6 +43,7 @@ import org.eclipse.rdf4j.model.vocabulary.OWL;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.repository.sparql.config.SPARQLRepositoryConfig;
+import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -133,6 +136,20 @@ public class KnowledgeBaseExporterTest
             .containsExactlyInAnyOrderElementsOf(knowledgeBases());
     }
 
+    @Test
+    public void thatLocalKnowledgeBasesAreExportedAsCompressedBinaryRdf() throws Exception
+    {
+        ProjectExportRequest exportRequest = new ProjectExportRequest();
+        exportRequest.setProject(sourceProject);
+        ExportedProject exportedProject = new ExportedProject();
+        sut.exportData(exportRequest, exportedProject, temporaryFolder.getRoot());
+
+        ArgumentCaptor<File> fileCaptor = ArgumentCaptor.forClass(File.class);
+        verify(kbService, times(1)).exportData(any(), eq(RDFFormat.BINARY), eq(true),
+            fileCaptor.capture());
+        assertThat(fileCaptor.getValue().getName()).isEqualTo("kb1.brf.gz");
+    }
+
     @Test
     public void thatRemappingConceptFeaturesOnImportWorks() throws Exception
     {
@@ -18,12 +18,14 @@
 package de.tudarmstadt.ukp.inception.kb;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -49,12 +51,15 @@ import org.springframework.transaction.annotation.Transactional;
 import de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.kb.KnowledgeBaseService.ImportMonitor;
 import de.tudarmstadt.ukp.inception.kb.graph.KBConcept;
 import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
 import de.tudarmstadt.ukp.inception.kb.graph.KBInstance;
 import de.tudarmstadt.ukp.inception.kb.graph.KBProperty;
 import de.tudarmstadt.ukp.inception.kb.graph.KBStatement;
+import de.tudarmstadt.ukp.inception.kb.io.ImportCancelledException;
 import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+import de.tudarmstadt.ukp.inception.kb.querybuilder.SPARQLQueryBuilder;
 import de.tudarmstadt.ukp.inception.kb.reification.Reification;
 import de.tudarmstadt.ukp.inception.kb.util.TestFixtures;
 import de.tudarmstadt.ukp.inception.kb.yaml.KnowledgeBaseProfile;
@@ -157,6 +162,62 @@ public class KnowledgeBaseServiceImplImportExportIntegrationTest {
             .containsExactlyInAnyOrder("Loves", "Hates", "Has Character", "Year Of Birth", "Has biological class");
     }
 
+    @Test
+    public void importData_WithSmallBatchSize_ShouldReportProgressAndIndex() throws Exception {
+        sut.registerKnowledgeBase(kb, sut.getNativeConfig());
+        List<Long> progress = new ArrayList<>();
+
+        importKnowledgeBase("data/pets.ttl", 10, progress::add);
+
+        assertThat(progress)
+            .as("Check that progress has been reported for every batch")
+            .hasSizeGreaterThan(1)
+            .isSorted();
+        assertThat(sut.listAllConcepts(kb, false))
+            .extracting(KBHandle::getName)
+            .as("Check that concepts all have been imported")
+            .containsExactlyInAnyOrder("Animal", "Character", "Cat", "Dog");
+        List<KBHandle> matches = sut.read(kb, conn -> SPARQLQueryBuilder
+                .forInstances(kb)
+                .withLabelStartingWith("Kah")
+                .retrieveLabel()
+                .asHandles(conn, true));
+        assertThat(matches)
+            .extracting(KBHandle::getName)
+            .as("Check that the full text index has been rebuilt after the import")
+            .containsExactly("Kahmi");
+    }
+
+    @Test
+    public void importData_WhenCancelled_ShouldKeepCommittedBatches() throws Exception {
+        sut.registerKnowledgeBase(kb, sut.getNativeConfig());
+        List<Long> progress = new ArrayList<>();
+        ImportMonitor cancelAfterFirstBatch = new ImportMonitor()
+        {
+            @Override
+            public void progress(long aStatementCount)
+            {
+                progress.add(aStatementCount);
+            }
+
+            @Override
+            public boolean isCancelled()
+            {
+                return true;
+            }
+        };
+
+        assertThatThrownBy(() -> importKnowledgeBase("data/pets.ttl", 10, cancelAfterFirstBatch))
+            .isInstanceOf(ImportCancelledException.class);
+
+        assertThat(progress)
+            .as("Check that the import stopped after the first batch")
+            .containsExactly(10L);
+        assertThat(sut.isEmpty(kb))
+            .as("Check that the first batch has been committed")
+            .isFalse();
+    }
+
     @Test
     public void importData_WithMisTypedStatements_ShouldImportWithoutError() throws Exception {
         ClassLoader classLoader = getClass().getClassLoader();
@@ -220,6 +281,26 @@ public class KnowledgeBaseServiceImplImportExportIntegrationTest {
             .containsExactlyInAnyOrder("TestProperty");
     }
 
+    @Test
+    public void exportData_ToCompressedBinaryFile_ShouldRoundTrip() throws Exception {
+        sut.registerKnowledgeBase(kb, sut.getNativeConfig());
+        sut.createConcept(kb, new KBConcept("TestConcept"));
+
+        File kbFile = new File(temporaryFolder.getRoot(), "exported_kb.brf.gz");
+        sut.exportData(kb, RDFFormat.BINARY, true, kbFile);
+
+        KnowledgeBase importedKb = buildKnowledgeBase(project, "Imported knowledge base");
+        sut.registerKnowledgeBase(importedKb, sut.getNativeConfig());
+        try (InputStream is = new FileInputStream(kbFile)) {
+            sut.importData(importedKb, "exported_kb.brf", is);
+        }
+
+        assertThat(sut.listAllConcepts(importedKb, false))
+            .as("Check that concepts all have been exported")
+            .extracting(KBHandle::getName)
+            .containsExactly("TestConcept");
+    }
+
     @Test
     public void exportData_WithRemoteKnowledgeBase_ShouldDoNothing() throws Exception {
         File outputFile = temporaryFolder.newFile();
@@ -255,4 +336,13 @@ public class KnowledgeBaseServiceImplImportExportIntegrationTest {
             sut.importData(kb, fileName, is);
         }
     }
+
+    private void importKnowledgeBase(String resourceName, int batchSize, ImportMonitor monitor)
+        throws Exception {
+        ClassLoader classLoader = getClass().getClassLoader();
+        String fileName = classLoader.getResource(resourceName).getFile();
+        try (InputStream is = classLoader.getResourceAsStream(resourceName)) {
+            sut.importData(kb, fileName, is, batchSize, monitor);
+        }
+    }
 }
@@ -27,6 +27,7 @@ import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
 
+import org.eclipse.rdf4j.model.Statement;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -382,6 +383,38 @@ public class KnowledgeBaseServiceImplQualifierIntegrationTest {
         }
     }
 
+    @Test
+    public void listStatements_WithSeveralValuesOnStatementNode_ShouldReturnAllValues()
+    {
+        sut.registerKnowledgeBase(kb, sut.getNativeConfig());
+        if (kb.getReification().equals(Reification.WIKIDATA)) {
+            KBConcept concept = testFixtures.buildConcept();
+            KBProperty property = testFixtures.buildProperty();
+            KBHandle conceptHandle = sut.createConcept(kb, concept);
+            KBHandle propertyHandle = sut.createProperty(kb, property);
+            KBStatement statement = testFixtures.buildStatement(conceptHandle,
+                propertyHandle, "Test statement");
+            sut.initStatement(kb, statement);
+            sut.upsertStatement(kb, statement);
+
+            // Attach a second value to the same statement node
+            Statement valueStatement = statement.getOriginalStatements().stream()
+                .filter(stmt -> stmt.getSubject().stringValue()
+                    .equals(statement.getStatementId()))
+                .findFirst().get();
+            sut.update(kb, conn -> {
+                conn.add(valueStatement.getSubject(), valueStatement.getPredicate(),
+                    conn.getValueFactory().createLiteral("Another statement"));
+                return null;
+            });
+
+            List<KBStatement> statements = sut.listStatements(kb, conceptHandle, false);
+            assertThat(statements)
+                .extracting(KBStatement::getValue)
+                .containsExactlyInAnyOrder("Test statement", "Another statement");
+        }
+    }
+
     @Test
     public void listQualifiers_WithExistentQualifier_ShouldReturnOnlyThisQualifier()
     {
@@ -427,4 +460,42 @@ public class KnowledgeBaseServiceImplQualifierIntegrationTest {
         }
     }
 
+    @Test
+    public void listStatements_WithMultipleQualifiers_ShouldGroupQualifiersByStatement()
+    {
+        sut.registerKnowledgeBase(kb, sut.getNativeConfig());
+        if (kb.getReification().equals(Reification.WIKIDATA)) {
+            KBConcept concept = testFixtures.buildConcept();
+            KBProperty property = testFixtures.buildProperty();
+            KBHandle conceptHandle = sut.createConcept(kb, concept);
+            KBHandle propertyHandle = sut.createProperty(kb, property);
+            KBStatement statement1 = testFixtures.buildStatement(conceptHandle,
+                propertyHandle, "Statement 1");
+            sut.initStatement(kb, statement1);
+            sut.upsertStatement(kb, statement1);
+            KBStatement statement2 = testFixtures.buildStatement(conceptHandle,
+                propertyHandle, "Statement 2");
+            sut.initStatement(kb, statement2);
+            sut.upsertStatement(kb, statement2);
+            sut.addQualifier(kb, testFixtures.buildQualifier(statement1, propertyHandle,
+                "Qualifier 1a"));
+            sut.addQualifier(kb, testFixtures.buildQualifier(statement1, propertyHandle,
+                "Qualifier 1b"));
+
+            List<KBStatement> statements = sut.listStatements(kb, conceptHandle, false);
+
+            assertThat(statements)
+                .extracting(KBStatement::getValue)
+                .containsExactlyInAnyOrder("Statement 1", "Statement 2");
+            assertThat(statements)
+                .filteredOn(stmt -> "Statement 1".equals(stmt.getValue()))
+                .flatExtracting(KBStatement::getQualifiers)
+                .extracting(KBQualifier::getValue)
+                .containsExactlyInAnyOrder("Qualifier 1a", "Qualifier 1b");
+            assertThat(statements)
+                .filteredOn(stmt -> "Statement 2".equals(stmt.getValue()))
+                .flatExtracting(KBStatement::getQualifiers)
+                .isEmpty();
+        }
+    }
 }
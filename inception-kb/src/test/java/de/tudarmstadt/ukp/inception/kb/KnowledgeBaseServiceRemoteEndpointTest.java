@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import javax.persistence.EntityManager;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.kb.config.KnowledgeBaseProperties;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+import de.tudarmstadt.ukp.inception.kb.reification.Reification;
+import de.tudarmstadt.ukp.inception.kb.remote.EndpointUnavailableException;
+import de.tudarmstadt.ukp.inception.kb.util.TestFixtures;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests the HTTP client settings of remote knowledge bases against a local in-process endpoint.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = SpringConfig.class)
+@Transactional
+@DataJpaTest
+public class KnowledgeBaseServiceRemoteEndpointTest
+{
+    private static final String RESULTS = String.join("\n",
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<sparql xmlns='http://www.w3.org/2005/sparql-results#'>",
+            "  <head><variable name='s'/></head>",
+            "  <results>",
+            "    <result><binding name='s'><uri>http://example.org/a</uri></binding></result>",
+            "  </results>",
+            "</sparql>");
+
+    private static final int FAILURE_THRESHOLD = 3;
+
+    public @Rule TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private @Autowired TestEntityManager testEntityManager;
+
+    private MockWebServer server;
+    private KnowledgeBaseServiceImpl sut;
+    private KnowledgeBase kb;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = new MockWebServer();
+        server.start();
+
+        RepositoryProperties repoProps = new RepositoryProperties();
+        repoProps.setPath(temporaryFolder.getRoot());
+
+        KnowledgeBaseProperties kbProps = new KnowledgeBaseProperties();
+        kbProps.setRemoteMaxConnections(2);
+        kbProps.setRemoteReadTimeout(1000);
+        kbProps.setRemoteQueryTimeout(1);
+        kbProps.setRemoteFailureThreshold(FAILURE_THRESHOLD);
+        kbProps.setRemoteFailureCooldown(60000);
+
+        EntityManager entityManager = testEntityManager.getEntityManager();
+        TestFixtures testFixtures = new TestFixtures(testEntityManager);
+        sut = new KnowledgeBaseServiceImpl(repoProps, kbProps, entityManager);
+
+        Project project = testFixtures.createProject("Test project");
+        kb = testFixtures.buildKnowledgeBase(project, "Remote KB", Reification.NONE);
+        kb.setType(RepositoryType.REMOTE);
+        kb.setFullTextSearchIri(null);
+        sut.registerKnowledgeBase(kb, sut.getRemoteConfig(server.url("/sparql").toString()));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        testEntityManager.clear();
+        sut.destroy();
+        server.shutdown();
+    }
+
+    @Test
+    public void thatConnectionsAreReused() throws Exception
+    {
+        server.enqueue(results());
+        server.enqueue(results());
+
+        assertThat(countResults()).isEqualTo(1);
+        assertThat(countResults()).isEqualTo(1);
+
+        assertThat(server.takeRequest().getSequenceNumber())
+                .as("First request opens a connection")
+                .isEqualTo(0);
+        assertThat(server.takeRequest().getSequenceNumber())
+                .as("Second request is sent over the same connection")
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void thatSlowEndpointTimesOut() throws Exception
+    {
+        server.enqueue(results().setHeadersDelay(5, SECONDS));
+
+        long start = System.currentTimeMillis();
+        assertThatThrownBy(this::countResults).isInstanceOf(QueryEvaluationException.class);
+
+        assertThat(System.currentTimeMillis() - start)
+                .as("Query is aborted long before the endpoint responds")
+                .isLessThan(4000);
+    }
+
+    @Test
+    public void thatCircuitBreakerFailsFast() throws Exception
+    {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+        server.enqueue(results());
+
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertThatThrownBy(this::countResults)
+                    .isInstanceOf(QueryEvaluationException.class)
+                    .isNotInstanceOf(EndpointUnavailableException.class);
+        }
+
+        assertThatThrownBy(this::countResults).isInstanceOf(EndpointUnavailableException.class);
+        assertThat(server.getRequestCount())
+                .as("Endpoint is not contacted while the circuit breaker is open")
+                .isEqualTo(FAILURE_THRESHOLD);
+    }
+
+    private int countResults()
+    {
+        return sut.read(kb, conn -> {
+            TupleQuery query = conn.prepareTupleQuery("SELECT ?s WHERE { ?s ?p ?o } LIMIT 1");
+            try (TupleQueryResult result = query.evaluate()) {
+                return QueryResults.asList(result).size();
+            }
+        });
+    }
+
+    private static MockResponse results()
+    {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/sparql-results+xml")
+                .setBody(RESULTS);
+    }
+}
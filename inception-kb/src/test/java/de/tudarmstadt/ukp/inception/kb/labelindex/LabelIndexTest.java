@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.kb.labelindex;
+
+import static de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType.ANY_OBJECT;
+import static de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType.CONCEPT;
+import static de.tudarmstadt.ukp.inception.kb.ConceptFeatureValueType.INSTANCE;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.inception.kb.graph.KBHandle;
+import de.tudarmstadt.ukp.inception.kb.model.KnowledgeBase;
+
+public class LabelIndexTest
+{
+    private KnowledgeBase kb;
+    private LabelIndex sut;
+
+    @Before
+    public void setUp()
+    {
+        kb = new KnowledgeBase();
+        kb.setName("test");
+
+        sut = new LabelIndex(kb,
+                asList(
+                        new KBHandle("c:city", "City", "A large town"),
+                        new KBHandle("c:country", "Country"),
+                        new KBHandle("c:unlabeled", null)),
+                asList(
+                        new KBHandle("i:berlin", "Berlin", "Capital of Germany"),
+                        new KBHandle("i:newyork", "New York"),
+                        new KBHandle("i:zurich", "Zürich"),
+                        new KBHandle("c:city", "City")));
+    }
+
+    @Test
+    public void thatItemsWithoutLabelAreSkipped()
+    {
+        assertThat(sut.size()).isEqualTo(5);
+    }
+
+    @Test
+    public void thatExactMatchIgnoresCaseAndAccents()
+    {
+        assertThat(sut.matchingExactly("zurich", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:zurich");
+
+        assertThat(sut.matchingExactly("York", ANY_OBJECT, 10)).isEmpty();
+    }
+
+    @Test
+    public void thatPrefixMatchesWordStarts()
+    {
+        assertThat(sut.startingWith("co", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("c:country");
+
+        assertThat(sut.startingWith("yo", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:newyork");
+
+        assertThat(sut.startingWith("ork", ANY_OBJECT, 10)).isEmpty();
+    }
+
+    @Test
+    public void thatResultsAreFilteredByType()
+    {
+        assertThat(sut.startingWith("c", CONCEPT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactlyInAnyOrder("c:city", "c:country");
+
+        assertThat(sut.startingWith("c", INSTANCE, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("c:city");
+    }
+
+    @Test
+    public void thatResultsCarryLabelDescriptionAndKnowledgeBase()
+    {
+        assertThat(sut.matchingExactly("berlin", ANY_OBJECT, 10))
+                .hasSize(1)
+                .allSatisfy(handle -> {
+                    assertThat(handle.getUiLabel()).isEqualTo("Berlin");
+                    assertThat(handle.getDescription()).isEqualTo("Capital of Germany");
+                    assertThat(handle.getKB()).isSameAs(kb);
+                });
+    }
+
+    @Test
+    public void thatApproximatePrefixMatchToleratesTypos()
+    {
+        assertThat(sut.startingWithApproximately("berln", 1, ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:berlin");
+
+        assertThat(sut.startingWithApproximately("nwe yo", 2, ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:newyork");
+
+        assertThat(sut.startingWithApproximately("xyzzy", 1, ANY_OBJECT, 10)).isEmpty();
+    }
+
+    @Test
+    public void thatLimitIsRespected()
+    {
+        assertThat(sut.startingWith("c", ANY_OBJECT, 1)).hasSize(1);
+        assertThat(sut.startingWithApproximately("c", 1, ANY_OBJECT, 1)).hasSize(1);
+    }
+
+    @Test
+    public void thatChangesAreVisibleImmediately()
+    {
+        sut.put("i:berlin", "Bärlin", null, false, true);
+        sut.put("i:paris", "Paris", null, false, true);
+        sut.remove("i:zurich");
+
+        assertThat(sut.startingWith("berlin", ANY_OBJECT, 10)).isEmpty();
+        assertThat(sut.startingWith("barl", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:berlin");
+        assertThat(sut.matchingExactly("paris", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:paris");
+        assertThat(sut.startingWithApproximately("pari", 1, ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .contains("i:paris");
+        assertThat(sut.matchingExactly("zurich", ANY_OBJECT, 10)).isEmpty();
+        assertThat(sut.size()).isEqualTo(5);
+    }
+
+    @Test
+    public void thatChangesSurviveCompaction()
+    {
+        for (int i = 0; i < 2000; i++) {
+            sut.put("i:item" + i, "Item " + i, null, false, true);
+        }
+        sut.remove("i:item42");
+
+        assertThat(sut.size()).isEqualTo(2004);
+        assertThat(sut.matchingExactly("item 1999", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:item1999");
+        assertThat(sut.matchingExactly("item 42", ANY_OBJECT, 10)).isEmpty();
+        assertThat(sut.startingWith("ber", ANY_OBJECT, 10))
+                .extracting(KBHandle::getIdentifier)
+                .containsExactly("i:berlin");
+    }
+}
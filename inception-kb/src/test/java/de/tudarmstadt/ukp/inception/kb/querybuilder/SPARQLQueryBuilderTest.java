@@ -106,6 +106,22 @@ public class SPARQLQueryBuilderTest
             "<#green-goblin>",
             "    <#sublabel> 'Green Goblin' .");
 
+    private static final String DATA_SEVERAL_LABELS = String.join("\n",
+            "<#socks>",
+            "    rdfs:label 'Socks' ;",
+            "    rdfs:label 'Hosiery' .");
+
+    private static final String DATA_MANY_LABELS = String.join("\n",
+            "<#socks>",
+            "    rdfs:label 'Socks' ;",
+            "    rdfs:label 'Sock' ;",
+            "    rdfs:label 'Ankle sock' ;",
+            "    rdfs:label 'Knee sock' ;",
+            "    rdfs:label 'Sock puppet' ;",
+            "    rdfs:label 'Sock drawer' .",
+            "<#stocking>",
+            "    rdfs:label 'Stocking' .");
+
     /**
      * This dataset contains a hierarchy of classes and instances with a naming scheme.
      * There is an implicit and an explicit root class. All classes have "class" in their name.
@@ -1422,6 +1438,57 @@ public class SPARQLQueryBuilderTest
                         new KBHandle("http://mbugert.de/pets#socke", "Socke"));
     }
 
+    @Test
+    public void testWithLabelContainingAnyOf_RDF4J_retainsAllMatchedLabels() throws Exception
+    {
+        importDataFromString(TURTLE, TURTLE_PREFIX, DATA_SEVERAL_LABELS);
+
+        List<KBHandle> results = asHandles(rdf4jLocalRepo, SPARQLQueryBuilder
+                .forItems(kb)
+                .withLabelContainingAnyOf("o"));
+        
+        assertThat(results).extracting(KBHandle::getIdentifier)
+                .containsExactly("http://example.org/#socks");
+        assertThat(results.get(0).getMatchTerms())
+                .containsExactlyInAnyOrder("Socks", "Hosiery");
+    }
+
+    @Test
+    public void testWithLabelContainingAnyOf_RDF4J_duplicateLabelsTruncateResult()
+        throws Exception
+    {
+        importDataFromString(TURTLE, TURTLE_PREFIX, DATA_MANY_LABELS);
+
+        // The seven matching labels take up more rows than the query asks for (twice the limit),
+        // so the result is truncated although there are fewer handles than the limit
+        SPARQLQuery builder = SPARQLQueryBuilder
+                .forItems(kb)
+                .withLabelContainingAnyOf("ock")
+                .limit(3);
+        List<KBHandle> results = asHandles(rdf4jLocalRepo, builder);
+        
+        assertThat(results).hasSizeLessThan(3);
+        assertThat(builder.isResultTruncated()).isTrue();
+    }
+
+    @Test
+    public void testWithLabelContainingAnyOf_RDF4J_completeResultIsNotTruncated()
+        throws Exception
+    {
+        importDataFromString(TURTLE, TURTLE_PREFIX, DATA_MANY_LABELS);
+
+        SPARQLQuery builder = SPARQLQueryBuilder
+                .forItems(kb)
+                .withLabelContainingAnyOf("ock")
+                .limit(10);
+        List<KBHandle> results = asHandles(rdf4jLocalRepo, builder);
+        
+        assertThat(results).extracting(KBHandle::getIdentifier)
+                .containsExactlyInAnyOrder("http://example.org/#socks",
+                        "http://example.org/#stocking");
+        assertThat(builder.isResultTruncated()).isFalse();
+    }
+
     private void importDataFromFile(String aFilename) throws IOException
     {
         // Detect the file format
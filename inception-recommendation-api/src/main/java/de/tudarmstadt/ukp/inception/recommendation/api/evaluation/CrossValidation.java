@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+
+/**
+ * Runs a k-fold cross-validation. The samples are distributed round-robin over the folds. Each
+ * fold is used once as test set while the model is trained on the remaining folds. The folds are
+ * trained and evaluated in parallel, sharing a given number of threads.
+ */
+public class CrossValidation
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CrossValidation.class);
+    
+    private CrossValidation()
+    {
+        // No instances
+    }
+    
+    /**
+     * Trains and evaluates a model for the given training and test set.
+     */
+    @FunctionalInterface
+    public interface FoldEvaluator<T>
+    {
+        /**
+         * @param aThreads
+         *            the number of threads the model may be trained with.
+         * @return the score of the model trained on the training set as measured on the test set.
+         */
+        double evaluate(List<T> aTrainingSet, List<T> aTestSet, int aThreads)
+            throws RecommendationException;
+    }
+    
+    /**
+     * Splits the data into training and test sets for the given fold.
+     */
+    public static <T> void split(List<T> aData, int aFolds, int aFold, List<T> aTrainingSet,
+            List<T> aTestSet)
+    {
+        for (int i = 0; i < aData.size(); i++) {
+            if (i % aFolds == aFold) {
+                aTestSet.add(aData.get(i));
+            }
+            else {
+                aTrainingSet.add(aData.get(i));
+            }
+        }
+    }
+    
+    /**
+     * Cross-validates on all samples selected by a data splitter, i.e. the training and the test
+     * set are joined and then distributed over the folds. If the folds would be too small, the
+     * evaluation is skipped.
+     * 
+     * @param aThreads
+     *            the number of threads available for the whole cross-validation.
+     * @return the evaluation result with the average score over all folds.
+     */
+    public static <T> EvaluationResult crossValidate(List<T> aTrainingSet, List<T> aTestSet,
+            int aFolds, int aThreads, FoldEvaluator<T> aEvaluator)
+        throws RecommendationException
+    {
+        List<T> data = new ArrayList<>(aTrainingSet);
+        data.addAll(aTestSet);
+        
+        EvaluationResult result = new EvaluationResult();
+        result.setTrainingSetSize(data.size() - data.size() / aFolds);
+        result.setTestSetSize(data.size() / aFolds);
+        
+        if (data.size() / aFolds < 2) {
+            LOG.info("Not enough data for {}-fold cross-validation, skipping!", aFolds);
+            result.setEvaluationSkipped(true);
+            return result;
+        }
+        
+        LOG.info("Running {}-fold cross-validation on [{}] items", aFolds, data.size());
+        
+        result.setDefaultScore(crossValidate(data, aFolds, aThreads, aEvaluator));
+        return result;
+    }
+    
+    /**
+     * Runs as many folds at the same time as there are threads. The threads are distributed over
+     * the folds running at the same time, so each fold may use more than one thread if there are
+     * more threads than folds.
+     * 
+     * @param aThreads
+     *            the number of threads available for the whole cross-validation.
+     * @return the average score over all folds.
+     */
+    public static <T> double crossValidate(List<T> aData, int aFolds, int aThreads,
+            FoldEvaluator<T> aEvaluator)
+        throws RecommendationException
+    {
+        Validate.isTrue(aFolds > 1, "At least two folds are required");
+        Validate.isTrue(aData.size() >= aFolds, "Not enough data for [%d] folds", aFolds);
+        
+        int parallelFolds = Math.max(1, Math.min(aFolds, aThreads));
+        int threadsPerFold = Math.max(1, aThreads / parallelFolds);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(parallelFolds,
+                new BasicThreadFactory.Builder()
+                        .namingPattern("cross-validation-%d")
+                        .daemon(true)
+                        .build());
+        try {
+            List<Future<Double>> scores = new ArrayList<>();
+            for (int fold = 0; fold < aFolds; fold++) {
+                int currentFold = fold;
+                scores.add(executor.submit(() -> {
+                    List<T> trainingSet = new ArrayList<>();
+                    List<T> testSet = new ArrayList<>();
+                    split(aData, aFolds, currentFold, trainingSet, testSet);
+                    return aEvaluator.evaluate(trainingSet, testSet, threadsPerFold);
+                }));
+            }
+            
+            double total = 0.0;
+            for (Future<Double> score : scores) {
+                total += score.get();
+            }
+            return total / aFolds;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommendationException("Cross-validation has been interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RecommendationException) {
+                throw (RecommendationException) e.getCause();
+            }
+            throw new RecommendationException("Error during cross-validation", e.getCause());
+        }
+        finally {
+            // Do not leave any remaining folds running if one of them failed
+            executor.shutdownNow();
+        }
+    }
+}
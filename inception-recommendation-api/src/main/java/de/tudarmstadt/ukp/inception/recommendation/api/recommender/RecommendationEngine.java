@@ -45,6 +45,23 @@ public interface RecommendationEngine {
      */
     void predict(RecommenderContext aContext, CAS aCas) throws RecommendationException;
 
+    /**
+     * Predict target annotations for several documents at once. Engines for which a prediction
+     * involves a high per-call overhead (e.g. a remote call) can override this method to process
+     * the documents in batches or concurrently - their factory should then report this via
+     * {@link RecommendationEngineFactory#supportsBatchPrediction()}. By default,
+     * {@link #predict(RecommenderContext, CAS)} is called for each CAS in turn.
+     * @param aContext The context of the recommender
+     * @param aCasses The documents to predict annotations for
+     */
+    default void predict(RecommenderContext aContext, List<CAS> aCasses)
+        throws RecommendationException
+    {
+        for (CAS cas : aCasses) {
+            predict(aContext, cas);
+        }
+    }
+
     /**
      * Evaluates the performance of a recommender by splitting the data given in {@code aCasses} in
      * training and test sets by using {@code aDataSplitter}, training on the training śet and
@@ -45,6 +45,17 @@ public interface RecommendationEngineFactory<T>
     {
         return true;
     }
+    
+    /**
+     * @return True if the engines built by this factory predict on several documents more
+     *         efficiently than one by one via
+     *         {@link RecommendationEngine#predict(RecommenderContext, java.util.List)}. Only then
+     *         several documents are loaded and passed to the engine at once.
+     */
+    default boolean supportsBatchPrediction()
+    {
+        return false;
+    }
 
     RecommendationEngine build(Recommender aRecommender);
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019
+ * Ubiquitous Knowledge Processing (UKP) Lab
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.evaluation;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class CrossValidationTest
+{
+    private final List<String> data = asList("0", "1", "2", "3", "4", "5", "6");
+
+    @Test
+    public void thatEverySampleIsTestedExactlyOnce()
+    {
+        List<String> tested = new ArrayList<>();
+        for (int fold = 0; fold < 3; fold++) {
+            List<String> trainingSet = new ArrayList<>();
+            List<String> testSet = new ArrayList<>();
+            CrossValidation.split(data, 3, fold, trainingSet, testSet);
+            
+            assertThat(trainingSet).doesNotContainAnyElementsOf(testSet);
+            assertThat(trainingSet.size() + testSet.size()).isEqualTo(data.size());
+            tested.addAll(testSet);
+        }
+        
+        assertThat(tested).containsExactlyInAnyOrderElementsOf(data);
+    }
+
+    @Test
+    public void thatScoresAreAveragedOverFolds() throws Exception
+    {
+        List<Integer> testSetSizes = Collections.synchronizedList(new ArrayList<>());
+        
+        double score = CrossValidation.crossValidate(data, 3, 3,
+            (trainingSet, testSet, threads) -> {
+                testSetSizes.add(testSet.size());
+                return testSet.size();
+            });
+        
+        assertThat(testSetSizes).containsExactlyInAnyOrder(3, 2, 2);
+        assertThat(score).isCloseTo(7.0 / 3.0, within(1e-9));
+    }
+
+    @Test
+    public void thatFoldExceptionIsPropagated()
+    {
+        assertThatThrownBy(() -> CrossValidation.crossValidate(data, 3, 3,
+            (trainingSet, testSet, threads) -> {
+                throw new RecommendationException("Fold failed");
+            })).isInstanceOf(RecommendationException.class).hasMessage("Fold failed");
+    }
+
+    @Test
+    public void thatFoldsRunOnTheGivenNumberOfThreads() throws Exception
+    {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        List<Integer> foldThreads = Collections.synchronizedList(new ArrayList<>());
+        
+        CrossValidation.crossValidate(data, 3, 2, (trainingSet, testSet, threads) -> {
+            threadNames.add(Thread.currentThread().getName());
+            foldThreads.add(threads);
+            return 0.0;
+        });
+        
+        assertThat(threadNames).hasSizeLessThanOrEqualTo(2);
+        assertThat(foldThreads).containsExactly(1, 1, 1);
+    }
+
+    @Test
+    public void thatSpareThreadsAreDistributedOverFolds() throws Exception
+    {
+        List<Integer> foldThreads = Collections.synchronizedList(new ArrayList<>());
+        
+        CrossValidation.crossValidate(data, 3, 7, (trainingSet, testSet, threads) -> {
+            foldThreads.add(threads);
+            return 0.0;
+        });
+        
+        assertThat(foldThreads).containsExactly(2, 2, 2);
+    }
+}
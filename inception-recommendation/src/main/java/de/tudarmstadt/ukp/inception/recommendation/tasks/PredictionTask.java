@@ -28,13 +28,16 @@ import static org.apache.uima.fit.util.CasUtil.select;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.TreeMap;
 
 import javax.persistence.NoResultException;
 
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 import org.apache.uima.UIMAException;
@@ -86,6 +89,7 @@ public class PredictionTask
     extends Task
 {
     private static final double NO_SCORE = 0.0;
+    private static final int DOCUMENT_BATCH_SIZE = 50;
 
     private Logger log = LoggerFactory.getLogger(getClass());
 
@@ -110,139 +114,261 @@ public class PredictionTask
 
         log.info("[{}]: Starting prediction...", user.getUsername());
         long startTime = System.currentTimeMillis();
-        nextDocument: for (SourceDocument document : documents) {
-            Optional<CAS> originalCas = Optional.empty();
-            Optional<CAS> predictionCas = Optional.empty();
-            nextLayer: for (AnnotationLayer layer : annoService.listAnnotationLayer(project)) {
-                if (!layer.isEnabled()) {
-                    continue nextLayer;
+        
+        // If a recommender can predict on several documents at once (e.g. to avoid one remote
+        // call per document), the documents are processed in batches which keeps only a limited
+        // number of CASes in memory. Otherwise, the documents are processed one at a time.
+        int batchSize = isBatchPredictionSupported() ? DOCUMENT_BATCH_SIZE : 1;
+        for (List<SourceDocument> batch : ListUtils.partition(documents, batchSize)) {
+            predict(model, batch);
+        }
+        
+        log.info("[{}]: Prediction complete ({} ms)", user.getUsername(),
+                (System.currentTimeMillis() - startTime));
+
+        recommendationService.putIncomingPredictions(getUser(), project, model);
+    }
+    
+    private boolean isBatchPredictionSupported()
+    {
+        for (AnnotationLayer layer : annoService.listAnnotationLayer(getProject())) {
+            if (!layer.isEnabled()) {
+                continue;
+            }
+            
+            for (Recommender recommender : recommendationService.getActiveRecommenders(getUser(),
+                    layer)) {
+                RecommendationEngineFactory<?> factory = recommendationService
+                        .getRecommenderFactory(recommender);
+                if (factory != null && factory.supportsBatchPrediction()) {
+                    return true;
                 }
+            }
+        }
+        
+        return false;
+    }
+    
+    private void predict(Predictions aModel, List<SourceDocument> aDocuments)
+    {
+        User user = getUser();
+        Project project = getProject();
+        
+        // We lazily load the CASes only when they are needed because that allows us to skip
+        // loading them entirely if there is no enabled layer or recommender.
+        Map<SourceDocument, CAS> originalCasses = null;
+        Map<SourceDocument, CAS> predictionCasses = null;
+        
+        nextLayer: for (AnnotationLayer layer : annoService.listAnnotationLayer(project)) {
+            if (!layer.isEnabled()) {
+                continue nextLayer;
+            }
 
-                List<Recommender> recommenders = recommendationService.getActiveRecommenders(user,
-                        layer);
+            List<Recommender> recommenders = recommendationService.getActiveRecommenders(user,
+                    layer);
 
-                nextRecommender: for (Recommender r : recommenders) {
-                    
-                    // Make sure we have the latest recommender config from the DB - the one from
-                    // the active recommenders list may be outdated
-                    Recommender recommender;
-                    try {
-                        recommender = recommendationService.getRecommender(r.getId());
-                    }
-                    catch (NoResultException e) {
-                        log.info("[{}][{}]: Recommender no longer available... skipping",
-                                user.getUsername(), r.getName());
-                        continue nextRecommender;
-                    }
+            nextRecommender: for (Recommender r : recommenders) {
+                
+                // Make sure we have the latest recommender config from the DB - the one from
+                // the active recommenders list may be outdated
+                Recommender recommender;
+                try {
+                    recommender = recommendationService.getRecommender(r.getId());
+                }
+                catch (NoResultException e) {
+                    log.info("[{}][{}]: Recommender no longer available... skipping",
+                            user.getUsername(), r.getName());
+                    continue nextRecommender;
+                }
 
-                    if (!recommender.isEnabled()) {
-                        log.debug("[{}][{}]: Disabled - skipping", user.getUsername(), r.getName());
-                        continue nextRecommender;
-                    }
+                if (!recommender.isEnabled()) {
+                    log.debug("[{}][{}]: Disabled - skipping", user.getUsername(), r.getName());
+                    continue nextRecommender;
+                }
 
-                    RecommenderContext ctx = recommendationService.getContext(user, recommender);
+                RecommenderContext ctx = recommendationService.getContext(user, recommender);
 
-                    if (!ctx.isReadyForPrediction()) {
-                        log.info("Context for recommender [{}]({}) for user [{}] on document "
-                                + "[{}]({}) in project [{}]({}) is not ready yet - skipping recommender",
-                                recommender.getName(), recommender.getId(), user.getUsername(),
-                                document.getName(), document.getId(), project.getName(),
-                                project.getId());
-                        continue nextRecommender;
-                    }
+                if (!ctx.isReadyForPrediction()) {
+                    log.info("Context for recommender [{}]({}) for user [{}] in project [{}]({}) "
+                            + "is not ready yet - skipping recommender",
+                            recommender.getName(), recommender.getId(), user.getUsername(),
+                            project.getName(), project.getId());
+                    continue nextRecommender;
+                }
 
-                    RecommendationEngineFactory<?> factory = recommendationService
-                            .getRecommenderFactory(recommender);
+                RecommendationEngineFactory<?> factory = recommendationService
+                        .getRecommenderFactory(recommender);
 
-                    // We lazily load the CAS only at this point because that allows us to skip
-                    // loading the CAS entirely if there is no enabled layer or recommender.
-                    // If the CAS cannot be loaded, then we skip to the next document.
-                    if (!originalCas.isPresent()) {
-                        try {
-                            originalCas = Optional.of(documentService.readAnnotationCas(document,
-                                    user.getUsername()));
-                        }
-                        catch (IOException e) {
-                            log.error(
-                                    "Cannot read annotation CAS for user [{}] of document "
-                                            + "[{}]({}) in project [{}]({}) - skipping document",
-                                    user.getUsername(), document.getName(), document.getId(),
-                                    project.getName(), project.getId(), e);
-                            continue nextDocument;
-                        }
-                        try {
-                            annoService.upgradeCasIfRequired(originalCas.get(), document,
-                                    user.getUsername());
-                        }
-                        catch (UIMAException | IOException e) {
-                            log.error(
-                                    "Cannot upgrade annotation CAS for user [{}] of document "
-                                            + "[{}]({}) in project [{}]({}) - skipping document",
-                                    user.getUsername(), document.getName(), document.getId(),
-                                    project.getName(), project.getId(), e);
-                            continue nextDocument;
-                        }
-                        try {
-                            predictionCas = Optional.of(cloneCAS(originalCas.get()));
-                        }
-                        catch (UIMAException e) {
-                            log.error("Cannot clone annotation CAS for user [{}] of document "
-                                    + "[{}]({}) in project [{}]({}) - skipping document",
-                                    user.getUsername(), document.getName(), document.getId(),
-                                    project.getName(), project.getId(), e);
-                            continue nextDocument;
-                        }
-                    }
+                if (predictionCasses == null) {
+                    originalCasses = new LinkedHashMap<>();
+                    predictionCasses = new LinkedHashMap<>();
+                    loadCasses(aDocuments, originalCasses, predictionCasses);
+                }
+                
+                if (predictionCasses.isEmpty()) {
+                    return;
+                }
 
-                    try {
-                        RecommendationEngine recommendationEngine = factory.build(recommender);
+                RecommendationEngine recommendationEngine;
+                List<SourceDocument> predictedDocuments;
+                try {
+                    recommendationEngine = factory.build(recommender);
+
+                    // Perform the actual prediction
+                    predictedDocuments = predictDocuments(recommender, recommendationEngine,
+                            factory.supportsBatchPrediction(), ctx, predictionCasses);
+                }
+                catch (Throwable e) {
+                    log.error(
+                            "Error applying recommender [{}]({}) for user [{}] to [{}] documents "
+                                    + "in project [{}]({}) - skipping recommender",
+                            recommender.getName(), recommender.getId(), user.getUsername(),
+                            predictionCasses.size(), project.getName(), project.getId(), e);
+                    continue nextRecommender;
+                }
 
-                        Type predictionType = getAnnotationType(predictionCas.get(),
+                nextDocument: for (SourceDocument document : predictedDocuments) {
+                    try {
+                        CAS predictionCas = predictionCasses.get(document);
+                        CAS originalCas = originalCasses.get(document);
+                        
+                        Type predictionType = getAnnotationType(predictionCas,
                                 recommendationEngine.getPredictedType());
                         Feature labelFeature = predictionType
                                 .getFeatureByBaseName(recommendationEngine.getPredictedFeature());
                         Optional<Feature> scoreFeature = recommendationEngine.getScoreFeature()
                                 .map(predictionType::getFeatureByBaseName);
                         
-                        // Remove any annotations that will be predicted (either manually created
-                        // or from a previous prediction run) from the CAS
-                        removePredictions(predictionCas.get(), predictionType);
-                        
-                        // Perform the actual prediction
-                        recommendationEngine.predict(ctx, predictionCas.get());
-
-                        // Extract the suggestions from the data which the recommender has written 
-                        // into the CAS
+                        // Extract the suggestions from the data which the recommender has 
+                        // written into the CAS
                         List<AnnotationSuggestion> predictions = extractSuggestions(user,
-                                predictionCas.get(), predictionType, labelFeature, scoreFeature,
+                                predictionCas, predictionType, labelFeature, scoreFeature,
                                 document, recommender);
                         
                         // Calculate the visibility of the suggestions. This happens via the 
                         // original CAS which contains only the manually created annotations and 
                         // *not* the suggestions.
                         Collection<SuggestionGroup> groups = SuggestionGroup.group(predictions);
-                        calculateVisibility(learningRecordService, annoService, originalCas.get(),
+                        calculateVisibility(learningRecordService, annoService, originalCas,
                                 getUser().getUsername(), layer, groups, 0,
-                                originalCas.get().getDocumentText().length());
+                                originalCas.getDocumentText().length());
                         
-                        model.putPredictions(layer.getId(), predictions);
+                        aModel.putPredictions(layer.getId(), predictions);
                     }
                     catch (Throwable e) {
                         log.error(
                                 "Error applying recommender [{}]({}) for user [{}] to document "
-                                        + "[{}]({}) in project [{}]({}) - skipping recommender",
+                                        + "[{}]({}) in project [{}]({}) - skipping document",
                                 recommender.getName(), recommender.getId(), user.getUsername(),
                                 document.getName(), document.getId(), project.getName(),
                                 project.getId(), e);
-                        continue nextRecommender;
+                        continue nextDocument;
                     }
                 }
             }
         }
-        log.info("[{}]: Prediction complete ({} ms)", user.getUsername(),
-                (System.currentTimeMillis() - startTime));
-
-        recommendationService.putIncomingPredictions(getUser(), project, model);
+    }
+    
+    /**
+     * Predicts on the given CASes, passing them all at once to engines which support batch
+     * prediction. If the batch prediction fails, the predictions it may already have written into
+     * some of the CASes are removed and the documents are predicted on one by one instead. The
+     * engine must not touch the CASes anymore once its batch prediction has returned or failed.
+     * 
+     * @return the documents that have been predicted on successfully.
+     */
+    private List<SourceDocument> predictDocuments(Recommender aRecommender,
+            RecommendationEngine aEngine, boolean aBatchPrediction, RecommenderContext aContext,
+            Map<SourceDocument, CAS> aPredictionCasses)
+    {
+        User user = getUser();
+        Project project = getProject();
+        
+        // Remove any annotations that will be predicted (either manually created or from a
+        // previous prediction run) from the CASes
+        aPredictionCasses.values().forEach(cas -> removePredictions(cas, aEngine));
+        
+        if (aBatchPrediction && aPredictionCasses.size() > 1) {
+            try {
+                aEngine.predict(aContext, new ArrayList<>(aPredictionCasses.values()));
+                return new ArrayList<>(aPredictionCasses.keySet());
+            }
+            catch (Exception e) {
+                log.warn(
+                        "Error applying recommender [{}]({}) for user [{}] to [{}] documents "
+                                + "at once in project [{}]({}) - predicting document by document",
+                        aRecommender.getName(), aRecommender.getId(), user.getUsername(),
+                        aPredictionCasses.size(), project.getName(), project.getId(), e);
+                aPredictionCasses.values().forEach(cas -> removePredictions(cas, aEngine));
+            }
+        }
+        
+        List<SourceDocument> predictedDocuments = new ArrayList<>();
+        for (Entry<SourceDocument, CAS> entry : aPredictionCasses.entrySet()) {
+            SourceDocument document = entry.getKey();
+            try {
+                aEngine.predict(aContext, entry.getValue());
+                predictedDocuments.add(document);
+            }
+            catch (Exception e) {
+                log.error(
+                        "Error applying recommender [{}]({}) for user [{}] to document "
+                                + "[{}]({}) in project [{}]({}) - skipping document",
+                        aRecommender.getName(), aRecommender.getId(), user.getUsername(),
+                        document.getName(), document.getId(), project.getName(),
+                        project.getId(), e);
+                removePredictions(entry.getValue(), aEngine);
+            }
+        }
+        return predictedDocuments;
+    }
+    
+    /**
+     * Loads the annotation CASes of the given documents into {@code aOriginalCasses} and a copy
+     * of each into {@code aPredictionCasses}. Documents whose CAS cannot be loaded are skipped.
+     */
+    private void loadCasses(List<SourceDocument> aDocuments,
+            Map<SourceDocument, CAS> aOriginalCasses, Map<SourceDocument, CAS> aPredictionCasses)
+    {
+        User user = getUser();
+        Project project = getProject();
+        
+        nextDocument: for (SourceDocument document : aDocuments) {
+            CAS originalCas;
+            try {
+                originalCas = documentService.readAnnotationCas(document, user.getUsername());
+            }
+            catch (IOException e) {
+                log.error(
+                        "Cannot read annotation CAS for user [{}] of document "
+                                + "[{}]({}) in project [{}]({}) - skipping document",
+                        user.getUsername(), document.getName(), document.getId(),
+                        project.getName(), project.getId(), e);
+                continue nextDocument;
+            }
+            try {
+                annoService.upgradeCasIfRequired(originalCas, document, user.getUsername());
+            }
+            catch (UIMAException | IOException e) {
+                log.error(
+                        "Cannot upgrade annotation CAS for user [{}] of document "
+                                + "[{}]({}) in project [{}]({}) - skipping document",
+                        user.getUsername(), document.getName(), document.getId(),
+                        project.getName(), project.getId(), e);
+                continue nextDocument;
+            }
+            try {
+                aPredictionCasses.put(document, cloneCAS(originalCas));
+                aOriginalCasses.put(document, originalCas);
+            }
+            catch (UIMAException e) {
+                log.error("Cannot clone annotation CAS for user [{}] of document "
+                        + "[{}]({}) in project [{}]({}) - skipping document",
+                        user.getUsername(), document.getName(), document.getId(),
+                        project.getName(), project.getId(), e);
+                continue nextDocument;
+            }
+        }
     }
     
     private CAS cloneCAS(CAS aCAS) throws ResourceInitializationException, CASException
@@ -298,9 +424,10 @@ public class PredictionTask
         return result;
     }
 
-    private void removePredictions(CAS aCas, Type aPredictionType)
+    private void removePredictions(CAS aCas, RecommendationEngine aEngine)
     {
-        for (AnnotationFS fs : CasUtil.select(aCas, aPredictionType)) {
+        Type predictionType = getAnnotationType(aCas, aEngine.getPredictedType());
+        for (AnnotationFS fs : CasUtil.select(aCas, predictionType)) {
             aCas.removeFsFromIndexes(fs);
         }
     }
@@ -114,9 +114,11 @@ public class ConceptFeatureEditor
                     ? aStateModel.getObject().getSelection().getBegin()
                     : -1;
             
+            // Key the request by the editor so that only a newer request from the same field
+            // cancels it - not one from another editor or browser tab of the same user
             choices = clService.getLinkingInstancesInKBScope(traits.getRepositoryId(),
                     traits.getScope(), traits.getAllowedValueType(), aInput, mention, mentionBegin,
-                    cas, feat.getProject());
+                    cas, feat.getProject(), getSession().getId() + ":" + getPath());
         }
         catch (Exception e) {
             choices = asList(new KBHandle("http://ERROR", "ERROR", e.getMessage(), "en"));
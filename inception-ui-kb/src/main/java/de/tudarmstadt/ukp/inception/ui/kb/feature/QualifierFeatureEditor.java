@@ -385,9 +385,12 @@ public class QualifierFeatureEditor
 
         // Use concept linking if enabled
         try {
+            // Key the request by the editor and the modifier since each modifier has its own
+            // field - a request must only cancel the previous request from the same field
             handles = clService.getLinkingInstancesInKBScope(traits.getRepositoryId(),
                     traits.getScope(), traits.getAllowedValueType(), aTypedString, roleLabel,
-                    roleAddr, getEditorCas(aHandler), project);
+                    roleAddr, getEditorCas(aHandler), project,
+                    getSession().getId() + ":" + getPath() + ":" + roleAddr);
         }
         catch (IOException e) {
             LOG.error("An error occurred while retrieving entity candidates.", e);
@@ -370,7 +370,8 @@ public class SubjectObjectFeatureEditor
         try {
             handles = clService.getLinkingInstancesInKBScope(traits.getRepositoryId(),
                     traits.getScope(), traits.getAllowedValueType(), aTypedString, roleModel.label,
-                    roleModel.targetAddr, getEditorCas(aHandler), project);
+                    roleModel.targetAddr, getEditorCas(aHandler), project,
+                    getSession().getId() + ":" + getPath());
         }
         catch (IOException e) {
             LOG.error("An error occurred while retrieving entity candidates.", e);
@@ -128,7 +128,7 @@ public class KnowledgeBaseDetailsPanel
                     .actionSave(aTarget, form);
                 applicationEventPublisherHolder.get().publishEvent(
                     new KnowledgeBaseConfigurationChangedEvent(this,
-                        aKbModel.getObject().getProject()));
+                        aKbModel.getObject().getProject(), aKbModel.getObject()));
             }
         });
 